@@ -0,0 +1,86 @@
+package net.corda.benchmarks
+
+import net.corda.node.services.identity.PersistentIdentityService
+import net.corda.node.utilities.AppendOnlyPersistentMap
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Group
+import org.openjdk.jmh.annotations.GroupThreads
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Reads and writes of an [AppendOnlyPersistentMap] by several threads at once, each in its own database transaction as in the
+ * node. Three threads read a set of keys slightly larger than the cache, so that most reads hit the cache as is typical of the
+ * identity and key maps, while a fourth keeps adding new entries.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class AppendOnlyPersistentMapBenchmark {
+    private companion object {
+        /** A little more than the 1024 entries [TestingNamedCacheFactory] caches, so that some reads go to the database. */
+        const val READ_KEYS = 1100L
+    }
+
+    private lateinit var database: CordaPersistence
+    private lateinit var map: AppendOnlyPersistentMap<String, String, PersistentIdentityService.PersistentPublicKeyHashToParty, String>
+    private val nextKey = AtomicLong(READ_KEYS)
+
+    @Setup
+    fun setUp() {
+        database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null })
+        database.transaction {
+            val initialMap = createMap()
+            for (index in 0 until READ_KEYS) {
+                initialMap[key(index)] = "O=Party $index, L=London, C=GB"
+            }
+        }
+        // Start from an empty cache, as after a restart
+        map = createMap()
+    }
+
+    private fun createMap() = AppendOnlyPersistentMap(
+            cacheFactory = TestingNamedCacheFactory(),
+            name = "PersistentIdentityService_keyToParty",
+            toPersistentEntityKey = { it },
+            fromPersistentEntity = { it.publicKeyHash to it.name },
+            toPersistentEntity = { key: String, value: String ->
+                PersistentIdentityService.PersistentPublicKeyHashToParty(key, value, key)
+            },
+            persistentEntityClass = PersistentIdentityService.PersistentPublicKeyHashToParty::class.java
+    )
+
+    @TearDown
+    fun tearDown() {
+        database.close()
+    }
+
+    private fun key(index: Long) = "key-$index"
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    fun read(): String? = database.transaction {
+        map[key(ThreadLocalRandom.current().nextLong(READ_KEYS))]
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    fun write(): Boolean = database.transaction {
+        map.addWithDuplicatesAllowed(key(nextKey.getAndIncrement()), "O=New Party, L=London, C=GB", logWarning = false)
+    }
+}
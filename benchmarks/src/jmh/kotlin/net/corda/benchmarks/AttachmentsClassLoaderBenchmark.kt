@@ -0,0 +1,71 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.Attachment
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.sha256
+import net.corda.core.internal.AbstractAttachment
+import net.corda.core.node.NetworkParameters
+import net.corda.core.serialization.internal.AttachmentsClassLoader
+import net.corda.finance.contracts.asset.Cash
+import net.corda.testing.common.internal.testNetworkParameters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.io.ByteArrayOutputStream
+import java.nio.file.Paths
+import java.util.concurrent.TimeUnit
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
+/**
+ * Creating the classloader a transaction is verified in from its attachments, here a jar of the finance contracts, including
+ * the checks made of the attachments' contents. The node caches these classloaders, so this is the cost of each miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class AttachmentsClassLoaderBenchmark {
+    private class JarAttachment(private val bytes: ByteArray) : AbstractAttachment({ bytes }, "benchmark") {
+        override val id: SecureHash = bytes.sha256()
+    }
+
+    private lateinit var attachments: List<Attachment>
+    private lateinit var networkParameters: NetworkParameters
+    private val transactionId = SecureHash.sha256("transaction")
+
+    @Setup
+    fun setUp() {
+        attachments = listOf(JarAttachment(financeContractsJar()))
+        networkParameters = testNetworkParameters()
+    }
+
+    /**
+     * Copies the finance classes out of the jar they were loaded from, which is the benchmarks jar itself when the benchmarks are
+     * run from it, so that the attachment is the same whichever way they are run.
+     */
+    private fun financeContractsJar(): ByteArray {
+        val output = ByteArrayOutputStream()
+        JarOutputStream(output).use { jar ->
+            ZipFile(Paths.get(Cash::class.java.protectionDomain.codeSource.location.toURI()).toFile()).use { source ->
+                for (entry in source.entries().asSequence().filter { it.name.startsWith("net/corda/finance/") }) {
+                    jar.putNextEntry(ZipEntry(entry.name))
+                    source.getInputStream(entry).use { it.copyTo(jar) }
+                    jar.closeEntry()
+                }
+            }
+        }
+        return output.toByteArray()
+    }
+
+    @Benchmark
+    fun createClassLoader(): Int {
+        return AttachmentsClassLoader(attachments, networkParameters, transactionId, { true }).use { classLoader ->
+            classLoader.urLs.size
+        }
+    }
+}
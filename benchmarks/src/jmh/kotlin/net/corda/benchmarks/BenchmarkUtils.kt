@@ -0,0 +1,61 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.Command
+import net.corda.core.contracts.PrivacySalt
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TransactionState
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.DigestService
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.SignableData
+import net.corda.core.crypto.SignatureMetadata
+import net.corda.core.crypto.sign
+import net.corda.core.internal.createComponentGroups
+import net.corda.core.serialization.internal._driverSerializationEnv
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.WireTransaction
+import net.corda.coretesting.internal.createTestSerializationEnv
+import net.corda.testing.contracts.DummyContract
+import net.corda.testing.contracts.DummyState
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.core.DUMMY_NOTARY_NAME
+import net.corda.testing.core.DummyCommandData
+import net.corda.testing.core.TestIdentity
+
+// Fixed keys and salt, so that the same transactions are benchmarked from run to run and commit to commit.
+val alice = TestIdentity(ALICE_NAME, 70)
+val notary = TestIdentity(DUMMY_NOTARY_NAME, 20)
+private val salt = PrivacySalt(ByteArray(32) { 1 })
+
+/**
+ * Makes the serialization environment used by the tests available to every thread, as benchmark methods run on JMH's own
+ * threads. The environment is left in place for the rest of the forked benchmark JVM.
+ */
+@Synchronized
+fun initialiseSerialization() {
+    if (_driverSerializationEnv.get() == null) {
+        _driverSerializationEnv.set(createTestSerializationEnv())
+    }
+}
+
+/** A transaction consuming and creating [states] dummy states. */
+fun dummyTransaction(states: Int): WireTransaction {
+    val inputs = List(states) { StateRef(SecureHash.sha256("input $it"), it) }
+    val outputs = List(states) { TransactionState(DummyState(it, listOf(alice.party)), DummyContract.PROGRAM_ID, notary.party) }
+    val componentGroups = createComponentGroups(
+            inputs,
+            outputs,
+            listOf(Command(DummyCommandData, alice.publicKey)),
+            listOf(SecureHash.sha256("attachment")),
+            notary.party,
+            null,
+            emptyList(),
+            SecureHash.sha256("network parameters")
+    )
+    return WireTransaction(componentGroups, salt, DigestService.sha2_256)
+}
+
+fun WireTransaction.signedByAlice(): SignedTransaction {
+    val signatureMetadata = SignatureMetadata(1, Crypto.findSignatureScheme(alice.publicKey).schemeNumberID)
+    return SignedTransaction(this, listOf(alice.keyPair.sign(SignableData(id, signatureMetadata))))
+}
@@ -0,0 +1,54 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.identity.Party
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.internal.checkpointDeserialize
+import net.corda.core.serialization.internal.checkpointSerialize
+import net.corda.core.transactions.SignedTransaction
+import net.corda.testing.contracts.DummyState
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Kryo serialization of the sort of objects a flow holds across a suspension, as written to its checkpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class CheckpointSerializationBenchmark {
+    class FlowLocals(val transaction: SignedTransaction, val states: List<StateAndRef<DummyState>>, val counterparties: List<Party>)
+
+    /** The number of states held by the flow, and of input and of output states of its transaction. */
+    @Param("1", "10", "100")
+    var states: Int = 0
+
+    private lateinit var flowLocals: FlowLocals
+    private lateinit var serializedFlowLocals: SerializedBytes<FlowLocals>
+
+    @Setup
+    fun setUp() {
+        initialiseSerialization()
+        val transaction = dummyTransaction(states).signedByAlice()
+        flowLocals = FlowLocals(
+                transaction,
+                transaction.tx.outputs.mapIndexed { index, state -> StateAndRef(state.data as DummyState, StateRef(transaction.id, index)) },
+                listOf(alice.party, notary.party)
+        )
+        serializedFlowLocals = flowLocals.checkpointSerialize()
+    }
+
+    @Benchmark
+    fun serialize(): SerializedBytes<FlowLocals> = flowLocals.checkpointSerialize()
+
+    @Benchmark
+    fun deserialize(): FlowLocals = serializedFlowLocals.checkpointDeserialize()
+}
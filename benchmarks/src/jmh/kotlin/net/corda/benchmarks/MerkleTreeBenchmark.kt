@@ -0,0 +1,46 @@
+package net.corda.benchmarks
+
+import net.corda.core.crypto.MerkleTree
+import net.corda.core.crypto.SecureHash
+import net.corda.core.transactions.ComponentGroup
+import net.corda.core.transactions.WireTransaction
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Building Merkle trees, on their own and over the components of a transaction to work out its id. The transaction is rebuilt
+ * from its component groups on each invocation as its id is computed once and then kept.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class MerkleTreeBenchmark {
+    /** The number of leaves of the tree, and of input and of output states of the transaction. */
+    @Param("10", "1000", "100000")
+    var components: Int = 0
+
+    private lateinit var leaves: List<SecureHash>
+    private lateinit var componentGroups: List<ComponentGroup>
+    private lateinit var transaction: WireTransaction
+
+    @Setup
+    fun setUp() {
+        initialiseSerialization()
+        leaves = List(components) { SecureHash.sha256("leaf $it") }
+        transaction = dummyTransaction(components)
+        componentGroups = transaction.componentGroups
+    }
+
+    @Benchmark
+    fun merkleTree(): SecureHash = MerkleTree.getMerkleTree(leaves).hash
+
+    @Benchmark
+    fun transactionId(): SecureHash = WireTransaction(componentGroups, transaction.privacySalt, transaction.digestService).id
+}
@@ -0,0 +1,59 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.TransactionState
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.deserialize
+import net.corda.core.serialization.serialize
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.WireTransaction
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * AMQP serialization of transactions, as sent between nodes and stored in the transaction table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class SerializationBenchmark {
+    /** The number of input and of output states of the transaction. */
+    @Param("1", "10", "100")
+    var states: Int = 0
+
+    private lateinit var transaction: WireTransaction
+    private lateinit var signedTransaction: SignedTransaction
+    private lateinit var serializedTransaction: SerializedBytes<WireTransaction>
+    private lateinit var serializedSignedTransaction: SerializedBytes<SignedTransaction>
+
+    @Setup
+    fun setUp() {
+        initialiseSerialization()
+        transaction = dummyTransaction(states)
+        signedTransaction = transaction.signedByAlice()
+        serializedTransaction = transaction.serialize()
+        serializedSignedTransaction = signedTransaction.serialize()
+    }
+
+    @Benchmark
+    fun serializeWireTransaction(): SerializedBytes<WireTransaction> = transaction.serialize()
+
+    @Benchmark
+    fun deserializeWireTransaction(): WireTransaction = serializedTransaction.deserialize()
+
+    /** Deserializes the transaction and then its output states, which are only deserialized from their component group on access. */
+    @Benchmark
+    fun deserializeWireTransactionOutputs(): List<TransactionState<*>> = serializedTransaction.deserialize().outputs
+
+    @Benchmark
+    fun serializeSignedTransaction(): SerializedBytes<SignedTransaction> = signedTransaction.serialize()
+
+    @Benchmark
+    fun deserializeSignedTransaction(): WireTransaction = serializedSignedTransaction.deserialize().tx
+}
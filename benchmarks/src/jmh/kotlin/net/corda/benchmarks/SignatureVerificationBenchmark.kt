@@ -0,0 +1,42 @@
+package net.corda.benchmarks
+
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.SignatureScheme
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.security.PublicKey
+import java.util.concurrent.TimeUnit
+
+/**
+ * Verifying a signature over a transaction id with each of the supported signature schemes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class SignatureVerificationBenchmark {
+    @Param("EDDSA_ED25519_SHA512", "ECDSA_SECP256K1_SHA256", "ECDSA_SECP256R1_SHA256", "RSA_SHA256")
+    var scheme: String = ""
+
+    private lateinit var signatureScheme: SignatureScheme
+    private lateinit var publicKey: PublicKey
+    private val clearData = SecureHash.sha256("transaction").bytes
+    private lateinit var signature: ByteArray
+
+    @Setup
+    fun setUp() {
+        signatureScheme = Crypto.findSignatureScheme(scheme)
+        val keyPair = Crypto.generateKeyPair(signatureScheme)
+        publicKey = keyPair.public
+        signature = Crypto.doSign(signatureScheme, keyPair.private, clearData)
+    }
+
+    @Benchmark
+    fun doVerify(): Boolean = Crypto.doVerify(signatureScheme, publicKey, signature, clearData)
+}
@@ -0,0 +1,91 @@
+package net.corda.benchmarks
+
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Sort
+import net.corda.core.node.services.vault.SortAttribute
+import net.corda.core.node.services.vault.builder
+import net.corda.finance.contracts.asset.Cash
+import net.corda.finance.schemas.CashSchemaV1
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.node.services.vault.HibernateQueryCriteriaParser
+import net.corda.node.services.vault.VaultSchemaV1
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.util.concurrent.TimeUnit
+import javax.persistence.EntityManager
+import javax.persistence.Tuple
+import javax.persistence.TypedQuery
+
+/**
+ * Building the JPA query for vault query criteria, as [net.corda.node.services.vault.NodeVaultService] does for each vault query,
+ * without running it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class VaultQueryBenchmark {
+    /** Unconsumed states, fungible states over an amount, a custom schema column, or all three sorted by time recorded. */
+    @Param("vault", "fungible", "custom", "composite")
+    var criteriaType: String = ""
+
+    private lateinit var database: CordaPersistence
+    private lateinit var entityManager: EntityManager
+    private lateinit var criteria: QueryCriteria
+    private var sorting: Sort? = null
+
+    @Setup
+    fun setUp() {
+        database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null },
+                NodeSchemaService(extraSchemas = setOf(CashSchemaV1)))
+        entityManager = database.entityManagerFactory.createEntityManager()
+        val vault = QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+        val fungible = QueryCriteria.FungibleAssetQueryCriteria(
+                quantity = builder { greaterThan(100L) },
+                relevancyStatus = Vault.RelevancyStatus.ALL
+        )
+        val custom = QueryCriteria.VaultCustomQueryCriteria(builder { CashSchemaV1.PersistentCashState::pennies.greaterThan(100L) })
+        criteria = when (criteriaType) {
+            "vault" -> vault
+            "fungible" -> fungible
+            "custom" -> custom
+            "composite" -> vault.and(fungible).and(custom)
+            else -> throw IllegalArgumentException("Unknown criteria type $criteriaType")
+        }
+        if (criteriaType == "composite") {
+            sorting = Sort(listOf(Sort.SortColumn(SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.DESC)))
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        entityManager.close()
+        database.close()
+    }
+
+    @Benchmark
+    fun buildQuery(): TypedQuery<Tuple> {
+        val criteriaBuilder = entityManager.criteriaBuilder
+        val criteriaQuery = criteriaBuilder.createQuery(Tuple::class.java)
+        val parser = HibernateQueryCriteriaParser(
+                Cash.State::class.java,
+                emptyMap(),
+                criteriaBuilder,
+                criteriaQuery,
+                criteriaQuery.from(VaultSchemaV1.VaultStates::class.java)
+        )
+        parser.parse(criteria, sorting)
+        return entityManager.createQuery(criteriaQuery)
+    }
+}
@@ -655,6 +655,8 @@ class RPCStabilityTests {
                     }
                     is RPCApi.ClientToServer.ObservablesClosed -> {
                     }
+                    is RPCApi.ClientToServer.CursorFetch -> {
+                    }
                 }
             }
             session.start()
@@ -1,6 +1,13 @@
 package net.corda.client.rpc
 
+import net.corda.core.crypto.SecureHash
+import net.corda.core.messaging.CordaRPCOps
 import rx.Observable
+import java.io.IOException
+import java.io.InputStream
+import java.security.MessageDigest
+import java.util.Objects
+import java.util.UUID
 
 /**
  * This function should be invoked on any unwanted Observables returned from RPC to release the server resources.
@@ -17,3 +24,95 @@ fun <T> Observable<T>.notUsed() {
         // Swallow any other exceptions as well.
     }
 }
+
+/** The size of the chunks [openAttachmentInChunks] and [uploadAttachmentInChunks] transfer attachments in by default. */
+const val DEFAULT_ATTACHMENT_CHUNK_SIZE = 1024 * 1024
+
+/**
+ * Opens the attachment [id] as a stream which is downloaded from the node a chunk of [chunkSize] bytes at a time, as it is read, rather
+ * than all at once as with [CordaRPCOps.openAttachment].
+ *
+ * If reading a chunk fails, as when the connection to the node is lost, reading can be retried and carries on from where it failed.
+ * The downloaded bytes are checked against [id] once the end of the attachment is reached.
+ *
+ * @throws IOException from reading the stream if the attachment does not match [id].
+ */
+@JvmOverloads
+fun CordaRPCOps.openAttachmentInChunks(id: SecureHash, chunkSize: Int = DEFAULT_ATTACHMENT_CHUNK_SIZE): InputStream {
+    require(chunkSize > 0) { "Chunk size must be positive" }
+    return ChunkedAttachmentInputStream(this, id, chunkSize)
+}
+
+/**
+ * Uploads [jar] to the node in chunks of [chunkSize] bytes and then imports it, returning its hash. Unlike
+ * [CordaRPCOps.uploadAttachmentWithMetadata] neither the client nor the node has to hold the whole of [jar] in memory.
+ *
+ * An upload cut off part way through can be resumed by calling this again with the same [uploadId] and a fresh stream of [jar], which
+ * is skipped to where the node's copy of the upload got to.
+ */
+@JvmOverloads
+@Throws(java.nio.file.FileAlreadyExistsException::class)
+fun CordaRPCOps.uploadAttachmentInChunks(
+        jar: InputStream,
+        uploader: String,
+        filename: String?,
+        uploadId: String = UUID.randomUUID().toString(),
+        chunkSize: Int = DEFAULT_ATTACHMENT_CHUNK_SIZE
+): SecureHash {
+    require(chunkSize > 0) { "Chunk size must be positive" }
+    var offset = uploadAttachmentChunk(uploadId, 0, ByteArray(0))
+    jar.skipNBytes(offset)
+    while (true) {
+        val chunk = jar.readNBytes(chunkSize)
+        if (chunk.isEmpty()) break
+        offset = uploadAttachmentChunk(uploadId, offset, chunk)
+    }
+    return completeAttachmentUpload(uploadId, uploader, filename)
+}
+
+private class ChunkedAttachmentInputStream(
+        private val rpcOps: CordaRPCOps,
+        private val id: SecureHash,
+        private val chunkSize: Int
+) : InputStream() {
+    private val digest = MessageDigest.getInstance("SHA-256")
+    private var chunk = ByteArray(0)
+    private var positionInChunk = 0
+    private var offset = 0L
+    private var finished = false
+
+    override fun read(): Int {
+        val single = ByteArray(1)
+        return if (read(single, 0, 1) == -1) -1 else single[0].toInt() and 0xFF
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        Objects.checkFromIndexSize(off, len, b.size)
+        if (len == 0) return 0
+        if (positionInChunk == chunk.size && !nextChunk()) return -1
+        val count = minOf(len, chunk.size - positionInChunk)
+        System.arraycopy(chunk, positionInChunk, b, off, count)
+        positionInChunk += count
+        return count
+    }
+
+    override fun available(): Int = chunk.size - positionInChunk
+
+    private fun nextChunk(): Boolean {
+        if (finished) return false
+        val next = rpcOps.readAttachmentChunk(id, offset, chunkSize)
+        if (next.isEmpty()) {
+            finished = true
+            val downloaded = SecureHash.createSHA256(digest.digest())
+            if (downloaded != id) {
+                throw IOException("Attachment $id was downloaded with hash $downloaded")
+            }
+            return false
+        }
+        digest.update(next)
+        offset += next.size
+        chunk = next
+        positionInChunk = 0
+        return true
+    }
+}
@@ -88,6 +88,10 @@ import kotlin.reflect.jvm.javaMethod
  * we carry on. Each observation later contains the corresponding [Observable] ID, and we just forward that to the
  * associated [UnicastSubject].
  *
+ * Large list results may be streamed by the server as a cursor, in which case the chunks are collected in [cursorResults] and the
+ * next chunk fetched once the previous one has arrived. The call returns once the last chunk has been received, so the caller gets
+ * an ordinary list which does not depend on the cursor, or the connection, staying open.
+ *
  * The client may signal that it no longer consumes a particular [Observable]. This may be done explicitly by
  * unsubscribing from the [Observable], or if the [Observable] is garbage collected the client will eventually
  * automatically signal the server. This is done using a cache that holds weak references to the [UnicastSubject]s.
@@ -179,6 +183,8 @@ internal class RPCClientProxyHandler(
 
     // Holds the RPC reply futures.
     private val rpcReplyMap = RpcReplyMap()
+    // Holds the items received so far of the replies being streamed as cursors.
+    private val cursorResults = ConcurrentHashMap<InvocationId, ArrayList<Any?>>()
     // Optionally holds RPC call site stack traces to be shown on errors/warnings.
     private val callSiteMap = if (rpcConfiguration.trackRpcCallSites) CallSiteMap() else null
     // Holds the Observables and a reference store to keep Observables alive when subscribed to.
@@ -343,7 +349,8 @@ internal class RPCClientProxyHandler(
                     sessionId,
                     externalTrace,
                     impersonatedActor,
-                    rpcClientTelemetry.telemetryService.getCurrentTelemetryData()
+                    rpcClientTelemetry.telemetryService.getCurrentTelemetryData(),
+                    supportsCursors = true
             )
             val replyFuture = SettableFuture.create<Any?>()
             require(rpcReplyMap.put(replyId, replyFuture) == null) {
@@ -444,6 +451,32 @@ internal class RPCClientProxyHandler(
                         }
                     }
                 }
+                is RPCApi.ServerToClient.CursorChunk -> {
+                    val replyFuture = rpcReplyMap[serverToClient.id]
+                    if (replyFuture == null) {
+                        log.error("RPC cursor chunk arrived to unknown RPC ID ${serverToClient.id}, this indicates an internal RPC error.")
+                    } else {
+                        val items = serverToClient.items
+                        when (items) {
+                            is Try.Success -> {
+                                val results = cursorResults.computeIfAbsent(serverToClient.id) { ArrayList() }
+                                results.addAll(items.value)
+                                if (serverToClient.isLast) {
+                                    rpcReplyMap.remove(serverToClient.id)
+                                    cursorResults.remove(serverToClient.id)
+                                    replyFuture.set(results)
+                                } else {
+                                    fetchNextChunk(serverToClient.id, replyFuture)
+                                }
+                            }
+                            is Try.Failure -> {
+                                rpcReplyMap.remove(serverToClient.id)
+                                cursorResults.remove(serverToClient.id)
+                                completeExceptionally(serverToClient.id, items.exception, replyFuture)
+                            }
+                        }
+                    }
+                }
                 is RPCApi.ServerToClient.Observation -> {
                     val observable: UnicastSubject<Notification<*>>? = observableContext.observableMap.getIfPresent(serverToClient.id)
                     if (observable == null) {
@@ -476,6 +509,16 @@ internal class RPCClientProxyHandler(
         }
     }
 
+    private fun fetchNextChunk(replyId: InvocationId, replyFuture: SettableFuture<Any?>) {
+        try {
+            sendMessage(RPCApi.ClientToServer.CursorFetch(clientAddress!!, replyId))
+        } catch (e: Exception) {
+            rpcReplyMap.remove(replyId)
+            cursorResults.remove(replyId)
+            replyFuture.setException(e)
+        }
+    }
+
     /**
      * Closes this handler without notifying observables.
      * This method clears up only local resources and as such does not block on any network resources.
@@ -530,6 +573,7 @@ internal class RPCClientProxyHandler(
         }
 
         rpcReplyMap.clear()
+        cursorResults.clear()
         callSiteMap?.clear()
 
         reapObservables(notify)
@@ -687,6 +731,7 @@ internal class RPCClientProxyHandler(
 
         log.debug { "rpcReplyMap size before clear: ${rpcReplyMap.size}" }
         rpcReplyMap.clear()
+        cursorResults.clear()
         log.debug { "callSiteMap size before clear: ${callSiteMap?.size}" }
         callSiteMap?.clear()
         notificationDistributionMux.onDisconnect(connectionFailureException)
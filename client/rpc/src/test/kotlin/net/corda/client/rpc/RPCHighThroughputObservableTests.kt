@@ -1,9 +1,14 @@
 package net.corda.client.rpc
 
 import net.corda.core.messaging.RPCOps
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.millis
+import net.corda.node.services.rpc.RPCServerConfiguration
 import net.corda.testing.node.internal.RPCDriverDSL
 import net.corda.testing.node.internal.rpcDriver
+import net.corda.testing.node.internal.rpcTestUser
+import net.corda.testing.node.internal.startInVmRpcClient
+import net.corda.testing.node.internal.startRpcClient
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized
@@ -40,4 +45,23 @@ class RPCHighThroughputObservableTests : AbstractRPCTest() {
             assertEquals(listOf(1, 2, 3, 4), observationsList)
         }
     }
+
+    @Test(timeout=300_000)
+    fun `observations to each client stay in order when sent by several threads`() {
+        rpcDriver {
+            val serverConfiguration = RPCServerConfiguration.DEFAULT.copy(senderThreadCount = 3)
+            val proxies = when (mode) {
+                RPCTestMode.InVm -> {
+                    startInVmRpcServer(ops = TestOpsImpl(), configuration = serverConfiguration).getOrThrow()
+                    (1..5).map { startInVmRpcClient<TestOps>(rpcTestUser.username, rpcTestUser.password).getOrThrow() }
+                }
+                RPCTestMode.Netty -> {
+                    val broker = startRpcServer(ops = TestOpsImpl(), configuration = serverConfiguration).getOrThrow().broker
+                    (1..5).map { startRpcClient<TestOps>(broker.hostAndPort!!, rpcTestUser.username, rpcTestUser.password).getOrThrow() }
+                }
+            }
+            val observations = proxies.map { proxy -> proxy.makeObservable().take(100).toList().toBlocking().toFuture() }
+            observations.forEach { assertEquals((1..100).toList(), it.getOrThrow()) }
+        }
+    }
 }
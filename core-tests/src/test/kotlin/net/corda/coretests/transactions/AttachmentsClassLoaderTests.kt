@@ -22,6 +22,7 @@ import net.corda.core.internal.hash
 import net.corda.core.node.NetworkParameters
 import net.corda.core.node.services.AttachmentId
 import net.corda.core.serialization.internal.AttachmentsClassLoader
+import net.corda.core.serialization.internal.AttachmentsClassLoaderBuilder
 import net.corda.core.serialization.internal.AttachmentsClassLoaderCacheImpl
 import net.corda.core.transactions.LedgerTransaction
 import net.corda.node.services.attachments.NodeAttachmentTrustCalculator
@@ -43,6 +44,8 @@ import org.apache.commons.io.IOUtils
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Rule
@@ -582,6 +585,29 @@ class AttachmentsClassLoaderTests {
         }
     }
 
+    @Test(timeout=300_000)
+    fun `class loader is shared by network parameters with the same package ownership`() {
+        val isolatedId = importAttachment(ISOLATED_CONTRACTS_JAR_PATH.openStream(), "app", "isolated.jar")
+        val attachments = listOf(storage.openAttachment(isolatedId)!!)
+        val attachmentsClassLoaderCache = AttachmentsClassLoaderCacheImpl(TestingNamedCacheFactory())
+
+        fun classLoaderFor(params: NetworkParameters): ClassLoader {
+            return AttachmentsClassLoaderBuilder.withAttachmentsClassLoaderContext(
+                    attachments,
+                    params,
+                    SecureHash.zeroHash,
+                    attachmentTrustCalculator::calculate,
+                    attachmentsClassLoaderCache = attachmentsClassLoaderCache
+            ) { it.deserializationClassLoader }
+        }
+
+        val classLoader = classLoaderFor(networkParameters)
+        assertSame(classLoader, classLoaderFor(networkParameters.copy(epoch = networkParameters.epoch + 1)))
+        assertNotSame(classLoader, classLoaderFor(networkParameters.copy(packageOwnership = mapOf("com.example" to ALICE.owningKey))))
+        assertEquals(1L, attachmentsClassLoaderCache.hits)
+        assertEquals(2L, attachmentsClassLoaderCache.misses)
+    }
+
     private fun createContractString(contractName: String, versionSeed: Int = 0): String {
         val pkgs = contractName.split(".")
         val className = pkgs.last()
@@ -52,6 +52,11 @@ data class DigestService(val hashAlgorithm: String) {
      */
     fun hash(bytes: ByteArray): SecureHash = SecureHash.hashAs(hashAlgorithm, bytes)
 
+    /**
+     * Computes the raw digest of the [ByteArray], for intermediate values which need not be [SecureHash]es.
+     */
+    internal fun digest(bytes: ByteArray): ByteArray = SecureHash.digestAs(hashAlgorithm, bytes)
+
     /**
      * Computes the digest of the [String]'s UTF-8 byte contents.
      *
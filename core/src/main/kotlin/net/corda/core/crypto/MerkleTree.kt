@@ -9,7 +9,7 @@ import java.util.*
  *
  * Transaction is split into following blocks: inputs, attachments' refs, outputs, commands, notary,
  * signers, tx type, time-window. Merkle Tree is kept in a recursive data structure. Building is done bottom up,
- * from all leaves' hashes. If number of leaves is not a power of two, the tree is padded with zero hashes.
+ * from all leaves' hashes, over a flat array holding one level of the tree at a time. If number of leaves is not a power of two, the tree is padded with zero hashes.
  */
 sealed class MerkleTree {
     abstract val hash: SecureHash
@@ -31,14 +31,38 @@ sealed class MerkleTree {
          */
         @Throws(MerkleTreeException::class)
         fun getMerkleTree(allLeavesHashes: List<SecureHash>, nodeDigestService: DigestService): MerkleTree {
+            val leaves = paddedLeaves(allLeavesHashes, nodeDigestService)
+            return buildMerkleTree(Array(leaves.size) { Leaf(leaves[it]) }, nodeDigestService)
+        }
+
+        /**
+         * Computes the root hash of the Merkle tree that [getMerkleTree] would build, without building the tree. Only the
+         * hashes of the current level are kept, in a single array which is overwritten as each level is computed.
+         */
+        @Throws(MerkleTreeException::class)
+        internal fun getMerkleRoot(allLeavesHashes: List<SecureHash>, nodeDigestService: DigestService): SecureHash {
+            val leaves = paddedLeaves(allLeavesHashes, nodeDigestService)
+            if (leaves.size == 1) return leaves[0]
+            val level = Array(leaves.size) { leaves[it].bytes }
+            val concatenation = ConcatenationBuffer()
+            var n = level.size
+            while (n > 2) {
+                for (i in 0 until n / 2) {
+                    level[i] = nodeDigestService.digest(concatenation.of(level[2 * i], level[2 * i + 1]))
+                }
+                n /= 2
+            }
+            return nodeDigestService.hash(concatenation.of(level[0], level[1]))
+        }
+
+        private fun paddedLeaves(allLeavesHashes: List<SecureHash>, nodeDigestService: DigestService): List<SecureHash> {
             if (allLeavesHashes.isEmpty())
                 throw MerkleTreeException("Cannot calculate Merkle root on empty hash list.")
             val algorithms = allLeavesHashes.mapTo(HashSet(), SecureHash::algorithm)
             require(algorithms.size == 1) {
                 "Cannot build Merkle tree with multiple hash algorithms: $algorithms"
             }
-            val leaves = padWithZeros(allLeavesHashes, nodeDigestService.hashAlgorithm == SecureHash.SHA2_256).map { Leaf(it) }
-            return buildMerkleTree(leaves, nodeDigestService)
+            return padWithZeros(allLeavesHashes, nodeDigestService.hashAlgorithm == SecureHash.SHA2_256)
         }
 
         // If number of leaves in the tree is not a power of 2, we need to pad it with zero hashes.
@@ -54,25 +78,40 @@ sealed class MerkleTree {
         }
 
         /**
-         * Tailrecursive function for building a tree bottom up.
-         * @param lastNodesList MerkleTree nodes from previous level.
+         * Builds a tree bottom up, replacing each pair of nodes of a level with their parent in the first half of [nodes].
+         * @param nodes The leaves of the tree, whose number must be a power of 2.
          * @return Tree root.
          */
-        private tailrec fun buildMerkleTree(lastNodesList: List<MerkleTree>, nodeDigestService: DigestService): MerkleTree {
-            return if (lastNodesList.size == 1) {
-                lastNodesList[0] // Root reached.
-            } else {
-                val newLevelHashes: MutableList<MerkleTree> = ArrayList()
-                val n = lastNodesList.size
+        private fun buildMerkleTree(nodes: Array<MerkleTree>, nodeDigestService: DigestService): MerkleTree {
+            val concatenation = ConcatenationBuffer()
+            var n = nodes.size
+            while (n > 1) {
                 require((n and 1) == 0) { "Sanity check: number of nodes should be even." }
-                for (i in 0..n - 2 step 2) {
-                    val left = lastNodesList[i]
-                    val right = lastNodesList[i + 1]
-                    val node = Node(nodeDigestService.hash(left.hash.bytes + right.hash.bytes), left, right)
-                    newLevelHashes.add(node)
+                for (i in 0 until n / 2) {
+                    val left = nodes[2 * i]
+                    val right = nodes[2 * i + 1]
+                    nodes[i] = Node(nodeDigestService.hash(concatenation.of(left.hash.bytes, right.hash.bytes)), left, right)
                 }
-                buildMerkleTree(newLevelHashes, nodeDigestService)
+                n /= 2
+            }
+            return nodes[0] // Root reached.
+        }
+    }
+
+    /**
+     * Concatenates pairs of hashes into the same array for as long as they are of the same size, rather than allocating a
+     * new array for every node of the tree. The array is only ever passed to a digest, which does not keep it.
+     */
+    private class ConcatenationBuffer {
+        private var buffer = ByteArray(0)
+
+        fun of(left: ByteArray, right: ByteArray): ByteArray {
+            if (buffer.size != left.size + right.size) {
+                buffer = ByteArray(left.size + right.size)
             }
+            System.arraycopy(left, 0, buffer, 0, left.size)
+            System.arraycopy(right, 0, buffer, left.size, right.size)
+            return buffer
         }
     }
-}
\ No newline at end of file
+}
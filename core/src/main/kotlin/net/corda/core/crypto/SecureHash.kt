@@ -203,7 +203,7 @@ sealed class SecureHash(bytes: ByteArray) : OpaqueBytes(bytes) {
             return messageDigests.getOrPut(algorithm) { DigestSupplier(algorithm) }
         }
 
-        private fun digestAs(algorithm: String, bytes: ByteArray): ByteArray = digestFor(algorithm).get().digest(bytes)
+        internal fun digestAs(algorithm: String, bytes: ByteArray): ByteArray = digestFor(algorithm).get().digest(bytes)
 
         /**
          * @param algorithm The [MessageDigest] algorithm to query.
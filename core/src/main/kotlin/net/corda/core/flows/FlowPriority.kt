@@ -0,0 +1,29 @@
+package net.corda.core.flows
+
+import java.lang.annotation.Inherited
+import kotlin.annotation.AnnotationTarget.CLASS
+
+/**
+ * Sets the [FlowPriorityClass] of a [FlowLogic], and of its subclasses. While a node is busy, the messages for flows of a higher
+ * class are handled ahead of those of lower classes, while still giving lower classes a share. Flows which are not annotated have
+ * [FlowPriorityClass.NORMAL] priority, unless they are initiated by a flow which is annotated, in which case they take its priority.
+ *
+ * The node operator can override the priority of any flow class in the node configuration.
+ */
+@Target(CLASS)
+@Inherited
+@MustBeDocumented
+annotation class FlowPriority(val value: FlowPriorityClass)
+
+/**
+ * The priority classes of flows, from lowest to highest.
+ *
+ * @see FlowPriority
+ */
+enum class FlowPriorityClass {
+    /** For batch work, which can wait for other flows. */
+    LOW,
+    NORMAL,
+    /** For flows which other nodes are waiting on, such as notarisation. */
+    HIGH
+}
@@ -35,6 +35,7 @@ class NotaryFlow {
      */
     @DoNotImplement
     @InitiatingFlow
+    @FlowPriority(FlowPriorityClass.HIGH)
     open class Client(
             private val stx: SignedTransaction,
             override val progressTracker: ProgressTracker,
@@ -0,0 +1,23 @@
+package net.corda.core.internal
+
+import net.corda.core.serialization.CordaSerializable
+
+/**
+ * The resources used on the node's threads by a flow, or by all the flows of a class, while running its own code and while the
+ * state machine processes its events.
+ *
+ * @property transitions the number of state machine transitions which have been measured.
+ * @property cpuNanos the CPU time used, or zero if the JVM does not measure thread CPU time.
+ * @property allocatedBytes the heap memory allocated, or zero if the JVM does not measure thread allocation.
+ * @property jdbcStatements the number of JDBC statements and batches run through the node's Hibernate sessions.
+ * @property jdbcNanos the time spent running those statements.
+ */
+@CordaSerializable
+data class FlowResourceUsage(
+    val flowClassName: String,
+    val transitions: Long,
+    val cpuNanos: Long,
+    val allocatedBytes: Long,
+    val jdbcStatements: Long,
+    val jdbcNanos: Long
+)
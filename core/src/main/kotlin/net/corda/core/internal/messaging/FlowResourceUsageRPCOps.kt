@@ -0,0 +1,17 @@
+package net.corda.core.internal.messaging
+
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.FlowResourceUsage
+import net.corda.core.messaging.RPCOps
+
+interface FlowResourceUsageRPCOps : RPCOps {
+    /**
+     * Get the resources used by each class of flow since the node started, including flows which have finished
+     */
+    val flowResourceUsageByClass: List<FlowResourceUsage>
+
+    /**
+     * Get the resources used so far by each flow which is running
+     */
+    val flowResourceUsageByFlow: Map<StateMachineRunId, FlowResourceUsage>
+}
@@ -29,6 +29,7 @@ import java.time.Duration
  * @param etaThreshold If the ETA for processing the request, according to the service, is greater than this, notify the client.
  */
 // See AbstractStateReplacementFlow.Acceptor for why it's Void?
+@FlowPriority(FlowPriorityClass.HIGH)
 abstract class NotaryServiceFlow(
         val otherSideSession: FlowSession,
         val service: SinglePartyNotaryService,
@@ -1,6 +1,7 @@
 package net.corda.core.internal.verification
 
 import net.corda.core.contracts.Attachment
+import net.corda.core.contracts.AttachmentResolutionException
 import net.corda.core.contracts.ComponentGroupEnum.OUTPUTS_GROUP
 import net.corda.core.contracts.StateRef
 import net.corda.core.contracts.TransactionResolutionException
@@ -55,6 +56,10 @@ interface NodeVerificationSupport : VerificationSupport {
 
     val externalVerifierHandle: ExternalVerifierHandle
 
+    /** The transactions already verified, if they are remembered. */
+    val verifiedTransactionCache: VerifiedTransactionCache?
+        get() = null
+
     override val appClassLoader: ClassLoader
         get() = cordappProvider.appClassLoader
 
@@ -84,6 +89,24 @@ interface NodeVerificationSupport : VerificationSupport {
         }
     }
 
+    /**
+     * Creates, and caches in the [attachmentsClassLoaderCache], the attachments classloader which verifying [wtx] in-process would use,
+     * so that it is ready for transactions with the same attachments.
+     */
+    fun prewarmAttachmentsClassLoader(wtx: WireTransaction) {
+        // Transactions with only legacy attachments are verified by the external verifier.
+        if (wtx.nonLegacyAttachments.isEmpty()) return
+        val attachments = wtx.nonLegacyAttachments.map { getAttachment(it) ?: throw AttachmentResolutionException(it) }
+        val networkParameters = getNetworkParameters(wtx.networkParametersHash) ?: throw TransactionResolutionException(wtx.id)
+        AttachmentsClassLoaderBuilder.withAttachmentsClassLoaderContext(
+                attachments,
+                networkParameters,
+                wtx.id,
+                ::isAttachmentTrusted,
+                attachmentsClassLoaderCache = attachmentsClassLoaderCache
+        ) {}
+    }
+
     private fun getRegularOutput(coreTransaction: WireTransaction, outputIndex: Int): SerializedTransactionState {
         @Suppress("UNCHECKED_CAST")
         return coreTransaction.componentGroups.getRequiredGroup(OUTPUTS_GROUP).components[outputIndex] as SerializedTransactionState
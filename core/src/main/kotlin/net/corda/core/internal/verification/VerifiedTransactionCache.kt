@@ -0,0 +1,16 @@
+package net.corda.core.internal.verification
+
+import net.corda.core.crypto.SecureHash
+
+/**
+ * Remembers which transactions have had their contracts verified successfully, so that verifying them again, for example when they
+ * are part of the backchain of several transactions, does not run their contracts again. Signatures are always checked.
+ */
+interface VerifiedTransactionCache {
+    /** A transaction verified against the given network parameters and attachments. */
+    data class Key(val txId: SecureHash, val networkParametersHash: SecureHash, val attachments: Set<SecureHash>)
+
+    fun isVerified(key: Key): Boolean
+
+    fun markVerified(key: Key)
+}
@@ -98,6 +98,20 @@ data class ParametersUpdateInfo(
 @CordaSerializable
 data class StateMachineTransactionMapping(val stateMachineRunId: StateMachineRunId, val transactionId: SecureHash)
 
+/**
+ * A flow to be started by [CordaRPCOps.startFlowsDynamic].
+ *
+ * @property logicType The [FlowLogic] to start, which must be annotated with [net.corda.core.flows.StartableByRPC].
+ * @property args The arguments to pass to the flow.
+ * @property clientId If not null, the flow is started as by [CordaRPCOps.startFlowDynamicWithClientId] with this client id.
+ */
+@CordaSerializable
+data class FlowStartRequest @JvmOverloads constructor(
+        val logicType: Class<out FlowLogic<*>>,
+        val args: List<Any?>,
+        val clientId: String? = null
+)
+
 /** RPC operations that the node exposes to clients. */
 interface CordaRPCOps : RPCOps {
     /** Returns a list of currently in-progress state machine infos. */
@@ -283,6 +297,20 @@ interface CordaRPCOps : RPCOps {
     @RPCReturnsObservables
     fun <T> startFlowDynamicWithClientId(clientId: String, logicType: Class<out FlowLogic<T>>, vararg args: Any?): FlowHandleWithClientId<T>
 
+    /**
+     * Start each of the given flows in a single call, returning their handles in the order of [requests]. Requests with a
+     * [FlowStartRequest.clientId] return a [FlowHandleWithClientId], as [startFlowDynamicWithClientId] would.
+     *
+     * Unlike [startFlowDynamic] this does not wait for the flows to start. The node may hold flows back until fewer flows started
+     * through RPC are in flight, in which case they start in the order they were requested. A flow that cannot be started completes
+     * its handle's [FlowHandle.returnValue] exceptionally.
+     *
+     * Every [FlowStartRequest.logicType] must be annotated with [net.corda.core.flows.StartableByRPC] and permitted for the calling
+     * user, and no [FlowStartRequest.clientId] may be repeated, otherwise none of the flows are started.
+     */
+    @RPCReturnsObservables
+    fun startFlowsDynamic(requests: List<FlowStartRequest>): List<FlowHandle<*>>
+
     /**
      * Start the given flow with the given arguments, returning an [Observable] with a single observation of the
      * result of running the flow. [logicType] must be annotated with [net.corda.core.flows.StartableByRPC].
@@ -389,6 +417,34 @@ interface CordaRPCOps : RPCOps {
     @Throws(java.nio.file.FileAlreadyExistsException::class)
     fun uploadAttachmentWithMetadata(jar: InputStream, uploader: String, filename: String): SecureHash
 
+    /**
+     * Download part of an attachment JAR, so that large attachments can be read a chunk at a time and a download which is cut off
+     * resumed from where it got to.
+     * @param id the id of the attachment to read
+     * @param offset the position in the attachment to read from
+     * @param maxBytes the most bytes to return, fewer being returned only at the end of the attachment
+     * @return the bytes read, which are empty if [offset] is at or past the end of the attachment
+     * @throws RPCException if the attachment doesn't exist
+     */
+    fun readAttachmentChunk(id: SecureHash, offset: Long, maxBytes: Int): ByteArray
+
+    /**
+     * Uploads part of a jar to the node, to be imported once all of it has been uploaded by [completeAttachmentUpload]. Chunks must
+     * be sent in order, and an upload cut off part way through can be resumed by sending an empty chunk at offset zero to find out
+     * how much of it the node holds. An upload which is not added to for a while is discarded.
+     * @param uploadId an id chosen by the client for the upload, which is private to the RPC user
+     * @param offset the position in the jar of [bytes], which must not be after the end of what has been uploaded so far
+     * @param bytes the chunk of the jar
+     * @return the number of bytes of the jar now held by the node
+     */
+    fun uploadAttachmentChunk(uploadId: String, offset: Long, bytes: ByteArray): Long
+
+    /**
+     * Imports a jar uploaded by [uploadAttachmentChunk], returns it's hash.
+     */
+    @Throws(java.nio.file.FileAlreadyExistsException::class)
+    fun completeAttachmentUpload(uploadId: String, uploader: String, filename: String?): SecureHash
+
     /** Queries attachments metadata */
     fun queryAttachments(query: AttachmentQueryCriteria, sorting: AttachmentSort?): List<AttachmentId>
 
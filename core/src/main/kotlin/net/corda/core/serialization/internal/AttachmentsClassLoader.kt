@@ -44,11 +44,13 @@ import java.net.URLStreamHandler
 import java.net.URLStreamHandlerFactory
 import java.security.MessageDigest
 import java.security.Permission
+import java.security.PublicKey
 import java.util.Locale
 import java.util.ServiceLoader
 import java.util.WeakHashMap
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
 import kotlin.collections.component1
 import kotlin.collections.component2
 import kotlin.collections.set
@@ -60,7 +62,9 @@ import kotlin.collections.set
  * file paths. In addition, every JAR is scanned to ensure that it doesn't violate the package namespace ownership
  * rules.
  *
- * @property params The network parameters fetched from the transaction for which this classloader was built.
+ * @property params The network parameters fetched from the transaction for which this classloader was built. Only their package
+ *           ownership is used, and as classloaders are cached they may be used for transactions with other parameters with the same
+ *           package ownership.
  * @property sampleTxId The transaction ID that triggered the creation of this classloader. Because classloaders are cached
  *           this tx may be stale, that is, classloading might be triggered by the verification of some other transaction
  *           if not all code is invoked every time, however we want a txid for errors in case of attachment bogusness.
@@ -338,9 +342,9 @@ object AttachmentsClassLoaderBuilder {
         val attachmentIds = attachments.mapTo(LinkedHashSet(), Attachment::id)
 
         val cache = attachmentsClassLoaderCache ?: fallBackCache
-        val cachedSerializationContext = cache.computeIfAbsent(AttachmentsClassLoaderKey(attachmentIds, params)) { key ->
+        val cachedSerializationContext = cache.computeIfAbsent(AttachmentsClassLoaderKey(attachmentIds, params)) {
             // Create classloader and load serializers, whitelisted classes
-            val transactionClassLoader = AttachmentsClassLoader(attachments, key.params, txId, isAttachmentTrusted, parent)
+            val transactionClassLoader = AttachmentsClassLoader(attachments, params, txId, isAttachmentTrusted, parent)
             val serializers = try {
                 createInstancesOfClassesImplementing(transactionClassLoader, SerializationCustomSerializer::class.java,
                         JAVA_1_2_CLASS_FILE_MAJOR_VERSION..JAVA_17_CLASS_FILE_MAJOR_VERSION)
@@ -471,6 +475,18 @@ class AttachmentsClassLoaderCacheImpl(cacheFactory: NamedCacheFactory) : Singlet
     private val logger = loggerFor<AttachmentsClassLoaderCacheImpl>()
     private val toBeClosed = ConcurrentHashMap.newKeySet<ToBeClosed>()
     private val expiryQueue = ReferenceQueue<SerializationContext>()
+    private val hitCount = LongAdder()
+    private val missCount = LongAdder()
+    private val closeCount = LongAdder()
+
+    /** The number of lookups which found a classloader in the cache. */
+    val hits: Long get() = hitCount.sum()
+
+    /** The number of lookups which had to create a classloader. */
+    val misses: Long get() = missCount.sum()
+
+    /** The number of classloaders closed after being evicted from the cache. */
+    val closes: Long get() = closeCount.sum()
 
     private fun purgeExpiryQueue() {
         // Close the AttachmentsClassLoader for every SerializationContext
@@ -483,6 +499,7 @@ class AttachmentsClassLoaderCacheImpl(cacheFactory: NamedCacheFactory) : Singlet
 
             try {
                 head.classLoaderToClose.close()
+                closeCount.increment()
             } catch (e: Exception) {
                 logger.warn("Error destroying serialization context for ${head.cacheKey}", e)
             }
@@ -509,7 +526,13 @@ class AttachmentsClassLoaderCacheImpl(cacheFactory: NamedCacheFactory) : Singlet
             mappingFunction: (AttachmentsClassLoaderKey) -> SerializationContext
     ): SerializationContext {
         purgeExpiryQueue()
-        return cache.get(key, mappingFunction)  ?: throw NullPointerException("null returned from cache mapping function")
+        var missed = false
+        val context = cache.get(key) {
+            missed = true
+            mappingFunction(it)
+        } ?: throw NullPointerException("null returned from cache mapping function")
+        if (missed) missCount.increment() else hitCount.increment()
+        return context
     }
 }
 
@@ -527,9 +550,12 @@ class AttachmentsClassLoaderSimpleCacheImpl(cacheSize: Int) : AttachmentsClassLo
 
 // We use a set here because the ordering of attachments doesn't affect code execution, due to the no
 // overlap rule, and attachments don't have any particular ordering enforced by the builders. So we
-// can just do unordered comparisons here. But the same attachments run with different network parameters
-// may behave differently, so that has to be a part of the cache key.
-data class AttachmentsClassLoaderKey(val hashes: Set<SecureHash>, val params: NetworkParameters)
+// can just do unordered comparisons here. Of the network parameters only the package ownership affects
+// the classloader, which rejects attachments breaking it, so that is part of the cache key rather than
+// the whole of the parameters. The same attachments then share a classloader across parameter updates.
+data class AttachmentsClassLoaderKey(val hashes: Set<SecureHash>, val packageOwnership: Map<String, PublicKey>) {
+    constructor(hashes: Set<SecureHash>, params: NetworkParameters) : this(hashes, params.packageOwnership)
+}
 
 private class AttachmentURLConnection(url: URL, private val attachment: Attachment) : URLConnection(url) {
     override fun getContentLengthLong(): Long = attachment.size.toLong()
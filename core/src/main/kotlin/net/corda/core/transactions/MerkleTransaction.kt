@@ -250,7 +250,7 @@ class FilteredTransaction internal constructor(
         verificationCheck(groupHashes.isNotEmpty()) { "At least one component group hash is required" }
         // Verify the top level Merkle tree (group hashes are its leaves, including allOnesHash for empty list or null
         // components in WireTransaction).
-        verificationCheck(MerkleTree.getMerkleTree(groupHashes, digestService).hash == id) {
+        verificationCheck(MerkleTree.getMerkleRoot(groupHashes, digestService) == id) {
             "Top level Merkle tree cannot be verified against transaction's id"
         }
 
@@ -310,10 +310,10 @@ class FilteredTransaction internal constructor(
         } else {
             visibilityCheck(group.groupIndex < groupHashes.size) { "There is no matching component group hash for group ${group.groupIndex}" }
             val groupPartialRoot = groupHashes[group.groupIndex]
-            val groupFullRoot = MerkleTree.getMerkleTree(group.components.mapIndexed { index, component -> digestService.componentHash(group.nonces[index], component) }, digestService).hash
+            val groupFullRoot = MerkleTree.getMerkleRoot(group.components.mapIndexed { index, component -> digestService.componentHash(group.nonces[index], component) }, digestService)
             visibilityCheck(groupPartialRoot == groupFullRoot) { "Some components for group ${group.groupIndex} are not visible" }
             // Verify the top level Merkle tree from groupHashes.
-            visibilityCheck(MerkleTree.getMerkleTree(groupHashes, digestService).hash == id) {
+            visibilityCheck(MerkleTree.getMerkleRoot(groupHashes, digestService) == id) {
                 "Transaction is malformed. Top level Merkle tree cannot be verified against transaction's id"
             }
         }
@@ -20,6 +20,7 @@ import net.corda.core.internal.VisibleForTesting
 import net.corda.core.internal.getRequiredSigningKeysInternal
 import net.corda.core.internal.toSimpleString
 import net.corda.core.internal.verification.NodeVerificationSupport
+import net.corda.core.internal.verification.VerifiedTransactionCache
 import net.corda.core.internal.verification.toVerifyingServiceHub
 import net.corda.core.node.ServiceHub
 import net.corda.core.node.ServicesForResolution
@@ -188,7 +189,11 @@ data class SignedTransaction(val txBits: SerializedBytes<CoreTransaction>,
      * Depending on the contract attachments, this method will either verify this transaction in-process or send it to the external verifier
      * for out-of-process verification.
      *
-     * @return The [FullTransaction] that was successfully verified in-process. Returns null if the verification was successfully done externally.
+     * The contracts of a transaction found in the [NodeVerificationSupport.verifiedTransactionCache] are not run again, though its
+     * signatures are still checked.
+     *
+     * @return The [FullTransaction] that was successfully verified in-process. Returns null if the verification was successfully done
+     * externally, or had already been done.
      */
     @CordaInternal
     @JvmSynthetic
@@ -196,6 +201,11 @@ data class SignedTransaction(val txBits: SerializedBytes<CoreTransaction>,
         resolveAndCheckNetworkParameters(verificationSupport)
         verifySignatures(verificationSupport, checkSufficientSignatures)
         val ctx = coreTransaction
+        val verifiedTransactionCache = verificationSupport.verifiedTransactionCache
+        val cacheKey = (ctx as? WireTransaction)?.takeIf { verifiedTransactionCache != null }?.let {
+            VerifiedTransactionCache.Key(id, it.networkParametersHash ?: verificationSupport.networkParametersService.defaultHash, it.attachments.toSet())
+        }
+        if (cacheKey != null && verifiedTransactionCache?.isVerified(cacheKey) == true) return null
         val verificationResult = when (ctx) {
             // TODO: Verify contract constraints here as well as in LedgerTransaction to ensure that anything being deserialised
             // from the attachment is trusted. This will require some partial serialisation work to not load the ContractState
@@ -205,7 +215,9 @@ data class SignedTransaction(val txBits: SerializedBytes<CoreTransaction>,
             is NotaryChangeWireTransaction -> ctx.tryVerify(verificationSupport)
             else -> throw IllegalStateException("${ctx.toSimpleString()} cannot be verified")
         }
-        return verificationResult.enforceSuccess()
+        return verificationResult.enforceSuccess().also {
+            if (cacheKey != null) verifiedTransactionCache?.markVerified(cacheKey)
+        }
     }
 
     @Suppress("ThrowsCount")
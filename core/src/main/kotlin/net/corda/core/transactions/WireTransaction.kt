@@ -60,6 +60,8 @@ import java.io.NotSerializableException
 import java.security.PublicKey
 import java.security.SignatureException
 import java.util.function.Predicate
+import java.util.stream.Collectors
+import java.util.stream.IntStream
 
 /**
  * A transaction ready for serialisation, without any signatures attached. A WireTransaction is usually wrapped
@@ -335,7 +337,7 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
      * see the user-guide section "Transaction tear-offs" to learn more about this topic.
      */
     internal val groupsMerkleRoots: Map<Int, SecureHash> by lazy {
-        availableComponentHashes.entries.associate { it.key to MerkleTree.getMerkleTree(it.value, digestService).hash }
+        availableComponentHashes.entries.associate { it.key to MerkleTree.getMerkleRoot(it.value, digestService) }
     }
 
     /**
@@ -349,9 +351,17 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
      */
     internal val availableComponentNonces: Map<Int, List<SecureHash>> by lazy {
         if (digestService.hashAlgorithm == SecureHash.SHA2_256) {
-            componentGroups.associate { it.groupIndex to it.components.mapIndexed { internalIndex, internalIt -> digestService.componentHash(internalIt, privacySalt, it.groupIndex, internalIndex) } }
+            componentGroups.associate { group ->
+                group.groupIndex to hashComponents(group.components.size) { internalIndex ->
+                    digestService.componentHash(group.components[internalIndex], privacySalt, group.groupIndex, internalIndex)
+                }
+            }
         } else {
-            componentGroups.associate { it.groupIndex to List(it.components.size) { internalIndex -> digestService.computeNonce(privacySalt, it.groupIndex, internalIndex) } }
+            componentGroups.associate { group ->
+                group.groupIndex to hashComponents(group.components.size) { internalIndex ->
+                    digestService.computeNonce(privacySalt, group.groupIndex, internalIndex)
+                }
+            }
         }
     }
 
@@ -361,7 +371,12 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
      * see the user-guide section "Transaction tear-offs" to learn more about this topic.
      */
     internal val availableComponentHashes: Map<Int, List<SecureHash>> by lazy {
-        componentGroups.associate { it.groupIndex to it.components.mapIndexed { internalIndex, internalIt -> digestService.componentHash(availableComponentNonces[it.groupIndex]!![internalIndex], internalIt) } }
+        componentGroups.associate { group ->
+            val nonces = availableComponentNonces[group.groupIndex]!!
+            group.groupIndex to hashComponents(group.components.size) { internalIndex ->
+                digestService.componentHash(nonces[internalIndex], group.components[internalIndex])
+            }
+        }
     }
 
     /**
@@ -585,6 +600,21 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
 
     private companion object {
         private val log = contextLogger()
+
+        /** Component groups with at least this many components are hashed in parallel. */
+        private const val PARALLEL_HASHING_THRESHOLD = 256
+
+        /**
+         * Components are hashed independently of each other, so the groups of large transactions are spread over the common
+         * fork-join pool. The hashes are returned in component order.
+         */
+        private fun hashComponents(count: Int, hash: (Int) -> SecureHash): List<SecureHash> {
+            return if (count < PARALLEL_HASHING_THRESHOLD) {
+                List(count, hash)
+            } else {
+                IntStream.range(0, count).parallel().mapToObj { hash(it) }.collect(Collectors.toList())
+            }
+        }
     }
 }
 
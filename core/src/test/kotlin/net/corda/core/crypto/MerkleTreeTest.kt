@@ -0,0 +1,57 @@
+package net.corda.core.crypto
+
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class MerkleTreeTest {
+    private fun leaves(count: Int, algorithm: String): List<SecureHash> = List(count) { SecureHash.hashAs(algorithm, byteArrayOf(it.toByte())) }
+
+    /** The recursive construction the flat array implementation must agree with. */
+    private fun expectedRoot(leaves: List<SecureHash>, nodeDigestService: DigestService): SecureHash {
+        val padded = leaves.toMutableList()
+        while (padded.size and (padded.size - 1) != 0 || (padded.size == 1 && nodeDigestService.hashAlgorithm != SecureHash.SHA2_256)) {
+            padded += SecureHash.zeroHashFor(leaves[0].algorithm)
+        }
+        var level = padded.toList()
+        while (level.size > 1) {
+            level = level.chunked(2).map { (left, right) -> nodeDigestService.hash(left.bytes + right.bytes) }
+        }
+        return level[0]
+    }
+
+    @Test(timeout = 300_000)
+    fun `tree and root agree with the recursive construction`() {
+        for (nodeDigestService in listOf(DigestService.sha2_256, DigestService.sha2_384)) {
+            for (leafAlgorithm in listOf(SecureHash.SHA2_256, SecureHash.SHA2_384)) {
+                for (count in 1..33) {
+                    val leaves = leaves(count, leafAlgorithm)
+                    val expected = expectedRoot(leaves, nodeDigestService)
+                    assertEquals(expected, MerkleTree.getMerkleTree(leaves, nodeDigestService).hash)
+                    assertEquals(expected, MerkleTree.getMerkleRoot(leaves, nodeDigestService))
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 300_000)
+    fun `tree nodes hash their children`() {
+        val tree = MerkleTree.getMerkleTree(leaves(5, SecureHash.SHA2_256), DigestService.sha2_256)
+        fun check(node: MerkleTree): Int = when (node) {
+            is MerkleTree.Leaf -> 1
+            is MerkleTree.Node -> {
+                assertEquals(DigestService.sha2_256.hash(node.left.hash.bytes + node.right.hash.bytes), node.hash)
+                check(node.left) + check(node.right)
+            }
+        }
+        assertEquals(8, check(tree))
+    }
+
+    @Test(timeout = 300_000)
+    fun `empty and mixed algorithm leaves are rejected`() {
+        assertFailsWith<MerkleTreeException> { MerkleTree.getMerkleRoot(emptyList(), DigestService.sha2_256) }
+        assertFailsWith<IllegalArgumentException> {
+            MerkleTree.getMerkleRoot(leaves(1, SecureHash.SHA2_256) + leaves(1, SecureHash.SHA2_384), DigestService.sha2_256)
+        }
+    }
+}
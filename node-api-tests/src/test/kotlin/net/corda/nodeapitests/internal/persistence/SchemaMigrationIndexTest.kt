@@ -0,0 +1,100 @@
+package net.corda.nodeapitests.internal.persistence
+
+import net.corda.core.schemas.MappedSchema
+import net.corda.node.internal.DataSourceFactory
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.nodeapi.internal.persistence.OutstandingDatabaseChangesException
+import net.corda.nodeapi.internal.persistence.SchemaMigration
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.node.MockServices
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.net.URLClassLoader
+import javax.sql.DataSource
+import kotlin.io.path.createDirectories
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.writeText
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class SchemaMigrationIndexTest {
+    @Rule
+    @JvmField
+    val tempFolder = TemporaryFolder()
+
+    private val schemas = NodeSchemaService().internalSchemas
+    private lateinit var dataSource: DataSource
+
+    @Before
+    fun setUp() {
+        dataSource = DataSourceFactory.createDataSource(MockServices.makeTestDataSourceProperties())
+    }
+
+    private fun schemaMigration() = SchemaMigration(dataSource, null, tempFolder.root.toPath(), ALICE_NAME)
+
+    private object IncludeTestSchema : MappedSchema(IncludeTestSchema::class.java, 1, emptyList()) {
+        override val migrationResource = "include-test.changelog-master"
+    }
+
+    private fun changelog(vararg elements: String): String = """<?xml version="1.1" encoding="UTF-8" standalone="no"?>
+        |<databaseChangeLog xmlns="http://www.liquibase.org/xml/ns/dbchangelog"
+        |                   xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+        |                   xsi:schemaLocation="http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.5.xsd">
+        |${elements.joinToString("\n")}
+        |</databaseChangeLog>
+        |""".trimMargin()
+
+    private fun createTable(name: String): String = """<changeSet author="R3.Corda" id="create_$name">
+        |    <createTable tableName="$name"><column name="id" type="BIGINT"/></createTable>
+        |</changeSet>""".trimMargin()
+
+    @Test(timeout = 300_000)
+    fun `database found up to date is recorded in the index`() {
+        schemaMigration().runMigration(false, schemas, true)
+
+        assertTrue((tempFolder.root.toPath() / "schema-migration-index.properties").exists())
+        schemaMigration().checkState(schemas, true)
+        assertEquals(0, schemaMigration().getPendingChangesCount(schemas, true))
+    }
+
+    @Test(timeout = 300_000)
+    fun `changes to the changelog table are noticed`() {
+        schemaMigration().runMigration(false, schemas, true)
+        dataSource.connection.use { connection ->
+            connection.createStatement().use {
+                it.execute("DELETE FROM DATABASECHANGELOG WHERE ORDEREXECUTED = (SELECT MAX(ORDEREXECUTED) FROM DATABASECHANGELOG)")
+            }
+            if (!connection.autoCommit) connection.commit()
+        }
+
+        assertThatThrownBy {
+            schemaMigration().checkState(schemas, true)
+        }.isInstanceOf(OutstandingDatabaseChangesException::class.java)
+    }
+
+    @Test(timeout = 300_000)
+    fun `changes to changelogs included from other directories are noticed`() {
+        val resources = tempFolder.newFolder("resources").toPath()
+        (resources / "migration").createDirectories()
+        (resources / "migration" / "include-test.changelog-master.xml").writeText(changelog("<include file=\"other/include-test.changelog-v1.xml\"/>"))
+        val included = (resources / "other").createDirectories() / "include-test.changelog-v1.xml"
+        included.writeText(changelog(createTable("include_test_1")))
+        val schemas = setOf(IncludeTestSchema)
+
+        val contextClassLoader = Thread.currentThread().contextClassLoader
+        Thread.currentThread().contextClassLoader = URLClassLoader(arrayOf(resources.toUri().toURL()), contextClassLoader)
+        try {
+            schemaMigration().runMigration(false, schemas, true)
+            assertEquals(0, schemaMigration().getPendingChangesCount(schemas, true))
+
+            included.writeText(changelog(createTable("include_test_1"), createTable("include_test_2")))
+            assertEquals(1, schemaMigration().getPendingChangesCount(schemas, true))
+        } finally {
+            Thread.currentThread().contextClassLoader = contextClassLoader
+        }
+    }
+}
@@ -56,6 +56,14 @@ import java.util.*
 //
 // Note that multiple sessions like the above may interleave in an arbitrary fashion.
 //
+// A reply holding a large list may instead be streamed as a cursor, if the client said it supports cursors in its RpcRequest. The
+// server then sends the list in chunks (ServerToClient.CursorChunk) muxed by the RpcRequestId, and only reads and sends the next
+// chunk when the client asks for it (ClientToServer.CursorFetch). The last chunk, or a failure, ends the reply:
+//   ----------RpcRequest(RID0)----------->
+//   <-------CursorChunk(RID0, items)------
+//   ----------CursorFetch(RID0)---------->
+//   <---CursorChunk(RID0, items, last)----
+//
 // Additionally the server may listen on client binding removals for cleanup using RPC_CLIENT_BINDING_REMOVALS. This
 // requires the server to create a filter on the Artemis notification address using RPC_CLIENT_BINDING_REMOVAL_FILTER_EXPRESSION
 
@@ -98,7 +106,8 @@ object RPCApi {
     sealed class ClientToServer {
         private enum class Tag {
             RPC_REQUEST,
-            OBSERVABLES_CLOSED
+            OBSERVABLES_CLOSED,
+            CURSOR_FETCH
         }
 
         abstract fun writeToClientMessage(message: ClientMessage)
@@ -110,6 +119,7 @@ object RPCApi {
          * @param replyId a unique ID for the request, which the server will use to identify its response with.
          * @param methodName name of the method (procedure) to be called.
          * @param serialisedArguments Serialised arguments to pass to the method, if any.
+         * @param supportsCursors Whether the client accepts the reply as [ServerToClient.CursorChunk]s.
          */
         data class RpcRequest(
                 val clientAddress: SimpleString,
@@ -119,7 +129,8 @@ object RPCApi {
                 val sessionId: SessionId,
                 val externalTrace: Trace? = null,
                 val impersonatedActor: Actor? = null,
-                val serializedTelemetry: SerializedTelemetry? = null
+                val serializedTelemetry: SerializedTelemetry? = null,
+                val supportsCursors: Boolean = false
         ) : ClientToServer() {
             override fun writeToClientMessage(message: ClientMessage) {
                 MessageUtil.setJMSReplyTo(message, clientAddress)
@@ -132,6 +143,7 @@ object RPCApi {
                 impersonatedActor?.mapToImpersonated(message)
 
                 message.putStringProperty(METHOD_NAME_FIELD_NAME, methodName)
+                message.putBooleanProperty(SUPPORTS_CURSORS_FIELD_NAME, supportsCursors)
                 message.bodyBuffer.writeBytes(serialisedArguments.bytes)
                 val telemetryBytes: SerializedBytes<SerializedTelemetry>? = serializedTelemetry?.serialize()
                 telemetryBytes?.let { message.putBytesProperty(TELEMETRY_PROPERTY, it.bytes) }
@@ -149,6 +161,19 @@ object RPCApi {
             }
         }
 
+        /**
+         * Request for the next chunk of a reply being streamed as a cursor.
+         *
+         * @param clientAddress the address of the client, to reply to if the cursor has expired.
+         */
+        data class CursorFetch(val clientAddress: SimpleString, val id: InvocationId) : ClientToServer() {
+            override fun writeToClientMessage(message: ClientMessage) {
+                MessageUtil.setJMSReplyTo(message, clientAddress)
+                message.putIntProperty(TAG_FIELD_NAME, Tag.CURSOR_FETCH.ordinal)
+                message.bodyBuffer.writeInvocationId(id)
+            }
+        }
+
         companion object {
             fun fromClientMessage(message: ClientMessage): ClientToServer {
                 val tag = Tag.values()[message.getIntProperty(TAG_FIELD_NAME)]
@@ -164,7 +189,10 @@ object RPCApi {
                                 sessionId = message.sessionId(),
                                 externalTrace = message.externalTrace(),
                                 impersonatedActor = message.impersonatedActor(),
-                                serializedTelemetry = serializedTelemetry
+                                serializedTelemetry = serializedTelemetry,
+                                // Older clients do not set the property.
+                                supportsCursors = message.containsProperty(SUPPORTS_CURSORS_FIELD_NAME) &&
+                                        message.getBooleanProperty(SUPPORTS_CURSORS_FIELD_NAME)
                         )
                     }
                     RPCApi.ClientToServer.Tag.OBSERVABLES_CLOSED -> {
@@ -176,6 +204,9 @@ object RPCApi {
                         }
                         ObservablesClosed(ids)
                     }
+                    RPCApi.ClientToServer.Tag.CURSOR_FETCH -> {
+                        CursorFetch(MessageUtil.getJMSReplyTo(message), message.bodyBuffer.readInvocationId())
+                    }
                 }
             }
         }
@@ -187,7 +218,8 @@ object RPCApi {
     sealed class ServerToClient {
         private enum class Tag {
             RPC_REPLY,
-            OBSERVATION
+            OBSERVATION,
+            CURSOR_CHUNK
         }
 
         abstract fun writeToClientMessage(context: SerializationContext, message: ClientMessage)
@@ -224,6 +256,25 @@ object RPCApi {
             }
         }
 
+        /**
+         * A chunk of a reply to an [ClientToServer.RpcRequest] which is streamed as a cursor. A failure ends the reply, as
+         * does the chunk with [isLast] set.
+         */
+        data class CursorChunk(
+                val id: InvocationId,
+                val items: Try<List<Any?>>,
+                val isLast: Boolean,
+                override val deduplicationIdentity: String
+        ) : ServerToClient() {
+            override fun writeToClientMessage(context: SerializationContext, message: ClientMessage) {
+                message.putIntProperty(TAG_FIELD_NAME, Tag.CURSOR_CHUNK.ordinal)
+                message.putStringProperty(DEDUPLICATION_IDENTITY_FIELD_NAME, deduplicationIdentity)
+                message.putBooleanProperty(CURSOR_LAST_CHUNK_FIELD_NAME, isLast)
+                id.mapTo(message, RPC_ID_FIELD_NAME, RPC_ID_TIMESTAMP_FIELD_NAME)
+                message.bodyBuffer.writeBytes(items.safeSerialize(context) { Try.Failure<Any>(it) }.bytes)
+            }
+        }
+
         /**
          * Thrown if the RPC reply body couldn't be deserialized.
          */
@@ -267,6 +318,21 @@ object RPCApi {
                                 content = payload
                         )
                     }
+                    RPCApi.ServerToClient.Tag.CURSOR_CHUNK -> {
+                        val id = message.invocationId(RPC_ID_FIELD_NAME, RPC_ID_TIMESTAMP_FIELD_NAME) ?: throw IllegalStateException("Cannot parse invocation id from client message.")
+                        val poolWithIdContext = context.withProperty(RpcRequestOrObservableIdKey, id)
+                        val items: Try<List<Any?>> = try {
+                            message.getBodyAsByteArray().deserialize(context = poolWithIdContext)
+                        } catch (e: Exception) {
+                            throw FailedToDeserializeReply(id, e)
+                        }
+                        CursorChunk(
+                                id = id,
+                                items = items,
+                                isLast = message.getBooleanProperty(CURSOR_LAST_CHUNK_FIELD_NAME),
+                                deduplicationIdentity = deduplicationIdentity
+                        )
+                    }
                 }
             }
         }
@@ -290,6 +356,8 @@ private const val OBSERVABLE_ID_FIELD_NAME = "observable-id"
 private const val OBSERVABLE_ID_TIMESTAMP_FIELD_NAME = "observable-id-timestamp"
 private const val METHOD_NAME_FIELD_NAME = "method-name"
 private const val TELEMETRY_PROPERTY = "telemetry-data"
+private const val SUPPORTS_CURSORS_FIELD_NAME = "supports-cursors"
+private const val CURSOR_LAST_CHUNK_FIELD_NAME = "cursor-last-chunk"
 
 fun ClientMessage.replyId(): InvocationId {
 
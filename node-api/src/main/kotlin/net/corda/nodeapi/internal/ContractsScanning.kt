@@ -49,6 +49,14 @@ class ContractsJarFile(private val file: Path) : ContractsJar {
 private val logger = LoggerFactory.getLogger("ClassloaderUtils")
 
 fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<ContractClassName>, InputStream) -> T): T {
+    return withContractsInJarFile(jarInputStream) { contracts, jarFile -> jarFile.read { withContracts(contracts, it) } }
+}
+
+/**
+ * As [withContractsInJar], but passing the temporary copy of the JAR rather than a stream over it, for callers which need to read
+ * it more than once without holding it in memory.
+ */
+fun <T> withContractsInJarFile(jarInputStream: InputStream, withContracts: (List<ContractClassName>, Path) -> T): T {
     val tempFile = Files.createTempFile("attachment", ".jar")
     try {
         jarInputStream.use {
@@ -58,7 +66,7 @@ fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<Con
         val contracts = logElapsedTime("Contracts loading for '$cordappJar'", logger) {
             ContractsJarFile(tempFile.toAbsolutePath()).scan()
         }
-        return tempFile.read { withContracts(contracts, it) }
+        return withContracts(contracts, tempFile)
     } finally {
         tempFile.deleteIfExists()
     }
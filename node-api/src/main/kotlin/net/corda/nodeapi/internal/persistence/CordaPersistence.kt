@@ -10,6 +10,7 @@ import net.corda.core.internal.NamedCacheFactory
 import net.corda.core.schemas.MappedSchema
 import net.corda.core.utilities.contextLogger
 import net.corda.common.logging.errorReporting.NodeDatabaseErrors
+import net.corda.nodeapi.internal.persistence.factory.SecondLevelCacheProvider
 import org.hibernate.tool.schema.spi.SchemaManagementException
 import rx.Observable
 import rx.Subscriber
@@ -34,11 +35,16 @@ const val NODE_DATABASE_PREFIX = "node_"
 // This class forms part of the node config and so any changes to it must be handled with care
 data class DatabaseConfig(
         val exportHibernateJMXStatistics: Boolean = Defaults.exportHibernateJMXStatistics,
-        val mappedSchemaCacheSize: Long = Defaults.mappedSchemaCacheSize
+        val mappedSchemaCacheSize: Long = Defaults.mappedSchemaCacheSize,
+        /** Names of the Hibernate second-level cache regions to populate. The second-level cache is disabled when empty. */
+        val secondLevelCacheRegions: Set<String> = Defaults.secondLevelCacheRegions,
+        val secondLevelCacheSize: Long = Defaults.secondLevelCacheSize
 ) {
     object Defaults {
         val exportHibernateJMXStatistics = false
         val mappedSchemaCacheSize = 100L
+        val secondLevelCacheRegions = emptySet<String>()
+        val secondLevelCacheSize = 1024L
     }
 }
 
@@ -96,7 +102,8 @@ class CordaPersistence(
         customClassLoader: ClassLoader? = null,
         val closeConnection: Boolean = true,
         val errorHandler: DatabaseTransaction.(e: Exception) -> Unit = {},
-        allowHibernateToManageAppSchema: Boolean = false
+        allowHibernateToManageAppSchema: Boolean = false,
+        secondLevelCache: SecondLevelCacheProvider? = null
 ) : Closeable {
     companion object {
         private val log = contextLogger()
@@ -106,7 +113,7 @@ class CordaPersistence(
     val hibernateConfig: HibernateConfiguration by lazy {
         transaction {
             try {
-                HibernateConfiguration(schemas, exportHibernateJMXStatistics, attributeConverters, jdbcUrl, cacheFactory, customClassLoader, allowHibernateToManageAppSchema)
+                HibernateConfiguration(schemas, exportHibernateJMXStatistics, attributeConverters, jdbcUrl, cacheFactory, customClassLoader, allowHibernateToManageAppSchema, secondLevelCache)
             } catch (e: Exception) {
                 when (e) {
                     is SchemaManagementException -> throw HibernateSchemaChangeException("Incompatible schema change detected. Please run schema migration scripts (node with sub-command run-migration-scripts). Reason: ${e.message}", e)
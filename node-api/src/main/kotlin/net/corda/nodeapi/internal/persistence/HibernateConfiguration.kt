@@ -5,6 +5,7 @@ import net.corda.core.internal.castIfPossible
 import net.corda.core.schemas.MappedSchema
 import net.corda.core.utilities.contextLogger
 import net.corda.nodeapi.internal.persistence.factory.CordaSessionFactoryFactory
+import net.corda.nodeapi.internal.persistence.factory.SecondLevelCacheProvider
 import org.hibernate.SessionFactory
 import org.hibernate.boot.Metadata
 import org.hibernate.boot.MetadataBuilder
@@ -23,7 +24,8 @@ class HibernateConfiguration(
         jdbcUrl: String,
         cacheFactory: NamedCacheFactory,
         val customClassLoader: ClassLoader? = null,
-        val allowHibernateToManageAppSchema: Boolean = false
+        val allowHibernateToManageAppSchema: Boolean = false,
+        private val secondLevelCache: SecondLevelCacheProvider? = null
 ) {
     companion object {
         private val logger = contextLogger()
@@ -64,7 +66,7 @@ class HibernateConfiguration(
     fun sessionFactoryForSchemas(key: Set<MappedSchema>): SessionFactory = sessionFactories.get(key, ::makeSessionFactoryForSchemas)!!
 
     private fun makeSessionFactoryForSchemas(schemas: Set<MappedSchema>): SessionFactory {
-        val sessionFactory = sessionFactoryFactory.makeSessionFactoryForSchemas(schemas, customClassLoader, attributeConverters, allowHibernateToManageAppSchema)
+        val sessionFactory = sessionFactoryFactory.makeSessionFactoryForSchemas(schemas, customClassLoader, attributeConverters, allowHibernateToManageAppSchema, secondLevelCache)
 
         // export Hibernate JMX statistics
         if (exportHibernateJMXStatistics)
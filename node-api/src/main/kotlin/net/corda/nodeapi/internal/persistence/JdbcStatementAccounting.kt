@@ -0,0 +1,63 @@
+package net.corda.nodeapi.internal.persistence
+
+import org.hibernate.BaseSessionEventListener
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Counts the JDBC statements, and the time spent executing them, of Hibernate sessions on threads which have asked for it with
+ * [start]. Statements run on other threads are not counted and cost a single map lookup.
+ *
+ * Threads are tracked only between [start] and [stop], rather than in a [ThreadLocal], so that nothing is left behind for threads
+ * which are not measuring, and nothing becomes part of the state of a flow fiber.
+ */
+object JdbcStatementAccounting {
+    class Usage {
+        var statements: Long = 0
+            private set
+        var nanos: Long = 0
+            private set
+
+        internal fun add(elapsedNanos: Long) {
+            statements++
+            nanos += elapsedNanos
+        }
+    }
+
+    private val measuring = ConcurrentHashMap<Thread, Usage>()
+
+    /** Starts counting the statements run on the current thread, discarding anything counted by an unfinished measurement. */
+    fun start() {
+        measuring[Thread.currentThread()] = Usage()
+    }
+
+    /** Stops counting the statements run on the current thread, and returns what was counted since [start]. */
+    fun stop(): Usage = measuring.remove(Thread.currentThread()) ?: Usage()
+
+    /**
+     * Registered with every Hibernate session, see [BaseSessionFactoryFactory][net.corda.nodeapi.internal.persistence.factory.BaseSessionFactoryFactory].
+     * Hibernate creates one of these per session, and a session is only used by one thread at a time.
+     */
+    class Listener : BaseSessionEventListener() {
+        private var startNanos = 0L
+
+        override fun jdbcExecuteStatementStart() {
+            startNanos = System.nanoTime()
+        }
+
+        override fun jdbcExecuteStatementEnd() {
+            record()
+        }
+
+        override fun jdbcExecuteBatchStart() {
+            startNanos = System.nanoTime()
+        }
+
+        override fun jdbcExecuteBatchEnd() {
+            record()
+        }
+
+        private fun record() {
+            measuring[Thread.currentThread()]?.add(System.nanoTime() - startNanos)
+        }
+    }
+}
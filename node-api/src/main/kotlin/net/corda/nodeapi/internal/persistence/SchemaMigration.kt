@@ -56,6 +56,9 @@ open class SchemaMigration(
 
     private val classLoader = cordappLoader?.appClassLoader ?: Thread.currentThread().contextClassLoader
 
+    // Without a directory to keep it in, every start checks all the changelogs.
+    private val migrationIndex = currentDirectory?.let { SchemaMigrationIndex(it, dataSource, classLoader, databaseFactory) }
+
     /**
      * Will run the Liquibase migration on the actual database.
      * @param existingCheckpoints Whether checkpoints exist that would prohibit running a migration
@@ -69,6 +72,7 @@ open class SchemaMigration(
         // current version of Liquibase appears to be non-threadsafe
         // this is apparent when multiple in-process nodes are all running migrations simultaneously
         mutex.withLock {
+            if (isUpToDate(resourcesAndSourceInfo)) return
             dataSource.connection.use { connection ->
                 val (runner, _, shouldBlockOnCheckpoints) = prepareRunner(connection, resourcesAndSourceInfo)
                 if (shouldBlockOnCheckpoints && existingCheckpoints)
@@ -79,6 +83,7 @@ open class SchemaMigration(
                     throw DatabaseMigrationException(exp.message, exp)
                 }
             }
+            markUpToDate(resourcesAndSourceInfo)
         }
     }
 
@@ -94,11 +99,13 @@ open class SchemaMigration(
         // current version of Liquibase appears to be non-threadsafe
         // this is apparent when multiple in-process nodes are all running migrations simultaneously
         mutex.withLock {
+            if (isUpToDate(resourcesAndSourceInfo)) return
             dataSource.connection.use { connection ->
                 val (_, changeToRunCount, _) = prepareRunner(connection, resourcesAndSourceInfo)
                 if (changeToRunCount > 0)
                     throw OutstandingDatabaseChangesException(changeToRunCount)
             }
+            markUpToDate(resourcesAndSourceInfo)
         }
     }
 
@@ -114,10 +121,12 @@ open class SchemaMigration(
         // current version of Liquibase appears to be non-threadsafe
         // this is apparent when multiple in-process nodes are all running migrations simultaneously
         mutex.withLock {
-            dataSource.connection.use { connection ->
-                val (_, changeToRunCount, _) = prepareRunner(connection, resourcesAndSourceInfo)
-                return changeToRunCount;
+            if (isUpToDate(resourcesAndSourceInfo)) return 0
+            val changeToRunCount = dataSource.connection.use { connection ->
+                prepareRunner(connection, resourcesAndSourceInfo).second
             }
+            if (changeToRunCount == 0) markUpToDate(resourcesAndSourceInfo)
+            return changeToRunCount
         }
     }
 
@@ -230,6 +239,19 @@ open class SchemaMigration(
         return Triple(liquibase, unRunChanges.size, !unRunChanges.isEmpty())
     }
 
+    private fun isUpToDate(resourcesAndSourceInfo: List<Pair<CustomResourceAccessor, String>>): Boolean {
+        val changelogs = resourcesAndSourceInfo.single().first.changelogList.filterNotNull()
+        val upToDate = migrationIndex?.isUpToDate(changelogs) == true
+        if (upToDate) {
+            logger.info("Skipping database migration check, changelogs and database are unchanged since last checked: $changelogs")
+        }
+        return upToDate
+    }
+
+    private fun markUpToDate(resourcesAndSourceInfo: List<Pair<CustomResourceAccessor, String>>) {
+        migrationIndex?.markUpToDate(resourcesAndSourceInfo.single().first.changelogList.filterNotNull())
+    }
+
     private fun checkResourcesInClassPath(resources: List<String?>) {
         for (resource in resources) {
             if (resource != null && classLoader.getResource(resource) == null) {
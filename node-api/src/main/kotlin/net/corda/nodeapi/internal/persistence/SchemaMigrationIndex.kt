@@ -0,0 +1,254 @@
+package net.corda.nodeapi.internal.persistence
+
+import liquibase.database.jvm.JdbcConnection
+import liquibase.exception.LiquibaseException
+import net.corda.core.utilities.contextLogger
+import net.corda.core.utilities.toHexString
+import org.w3c.dom.Element
+import org.xml.sax.SAXException
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.UncheckedIOException
+import java.net.JarURLConnection
+import java.net.URISyntaxException
+import java.nio.file.FileSystemNotFoundException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.security.MessageDigest
+import java.sql.SQLException
+import java.util.Properties
+import java.util.TreeSet
+import javax.sql.DataSource
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.xml.parsers.ParserConfigurationException
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.inputStream
+import kotlin.io.path.moveTo
+import kotlin.io.path.outputStream
+
+/**
+ * Remembers, for each set of changelogs, a fingerprint of those changelogs and of the database's Liquibase changelog table taken
+ * the last time the database was found to be up to date with them. While neither has changed there is nothing to migrate, and
+ * parsing and checking the changelogs can be skipped.
+ *
+ * A changelog is fingerprinted by its contents and those of the files it refers to, following its includes wherever they are on the
+ * classpath: the changelogs it includes, the directories it includes all of, and the SQL and data files of its change sets. The
+ * changelog table is fingerprinted by the identity and checksum of every change set run. Anything which cannot be fingerprinted,
+ * such as a missing changelog table, an unreadable changelog or a YAML changelog, means the changelogs are always checked. Note that
+ * change sets which are to run always are not run again while nothing has changed.
+ */
+internal class SchemaMigrationIndex(
+        baseDirectory: Path,
+        private val dataSource: DataSource,
+        private val classLoader: ClassLoader,
+        private val databaseFactory: LiquibaseDatabaseFactory
+) {
+    companion object {
+        private val logger = contextLogger()
+        const val FILE_NAME = "schema-migration-index.properties"
+        private val CHANGELOG_EXTENSIONS = setOf("xml", "yaml", "yml", "json", "sql")
+    }
+
+    private val file = baseDirectory / FILE_NAME
+
+    fun isUpToDate(changelogs: List<String>): Boolean {
+        val fingerprint = fingerprintOf(changelogs) ?: return false
+        return load().getProperty(keyOf(changelogs)) == fingerprint
+    }
+
+    fun markUpToDate(changelogs: List<String>) {
+        val fingerprint = fingerprintOf(changelogs) ?: return
+        val index = load()
+        index.setProperty(keyOf(changelogs), fingerprint)
+        try {
+            val temp = Files.createTempFile(file.parent, FILE_NAME, ".tmp")
+            temp.outputStream().use { index.store(it, "Fingerprints of changelogs the database is up to date with") }
+            temp.moveTo(file, REPLACE_EXISTING, ATOMIC_MOVE)
+        } catch (e: IOException) {
+            logger.warn("Unable to update $file, database migrations will be checked on the next start", e)
+        }
+    }
+
+    private fun load(): Properties {
+        val index = Properties()
+        try {
+            if (file.exists()) file.inputStream().use(index::load)
+        } catch (e: IOException) {
+            logger.warn("Unable to read $file, database migrations will be checked", e)
+        }
+        return index
+    }
+
+    private fun keyOf(changelogs: List<String>): String {
+        return MessageDigest.getInstance("SHA-256").run {
+            changelogs.sorted().forEach { update(it.toByteArray()); update(0) }
+            digest().toHexString()
+        }
+    }
+
+    private fun fingerprintOf(changelogs: List<String>): String? {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val digested = HashSet<String>()
+        try {
+            for (changelog in changelogs.sorted()) {
+                if (!digestChangelog(changelog, digest, digested)) return null
+            }
+        } catch (e: Exception) {
+            if (e !is IOException && e !is UncheckedIOException && e !is FileSystemNotFoundException && e !is URISyntaxException &&
+                    e !is SAXException && e !is ParserConfigurationException) throw e
+            logger.debug("Unable to read changelogs $changelogs, database migrations will be checked", e)
+            return null
+        }
+        digest.update(changelogTableFingerprint() ?: return null)
+        return digest.digest().toHexString()
+    }
+
+    /**
+     * Digests the changelog at [path] on the classpath, and the files it refers to in turn.
+     *
+     * @return false if any of them is missing, or the changelog is in a format whose references are not followed.
+     */
+    private fun digestChangelog(path: String, digest: MessageDigest, digested: MutableSet<String>): Boolean {
+        if (!digested.add(path)) return true
+        val content = read(path) ?: return false
+        digestResource(path, content, digest)
+        return when (path.substringAfterLast('.').lowercase()) {
+            "xml" -> referencesOf(path, content).all { reference ->
+                when (reference) {
+                    is Reference.Changelog -> digestChangelog(reference.path, digest, digested)
+                    is Reference.Directory -> digestDirectory(reference.path, digest, digested)
+                    is Reference.File -> digestFile(reference.path, digest, digested)
+                }
+            }
+            // Formatted SQL changelogs cannot refer to other files.
+            "sql" -> true
+            else -> false
+        }
+    }
+
+    private fun digestFile(path: String, digest: MessageDigest, digested: MutableSet<String>): Boolean {
+        if (!digested.add(path)) return true
+        digestResource(path, read(path) ?: return false, digest)
+        return true
+    }
+
+    /** Digests the changelogs in the directory at [path], in every jar and directory on the classpath it is found in. */
+    private fun digestDirectory(path: String, digest: MessageDigest, digested: MutableSet<String>): Boolean {
+        val urls = classLoader.getResources(path).toList()
+        if (urls.isEmpty()) return false
+        val changelogs = TreeSet<String>()
+        for (url in urls) {
+            when (url.protocol) {
+                "jar" -> listJarDirectory(url.openConnection() as JarURLConnection).mapTo(changelogs) { "$path/$it" }
+                "file" -> listDirectory(Paths.get(url.toURI())).mapTo(changelogs) { "$path/$it" }
+                else -> return false
+            }
+        }
+        digest.update(path.toByteArray())
+        digest.update(0)
+        return changelogs.filter { it.substringAfterLast('.').lowercase() in CHANGELOG_EXTENSIONS }.all { digestChangelog(it, digest, digested) }
+    }
+
+    private fun listJarDirectory(connection: JarURLConnection): List<String> {
+        connection.useCaches = false
+        val directory = connection.entryName.removeSuffix("/")
+        return connection.jarFile.use { jar ->
+            jar.entries().asSequence()
+                    .filter { !it.isDirectory && it.name.startsWith("$directory/") }
+                    .map { it.name.removePrefix("$directory/") }
+                    .toList()
+        }
+    }
+
+    private fun listDirectory(directory: Path): List<String> {
+        return Files.walk(directory).use { paths ->
+            paths.filter { Files.isRegularFile(it) }.map { directory.relativize(it).joinToString("/") }.toList()
+        }
+    }
+
+    private fun read(path: String): ByteArray? {
+        val url = classLoader.getResource(path) ?: return null
+        val connection = url.openConnection().apply { useCaches = false }
+        return connection.getInputStream().use { it.readBytes() }
+    }
+
+    private fun digestResource(name: String, content: ByteArray, digest: MessageDigest) {
+        digest.update(name.toByteArray())
+        digest.update(0)
+        digest.update(content)
+        digest.update(0)
+    }
+
+    private sealed class Reference(val path: String) {
+        class Changelog(path: String) : Reference(path)
+        class Directory(path: String) : Reference(path)
+        class File(path: String) : Reference(path)
+    }
+
+    /** The files the XML changelog at [path] refers to, resolved to their paths on the classpath as Liquibase resolves them. */
+    private fun referencesOf(path: String, content: ByteArray): List<Reference> {
+        val documentBuilderFactory = DocumentBuilderFactory.newInstance().apply {
+            setFeature("http://apache.org/xml/features/disallow-doctype-decl", true)
+            isExpandEntityReferences = false
+        }
+        val document = documentBuilderFactory.newDocumentBuilder().parse(ByteArrayInputStream(content))
+        val elements = document.getElementsByTagName("*")
+        return (0 until elements.length).mapNotNull { index ->
+            val element = elements.item(index) as Element
+            fun resolved(attribute: String): String? {
+                val file = element.getAttribute(attribute).takeIf { it.isNotEmpty() } ?: return null
+                return resolve(path, file, element.getAttribute("relativeToChangelogFile").toBoolean())
+            }
+            when (element.tagName) {
+                "include" -> resolved("file")?.let { Reference.Changelog(it) }
+                "includeAll" -> resolved("path")?.let { Reference.Directory(it) }
+                "sqlFile", "createProcedure" -> resolved("path")?.let { Reference.File(it) }
+                "loadData", "loadUpdateData" -> resolved("file")?.let { Reference.File(it) }
+                else -> null
+            }
+        }
+    }
+
+    private fun resolve(changelog: String, file: String, relativeToChangelogFile: Boolean): String {
+        val path = file.removePrefix("classpath:").replace('\\', '/')
+        val resolved = if (relativeToChangelogFile) "${changelog.substringBeforeLast('/', "")}/$path" else path
+        val segments = ArrayList<String>()
+        for (segment in resolved.split('/')) {
+            when (segment) {
+                "", "." -> {}
+                ".." -> segments.removeLastOrNull()
+                else -> segments += segment
+            }
+        }
+        return segments.joinToString("/")
+    }
+
+    private fun changelogTableFingerprint(): ByteArray? {
+        return try {
+            dataSource.connection.use { connection ->
+                val database = databaseFactory.getLiquibaseDatabase(JdbcConnection(connection))
+                val table = database.escapeTableName(database.liquibaseCatalogName, database.liquibaseSchemaName, database.databaseChangeLogTableName)
+                val digest = MessageDigest.getInstance("SHA-256")
+                digest.update(connection.metaData.url.toByteArray())
+                connection.createStatement().use { statement ->
+                    statement.executeQuery("SELECT ID, AUTHOR, FILENAME, MD5SUM FROM $table ORDER BY ORDEREXECUTED").use { rs ->
+                        while (rs.next()) {
+                            (1..4).forEach { digest.update("${rs.getString(it)}\u0000".toByteArray()) }
+                        }
+                    }
+                }
+                digest.digest()
+            }
+        } catch (e: SQLException) {
+            logger.debug("Unable to read the changelog table, database migrations will be checked", e)
+            null
+        } catch (e: LiquibaseException) {
+            logger.debug("Unable to read the changelog table, database migrations will be checked", e)
+            null
+        }
+    }
+}
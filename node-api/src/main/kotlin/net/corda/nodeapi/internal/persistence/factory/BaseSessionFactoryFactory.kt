@@ -4,6 +4,7 @@ import net.corda.core.schemas.MappedSchema
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.toHexString
 import net.corda.nodeapi.internal.persistence.HibernateConfiguration
+import net.corda.nodeapi.internal.persistence.JdbcStatementAccounting
 import net.corda.nodeapi.internal.persistence.TransactionIsolationLevel
 import org.hibernate.SessionFactory
 import org.hibernate.boot.Metadata
@@ -12,6 +13,7 @@ import org.hibernate.boot.MetadataSources
 import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder
 import org.hibernate.boot.registry.classloading.internal.ClassLoaderServiceImpl
 import org.hibernate.boot.registry.classloading.spi.ClassLoaderService
+import org.hibernate.cfg.AvailableSettings
 import org.hibernate.cfg.Configuration
 import org.hibernate.type.AbstractSingleColumnStandardBasicType
 import org.hibernate.type.MaterializedBlobType
@@ -19,6 +21,7 @@ import org.hibernate.type.descriptor.java.PrimitiveByteArrayTypeDescriptor
 import org.hibernate.type.descriptor.sql.BlobTypeDescriptor
 import org.hibernate.type.descriptor.sql.VarbinaryTypeDescriptor
 import javax.persistence.AttributeConverter
+import javax.persistence.SharedCacheMode
 
 abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
     companion object {
@@ -40,6 +43,7 @@ abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
                 .setProperty("hibernate.connection.isolation", TransactionIsolationLevel.default.jdbcValue.toString())
                 .setProperty("hibernate.hbm2ddl.auto", hbm2dll)
                 .setProperty("hibernate.jdbc.time_zone", "UTC")
+                .setProperty(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, JdbcStatementAccounting.Listener::class.java.name)
     }
 
     override fun buildHibernateMetadata(metadataBuilder: MetadataBuilder, attributeConverters: Collection<AttributeConverter<*, *>>): Metadata {
@@ -59,9 +63,17 @@ abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
             config: Configuration,
             metadataSources: MetadataSources,
             customClassLoader: ClassLoader?,
-            attributeConverters: Collection<AttributeConverter<*, *>>): SessionFactory {
+            attributeConverters: Collection<AttributeConverter<*, *>>,
+            secondLevelCache: SecondLevelCacheProvider? = null): SessionFactory {
         config.standardServiceRegistryBuilder.applySettings(config.properties)
 
+        if (secondLevelCache != null) {
+            // Only entities marked @Cacheable take part, and the provider decides which of their regions actually hold data.
+            config.standardServiceRegistryBuilder
+                    .applySetting(AvailableSettings.CACHE_REGION_FACTORY, secondLevelCache.createRegionFactory())
+                    .applySetting(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE)
+        }
+
         if (customClassLoader != null) {
             config.standardServiceRegistryBuilder.addService(
                     ClassLoaderService::class.java,
@@ -73,8 +85,8 @@ abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
         val metadata = buildHibernateMetadata(metadataBuilder, attributeConverters)
         return metadata.sessionFactoryBuilder.run {
             allowOutOfTransactionUpdateOperations(true)
-            applySecondLevelCacheSupport(false)
-            applyQueryCacheSupport(false)
+            applySecondLevelCacheSupport(secondLevelCache != null)
+            applyQueryCacheSupport(secondLevelCache?.queryCacheEnabled == true)
             enableReleaseResourcesOnCloseEnabled(true)
             build()
         }
@@ -84,7 +96,8 @@ abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
             schemas: Set<MappedSchema>,
             customClassLoader: ClassLoader?,
             attributeConverters: Collection<AttributeConverter<*, *>>,
-            allowHibernateToMananageAppSchema: Boolean): SessionFactory {
+            allowHibernateToMananageAppSchema: Boolean,
+            secondLevelCache: SecondLevelCacheProvider?): SessionFactory {
         logger.info("Creating session factory for schemas: $schemas")
         val serviceRegistry = BootstrapServiceRegistryBuilder().build()
         val metadataSources = MetadataSources(serviceRegistry)
@@ -93,7 +106,7 @@ abstract class BaseSessionFactoryFactory : CordaSessionFactoryFactory {
         schemas.forEach { schema ->
             schema.mappedTypes.forEach { config.addAnnotatedClass(it) }
         }
-        val sessionFactory = buildSessionFactory(config, metadataSources, customClassLoader, attributeConverters)
+        val sessionFactory = buildSessionFactory(config, metadataSources, customClassLoader, attributeConverters, secondLevelCache)
         logger.info("Created session factory for schemas: $schemas")
         return sessionFactory
     }
@@ -13,7 +13,8 @@ interface CordaSessionFactoryFactory {
             schemas: Set<MappedSchema>,
             customClassLoader: ClassLoader?,
             attributeConverters: Collection<AttributeConverter<*, *>>,
-            allowHibernateToMananageAppSchema: Boolean): SessionFactory
+            allowHibernateToMananageAppSchema: Boolean,
+            secondLevelCache: SecondLevelCacheProvider? = null): SessionFactory
     fun getExtraConfiguration(key: String): Any?
     fun buildHibernateMetadata(metadataBuilder: MetadataBuilder, attributeConverters: Collection<AttributeConverter<*, *>>): Metadata
 }
\ No newline at end of file
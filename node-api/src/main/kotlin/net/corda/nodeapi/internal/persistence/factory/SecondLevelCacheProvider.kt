@@ -0,0 +1,17 @@
+package net.corda.nodeapi.internal.persistence.factory
+
+import org.hibernate.cache.spi.RegionFactory
+
+/**
+ * Supplies Hibernate with the second-level cache used by the session factories built by a [CordaSessionFactoryFactory].
+ *
+ * Hibernate starts and stops a [RegionFactory] together with the session factory that owns it, so a new one is requested for
+ * every session factory. Implementations are expected to back them all with the same storage, so that an entity mapped by more
+ * than one session factory is never served stale from a cache the others do not know about.
+ */
+interface SecondLevelCacheProvider {
+    /** Whether queries marked as cacheable may have their results cached. */
+    val queryCacheEnabled: Boolean
+
+    fun createRegionFactory(): RegionFactory
+}
@@ -35,6 +35,7 @@ import org.junit.Test
 import org.junit.rules.TemporaryFolder
 import rx.subjects.PublishSubject
 import java.net.ServerSocket
+import java.time.Duration
 import java.util.concurrent.BlockingQueue
 import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit.MILLISECONDS
@@ -88,6 +89,7 @@ class ArtemisMessagingTest {
             doReturn(FlowTimeoutConfiguration(5.seconds, 3, backoffBase = 1.0)).whenever(it).flowTimeout
             doReturn(true).whenever(it).crlCheckSoftFail
             doReturn(true).whenever(it).crlCheckArtemisServer
+            doReturn(Duration.ZERO).whenever(it).messageHighWaterMarkFlushInterval
         }
         LogHelper.setLevel(PersistentUniquenessProvider::class)
         database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null })
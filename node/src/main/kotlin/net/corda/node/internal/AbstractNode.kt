@@ -40,6 +40,7 @@ import net.corda.core.internal.concurrent.map
 import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.internal.cordapp.CordappProviderInternal
 import net.corda.core.internal.messaging.AttachmentTrustInfoRPCOps
+import net.corda.core.internal.messaging.FlowResourceUsageRPCOps
 import net.corda.core.internal.notary.NotaryService
 import net.corda.core.internal.rootMessage
 import net.corda.core.internal.telemetry.SimpleLogTelemetryComponent
@@ -79,8 +80,10 @@ import net.corda.node.internal.classloading.requireAnnotation
 import net.corda.node.internal.cordapp.CordappConfigFileProvider
 import net.corda.node.internal.cordapp.CordappProviderImpl
 import net.corda.node.internal.cordapp.JarScanningCordappLoader
+import net.corda.node.internal.cordapp.JarScanningCordappLoader.Companion.CORDAPP_SCAN_CACHE_DIR_NAME
 import net.corda.node.internal.cordapp.JarScanningCordappLoader.Companion.LEGACY_CONTRACTS_DIR_NAME
 import net.corda.node.internal.cordapp.VirtualCordapp
+import net.corda.node.internal.flows.FlowResourceUsageRPCOpsImpl
 import net.corda.node.internal.rpc.proxies.AuthenticatedRpcOpsProxy
 import net.corda.node.internal.rpc.proxies.ThreadContextAdjustingRpcOpsProxy
 import net.corda.node.internal.shell.InteractiveShell
@@ -142,8 +145,11 @@ import net.corda.node.services.vault.NodeVaultService
 import net.corda.node.utilities.AffinityExecutor
 import net.corda.node.utilities.BindableNamedCacheFactory
 import net.corda.node.utilities.NamedThreadFactory
+import net.corda.node.utilities.NodeSecondLevelCache
 import net.corda.node.utilities.NotaryLoader
+import net.corda.node.verification.AttachmentsClassLoaderPrewarmer
 import net.corda.node.verification.ExternalVerifierHandleImpl
+import net.corda.node.verification.NodeVerifiedTransactionCache
 import net.corda.nodeapi.internal.NodeInfoAndSigned
 import net.corda.nodeapi.internal.NodeStatus
 import net.corda.nodeapi.internal.SignedNodeInfo
@@ -267,7 +273,8 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
             configuration.dataSourceProperties,
             cacheFactory,
             cordappLoader.appClassLoader,
-            allowHibernateToManageAppSchema)
+            allowHibernateToManageAppSchema,
+            metricRegistry)
 
     private val transactionSupport = CordaTransactionSupportImpl(database)
 
@@ -303,7 +310,11 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     // TODO Cancelling parameters updates - if we do that, how we ensure that no one uses cancelled parameters in the transactions?
     val networkMapUpdater = makeNetworkMapUpdater()
 
-    private val attachmentsClassLoaderCache: AttachmentsClassLoaderCache = AttachmentsClassLoaderCacheImpl(cacheFactory).tokenize()
+    private val attachmentsClassLoaderCache: AttachmentsClassLoaderCache = AttachmentsClassLoaderCacheImpl(cacheFactory).tokenize().also { cache ->
+        metricRegistry.gauge("AttachmentsClassLoader.Cache.Hits") { Gauge { cache.hits } }
+        metricRegistry.gauge("AttachmentsClassLoader.Cache.Misses") { Gauge { cache.misses } }
+        metricRegistry.gauge("AttachmentsClassLoader.Cache.Closes") { Gauge { cache.closes } }
+    }
     val contractUpgradeService = ContractUpgradeServiceImpl(cacheFactory).tokenize()
     val auditService = DummyAuditService().tokenize()
     @Suppress("LeakingThis")
@@ -400,12 +411,14 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         cordaRPCOps.closeOnStop()
         val flowManagerRPCOps = FlowManagerRPCOpsImpl(checkpointDumper)
         val attachmentTrustInfoRPCOps = AttachmentTrustInfoRPCOpsImpl(services.attachmentTrustCalculator)
+        val flowResourceUsageRPCOps = FlowResourceUsageRPCOpsImpl(smm.flowResourceAccounting)
 
         return listOf(
             CordaRPCOps::class.java to cordaRPCOps,
             FlowManagerRPCOps::class.java to flowManagerRPCOps,
             net.corda.core.internal.messaging.FlowManagerRPCOps::class.java to flowManagerRPCOps,
-            AttachmentTrustInfoRPCOps::class.java to attachmentTrustInfoRPCOps
+            AttachmentTrustInfoRPCOps::class.java to attachmentTrustInfoRPCOps,
+            FlowResourceUsageRPCOps::class.java to flowResourceUsageRPCOps
         ).map { (targetInterface, implementation) ->
             // Mind that order of proxies is important
             val stage1Proxy = AuthenticatedRpcOpsProxy.proxy(implementation, targetInterface)
@@ -649,6 +662,9 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
             runOnStop += flowMonitor::stop
             flowMonitor.start()
             schedulerService.start()
+            val attachmentsClassLoaderPrewarmer = AttachmentsClassLoaderPrewarmer(services)
+            runOnStop += attachmentsClassLoaderPrewarmer::stop
+            attachmentsClassLoaderPrewarmer.start()
 
             val resultingNodeInfo = createStartedNode(nodeInfo, rpcOps, notaryService).also { _started = it }
             val readyFuture = smmStartedFuture.flatMap {
@@ -858,7 +874,8 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
                 (configuration.baseDirectory / LEGACY_CONTRACTS_DIR_NAME).takeIf { it.exists() },
                 versionInfo,
                 extraCordapps = generatedCordapps,
-                signerKeyFingerprintBlacklist = blacklistedKeys
+                signerKeyFingerprintBlacklist = blacklistedKeys,
+                scanCacheDirectory = configuration.baseDirectory / CORDAPP_SCAN_CACHE_DIR_NAME
         )
     }
 
@@ -1053,7 +1070,7 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     }
 
     protected open fun makeTransactionStorage(transactionCacheSizeBytes: Long): WritableTransactionStorage {
-        return DBTransactionStorageLedgerRecovery(database, cacheFactory, platformClock, encryptionService, partyInfoCache)
+        return DBTransactionStorageLedgerRecovery(database, cacheFactory, platformClock, encryptionService, partyInfoCache, metricRegistry)
     }
 
     protected open fun makeNetworkParametersStorage(): NetworkParametersStorage {
@@ -1152,7 +1169,16 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     protected open fun makeVaultService(keyManagementService: KeyManagementService,
                                         database: CordaPersistence,
                                         cordappLoader: CordappLoader): VaultServiceInternal {
-        return NodeVaultService(platformClock, keyManagementService, services, database, schemaService, cordappLoader.appClassLoader)
+        return NodeVaultService(
+                platformClock,
+                keyManagementService,
+                services,
+                database,
+                schemaService,
+                cordappLoader.appClassLoader,
+                cacheFactory,
+                metricRegistry
+        )
     }
 
     private fun initialiseJolokia() {
@@ -1168,6 +1194,7 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         override val rpcFlows = ArrayList<Class<out FlowLogic<*>>>()
         override val stateMachineRecordedTransactionMapping = DBTransactionMappingStorage(database)
         override val externalVerifierHandle = ExternalVerifierHandleImpl(this, configuration.baseDirectory).also { runOnStop += it::close }
+        override val verifiedTransactionCache = NodeVerifiedTransactionCache(cacheFactory, metricRegistry)
         override val identityService: IdentityService get() = this@AbstractNode.identityService
         override val keyManagementService: KeyManagementService get() = this@AbstractNode.keyManagementService
         override val schemaService: SchemaService get() = this@AbstractNode.schemaService
@@ -1318,6 +1345,14 @@ class FlowStarterImpl(
     }
 
     override fun <T> startFlow(logic: FlowLogic<T>, context: InvocationContext): CordaFuture<out FlowStateMachineHandle<T>> {
+        return startFlow(StateMachineRunId.createRandom(), logic, context)
+    }
+
+    private fun <T> startFlow(
+            flowId: StateMachineRunId,
+            logic: FlowLogic<T>,
+            context: InvocationContext
+    ): CordaFuture<out FlowStateMachineHandle<T>> {
         val startFlowEvent = object : ExternalEvent.ExternalStartFlowEvent<T>, DeduplicationHandler {
             override fun insideDatabaseTransaction() {}
 
@@ -1328,7 +1363,7 @@ class FlowStarterImpl(
             override val deduplicationHandler: DeduplicationHandler
                 get() = this
 
-            override val flowId: StateMachineRunId = StateMachineRunId.createRandom()
+            override val flowId: StateMachineRunId = flowId
             override val flowLogic: FlowLogic<T>
                 get() = logic
             override val context: InvocationContext
@@ -1349,9 +1384,17 @@ class FlowStarterImpl(
             logicType: Class<out FlowLogic<T>>,
             context: InvocationContext,
             vararg args: Any?): CordaFuture<out FlowStateMachineHandle<T>> {
+        return invokeFlowAsync(StateMachineRunId.createRandom(), logicType, context, *args)
+    }
+
+    override fun <T> invokeFlowAsync(
+            flowId: StateMachineRunId,
+            logicType: Class<out FlowLogic<T>>,
+            context: InvocationContext,
+            vararg args: Any?): CordaFuture<out FlowStateMachineHandle<T>> {
         val logicRef = flowLogicRefFactory.createForRPC(logicType, *args)
         val logic: FlowLogic<T> = uncheckedCast(flowLogicRefFactory.toFlowLogic(logicRef))
-        return startFlow(logic, context)
+        return startFlow(flowId, logic, context)
     }
 }
 
@@ -1365,7 +1408,8 @@ fun createCordaPersistence(databaseConfig: DatabaseConfig,
                            hikariProperties: Properties,
                            cacheFactory: NamedCacheFactory,
                            customClassLoader: ClassLoader?,
-                           allowHibernateToManageAppSchema: Boolean = false): CordaPersistence {
+                           allowHibernateToManageAppSchema: Boolean = false,
+                           metricRegistry: MetricRegistry? = null): CordaPersistence {
     // Register the AbstractPartyDescriptor so Hibernate doesn't warn when encountering AbstractParty. Unfortunately
     // Hibernate warns about not being able to find a descriptor if we don't provide one, but won't use it by default
     // so we end up providing both descriptor and converter. We should re-examine this in later versions to see if
@@ -1375,6 +1419,9 @@ fun createCordaPersistence(databaseConfig: DatabaseConfig,
     val attributeConverters = listOf(PublicKeyToTextConverter(), AbstractPartyToX500NameAsStringConverter(wellKnownPartyFromX500Name, wellKnownPartyFromAnonymous))
 
     val jdbcUrl = hikariProperties.getProperty("dataSource.url", "")
+    val secondLevelCache = databaseConfig.secondLevelCacheRegions.takeIf { it.isNotEmpty() }?.let {
+        NodeSecondLevelCache(cacheFactory, it, metricRegistry)
+    }
     return CordaPersistence(
             databaseConfig.exportHibernateJMXStatistics,
             schemaService.schemas,
@@ -1388,7 +1435,8 @@ fun createCordaPersistence(databaseConfig: DatabaseConfig,
                     setException(e)
                 }
             },
-            allowHibernateToManageAppSchema = allowHibernateToManageAppSchema)
+            allowHibernateToManageAppSchema = allowHibernateToManageAppSchema,
+            secondLevelCache = secondLevelCache)
 }
 
 @Suppress("ThrowsCount")
@@ -20,7 +20,10 @@ import net.corda.core.identity.Party
 import net.corda.core.internal.FlowStateMachineHandle
 import net.corda.core.internal.RPC_UPLOADER
 import net.corda.core.internal.STRUCTURAL_STEP_PREFIX
+import net.corda.core.internal.concurrent.flatMap
+import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.internal.sign
+import net.corda.core.internal.uncheckedCast
 import net.corda.core.messaging.CordaRPCOps
 import net.corda.core.messaging.DataFeed
 import net.corda.core.messaging.FlowHandle
@@ -29,6 +32,7 @@ import net.corda.core.messaging.FlowHandleWithClientId
 import net.corda.core.messaging.FlowHandleWithClientIdImpl
 import net.corda.core.messaging.FlowProgressHandle
 import net.corda.core.messaging.FlowProgressHandleImpl
+import net.corda.core.messaging.FlowStartRequest
 import net.corda.core.messaging.ParametersUpdateInfo
 import net.corda.core.messaging.RPCReturnsObservables
 import net.corda.core.messaging.StateMachineInfo
@@ -52,6 +56,9 @@ import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.loggerFor
 import net.corda.node.services.api.FlowStarter
 import net.corda.node.services.api.ServiceHubInternal
+import net.corda.node.services.attachments.AttachmentUploads
+import net.corda.node.services.rpc.RpcCursor
+import net.corda.node.services.rpc.RpcCursorList
 import net.corda.node.services.rpc.context
 import net.corda.node.services.statemachine.StateMachineManager
 import net.corda.nodeapi.exceptions.MissingAttachmentException
@@ -62,6 +69,7 @@ import rx.Subscription
 import java.io.InputStream
 import java.net.ConnectException
 import java.security.PublicKey
+import java.time.Duration
 import java.time.Instant
 import java.util.concurrent.atomic.AtomicReference
 
@@ -78,10 +86,16 @@ internal class CordaRPCOpsImpl(
 
     private companion object {
         private val logger = loggerFor<CordaRPCOpsImpl>()
+        private val attachmentUploadIdleTimeout = Duration.ofHours(1)
     }
 
     private val drainingShutdownHook = AtomicReference<Subscription?>()
 
+    // An attachment larger than a transaction can be could never be used in one.
+    private val attachmentUploads = AttachmentUploads(services.cacheFactory, attachmentUploadIdleTimeout) {
+        services.networkParameters.maxTransactionSize.toLong()
+    }
+
     init {
         services.nodeProperties.flowsDrainingMode.values.filter { it.isDisabled() }.subscribe({
             cancelDrainingShutdownHook()
@@ -99,9 +113,7 @@ internal class CordaRPCOpsImpl(
     override val protocolVersion: Int get() = nodeInfo().platformVersion
 
     override fun networkMapSnapshot(): List<NodeInfo> {
-        val (snapshot, updates) = networkMapFeed()
-        updates.notUsed()
-        return snapshot
+        return RpcCursorList { RpcCursor.of(services.networkMapCache.allNodes) { it } }
     }
 
     override val networkParameters: NetworkParameters get() = services.networkParameters
@@ -140,9 +152,11 @@ internal class CordaRPCOpsImpl(
 
     @Suppress("OVERRIDE_DEPRECATION", "OverridingDeprecatedMember", "DEPRECATION")
     override fun internalVerifiedTransactionsSnapshot(): List<SignedTransaction> {
-        val (snapshot, updates) = internalVerifiedTransactionsFeed()
-        updates.notUsed()
-        return snapshot
+        return RpcCursorList {
+            RpcCursor.keyset(SignedTransaction::id) { afterId, maxItems ->
+                services.validatedTransactions.verifiedTransactionsAfter(afterId, maxItems)
+            }
+        }
     }
 
     @Suppress("OVERRIDE_DEPRECATION")
@@ -155,9 +169,7 @@ internal class CordaRPCOpsImpl(
     }
 
     override fun stateMachinesSnapshot(): List<StateMachineInfo> {
-        val (snapshot, updates) = stateMachinesFeed()
-        updates.notUsed()
-        return snapshot
+        return RpcCursorList { RpcCursor.of(smm.allStateMachines, ::stateMachineInfoFromFlowLogic) }
     }
 
     override fun killFlow(id: StateMachineRunId): Boolean = smm.killFlow(id)
@@ -267,6 +279,39 @@ internal class CordaRPCOpsImpl(
         }
     }
 
+    @Suppress("SpreadOperator")
+    override fun startFlowsDynamic(requests: List<FlowStartRequest>): List<FlowHandle<*>> {
+        for (request in requests) {
+            if (!request.logicType.isAnnotationPresent(StartableByRPC::class.java)) throw NonRpcFlowException(request.logicType)
+        }
+        // A flow started for a client id which is repeated in the same call could not be reattached to by the later requests
+        val repeatedClientIds = requests.mapNotNull { it.clientId }.groupingBy { it }.eachCount().filterValues { it > 1 }.keys
+        require(repeatedClientIds.isEmpty()) { "Client ids can only be requested once per call: $repeatedClientIds" }
+        val context = context()
+        val existingFlows = requests.map { request ->
+            request.clientId?.let { smm.reattachFlowWithClientId<Any?>(it, context.principal()) }
+        }
+        if (isFlowsDrainingModeEnabled() && null in existingFlows) {
+            throw RejectedCommandException("Node is draining before shutdown. Cannot start new flows through RPC.")
+        }
+        return requests.zip(existingFlows) { request, existingFlow ->
+            val (id, returnValue) = if (existingFlow != null) {
+                existingFlow.id to existingFlow.resultFuture
+            } else {
+                // The flows are not waited on to start, as the node may hold some of them back until earlier flows have finished
+                val flowId = StateMachineRunId.createRandom()
+                val flowContext = request.clientId?.let { context.withClientId(it) } ?: context
+                val started = try {
+                    flowStarter.invokeFlowAsync<Any?>(flowId, uncheckedCast(request.logicType), flowContext, *request.args.toTypedArray())
+                } catch (e: Exception) {
+                    openFuture<FlowStateMachineHandle<Any?>>().apply { setException(e) }
+                }
+                flowId to started.flatMap { it.resultFuture }
+            }
+            request.clientId?.let { FlowHandleWithClientIdImpl(id, returnValue, it) } ?: FlowHandleImpl(id, returnValue)
+        }
+    }
+
     @Suppress("SpreadOperator")
     private fun <T> startFlow(logicType: Class<out FlowLogic<T>>, context: InvocationContext, args: Array<out Any?>): FlowStateMachineHandle<T> {
         if (!logicType.isAnnotationPresent(StartableByRPC::class.java)) throw NonRpcFlowException(logicType)
@@ -294,6 +339,21 @@ internal class CordaRPCOpsImpl(
         return services.attachments.privilegedImportAttachment(jar, uploader, filename)
     }
 
+    override fun readAttachmentChunk(id: SecureHash, offset: Long, maxBytes: Int): ByteArray {
+        return services.attachments.readAttachmentChunk(id, offset, maxBytes) ?:
+            throw MissingAttachmentException("Unable to open attachment with id: $id")
+    }
+
+    override fun uploadAttachmentChunk(uploadId: String, offset: Long, bytes: ByteArray): Long {
+        return attachmentUploads.append(context().principal().name, uploadId, offset, bytes)
+    }
+
+    override fun completeAttachmentUpload(uploadId: String, uploader: String, filename: String?): SecureHash {
+        return attachmentUploads.complete(context().principal().name, uploadId) { jar ->
+            services.attachments.privilegedImportAttachment(jar, uploader, filename)
+        }
+    }
+
     override fun queryAttachments(query: AttachmentQueryCriteria, sorting: AttachmentSort?): List<AttachmentId> {
         return services.attachments.queryAttachments(query, sorting)
     }
@@ -430,6 +490,7 @@ internal class CordaRPCOpsImpl(
 
     override fun close() {
         cancelDrainingShutdownHook()
+        attachmentUploads.close()
     }
 
     private fun cancelDrainingShutdownHook() {
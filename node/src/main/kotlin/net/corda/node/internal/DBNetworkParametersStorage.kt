@@ -23,6 +23,8 @@ import net.corda.nodeapi.internal.network.verifiedNetworkParametersCert
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
 import org.apache.commons.lang3.ArrayUtils
+import org.hibernate.annotations.Cache
+import org.hibernate.annotations.CacheConcurrencyStrategy
 import java.security.cert.X509Certificate
 import javax.persistence.*
 
@@ -128,6 +130,8 @@ class DBNetworkParametersStorage(
 
     @Entity
     @Table(name = "${NODE_DATABASE_PREFIX}network_parameters")
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "${NODE_DATABASE_PREFIX}network_parameters")
     class PersistentNetworkParameters(
             @Id
             @Column(name = "hash", length = MAX_HASH_HEX_SIZE, nullable = false)
@@ -307,7 +307,7 @@ open class Node(configuration: NodeConfiguration,
         // Start up the MQ clients.
         internalRpcMessagingClient?.run {
             closeOnStop()
-            init(rpcOps, securityManager, cacheFactory)
+            init(rpcOps, securityManager, cacheFactory, metricRegistry)
         }
         network.closeOnStop()
         network.start(
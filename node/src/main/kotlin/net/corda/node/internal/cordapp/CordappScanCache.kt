@@ -0,0 +1,150 @@
+package net.corda.node.internal.cordapp
+
+import net.corda.core.crypto.SecureHash
+import net.corda.core.internal.cordapp.KotlinMetadataVersion
+import net.corda.core.utilities.contextLogger
+import net.corda.node.VersionInfo
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.util.Properties
+import kotlin.io.path.createDirectories
+import kotlin.io.path.createTempFile
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.div
+import kotlin.io.path.exists
+import kotlin.io.path.inputStream
+import kotlin.io.path.moveTo
+import kotlin.io.path.outputStream
+
+/**
+ * The names of the classes of interest found by scanning a CorDapp JAR with ClassGraph. These are all that is needed, along with
+ * the JAR's manifest, to build its [net.corda.core.internal.cordapp.CordappImpl], so they are what [CordappScanCache] stores.
+ *
+ * The class lists are unfiltered: abstract classes and classes of the wrong type are dropped when the classes are loaded.
+ */
+data class CordappJarScan(
+        val contractClasses: List<String>,
+        val initiatedFlows: List<String>,
+        val rpcFlows: List<String>,
+        val serviceFlows: List<String>,
+        val schedulableFlows: List<String>,
+        val services: List<String>,
+        val telemetryComponents: List<String>,
+        val serializers: List<String>,
+        val checkpointSerializers: List<String>,
+        val customSchemas: List<String>,
+        val allFlows: List<String>,
+        val notaryServices: List<String>,
+        val cordappClasses: List<String>,
+        /** The highest class file version in the JAR, or null if it contains no classes. */
+        val classFileMajorVersion: Int?,
+        val kotlinMetadataVersions: List<KotlinMetadataVersion>
+)
+
+/**
+ * Keeps the [CordappJarScan] of each CorDapp JAR on disk, keyed by the hash of the JAR, so that JARs which have not changed since
+ * the last start of the node do not have to be scanned again.
+ *
+ * What a scan finds depends on the node's own classes as well as on the JAR, so entries written by a different version of the node
+ * are ignored. A missing or unreadable entry is treated as a cache miss.
+ */
+class CordappScanCache(private val directory: Path, versionInfo: VersionInfo) {
+    companion object {
+        private val logger = contextLogger()
+
+        private const val FORMAT_VERSION = "1"
+        private const val FORMAT_VERSION_KEY = "formatVersion"
+        private const val NODE_VERSION_KEY = "nodeVersion"
+        private const val CLASS_FILE_MAJOR_VERSION_KEY = "classFileMajorVersion"
+        private const val KOTLIN_METADATA_VERSIONS_KEY = "kotlinMetadataVersions"
+    }
+
+    private val nodeVersion = "${versionInfo.releaseVersion}-${versionInfo.revision}"
+
+    private fun entryFile(jarHash: SecureHash): Path = directory / "$jarHash.properties"
+
+    fun load(jarHash: SecureHash): CordappJarScan? {
+        val file = entryFile(jarHash)
+        if (!file.exists()) return null
+        return try {
+            val properties = file.inputStream().use { input -> Properties().apply { load(input) } }
+            if (properties.getProperty(FORMAT_VERSION_KEY) != FORMAT_VERSION || properties.getProperty(NODE_VERSION_KEY) != nodeVersion) {
+                logger.debug("Ignoring CorDapp scan cache entry $file written by a different node version")
+                null
+            } else {
+                properties.toScan()
+            }
+        } catch (e: Exception) {
+            logger.warn("Unable to read CorDapp scan cache entry $file, the CorDapp will be scanned again", e)
+            null
+        }
+    }
+
+    fun store(jarHash: SecureHash, scan: CordappJarScan) {
+        val file = entryFile(jarHash)
+        try {
+            directory.createDirectories()
+            // Write to a temporary file first so that a concurrent or interrupted write never leaves a partial entry behind.
+            val tempFile = createTempFile(directory, "$jarHash", ".tmp")
+            try {
+                tempFile.outputStream().use { scan.toProperties().store(it, null) }
+                tempFile.moveTo(file, ATOMIC_MOVE, REPLACE_EXISTING)
+            } finally {
+                tempFile.deleteIfExists()
+            }
+        } catch (e: Exception) {
+            logger.warn("Unable to write CorDapp scan cache entry $file", e)
+        }
+    }
+
+    private fun CordappJarScan.toProperties(): Properties {
+        val properties = Properties()
+        properties[FORMAT_VERSION_KEY] = FORMAT_VERSION
+        properties[NODE_VERSION_KEY] = nodeVersion
+        properties["contractClasses"] = contractClasses.joinToString(",")
+        properties["initiatedFlows"] = initiatedFlows.joinToString(",")
+        properties["rpcFlows"] = rpcFlows.joinToString(",")
+        properties["serviceFlows"] = serviceFlows.joinToString(",")
+        properties["schedulableFlows"] = schedulableFlows.joinToString(",")
+        properties["services"] = services.joinToString(",")
+        properties["telemetryComponents"] = telemetryComponents.joinToString(",")
+        properties["serializers"] = serializers.joinToString(",")
+        properties["checkpointSerializers"] = checkpointSerializers.joinToString(",")
+        properties["customSchemas"] = customSchemas.joinToString(",")
+        properties["allFlows"] = allFlows.joinToString(",")
+        properties["notaryServices"] = notaryServices.joinToString(",")
+        properties["cordappClasses"] = cordappClasses.joinToString(",")
+        classFileMajorVersion?.let { properties[CLASS_FILE_MAJOR_VERSION_KEY] = it.toString() }
+        properties[KOTLIN_METADATA_VERSIONS_KEY] = kotlinMetadataVersions.joinToString(",")
+        return properties
+    }
+
+    private fun Properties.toScan(): CordappJarScan {
+        return CordappJarScan(
+                contractClasses = names("contractClasses"),
+                initiatedFlows = names("initiatedFlows"),
+                rpcFlows = names("rpcFlows"),
+                serviceFlows = names("serviceFlows"),
+                schedulableFlows = names("schedulableFlows"),
+                services = names("services"),
+                telemetryComponents = names("telemetryComponents"),
+                serializers = names("serializers"),
+                checkpointSerializers = names("checkpointSerializers"),
+                customSchemas = names("customSchemas"),
+                allFlows = names("allFlows"),
+                notaryServices = names("notaryServices"),
+                cordappClasses = names("cordappClasses"),
+                classFileMajorVersion = getProperty(CLASS_FILE_MAJOR_VERSION_KEY)?.toInt(),
+                kotlinMetadataVersions = names(KOTLIN_METADATA_VERSIONS_KEY).map { version ->
+                    val (major, minor, patch) = version.split('.').map(String::toInt)
+                    KotlinMetadataVersion(major, minor, patch)
+                }
+        )
+    }
+
+    private fun Properties.names(key: String): List<String> {
+        val value = checkNotNull(getProperty(key)) { "Missing $key" }
+        return if (value.isEmpty()) emptyList() else value.split(',')
+    }
+}
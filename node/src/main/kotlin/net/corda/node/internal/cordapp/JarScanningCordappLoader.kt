@@ -2,7 +2,6 @@ package net.corda.node.internal.cordapp
 
 import io.github.classgraph.ClassGraph
 import io.github.classgraph.ClassInfo
-import io.github.classgraph.ClassInfoList
 import io.github.classgraph.ScanResult
 import net.corda.common.logging.errorReporting.CordappErrors
 import net.corda.common.logging.errorReporting.ErrorCode
@@ -22,7 +21,6 @@ import net.corda.core.internal.cordapp.CordappImpl.Companion.UNKNOWN_INFO
 import net.corda.core.internal.cordapp.KotlinMetadataVersion
 import net.corda.core.internal.cordapp.LanguageVersion
 import net.corda.core.internal.cordapp.get
-import net.corda.core.internal.flatMapToSet
 import net.corda.core.internal.groupByMultipleKeys
 import net.corda.core.internal.hash
 import net.corda.core.internal.isAbstractClass
@@ -45,8 +43,10 @@ import net.corda.core.serialization.SerializationWhitelist
 import net.corda.core.serialization.SerializeAsToken
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.trace
 import net.corda.node.VersionInfo
+import net.corda.node.utilities.NamedThreadFactory
 import net.corda.nodeapi.internal.cordapp.CordappLoader
 import net.corda.nodeapi.internal.coreContractClasses
 import net.corda.serialization.internal.DefaultWhitelist
@@ -55,6 +55,9 @@ import java.net.URLClassLoader
 import java.nio.file.Path
 import java.util.ServiceLoader
 import java.util.TreeSet
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.jar.JarInputStream
 import java.util.jar.Manifest
 import kotlin.io.path.absolutePathString
@@ -63,44 +66,61 @@ import kotlin.io.path.inputStream
 import kotlin.io.path.isSameFileAs
 import kotlin.io.path.listDirectoryEntries
 import kotlin.io.path.useDirectoryEntries
+import kotlin.math.min
 import kotlin.reflect.KClass
 import kotlin.reflect.KProperty1
 
 /**
  * Handles CorDapp loading and classpath scanning of CorDapp JARs
  *
+ * The JARs are scanned in parallel. If a [scanCacheDirectory] is given, the result of scanning each JAR is kept there, keyed by the hash
+ * of the JAR, so that unchanged JARs are not scanned again the next time the node starts.
+ *
  * @property cordappJars The classpath of cordapp JARs
  * @property legacyContractJars Legacy contract CorDapps (4.11 or earlier) needed for backwards compatibility with 4.11 nodes.
+ * @property scanCacheDirectory Directory in which to cache the results of scanning the JARs, or null to always scan them.
  */
 @Suppress("TooManyFunctions")
 class JarScanningCordappLoader(private val cordappJars: Set<Path>,
                                private val legacyContractJars: Set<Path> = emptySet(),
                                private val versionInfo: VersionInfo = VersionInfo.UNKNOWN,
                                private val extraCordapps: List<CordappImpl> = emptyList(),
-                               private val signerKeyFingerprintBlacklist: List<SecureHash> = emptyList()) : CordappLoader {
+                               private val signerKeyFingerprintBlacklist: List<SecureHash> = emptyList(),
+                               private val scanCacheDirectory: Path? = null) : CordappLoader {
     companion object {
         private val logger = contextLogger()
 
         const val LEGACY_CONTRACTS_DIR_NAME = "legacy-contracts"
+        const val CORDAPP_SCAN_CACHE_DIR_NAME = "cordapp-scan-cache"
 
         /**
          * Creates a CordappLoader from multiple directories.
          *
          * @param cordappDirs Directories used to scan for CorDapp JARs.
          * @param legacyContractsDir Directory containing legacy contract CorDapps (4.11 or earlier).
+         * @param scanCacheDirectory Directory in which to cache the results of scanning the CorDapp JARs.
          */
+        @Suppress("LongParameterList")
         fun fromDirectories(cordappDirs: Collection<Path>,
                             legacyContractsDir: Path? = null,
                             versionInfo: VersionInfo = VersionInfo.UNKNOWN,
                             extraCordapps: List<CordappImpl> = emptyList(),
-                            signerKeyFingerprintBlacklist: List<SecureHash> = emptyList()): JarScanningCordappLoader {
+                            signerKeyFingerprintBlacklist: List<SecureHash> = emptyList(),
+                            scanCacheDirectory: Path? = null): JarScanningCordappLoader {
             logger.info("Looking for CorDapps in ${cordappDirs.toSet().joinToString(", ", "[", "]")}")
             val cordappJars = cordappDirs
                     .asSequence()
                     .flatMap { if (it.exists()) it.listDirectoryEntries("*.jar") else emptyList() }
                     .toSet()
             val legacyContractJars = legacyContractsDir?.useDirectoryEntries("*.jar") { it.toSet() } ?: emptySet()
-            return JarScanningCordappLoader(cordappJars, legacyContractJars, versionInfo, extraCordapps, signerKeyFingerprintBlacklist)
+            return JarScanningCordappLoader(
+                    cordappJars,
+                    legacyContractJars,
+                    versionInfo,
+                    extraCordapps,
+                    signerKeyFingerprintBlacklist,
+                    scanCacheDirectory
+            )
         }
     }
 
@@ -113,6 +133,11 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
 
     private val internal by lazy(::InternalHolder)
 
+    private val scanCache = scanCacheDirectory?.let { CordappScanCache(it, versionInfo) }
+
+    // Loaded once for all the CorDapps, rather than once per CorDapp, as the service loader has to look through every JAR.
+    private val serializationWhitelists by lazy { ServiceLoader.load(SerializationWhitelist::class.java, appClassLoader).toList() }
+
     override val cordapps: List<CordappImpl>
         get() = internal.nonLegacyCordapps
 
@@ -122,10 +147,14 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
     override fun close() = appClassLoader.close()
 
     private inner class InternalHolder {
-        val nonLegacyCordapps = cordappJars.mapTo(ArrayList(), ::scanCordapp)
-        val legacyContractCordapps = legacyContractJars.map(::scanCordapp)
+        val nonLegacyCordapps: ArrayList<CordappImpl>
+        val legacyContractCordapps: List<CordappImpl>
 
         init {
+            val allCordapps = scanCordapps(cordappJars.toList() + legacyContractJars)
+            nonLegacyCordapps = ArrayList(allCordapps.subList(0, cordappJars.size))
+            legacyContractCordapps = allCordapps.subList(cordappJars.size, allCordapps.size)
+
             commonChecks(nonLegacyCordapps, LanguageVersion::isNonLegacyCompatible)
             nonLegacyCordapps += extraCordapps
             if (legacyContractCordapps.isNotEmpty()) {
@@ -231,7 +260,7 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
             }
     }
 
-    private fun ScanResult.toCordapp(path: Path): CordappImpl {
+    private fun CordappJarScan.toCordapp(path: Path, jarHash: SecureHash.SHA256): CordappImpl {
         val manifest: Manifest? = JarInputStream(path.inputStream()).use { it.manifest }
         val info = parseCordappInfo(manifest, CordappImpl.jarName(path))
         val minPlatformVersion = manifest?.get(CordappImpl.MIN_PLATFORM_VERSION)?.toIntOrNull() ?: 1
@@ -255,9 +284,10 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
                 info,
                 minPlatformVersion,
                 targetPlatformVersion,
+                jarHash = jarHash,
                 languageVersion = languageVersion,
                 notaryService = findNotaryService(this),
-                explicitCordappClasses = findAllCordappClasses(this)
+                explicitCordappClasses = cordappClasses
         )
     }
 
@@ -325,91 +355,138 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
         return version
     }
 
-    private fun findNotaryService(scanResult: ScanResult): Class<out NotaryService>? {
-        // Note: we search for implementations of both NotaryService and SinglePartyNotaryService as
-        // the scanner won't find subclasses deeper down the hierarchy if any intermediate class is not
-        // present in the CorDapp.
-        val result = scanResult.getClassesExtending(NotaryService::class) +
-                scanResult.getClassesExtending(SinglePartyNotaryService::class)
+    private fun findNotaryService(scan: CordappJarScan): Class<out NotaryService>? {
+        val result = scan.notaryServices.loadConcreteClasses(NotaryService::class)
         if (result.isNotEmpty()) {
             logger.info("Found notary service CorDapp implementations: " + result.joinToString(", "))
         }
         return result.firstOrNull()
     }
 
-    private fun findServices(scanResult: ScanResult): List<Class<out SerializeAsToken>> {
-        return scanResult.getClassesWithAnnotation(SerializeAsToken::class, CordaService::class)
+    private fun findServices(scan: CordappJarScan): List<Class<out SerializeAsToken>> {
+        return scan.services.loadConcreteClasses(SerializeAsToken::class)
     }
 
-    private fun findTelemetryComponents(scanResult: ScanResult): List<Class<out TelemetryComponent>> {
-        return scanResult.getClassesImplementing(TelemetryComponent::class)
+    private fun findTelemetryComponents(scan: CordappJarScan): List<Class<out TelemetryComponent>> {
+        return scan.telemetryComponents.loadConcreteClasses(TelemetryComponent::class)
     }
 
-    private fun findInitiatedFlows(scanResult: ScanResult): List<Class<out FlowLogic<*>>> {
-        return scanResult.getClassesWithAnnotation(FlowLogic::class, InitiatedBy::class)
+    private fun findInitiatedFlows(scan: CordappJarScan): List<Class<out FlowLogic<*>>> {
+        return scan.initiatedFlows.loadConcreteClasses(FlowLogic::class)
     }
 
     private fun Class<out FlowLogic<*>>.isUserInvokable(): Boolean {
         return Modifier.isPublic(modifiers) && !isLocalClass && !isAnonymousClass && (!isMemberClass || Modifier.isStatic(modifiers))
     }
 
-    private fun findRPCFlows(scanResult: ScanResult): List<Class<out FlowLogic<*>>> {
-        return scanResult.getClassesWithAnnotation(FlowLogic::class, StartableByRPC::class).filter { it.isUserInvokable() }
-    }
-
-    private fun findServiceFlows(scanResult: ScanResult): List<Class<out FlowLogic<*>>> {
-        return scanResult.getClassesWithAnnotation(FlowLogic::class, StartableByService::class)
+    private fun findRPCFlows(scan: CordappJarScan): List<Class<out FlowLogic<*>>> {
+        return scan.rpcFlows.loadConcreteClasses(FlowLogic::class).filter { it.isUserInvokable() }
     }
 
-    private fun findSchedulableFlows(scanResult: ScanResult): List<Class<out FlowLogic<*>>> {
-        return scanResult.getClassesWithAnnotation(FlowLogic::class, SchedulableFlow::class)
+    private fun findServiceFlows(scan: CordappJarScan): List<Class<out FlowLogic<*>>> {
+        return scan.serviceFlows.loadConcreteClasses(FlowLogic::class)
     }
 
-    private fun findAllFlows(scanResult: ScanResult): List<Class<out FlowLogic<*>>> {
-        return scanResult.getClassesExtending(FlowLogic::class)
+    private fun findSchedulableFlows(scan: CordappJarScan): List<Class<out FlowLogic<*>>> {
+        return scan.schedulableFlows.loadConcreteClasses(FlowLogic::class)
     }
 
-    private fun findAllCordappClasses(scanResult: ScanResult): List<String> {
-        val cordappClasses = ArrayList<String>()
-        scanResult.allStandardClasses.mapTo(cordappClasses) { it.name }
-        scanResult.allInterfaces.mapTo(cordappClasses) { it.name }
-        return cordappClasses
+    private fun findAllFlows(scan: CordappJarScan): List<Class<out FlowLogic<*>>> {
+        return scan.allFlows.loadConcreteClasses(FlowLogic::class)
     }
 
-    private fun findContractClassNames(scanResult: ScanResult): List<String> {
-        val contractClasses = coreContractClasses.flatMapToSet(scanResult::getClassesImplementing)
-        for (contractClass in contractClasses) {
-            contractClass.name.warnContractWithoutConstraintPropagation(appClassLoader)
+    private fun findContractClassNames(scan: CordappJarScan): List<String> {
+        for (contractClassName in scan.contractClasses) {
+            contractClassName.warnContractWithoutConstraintPropagation(appClassLoader)
         }
-        return contractClasses.map { it.name }
+        return scan.contractClasses
     }
 
     private fun findWhitelists(cordappJar: Path): List<SerializationWhitelist> {
-        val whitelists = ServiceLoader.load(SerializationWhitelist::class.java, appClassLoader).toList()
-        return whitelists.filter {
+        return serializationWhitelists.filter {
             it.javaClass.location.toPath().isSameFileAs(cordappJar)
         } + DefaultWhitelist // Always add the DefaultWhitelist to the whitelist for an app.
     }
 
-    private fun findSerializers(scanResult: ScanResult): List<SerializationCustomSerializer<*, *>> {
-        return scanResult.getClassesImplementing(SerializationCustomSerializer::class).map { it.kotlin.objectOrNewInstance() }
+    private fun findSerializers(scan: CordappJarScan): List<SerializationCustomSerializer<*, *>> {
+        return scan.serializers.loadConcreteClasses(SerializationCustomSerializer::class).map { it.kotlin.objectOrNewInstance() }
     }
 
-    private fun findCheckpointSerializers(scanResult: ScanResult): List<CheckpointCustomSerializer<*, *>> {
-        return scanResult.getClassesImplementing(CheckpointCustomSerializer::class).map { it.kotlin.objectOrNewInstance() }
+    private fun findCheckpointSerializers(scan: CordappJarScan): List<CheckpointCustomSerializer<*, *>> {
+        return scan.checkpointSerializers.loadConcreteClasses(CheckpointCustomSerializer::class).map { it.kotlin.objectOrNewInstance() }
     }
 
-    private fun findCustomSchemas(scanResult: ScanResult): Set<MappedSchema> {
-        return scanResult.getClassesExtending(MappedSchema::class).mapToSet { it.kotlin.objectOrNewInstance() }
+    private fun findCustomSchemas(scan: CordappJarScan): Set<MappedSchema> {
+        return scan.customSchemas.loadConcreteClasses(MappedSchema::class).mapToSet { it.kotlin.objectOrNewInstance() }
     }
 
-    private fun scanCordapp(cordappJar: Path): CordappImpl {
+    /**
+     * Scans the given JARs, in parallel if there is more than one, returning their CorDapps in the same order.
+     */
+    private fun scanCordapps(cordappJars: Collection<Path>): List<CordappImpl> {
+        if (cordappJars.size <= 1) return cordappJars.map { scanCordapp(it, parallel = false) }
+        val start = System.nanoTime()
+        val executor = Executors.newFixedThreadPool(
+                min(cordappJars.size, Runtime.getRuntime().availableProcessors()),
+                NamedThreadFactory("CordappScanner")
+        )
+        try {
+            val cordapps = cordappJars
+                    .map { cordappJar -> executor.submit(Callable { scanCordapp(cordappJar, parallel = true) }) }
+                    .map { it.getOrThrow() }
+            logger.info("Loaded ${cordapps.size} CorDapps in ${millisSince(start)} ms")
+            return cordapps
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun scanCordapp(cordappJar: Path, parallel: Boolean): CordappImpl {
+        val start = System.nanoTime()
+        val jarHash = cordappJar.hash
+        val hashed = System.nanoTime()
+        val cachedScan = scanCache?.load(jarHash)
+        val scan = cachedScan ?: scanJar(cordappJar, parallel).also { scanCache?.store(jarHash, it) }
+        val scanned = System.nanoTime()
+        val cordapp = scan.toCordapp(cordappJar, jarHash)
+        logger.info("Loaded CorDapp ${cordappJar.absolutePathString()} in ${millisSince(start)} ms (hashing ${millisBetween(start, hashed)} ms, " +
+                "${if (cachedScan != null) "cached scan" else "scanning"} ${millisBetween(hashed, scanned)} ms, " +
+                "class loading ${millisSince(scanned)} ms)")
+        return cordapp
+    }
+
+    private fun scanJar(cordappJar: Path, parallel: Boolean): CordappJarScan {
         logger.info("Scanning CorDapp ${cordappJar.absolutePathString()}")
-        return ClassGraph()
+        val classGraph = ClassGraph()
                 .overrideClasspath(cordappJar.absolutePathString())
                 .enableAllInfo()
-                .pooledScan()
-                .use { it.toCordapp(cordappJar) }
+        // When JARs are scanned in parallel give each scan a single thread of its own, rather than serialising them through the
+        // shared pool.
+        return (if (parallel) classGraph.scan(1) else classGraph.pooledScan()).use { it.toCordappJarScan() }
+    }
+
+    private fun ScanResult.toCordappJarScan(): CordappJarScan {
+        val allClasses = allClassesAsMap.values
+        return CordappJarScan(
+                contractClasses = coreContractClasses.flatMap { getClassesImplementing(it).names }.distinct(),
+                initiatedFlows = getClassesWithAnnotation(InitiatedBy::class.java).names,
+                rpcFlows = getClassesWithAnnotation(StartableByRPC::class.java).names,
+                serviceFlows = getClassesWithAnnotation(StartableByService::class.java).names,
+                schedulableFlows = getClassesWithAnnotation(SchedulableFlow::class.java).names,
+                services = getClassesWithAnnotation(CordaService::class.java).names,
+                telemetryComponents = getClassesImplementing(TelemetryComponent::class.java).names,
+                serializers = getClassesImplementing(SerializationCustomSerializer::class.java).names,
+                checkpointSerializers = getClassesImplementing(CheckpointCustomSerializer::class.java).names,
+                customSchemas = getSubclasses(MappedSchema::class.java).names,
+                allFlows = getSubclasses(FlowLogic::class.java).names,
+                // Note: we search for implementations of both NotaryService and SinglePartyNotaryService as
+                // the scanner won't find subclasses deeper down the hierarchy if any intermediate class is not
+                // present in the CorDapp.
+                notaryServices = getSubclasses(NotaryService::class.java).names + getSubclasses(SinglePartyNotaryService::class.java).names,
+                cordappClasses = allStandardClasses.names + allInterfaces.names,
+                classFileMajorVersion = allClasses.maxOfOrNull { it.classfileMajorVersion },
+                kotlinMetadataVersions = allClasses.mapNotNullTo(TreeSet()) { it.kotlinMetadataVersion() }.toList()
+        )
     }
 
     private fun <T : Any> loadClass(className: String, type: KClass<T>): Class<out T>? {
@@ -424,45 +501,30 @@ class JarScanningCordappLoader(private val cordappJars: Set<Path>,
         }
     }
 
-    private fun <T : Any> ScanResult.getClassesExtending(type: KClass<T>): List<Class<out T>> {
-        return getSubclasses(type.java).getAllConcreteClasses(type)
-    }
-
-    private fun <T : Any> ScanResult.getClassesImplementing(type: KClass<T>): List<Class<out T>> {
-        return getClassesImplementing(type.java).getAllConcreteClasses(type)
-    }
-
-    private fun <T : Any> ScanResult.getClassesWithAnnotation(type: KClass<T>, annotation: KClass<out Annotation>): List<Class<out T>> {
-        return getClassesWithAnnotation(annotation.java).getAllConcreteClasses(type)
+    private fun <T : Any> List<String>.loadConcreteClasses(type: KClass<T>): List<Class<out T>> {
+        return mapNotNull { loadClass(it, type)?.takeUnless(Class<*>::isAbstractClass) }
     }
 
-    private fun <T : Any> ClassInfoList.getAllConcreteClasses(type: KClass<T>): List<Class<out T>> {
-        return mapNotNull { loadClass(it.name, type)?.takeUnless(Class<*>::isAbstractClass) }
-    }
-
-    private fun ScanResult.determineLanguageVersion(cordappJar: Path): LanguageVersion {
-        val allClasses = allClassesAsMap.values
-        if (allClasses.isEmpty()) {
+    private fun CordappJarScan.determineLanguageVersion(cordappJar: Path): LanguageVersion {
+        if (classFileMajorVersion == null) {
             return LanguageVersion.Data
         }
-        val classFileMajorVersion = allClasses.maxOf { it.classfileMajorVersion }
-        val kotlinMetadataVersion = allClasses
-                .mapNotNullTo(TreeSet()) { it.kotlinMetadataVersion() }
-                .let { kotlinMetadataVersions ->
-                    // If there's more than one minor version of Kotlin
-                    if (kotlinMetadataVersions.size > 1 && kotlinMetadataVersions.mapToSet { it.copy(patch = 0) }.size > 1) {
-                        logger.warn("CorDapp $cordappJar comprised of multiple Kotlin versions (kotlinMetadataVersions=$kotlinMetadataVersions). " +
-                                "This may cause compatibility issues.")
-                    }
-                    kotlinMetadataVersions.takeIf { it.isNotEmpty() }?.last()
-                }
+        // If there's more than one minor version of Kotlin
+        if (kotlinMetadataVersions.size > 1 && kotlinMetadataVersions.mapToSet { it.copy(patch = 0) }.size > 1) {
+            logger.warn("CorDapp $cordappJar comprised of multiple Kotlin versions (kotlinMetadataVersions=$kotlinMetadataVersions). " +
+                    "This may cause compatibility issues.")
+        }
         try {
-            return LanguageVersion.Bytecode(classFileMajorVersion, kotlinMetadataVersion)
+            return LanguageVersion.Bytecode(classFileMajorVersion, kotlinMetadataVersions.lastOrNull())
         } catch (e: IllegalArgumentException) {
             throw IllegalStateException("Unable to load CorDapp $cordappJar: ${e.message}")
         }
     }
 
+    private fun millisBetween(startNanos: Long, endNanos: Long): Long = TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos)
+
+    private fun millisSince(startNanos: Long): Long = millisBetween(startNanos, System.nanoTime())
+
     private fun ClassInfo.kotlinMetadataVersion(): KotlinMetadataVersion? {
         val kotlinMetadata = getAnnotationInfo(Metadata::class.java) ?: return null
         val kotlinMetadataVersion = KotlinMetadataVersion.from(kotlinMetadata.parameterValues.get("mv").value as IntArray)
@@ -0,0 +1,18 @@
+package net.corda.node.internal.flows
+
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.FlowResourceUsage
+import net.corda.core.internal.PLATFORM_VERSION
+import net.corda.core.internal.messaging.FlowResourceUsageRPCOps
+import net.corda.node.services.statemachine.FlowResourceAccounting
+
+class FlowResourceUsageRPCOpsImpl(private val flowResourceAccounting: FlowResourceAccounting) : FlowResourceUsageRPCOps {
+
+    override val protocolVersion: Int = PLATFORM_VERSION
+
+    override val flowResourceUsageByClass: List<FlowResourceUsage>
+        get() = flowResourceAccounting.usageByClass
+
+    override val flowResourceUsageByFlow: Map<StateMachineRunId, FlowResourceUsage>
+        get() = flowResourceAccounting.usageByFlow
+}
@@ -2,6 +2,7 @@ package net.corda.node.internal.rpc.proxies
 
 import net.corda.client.rpc.PermissionException
 import net.corda.core.internal.utilities.InvocationHandlerTemplate
+import net.corda.core.messaging.FlowStartRequest
 import net.corda.core.messaging.RPCOps
 import net.corda.node.internal.rpc.proxies.RpcAuthHelper.methodFullName
 import net.corda.node.services.rpc.RpcAuthContext
@@ -32,6 +33,7 @@ internal object AuthenticatedRpcOpsProxy {
             "startTrackedFlowDynamic" to 0,
             "startFlowDynamicWithClientId" to 1
         )
+        private val bulkStartMethod = "startFlowsDynamic"
 
 
         override fun invoke(proxy: Any, method: Method, arguments: Array<out Any?>?): Any? {
@@ -54,9 +56,24 @@ internal object AuthenticatedRpcOpsProxy {
                 } ?: emptyList()
             } else emptyList()
 
+            if (clazz in namedInterfaces && method.name == bulkStartMethod) {
+                // Every flow class of a bulk start is checked, and the call rejected as a whole if any of them is not permitted.
+                val requests = requireNotNull(arguments)[0] as List<*>
+                val flowClasses = requests.map { requireNotNull(it as? FlowStartRequest).logicType }.distinct()
+                return guardAll(method, flowClasses, ::rpcContext) { super.invoke(proxy, method, arguments) }
+            }
+
             return guard(method, importantArgs, ::rpcContext) { super.invoke(proxy, method, arguments) }
         }
 
+        private fun <RESULT> guardAll(method: Method, classes: List<Class<*>>, context: () -> RpcAuthContext, action: () -> RESULT): RESULT {
+            val notPermitted = classes.filterNot { context().isPermitted(methodFullName(method), it.name) }
+            if (notPermitted.isNotEmpty()) {
+                throw PermissionException("User not authorized to perform RPC call $method with targets $notPermitted")
+            }
+            return action()
+        }
+
         private fun <RESULT> guard(method: Method, args: List<Class<*>>, context: () -> RpcAuthContext, action: () -> RESULT): RESULT {
             if (!context().isPermitted(methodFullName(method), *(args.map(Class<*>::getName).toTypedArray()))) {
                 throw PermissionException("User not authorized to perform RPC call $method with target $args")
@@ -45,12 +45,13 @@ internal object RPCPermissionResolver : PermissionResolver {
         "startFlowDynamic",
         "startTrackedFlowDynamic",
         "startFlowDynamicWithClientId",
+        "startFlowsDynamic",
         "startFlow",
         "startTrackedFlow",
         "startFlowWithClientId"
     )
 
-    private val FLOW_RPC_PERMITTED_START_FLOW_CALLS = setOf("startFlow", "startFlowDynamic")
+    private val FLOW_RPC_PERMITTED_START_FLOW_CALLS = setOf("startFlow", "startFlowDynamic", "startFlowsDynamic")
     private val FLOW_RPC_PERMITTED_TRACKED_START_FLOW_CALLS = setOf("startTrackedFlow", "startTrackedFlowDynamic")
     private val FLOW_RPC_PERMITTED_START_FLOW_WITH_CLIENT_ID_CALLS = setOf("startFlowWithClientId", "startFlowDynamicWithClientId")
 
@@ -1,5 +1,6 @@
 package net.corda.node.services.api
 
+import net.corda.client.rpc.notUsed
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.context.InvocationContext
 import net.corda.core.crypto.SecureHash
@@ -348,6 +349,17 @@ interface FlowStarter {
         context: InvocationContext,
         vararg args: Any?
     ): CordaFuture<out FlowStateMachineHandle<T>>
+
+    /**
+     * As [invokeFlowAsync], but starting the flow with the given [flowId], so that callers not waiting for the flow to start
+     * still know its id.
+     */
+    fun <T> invokeFlowAsync(
+        flowId: StateMachineRunId,
+        logicType: Class<out FlowLogic<T>>,
+        context: InvocationContext,
+        vararg args: Any?
+    ): CordaFuture<out FlowStateMachineHandle<T>>
 }
 
 interface StartedNodeServices : ServiceHubInternal, FlowStarter
@@ -424,6 +436,24 @@ interface WritableTransactionStorage : TransactionStorage {
      * a DB transaction.
      */
     fun trackTransactionWithNoWarning(id: SecureHash): CordaFuture<SignedTransaction>
+
+    /**
+     * Returns up to [maxResults] verified transactions whose IDs follow [afterId], in ID order, so that all of them can be read a
+     * page at a time rather than all at once as by [track].
+     */
+    fun verifiedTransactionsAfter(afterId: SecureHash?, maxResults: Int): List<SignedTransaction> {
+        val (snapshot, updates) = track()
+        updates.notUsed()
+        return snapshot.sortedBy { it.id.toString() }
+                .dropWhile { afterId != null && it.id.toString() <= afterId.toString() }
+                .take(maxResults)
+    }
+
+    /**
+     * Returns up to [maxResults] of the verified transactions recorded most recently, newest first. Storage which does not record when
+     * transactions were recorded returns none.
+     */
+    fun latestVerifiedTransactions(maxResults: Int): List<SignedTransaction> = emptyList()
 }
 
 /**
@@ -0,0 +1,102 @@
+package net.corda.node.services.attachments
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.RemovalListener
+import com.github.benmanes.caffeine.cache.Scheduler
+import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.internal.read
+import net.corda.core.utilities.contextLogger
+import net.corda.core.utilities.debug
+import java.io.InputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.APPEND
+import java.time.Duration
+import javax.annotation.concurrent.ThreadSafe
+import kotlin.io.path.deleteIfExists
+
+/**
+ * Attachments being uploaded over RPC a chunk at a time, each spooled to a temporary file until the upload is completed and the
+ * attachment imported from it.
+ *
+ * Uploads are private to the user which started them, and can be resumed from where they got to after a lost connection. An upload
+ * which has not been added to for [idleTimeout] is abandoned and its file deleted, as are the least recently used uploads once there
+ * are more than the cache is configured for. No upload can grow past [maxUploadSize] bytes.
+ */
+@ThreadSafe
+class AttachmentUploads(
+        cacheFactory: NamedCacheFactory,
+        idleTimeout: Duration,
+        private val maxUploadSize: () -> Long
+) : AutoCloseable {
+    companion object {
+        private val log = contextLogger()
+    }
+
+    private data class UploadKey(val user: String, val uploadId: String)
+
+    private class Upload(val file: Path) {
+        var size: Long = 0
+    }
+
+    private val uploads: Cache<UploadKey, Upload> = cacheFactory.buildNamed(
+            Caffeine.newBuilder()
+                    .expireAfterAccess(idleTimeout)
+                    // Expire idle uploads even when no other upload is using the cache.
+                    .scheduler(Scheduler.systemScheduler())
+                    .evictionListener(RemovalListener<UploadKey, Upload> { key, value, cause ->
+                        log.debug { "Discarding upload $key because of $cause" }
+                        value!!.file.deleteIfExists()
+                    }),
+            "AttachmentUploads_uploads"
+    )
+
+    /**
+     * Appends [bytes] to the upload [uploadId] of [user], starting it if need be. Any part of [bytes] the upload already holds, as when
+     * a chunk is resent after its acknowledgement was lost, is skipped.
+     *
+     * @return The number of bytes of the upload now held, from which the next chunk should be sent.
+     * @throws IllegalArgumentException If [offset] is past the end of what has been uploaded so far, or the upload would become larger
+     * than [maxUploadSize].
+     */
+    fun append(user: String, uploadId: String, offset: Long, bytes: ByteArray): Long {
+        require(offset >= 0) { "Negative offset $offset" }
+        val upload = uploads.asMap().compute(UploadKey(user, uploadId)) { _, existing ->
+            val held = existing?.size ?: 0
+            require(offset <= held) { "Upload $uploadId holds $held bytes, cannot write at $offset" }
+            val overlap = minOf(held - offset, bytes.size.toLong()).toInt()
+            val maxSize = maxUploadSize()
+            require(held + bytes.size - overlap <= maxSize) { "Upload $uploadId cannot be larger than $maxSize bytes" }
+            val upload = existing ?: Upload(Files.createTempFile("attachment-upload", ".jar"))
+            if (overlap < bytes.size) {
+                Files.newOutputStream(upload.file, APPEND).use { it.write(bytes, overlap, bytes.size - overlap) }
+                upload.size += bytes.size - overlap
+            }
+            upload
+        }!!
+        return upload.size
+    }
+
+    /**
+     * Imports the upload [uploadId] of [user] with [import], and discards it whether or not the import succeeds.
+     *
+     * @throws IllegalArgumentException If there is no such upload.
+     */
+    fun <T> complete(user: String, uploadId: String, import: (InputStream) -> T): T {
+        // Taken out of the cache first, so that the import is not done while holding its lock.
+        val upload = requireNotNull(uploads.asMap().remove(UploadKey(user, uploadId))) { "No upload $uploadId in progress" }
+        try {
+            return upload.file.read(block = import).also {
+                log.debug { "Imported upload $uploadId of ${upload.size} bytes" }
+            }
+        } finally {
+            upload.file.deleteIfExists()
+        }
+    }
+
+    override fun close() {
+        uploads.asMap().values.forEach { it.file.deleteIfExists() }
+        uploads.invalidateAll()
+    }
+}
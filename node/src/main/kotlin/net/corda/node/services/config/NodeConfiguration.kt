@@ -5,6 +5,7 @@ import net.corda.common.configuration.parsing.internal.Configuration
 import net.corda.common.configuration.parsing.internal.ConfigurationWithOptionsContainer
 import net.corda.common.validation.internal.Validated
 import net.corda.core.context.AuthServiceId
+import net.corda.core.flows.FlowPriorityClass
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.internal.TimedFlow
 import net.corda.core.internal.notary.NotaryServiceFlow
@@ -98,6 +99,27 @@ interface NodeConfiguration : ConfigurationWithOptionsContainer {
 
     val reloadCheckpointAfterSuspend: Boolean
 
+    /**
+     * The most flows started through RPC that may be in flight at once, with further flows queued until others finish. Zero for no
+     * limit.
+     */
+    val flowAdmissionLimit: Int
+
+    /**
+     * How long a flow may wait for a message from its counterparties before it is evicted from memory, to be restored from its
+     * checkpoint when the message arrives. Zero to keep all flows in memory.
+     */
+    val flowDehydrationIdleTimeout: Duration
+
+    /**
+     * How often the high water marks of the senders of P2P messages are persisted, when messages are deduplicated by their sequence
+     * numbers rather than by persisting the ID of each message as it is processed. Zero, the default, persists the ID of every message.
+     */
+    val messageHighWaterMarkFlushInterval: Duration
+
+    /** Overrides the [FlowPriorityClass] of flow classes, whether or not they are annotated with a [net.corda.core.flows.FlowPriority]. */
+    val flowPriorities: FlowPriorityConfig?
+
     companion object {
         // default to at least 8MB and a bit extra for larger heap sizes
         val defaultTransactionCacheSize: Long = 8.MB + getAdditionalCacheMemory()
@@ -121,6 +143,9 @@ interface NodeConfiguration : ConfigurationWithOptionsContainer {
 data class FlowOverrideConfig(val overrides: List<FlowOverride> = listOf())
 data class FlowOverride(val initiator: String, val responder: String)
 
+data class FlowPriorityConfig(val overrides: List<FlowPriorityOverride> = listOf())
+data class FlowPriorityOverride(val flowClass: String, val priority: FlowPriorityClass)
+
 /**
  * Currently registered JMX Reporters.
  */
@@ -163,7 +188,12 @@ data class NotaryConfig(
         val extraConfig: Config? = null,
         val raft: RaftConfig? = null,
         val bftSMaRt: BFTSmartConfig? = null,
-        val enableOverridableFlows: Boolean? = null
+        val enableOverridableFlows: Boolean? = null,
+        /**
+         * The number of threads a validating notary verifies transactions on, concurrently and apart from the flows committing
+         * input states. Zero, the default, verifies transactions in the service flows themselves.
+         */
+        val verificationThreads: Int = 0
 )
 
 /**
@@ -87,6 +87,10 @@ data class NodeConfigurationImpl(
         override val flowExternalOperationThreadPoolSize: Int = Defaults.flowExternalOperationThreadPoolSize,
         override val quasarExcludePackages: List<String> = Defaults.quasarExcludePackages,
         override val reloadCheckpointAfterSuspend: Boolean = Defaults.reloadCheckpointAfterSuspend,
+        override val flowAdmissionLimit: Int = Defaults.flowAdmissionLimit,
+        override val flowDehydrationIdleTimeout: Duration = Defaults.flowDehydrationIdleTimeout,
+        override val messageHighWaterMarkFlushInterval: Duration = Defaults.messageHighWaterMarkFlushInterval,
+        override val flowPriorities: FlowPriorityConfig? = null,
         override val networkParametersPath: Path = baseDirectory
 
 ) : NodeConfiguration {
@@ -127,6 +131,9 @@ data class NodeConfigurationImpl(
         const val flowExternalOperationThreadPoolSize: Int = 1
         val quasarExcludePackages: List<String> = emptyList()
         val reloadCheckpointAfterSuspend: Boolean = System.getProperty("reloadCheckpointAfterSuspend", "false")!!.toBoolean()
+        const val flowAdmissionLimit: Int = 0
+        val flowDehydrationIdleTimeout: Duration = Duration.ZERO
+        val messageHighWaterMarkFlushInterval: Duration = Duration.ZERO
 
         fun cordappsDirectories(baseDirectory: Path) = listOf(baseDirectory / CORDAPPS_DIR_NAME_DEFAULT)
 
@@ -224,6 +231,15 @@ data class NodeConfigurationImpl(
         errors += validateTlsCertCrlConfig()
         errors += validateNetworkServices()
         errors += validateH2Settings()
+        if (flowAdmissionLimit < 0) {
+            errors += "'flowAdmissionLimit' must not be negative"
+        }
+        if (flowDehydrationIdleTimeout.isNegative) {
+            errors += "'flowDehydrationIdleTimeout' must not be negative"
+        }
+        if (messageHighWaterMarkFlushInterval.isNegative) {
+            errors += "'messageHighWaterMarkFlushInterval' must not be negative"
+        }
         return errors
     }
 
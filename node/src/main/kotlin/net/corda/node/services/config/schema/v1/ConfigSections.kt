@@ -13,6 +13,7 @@ import net.corda.common.configuration.parsing.internal.withOptions
 import net.corda.common.validation.internal.Validated.Companion.invalid
 import net.corda.common.validation.internal.Validated.Companion.valid
 import net.corda.core.context.AuthServiceId
+import net.corda.core.flows.FlowPriorityClass
 import net.corda.core.internal.notary.NotaryServiceFlow
 import net.corda.node.services.config.AuthDataSourceType
 import net.corda.node.services.config.CertChainPolicyConfig
@@ -20,6 +21,8 @@ import net.corda.node.services.config.CertChainPolicyType
 import net.corda.node.services.config.DevModeOptions
 import net.corda.node.services.config.FlowOverride
 import net.corda.node.services.config.FlowOverrideConfig
+import net.corda.node.services.config.FlowPriorityConfig
+import net.corda.node.services.config.FlowPriorityOverride
 import net.corda.node.services.config.FlowTimeoutConfiguration
 import net.corda.node.services.config.NetworkParameterAcceptanceSettings
 import net.corda.node.services.config.NetworkServicesConfig
@@ -234,6 +237,7 @@ internal object NotaryConfigSpec : Configuration.Specification<NotaryConfig>("No
     private val raft by nested(RaftConfigSpec).optional()
     private val bftSMaRt by nested(BFTSmartConfigSpec).optional()
     private val enableOverridableFlows by boolean().optional()
+    private val verificationThreads by int().optional().withDefaultValue(0)
 
     override fun parseValid(configuration: Config, options: Configuration.Options): Valid<NotaryConfig> {
         val config = configuration.withOptions(options)
@@ -246,7 +250,8 @@ internal object NotaryConfigSpec : Configuration.Specification<NotaryConfig>("No
                         config[extraConfig],
                         config[raft],
                         config[bftSMaRt],
-                        config[enableOverridableFlows]
+                        config[enableOverridableFlows],
+                        config[verificationThreads]
                 )
         )
     }
@@ -315,6 +320,8 @@ internal object DatabaseConfigSpec : Configuration.Specification<DatabaseConfig>
     private val transactionIsolationLevel by enum(TransactionIsolationLevel::class).optional()
     private val exportHibernateJMXStatistics by boolean().optional().withDefaultValue(DatabaseConfig.Defaults.exportHibernateJMXStatistics)
     private val mappedSchemaCacheSize by long().optional().withDefaultValue(DatabaseConfig.Defaults.mappedSchemaCacheSize)
+    private val secondLevelCacheRegions by string().list().optional().withDefaultValue(DatabaseConfig.Defaults.secondLevelCacheRegions.toList())
+    private val secondLevelCacheSize by long().optional().withDefaultValue(DatabaseConfig.Defaults.secondLevelCacheSize)
 
     override fun parseValid(configuration: Config, options: Configuration.Options): Valid<DatabaseConfig> {
         if (initialiseSchema.isSpecifiedBy(configuration)) {
@@ -337,7 +344,12 @@ internal object DatabaseConfigSpec : Configuration.Specification<DatabaseConfig>
         }
 
         val config = configuration.withOptions(options)
-        return valid(DatabaseConfig(config[exportHibernateJMXStatistics], config[mappedSchemaCacheSize]))
+        return valid(DatabaseConfig(
+                config[exportHibernateJMXStatistics],
+                config[mappedSchemaCacheSize],
+                config[secondLevelCacheRegions].toSet(),
+                config[secondLevelCacheSize]
+        ))
     }
 }
 
@@ -367,4 +379,23 @@ internal object FlowOverridesConfigSpec : Configuration.Specification<FlowOverri
         val config = configuration.withOptions(options)
         return valid(FlowOverrideConfig(config[overrides]))
     }
-}
\ No newline at end of file
+}
+
+internal object FlowPrioritiesConfigSpec : Configuration.Specification<FlowPriorityConfig>("FlowPriorityConfig") {
+    internal object SingleSpec : Configuration.Specification<FlowPriorityOverride>("FlowPriorityOverride") {
+        private val flowClass by string()
+        private val priority by enum(FlowPriorityClass::class)
+
+        override fun parseValid(configuration: Config, options: Configuration.Options): Valid<FlowPriorityOverride> {
+            val config = configuration.withOptions(options)
+            return valid(FlowPriorityOverride(config[flowClass], config[priority]))
+        }
+    }
+
+    private val overrides by nested(FlowPrioritiesConfigSpec.SingleSpec).listOrEmpty()
+
+    override fun parseValid(configuration: Config, options: Configuration.Options): Valid<FlowPriorityConfig> {
+        val config = configuration.withOptions(options)
+        return valid(FlowPriorityConfig(config[overrides]))
+    }
+}
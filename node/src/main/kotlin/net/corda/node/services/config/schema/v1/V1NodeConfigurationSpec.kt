@@ -67,6 +67,10 @@ internal object V1NodeConfigurationSpec : Configuration.Specification<NodeConfig
     private val flowExternalOperationThreadPoolSize by int().optional().withDefaultValue(Defaults.flowExternalOperationThreadPoolSize)
     private val quasarExcludePackages by string().list().optional().withDefaultValue(Defaults.quasarExcludePackages)
     private val reloadCheckpointAfterSuspend by boolean().optional().withDefaultValue(Defaults.reloadCheckpointAfterSuspend)
+    private val flowAdmissionLimit by int().optional().withDefaultValue(Defaults.flowAdmissionLimit)
+    private val flowDehydrationIdleTimeout by duration().optional().withDefaultValue(Defaults.flowDehydrationIdleTimeout)
+    private val messageHighWaterMarkFlushInterval by duration().optional().withDefaultValue(Defaults.messageHighWaterMarkFlushInterval)
+    private val flowPriorities by nested(FlowPrioritiesConfigSpec).optional()
     private val networkParametersPath by string().mapValid(::toPath).optional()
     @Suppress("unused")
     private val custom by nestedObject().optional()
@@ -138,6 +142,10 @@ internal object V1NodeConfigurationSpec : Configuration.Specification<NodeConfig
                     flowExternalOperationThreadPoolSize = config[flowExternalOperationThreadPoolSize],
                     quasarExcludePackages = config[quasarExcludePackages],
                     reloadCheckpointAfterSuspend = config[reloadCheckpointAfterSuspend],
+                    flowAdmissionLimit = config[flowAdmissionLimit],
+                    flowDehydrationIdleTimeout = config[flowDehydrationIdleTimeout],
+                    messageHighWaterMarkFlushInterval = config[messageHighWaterMarkFlushInterval],
+                    flowPriorities = config[flowPriorities],
                     networkParametersPath = networkParametersPath
             ))
         } catch (e: Exception) {
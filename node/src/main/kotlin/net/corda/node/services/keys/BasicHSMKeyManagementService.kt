@@ -2,6 +2,7 @@ package net.corda.node.services.keys
 
 import net.corda.core.crypto.Crypto
 import net.corda.core.crypto.DigitalSignature
+import net.corda.core.crypto.SecureHash
 import net.corda.core.crypto.SignableData
 import net.corda.core.crypto.SignatureScheme
 import net.corda.core.crypto.TransactionSignature
@@ -10,10 +11,12 @@ import net.corda.core.crypto.keys
 import net.corda.core.crypto.sign
 import net.corda.core.crypto.toStringShort
 import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.internal.hash
 import net.corda.core.internal.telemetry.TelemetryServiceImpl
 import net.corda.core.serialization.SingletonSerializeAsToken
 import net.corda.core.serialization.serialize
 import net.corda.core.utilities.MAX_HASH_HEX_SIZE
+import net.corda.core.utilities.base58ToByteArray
 import net.corda.node.services.identity.PersistentIdentityService
 import net.corda.node.utilities.AppendOnlyPersistentMap
 import net.corda.nodeapi.internal.cryptoservice.SignOnlyCryptoService
@@ -86,11 +89,18 @@ class BasicHSMKeyManagementService(
     private val originalKeysMap = mutableMapOf<PublicKey, String>()
     // A map for anonymous keys.
     private val keysMap = createKeyMap(cacheFactory)
+    // The hashes of the anonymous keys, so that most keys which are not ours can be told apart without a database lookup.
+    private val keysIndex = KeyOwnershipIndex()
 
     override fun start(initialKeysAndAliases: Iterable<Pair<PublicKey, String>>) {
         initialKeysAndAliases.forEach {
             originalKeysMap[Crypto.toSupportedPublicKey(it.first)] = it.second
         }
+        database.transaction {
+            session.createQuery("select publicKeyHash from ${PersistentKey::class.java.name}", String::class.java).stream().use { hashes ->
+                keysIndex.addAll(hashes.iterator().asSequence().map { SecureHash.SHA256(it.removePrefix("DL").base58ToByteArray()) })
+            }
+        }
     }
 
     override val keys: Set<PublicKey>
@@ -103,7 +113,7 @@ class BasicHSMKeyManagementService(
         }
 
     private fun containsPublicKey(publicKey: PublicKey): Boolean {
-        return (publicKey in originalKeysMap || publicKey in keysMap)
+        return (publicKey in originalKeysMap || (keysIndex.mightContain(publicKey.hash) && publicKey in keysMap))
     }
 
     override fun filterMyKeys(candidateKeys: Iterable<PublicKey>): Iterable<PublicKey> = database.transaction {
@@ -114,6 +124,7 @@ class BasicHSMKeyManagementService(
         val keyPair = generateKeyPair()
         database.transaction {
             keysMap[keyPair.public] = keyPair.private
+            keysIndex.add(keyPair.public.hash)
             // Register the key to our identity.
             // No checks performed here as entries for the new key couldn't have existed before in the maps.
             identityService.registerKeyToParty(keyPair.public)
@@ -0,0 +1,80 @@
+package net.corda.node.services.keys
+
+import net.corda.core.crypto.SecureHash
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A compact in-memory index of the SHA-256 hashes of a set of public keys, which can tell that a key is not in the set without
+ * looking it up anywhere else.
+ *
+ * Only the first eight bytes of each hash are kept, in a sorted array, so the index takes eight bytes a key. A key which is not in
+ * the set may still share its hash prefix with one which is, so a key the index [mightContain] has to be looked up to be sure.
+ *
+ * Hashes [add]ed since the array was last rebuilt are held in a set, which is merged into the array once it holds
+ * [MAX_PENDING] of them. Only the new hashes are sorted, and then merged with the array in a single pass. Lookups do not lock.
+ */
+internal class KeyOwnershipIndex {
+    private companion object {
+        private const val MAX_PENDING = 4096
+
+        private fun prefixOf(hash: SecureHash): Long = ByteBuffer.wrap(hash.bytes).long
+
+        /** Merges the sorted arrays [a] and [b] into a new sorted array, without duplicates. */
+        private fun mergeSorted(a: LongArray, b: LongArray): LongArray {
+            val merged = LongArray(a.size + b.size)
+            var i = 0
+            var j = 0
+            var n = 0
+            while (i < a.size || j < b.size) {
+                val next = if (j == b.size || (i < a.size && a[i] <= b[j])) a[i++] else b[j++]
+                if (n == 0 || merged[n - 1] != next) {
+                    merged[n++] = next
+                }
+            }
+            return if (n == merged.size) merged else merged.copyOf(n)
+        }
+    }
+
+    @Volatile
+    private var sorted = LongArray(0)
+    private val pending: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+    val size: Int get() = sorted.size + pending.size
+
+    fun add(hash: SecureHash) {
+        pending += prefixOf(hash)
+        if (pending.size >= MAX_PENDING) {
+            merge()
+        }
+    }
+
+    fun addAll(hashes: Sequence<SecureHash>) {
+        var adding = LongArray(MAX_PENDING)
+        var count = 0
+        for (hash in hashes) {
+            if (count == adding.size) {
+                adding = adding.copyOf(count * 2)
+            }
+            adding[count++] = prefixOf(hash)
+        }
+        adding = adding.copyOf(count).apply { sort() }
+        synchronized(this) {
+            sorted = mergeSorted(sorted, adding)
+        }
+    }
+
+    fun mightContain(hash: SecureHash): Boolean {
+        val prefix = prefixOf(hash)
+        // The pending set must be checked first, as merged prefixes are only removed from it once the array holding them is visible.
+        return prefix in pending || sorted.binarySearch(prefix) >= 0
+    }
+
+    @Synchronized
+    private fun merge() {
+        if (pending.isEmpty()) return
+        val merging = pending.toLongArray().apply { sort() }
+        sorted = mergeSorted(sorted, merging)
+        merging.forEach { pending -= it }
+    }
+}
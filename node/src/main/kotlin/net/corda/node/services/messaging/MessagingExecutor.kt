@@ -1,8 +1,11 @@
 package net.corda.node.services.messaging
 
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.messaging.MessageRecipients
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.trace
 import net.corda.node.VersionInfo
 import net.corda.node.services.statemachine.FlowMessagingImpl
@@ -11,7 +14,10 @@ import org.apache.activemq.artemis.api.core.SimpleString
 import org.apache.activemq.artemis.api.core.client.ClientMessage
 import org.apache.activemq.artemis.api.core.client.ClientProducer
 import org.apache.activemq.artemis.api.core.client.ClientSession
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
 
 interface AddressToArtemisQueueResolver {
     /**
@@ -21,41 +27,154 @@ interface AddressToArtemisQueueResolver {
 }
 
 /**
- * The [MessagingExecutor] is responsible for handling send and acknowledge jobs. It batches them using a bounded
- * blocking queue, submits the jobs asynchronously and then waits for them to flush using [ClientSession.commit].
- * Note that even though we buffer in theory this shouldn't increase latency as the executor is immediately woken up if
- * it was waiting. The number of jobs in the queue is only ever greater than 1 if the commit takes a long time.
+ * The [MessagingExecutor] is responsible for handling send and acknowledge jobs. Sends are queued and a single thread takes all
+ * the sends waiting in the queue, up to [MAX_BATCH_SIZE] messages, and sends them in one transaction of [session], which must not
+ * auto-commit sends. This way the broker is only waited upon once per batch rather than once per message. Note that even though
+ * we batch this does not increase latency, as the sending thread does not wait for more sends to arrive. The batches only ever
+ * grow beyond a single send when sends arrive while the previous batch is being committed.
+ *
+ * The size of the batches is recorded in the `P2P.SendBatchSize` histogram and the time taken for a send to be committed, including
+ * the time it waited in the queue, in the `P2P.SendLatency` timer.
  */
 class MessagingExecutor(
         val session: ClientSession,
         val producer: ClientProducer,
         val versionInfo: VersionInfo,
         val resolver: AddressToArtemisQueueResolver,
-        val ourSenderUUID: String
+        val ourSenderUUID: String,
+        metricRegistry: MetricRegistry = MetricRegistry()
 ) {
     private val cordaVendor = SimpleString.of(versionInfo.vendor)
     private val releaseVersion = SimpleString.of(versionInfo.releaseVersion)
     private val ourSenderSeqNo = AtomicLong()
+    private val sendQueue = LinkedBlockingQueue<SendJob>()
+    /** Guards [stopped], so that nothing can be queued once the sending thread has been told to stop, or has stopped. */
+    private val stopLock = Any()
+    private var stopped = false
+    private val sendBatchSize = metricRegistry.histogram("P2P.SendBatchSize")
+    private val sendLatency = metricRegistry.timer("P2P.SendLatency")
+    private val sendThread = thread(name = "Messaging executor", isDaemon = true) { sendLoop() }
 
     private companion object {
         val log = contextLogger()
         val amqDelayMillis = System.getProperty("amq.delivery.delay.ms", "0").toInt()
+        const val MAX_BATCH_SIZE = 256
+        val STOP = SendJob(emptyList())
+    }
+
+    private class SendJob(val messages: List<Pair<String, Message>>) {
+        val queuedAt: Long = System.nanoTime()
+        val result = openFuture<Unit>()
+        /**
+         * The Artemis messages of [messages], created once so that a job sent again after a failed commit keeps the deduplication IDs
+         * and sequence numbers it was first sent with, and is recognised as a duplicate if the commit had in fact succeeded.
+         */
+        var artemisMessages: List<Pair<SimpleString, ClientMessage>>? = null
     }
 
-    @Synchronized
     fun send(message: Message, target: MessageRecipients) {
-        val mqAddress = resolver.resolveTargetToArtemisQueue(target)
-        val artemisMessage = cordaToArtemisMessage(message)
-        log.trace {
-            "Send to: $mqAddress topic: ${message.topic} " +
-                    "sessionID: ${message.topic} id: ${message.uniqueMessageId}"
-        }
-        producer.send(SimpleString.of(mqAddress), artemisMessage)
+        sendAll(listOf(target to message))
     }
 
-    @Synchronized
+    /**
+     * Sends [messages] in the order given, returning once they have been committed to the broker.
+     */
     fun sendAll(messages: List<Pair<MessageRecipients, Message>>) {
-        messages.forEach { (recipients, message) -> send(message, recipients) }
+        // Resolve the queues up front so that a bad address only fails the send it belongs to.
+        val job = SendJob(messages.map { (target, message) -> resolver.resolveTargetToArtemisQueue(target) to message })
+        synchronized(stopLock) {
+            check(!stopped) { "Messaging executor has been stopped" }
+            sendQueue.put(job)
+        }
+        job.result.getOrThrow()
+    }
+
+    /**
+     * Stops the sending thread once it has sent everything queued before this call.
+     */
+    fun stop() {
+        synchronized(stopLock) {
+            if (!stopped) {
+                stopped = true
+                sendQueue.put(STOP)
+            }
+        }
+        sendThread.join()
+    }
+
+    private fun sendLoop() {
+        try {
+            sendBatches()
+        } finally {
+            // Fail anything left behind, as when the thread stops unexpectedly, so that no sender waits forever.
+            synchronized(stopLock) { stopped = true }
+            for (job in generateSequence { sendQueue.poll() }) {
+                job.result.setException(IllegalStateException("Messaging executor has been stopped"))
+            }
+        }
+    }
+
+    private fun sendBatches() {
+        while (true) {
+            val batch = mutableListOf(sendQueue.take())
+            var batchSize = batch[0].messages.size
+            while (batchSize < MAX_BATCH_SIZE && batch.last() !== STOP) {
+                val job = sendQueue.poll() ?: break
+                batch += job
+                batchSize += job.messages.size
+            }
+            val stopping = batch.remove(STOP)
+            if (batch.isNotEmpty()) {
+                sendBatch(batch, batchSize)
+            }
+            if (stopping) break
+        }
+    }
+
+    private fun sendBatch(batch: List<SendJob>, batchSize: Int) {
+        sendBatchSize.update(batchSize)
+        try {
+            batch.forEach(::sendJob)
+            session.commit()
+            batch.forEach { it.result.set(Unit) }
+        } catch (e: Exception) {
+            rollback(e)
+            // Send the jobs one by one so that a failure only fails the send it belongs to.
+            for (job in batch) {
+                try {
+                    sendJob(job)
+                    session.commit()
+                    job.result.set(Unit)
+                } catch (e: Exception) {
+                    rollback(e)
+                    job.result.setException(e)
+                }
+            }
+        }
+        val now = System.nanoTime()
+        batch.forEach { sendLatency.update(now - it.queuedAt, TimeUnit.NANOSECONDS) }
+    }
+
+    private fun sendJob(job: SendJob) {
+        val artemisMessages = job.artemisMessages ?: job.messages.map { (mqAddress, message) ->
+            log.trace {
+                "Send to: $mqAddress topic: ${message.topic} " +
+                        "sessionID: ${message.topic} id: ${message.uniqueMessageId}"
+            }
+            SimpleString.of(mqAddress) to cordaToArtemisMessage(message)
+        }.also { job.artemisMessages = it }
+        for ((mqAddress, artemisMessage) in artemisMessages) {
+            producer.send(mqAddress, artemisMessage)
+        }
+    }
+
+    private fun rollback(cause: Exception) {
+        log.warn("Unable to commit messages to the broker", cause)
+        try {
+            session.rollback()
+        } catch (e: Exception) {
+            log.warn("Unable to roll back messages sent to the broker", e)
+        }
     }
 
     @Synchronized
@@ -3,26 +3,66 @@ package net.corda.node.services.messaging
 import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.internal.VisibleForTesting
+import net.corda.core.utilities.contextLogger
+import net.corda.core.utilities.debug
+import net.corda.core.utilities.seconds
 import net.corda.node.services.statemachine.DeduplicationId
 import net.corda.node.utilities.AppendOnlyPersistentMap
+import net.corda.node.utilities.NamedThreadFactory
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
+import java.time.Duration
 import java.time.Instant
+import java.util.TreeSet
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import javax.persistence.Column
 import javax.persistence.Entity
 import javax.persistence.Id
 
 /**
  * Encapsulate the de-duplication logic.
+ *
+ * By default the ID of every message is persisted in the transaction which processes it, and a message is a duplicate if its ID has
+ * been persisted. If [highWaterMarkFlushInterval] is not zero, messages which carry a sender UUID and sequence number are instead
+ * deduplicated against the state of their sender, see [SenderState], and nothing is persisted by the transactions which process them.
+ * The high water marks of the senders are persisted every [highWaterMarkFlushInterval], or once [FLUSH_BATCH_SIZE] messages have been
+ * processed since they last were, all in one transaction. The ID of each message is still persisted for senders whose messages arrive
+ * out of order.
+ *
+ * High water marks are opt-in as they are weaker than message IDs. A message processed since the last flush is processed again if it
+ * is redelivered after the node stops abruptly. A message which a sender restarted from its checkpoints sends again, under a new sender
+ * UUID, is only recognised if the ID of the original was persisted.
  */
-class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val database: CordaPersistence) {
+class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory,
+                             private val database: CordaPersistence,
+                             private val highWaterMarkFlushInterval: Duration = Duration.ZERO) {
+    companion object {
+        private val log = contextLogger()
+        private const val FLUSH_BATCH_SIZE = 1000
+        // The number of messages processed most recently by a sender which are remembered one by one.
+        private const val OUT_OF_ORDER_WINDOW = 128
+        private val STOP_TIMEOUT = 10.seconds
+    }
+
     // A temporary in-memory set of deduplication IDs and associated high water mark details.
     // When we receive a message we don't persist the ID immediately,
     // so we store the ID here in the meantime (until the persisting db tx has committed). This is because Artemis may
     // redeliver messages to the same consumer if they weren't ACKed.
     private val beingProcessedMessages = ConcurrentHashMap<DeduplicationId, MessageMeta>()
     private val processedMessages = createProcessedMessages(cacheFactory)
+    private val senders = cacheFactory.buildNamed<String, SenderState>("P2PMessageDeduplicator_senders")
+    // The high water marks which have moved since they were last flushed, kept apart from the sender states as those may be evicted.
+    private val unflushedHighWaterMarks = ConcurrentHashMap<String, Long>()
+    private val processedSinceFlush = AtomicInteger()
+    private var flushExecutor: ScheduledExecutorService? = null
+
+    private val usesHighWaterMarks: Boolean get() = !highWaterMarkFlushInterval.isZero
 
     enum class Outcome {
         NEW, DUPLICATE, IN_FLIGHT
@@ -48,17 +88,69 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
 
     private fun isDuplicateInDatabase(msg: ReceivedMessage): Boolean = database.transaction { msg.uniqueMessageId in processedMessages }
 
-    // We need to incorporate the sending party, and the sessionInit flag as per the in-memory cache.
-    private fun senderHash(senderKey: SenderKey) = SecureHash.sha256(senderKey.peer.toString() + senderKey.isSessionInit.toString() + senderKey.senderUUID).toString()
+    // We need to incorporate the sending party, and the sessionInit flag as per the in-memory cache. The inbox is included as messages
+    // from one sender are only received in order of their sequence numbers if they are sent to the same queue.
+    private fun senderHash(senderKey: SenderKey): String {
+        return SecureHash.sha256(senderKey.peer.toString() + senderKey.isSessionInit.toString() + senderKey.senderUUID + senderKey.inbox).toString()
+    }
+
+    private fun senderHash(msg: ReceivedMessage, inbox: String): String? {
+        val receivedSenderUUID = msg.senderUUID
+        // We don't want a mix of nulls and values so we ensure that here.
+        return if (receivedSenderUUID != null && msg.senderSeqNo != null) {
+            senderHash(SenderKey(receivedSenderUUID, msg.peer, msg.isSessionInit, inbox))
+        } else {
+            null
+        }
+    }
+
+    /** The state of the sender of a message deduplicated by its high water mark, or null if the message is deduplicated by its ID. */
+    private fun senderStateOf(meta: MessageMeta): SenderState? {
+        return if (usesHighWaterMarks && meta.senderHash != null) senderState(meta.senderHash) else null
+    }
+
+    /**
+     * Senders are evicted once there are too many of them, so their state is loaded again if needed. This is done outside the cache
+     * so that no database transaction runs under its locks, and whichever of two concurrent loads is cached first wins.
+     */
+    private fun senderState(senderHash: String): SenderState {
+        senders.getIfPresent(senderHash)?.let { return it }
+        val loaded = loadSenderState(senderHash)
+        return senders.asMap().putIfAbsent(senderHash, loaded) ?: loaded
+    }
+
+    private fun loadSenderState(senderHash: String): SenderState {
+        val (persistedHighWaterMark, hasMessageIds) = database.transaction {
+            val highWaterMark = session.find(SenderHighWaterMark::class.java, senderHash)?.seqNo
+            val messageIds = session.createQuery(
+                    "select seqNo from ${ProcessedMessage::class.java.name} where hash = :sender and seqNo > :highWaterMark",
+                    Long::class.javaObjectType
+            ).setParameter("sender", senderHash).setParameter("highWaterMark", highWaterMark ?: Long.MIN_VALUE).setMaxResults(1).resultList
+            Pair(highWaterMark, messageIds.isNotEmpty())
+        }
+        val highWaterMark = listOfNotNull(persistedHighWaterMark, unflushedHighWaterMarks[senderHash]).maxOrNull()
+        // The messages of an evicted sender which are still being processed are only known to [beingProcessedMessages].
+        val inFlight = beingProcessedMessages.values.mapNotNullTo(TreeSet()) { meta ->
+            meta.senderSeqNo?.takeIf { meta.senderHash == senderHash }
+        }
+        // Message IDs above the high water mark were persisted for messages which arrived out of order, or before high water marks
+        // were used, so the sender keeps to its message IDs.
+        return SenderState(highWaterMark, inFlight, outOfOrder = hasMessageIds)
+    }
 
     /**
      * @return IN_FLIGHT if this message is currently being processed by the state machine, otherwise indicate if DUPLICATE or NEW.
      */
-    fun checkDuplicate(msg: ReceivedMessage): Outcome {
+    fun checkDuplicate(msg: ReceivedMessage, inbox: String): Outcome {
         if (beingProcessedMessages.containsKey(msg.uniqueMessageId)) {
             return Outcome.IN_FLIGHT
         }
-        return booleanToEnum(isDuplicateInDatabase(msg))
+        val senderHash = senderHash(msg, inbox)
+        if (!usesHighWaterMarks || senderHash == null) {
+            return booleanToEnum(isDuplicateInDatabase(msg))
+        }
+        // A sender whose messages arrive out of order only knows some of its messages, and the rest are looked up by their IDs.
+        return booleanToEnum(senderState(senderHash).isDuplicate(msg.senderSeqNo!!) ?: isDuplicateInDatabase(msg))
     }
 
     private fun booleanToEnum(isDuplicate: Boolean): Outcome = if (isDuplicate) Outcome.DUPLICATE else Outcome.NEW
@@ -66,20 +158,26 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
     /**
      * Called the first time we encounter [deduplicationId].
      */
-    fun signalMessageProcessStart(msg: ReceivedMessage) {
-        val receivedSenderUUID = msg.senderUUID
-        val receivedSenderSeqNo = msg.senderSeqNo
-        // We don't want a mix of nulls and values so we ensure that here.
-        val senderHash: String? = if (receivedSenderUUID != null && receivedSenderSeqNo != null) senderHash(SenderKey(receivedSenderUUID, msg.peer, msg.isSessionInit)) else null
+    fun signalMessageProcessStart(msg: ReceivedMessage, inbox: String) {
+        val senderHash = senderHash(msg, inbox)
         val senderSeqNo: Long? = if (senderHash != null) msg.senderSeqNo else null
-        beingProcessedMessages[msg.uniqueMessageId] = MessageMeta(Instant.now(), senderHash, senderSeqNo)
+        val meta = MessageMeta(Instant.now(), senderHash, senderSeqNo)
+        // Recorded first, so that the message is known to be in flight even if the state of its sender is evicted and reloaded.
+        beingProcessedMessages[msg.uniqueMessageId] = meta
+        senderStateOf(meta)?.received(senderSeqNo!!)
     }
 
     /**
      * Called inside a DB transaction to persist [deduplicationId].
      */
     fun persistDeduplicationId(deduplicationId: DeduplicationId) {
-        processedMessages[deduplicationId] = beingProcessedMessages[deduplicationId]!!
+        val meta = beingProcessedMessages[deduplicationId]!!
+        val persistsId = senderStateOf(meta)?.isOutOfOrder ?: true
+        if (persistsId) {
+            processedMessages[deduplicationId] = meta
+        }
+        // The transaction may be retried, so this is recorded for whichever attempt commits.
+        beingProcessedMessages[deduplicationId] = meta.copy(idPersisted = persistsId)
     }
 
     /**
@@ -87,9 +185,78 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
      * Any subsequent redelivery will be deduplicated using the DB.
      */
     fun signalMessageProcessFinish(deduplicationId: DeduplicationId) {
+        val meta = beingProcessedMessages[deduplicationId]
+        val senderState = meta?.let(::senderStateOf)
+        if (meta != null && senderState != null) {
+            val highWaterMark = senderState.processed(meta.senderSeqNo!!, meta.idPersisted)
+            if (highWaterMark != null) {
+                unflushedHighWaterMarks.merge(meta.senderHash!!, highWaterMark, ::maxOf)
+                if (processedSinceFlush.incrementAndGet() == FLUSH_BATCH_SIZE) {
+                    flushSoon()
+                }
+            }
+        }
         beingProcessedMessages.remove(deduplicationId)
     }
 
+    /**
+     * Starts persisting the high water marks of senders every [highWaterMarkFlushInterval], if they are used.
+     */
+    fun start() {
+        if (usesHighWaterMarks) {
+            val interval = highWaterMarkFlushInterval.toMillis()
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(NamedThreadFactory("P2PMessageDeduplicator")).apply {
+                scheduleWithFixedDelay(::flush, interval, interval, TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flushes, and flushes the high water marks which have moved since the last one.
+     */
+    fun stop() {
+        flushExecutor?.apply {
+            shutdown()
+            awaitTermination(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+        }
+        flushExecutor = null
+        if (usesHighWaterMarks) {
+            flush()
+        }
+    }
+
+    private fun flushSoon() {
+        try {
+            flushExecutor?.execute(::flush)
+        } catch (e: RejectedExecutionException) {
+            // The deduplicator is stopping, and flushes once its executor has.
+        }
+    }
+
+    /**
+     * Persists the high water marks which have moved since they were last flushed, all in one transaction.
+     */
+    @VisibleForTesting
+    internal fun flush() {
+        try {
+            val highWaterMarks = HashMap(unflushedHighWaterMarks)
+            processedSinceFlush.set(0)
+            if (highWaterMarks.isEmpty()) return
+            database.transaction {
+                val now = Instant.now()
+                for ((senderHash, highWaterMark) in highWaterMarks) {
+                    session.merge(SenderHighWaterMark(senderHash, highWaterMark, now))
+                }
+            }
+            for ((senderHash, highWaterMark) in highWaterMarks) {
+                unflushedHighWaterMarks.remove(senderHash, highWaterMark)
+            }
+            log.debug { "Flushed the high water marks of ${highWaterMarks.size} message senders" }
+        } catch (e: Exception) {
+            log.warn("Unable to persist message deduplication high water marks", e)
+        }
+    }
+
     @Entity
     @Suppress("MagicNumber") // database column width
     @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}message_ids")
@@ -108,7 +275,87 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
             var seqNo: Long? = null
     )
 
-    private data class MessageMeta(val insertionTime: Instant, val senderHash: String?, val senderSeqNo: Long?)
+    @Entity
+    @Suppress("MagicNumber") // database column width
+    @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}message_high_water_marks")
+    class SenderHighWaterMark(
+            @Id
+            @Column(name = "sender", length = 64, nullable = false)
+            var sender: String = "",
+
+            @Column(name = "sequence_number", nullable = false)
+            var seqNo: Long = 0,
 
-    private data class SenderKey(val senderUUID: String, val peer: CordaX500Name, val isSessionInit: Boolean)
+            @Column(name = "last_update", nullable = false)
+            var lastUpdate: Instant = Instant.now()
+    )
+
+    private data class MessageMeta(
+            val insertionTime: Instant,
+            val senderHash: String?,
+            val senderSeqNo: Long?,
+            val idPersisted: Boolean = true
+    )
+
+    private data class SenderKey(val senderUUID: String, val peer: CordaX500Name, val isSessionInit: Boolean, val inbox: String)
+
+    /**
+     * The sequence numbers of the messages received from one sender. The messages of a sender normally arrive in the order of their
+     * sequence numbers, and sequence numbers are shared by the messages a sender sends to all of its peers, so there are gaps between
+     * them. Every sequence number below [floor] is taken to have been processed, and the high water mark of the sender is persisted so
+     * that this holds after a restart. Above [floor] the processed messages are remembered one by one, up to [OUT_OF_ORDER_WINDOW] of
+     * them, and a message with a sequence number there is only a duplicate if it has been processed.
+     *
+     * A message which arrives after one with a later sequence number shows that the messages of the sender may arrive out of order.
+     * It is processed, and from then on the IDs of the messages of the sender are persisted rather than moving its high water mark.
+     */
+    private class SenderState(highWaterMark: Long?, private val inFlight: TreeSet<Long>, outOfOrder: Boolean) {
+        private var floor: Long = highWaterMark?.let { it + 1 } ?: Long.MIN_VALUE
+        private val processed = TreeSet<Long>()
+        private var highWaterMark: Long? = highWaterMark
+        private var highestReceived: Long? = inFlight.lastOrNull()
+
+        @get:Synchronized
+        var isOutOfOrder: Boolean = outOfOrder
+            private set
+
+        /** @return null if the sender's messages arrive out of order and [seqNo] is unknown, in which case its ID has to be looked up. */
+        @Synchronized
+        fun isDuplicate(seqNo: Long): Boolean? {
+            return when {
+                seqNo < floor || seqNo in processed -> true
+                isOutOfOrder -> null
+                else -> false
+            }
+        }
+
+        @Synchronized
+        fun received(seqNo: Long) {
+            if (highestReceived.let { it != null && seqNo < it } && seqNo !in inFlight) {
+                isOutOfOrder = true
+            }
+            inFlight += seqNo
+            highestReceived = maxOf(highestReceived ?: seqNo, seqNo)
+        }
+
+        /** @return the new high water mark of the sender, if processing [seqNo] has moved it. */
+        @Synchronized
+        fun processed(seqNo: Long, idPersisted: Boolean): Long? {
+            inFlight -= seqNo
+            if (idPersisted || seqNo < floor) return null
+            processed += seqNo
+            if (isOutOfOrder) return null
+            while (processed.size > OUT_OF_ORDER_WINDOW) {
+                floor = processed.pollFirst()!! + 1
+            }
+            // The high water mark never passes a message still in flight, which is redelivered if the node stops before processing it.
+            val lowestInFlight = inFlight.firstOrNull()
+            val highestProcessed = if (lowestInFlight == null) processed.lastOrNull() else processed.lower(lowestInFlight)
+            val belowFloor = if (floor == Long.MIN_VALUE) null else minOf(floor, lowestInFlight ?: floor) - 1
+            val next = listOfNotNull(highestProcessed, belowFloor).maxOrNull() ?: return null
+            if (highWaterMark.let { it != null && next <= it }) return null
+            highWaterMark = next
+            return next
+        }
+    }
 }
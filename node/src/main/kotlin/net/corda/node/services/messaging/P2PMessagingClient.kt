@@ -186,7 +186,7 @@ class P2PMessagingClient(val config: NodeConfiguration,
     private val handlers = ConcurrentHashMap<String, MessageHandler>()
     private val handlersChangedSignal = Object()
 
-    private val deduplicator = P2PMessageDeduplicator(cacheFactory, database)
+    private val deduplicator = P2PMessageDeduplicator(cacheFactory, database, config.messageHighWaterMarkFlushInterval)
     internal var messagingExecutor: MessagingExecutor? = null
 
     /**
@@ -226,7 +226,8 @@ class P2PMessagingClient(val config: NodeConfiguration,
             // size of 1MB is acknowledged.
             val createNewSession = { sessionFactory!!.createSession(ArtemisMessagingComponent.NODE_P2P_USER, ArtemisMessagingComponent.NODE_P2P_USER, false, true, true, false, ActiveMQClient.DEFAULT_ACK_BATCH_SIZE) }
 
-            executorSession = createNewSession()
+            // Sends are committed by the messaging executor in batches.
+            executorSession = sessionFactory!!.createSession(ArtemisMessagingComponent.NODE_P2P_USER, ArtemisMessagingComponent.NODE_P2P_USER, false, false, true, false, ActiveMQClient.DEFAULT_ACK_BATCH_SIZE)
             producerSession = createNewSession()
             bridgeSession = createNewSession()
             executorSession!!.start()
@@ -253,12 +254,14 @@ class P2PMessagingClient(val config: NodeConfiguration,
                     executorProducer!!,
                     versionInfo,
                     this@P2PMessagingClient,
-                    ourSenderUUID = ourSenderUUID
+                    ourSenderUUID = ourSenderUUID,
+                    metricRegistry = metricRegistry
             )
 
             registerBridgeControl(bridgeSession!!, inboxes.toList())
             enumerateBridges(bridgeSession!!, inboxes.toList())
         }
+        deduplicator.start()
     }
 
     private fun failoverCallback(event: FailoverEventType) {
@@ -452,9 +455,9 @@ class P2PMessagingClient(val config: NodeConfiguration,
 
     internal fun deliver(artemisMessage: ClientMessage) {
         artemisToCordaMessage(artemisMessage)?.let { cordaMessage ->
-            val outcome = deduplicator.checkDuplicate(cordaMessage)
+            val outcome = deduplicator.checkDuplicate(cordaMessage, artemisMessage.address)
             if (outcome == P2PMessageDeduplicator.Outcome.NEW) {
-                deduplicator.signalMessageProcessStart(cordaMessage)
+                deduplicator.signalMessageProcessStart(cordaMessage, artemisMessage.address)
                 deliver(cordaMessage, artemisMessage)
             } else if (outcome == P2PMessageDeduplicator.Outcome.DUPLICATE) {
                 log.debug { "Acknowledge duplicate message id: ${cordaMessage.uniqueMessageId} senderUUID: ${cordaMessage.senderUUID} senderSeqNo: ${cordaMessage.senderSeqNo} isSessionInit: ${cordaMessage.isSessionInit}" }
@@ -524,6 +527,7 @@ class P2PMessagingClient(val config: NodeConfiguration,
             producer = null
             producerSession!!.commit()
 
+            messagingExecutor?.stop()
             close(executorProducer)
             executorProducer = null
             executorSession!!.commit()
@@ -547,6 +551,7 @@ class P2PMessagingClient(val config: NodeConfiguration,
             sessionFactory?.close()
             locator?.close()
         }
+        deduplicator.stop()
     }
 
     private fun close(target: AutoCloseable?) {
@@ -565,9 +570,10 @@ class P2PMessagingClient(val config: NodeConfiguration,
 
     @Suspendable
     override fun sendAll(addressedMessages: List<MessagingService.AddressedMessage>) {
-        for ((message, target, sequenceKey) in addressedMessages) {
-            send(message, target, sequenceKey)
+        for ((message) in addressedMessages) {
+            requireMessageSize(message.data.size, maxMessageSize)
         }
+        messagingExecutor!!.sendAll(addressedMessages.map { it.target to it.message })
     }
 
     override fun resolveTargetToArtemisQueue(address: MessageRecipients): String {
@@ -41,6 +41,20 @@ interface AttachmentStorageInternal : AttachmentStorage {
     ): Stream<Pair<String?, Attachment>> {
         return queryAttachments(criteria).stream().map { null to openAttachment(it)!! }
     }
+
+    /**
+     * Reads up to [maxBytes] of the attachment [id] starting at [offset], which is fewer than [maxBytes] only at the end of the
+     * attachment.
+     *
+     * @return The bytes read, which are empty if [offset] is at or past the end, or null if there is no such attachment.
+     */
+    fun readAttachmentChunk(id: AttachmentId, offset: Long, maxBytes: Int): ByteArray? {
+        val attachment = openAttachment(id) ?: return null
+        return attachment.open().use { input ->
+            input.skipNBytes(offset)
+            input.readNBytes(maxBytes)
+        }
+    }
 }
 
 fun AttachmentStorage.toInternal(): AttachmentStorageInternal {
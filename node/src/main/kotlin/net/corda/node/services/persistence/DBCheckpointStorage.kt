@@ -64,6 +64,10 @@ class DBCheckpointStorage(
 
         private val RUNNABLE_CHECKPOINTS = setOf(FlowStatus.RUNNABLE, FlowStatus.HOSPITALIZED)
 
+        // The number of checkpoints fetched from the database at a time when streaming them, so that restoring a large number of
+        // flows does not need all of their blobs in memory at once.
+        private const val CHECKPOINT_FETCH_SIZE = 100
+
         // This is a dummy [DBFlowMetadata] object which help us whenever we want to persist a [DBFlowCheckpoint], but not persist its [DBFlowMetadata].
         // [DBFlowCheckpoint] needs to always reference a [DBFlowMetadata] ([DBFlowCheckpoint.flowMetadata] is not nullable).
         // However, since we do not -hibernate- cascade, it does not get persisted into the database.
@@ -534,8 +538,11 @@ class DBCheckpointStorage(
         val root = criteriaQuery.from(DBFlowCheckpoint::class.java)
         criteriaQuery.select(root)
             .where(criteriaBuilder.isTrue(root.get<FlowStatus>(DBFlowCheckpoint::status.name).`in`(statuses)))
-        return session.createQuery(criteriaQuery).stream().map {
-            StateMachineRunId(UUID.fromString(it.flowId)) to it.toSerializedCheckpoint()
+        return session.createQuery(criteriaQuery).setFetchSize(CHECKPOINT_FETCH_SIZE).stream().map {
+            val checkpoint = StateMachineRunId(UUID.fromString(it.flowId)) to it.toSerializedCheckpoint()
+            // Only the serialized form is handed out, so the entity need not stay in the session once it has been read.
+            session.detach(it)
+            checkpoint
         }
     }
 
@@ -564,8 +571,8 @@ class DBCheckpointStorage(
                 join ${DBFlowCheckpointBlob::class.java.name} blob on checkpoint.blob = blob.id
                 left outer join ${DBFlowException::class.java.name} exception on checkpoint.exceptionDetails = exception.id
                 where checkpoint.status = ${FlowStatus.PAUSED.ordinal}""".trimIndent()
-        val query = session.createQuery(jpqlQuery, DBPausedFields::class.java)
-        return query.resultList.stream().map {
+        val query = session.createQuery(jpqlQuery, DBPausedFields::class.java).setFetchSize(CHECKPOINT_FETCH_SIZE)
+        return query.stream().map {
             Triple(StateMachineRunId(UUID.fromString(it.id)), it.toSerializedCheckpoint(), it.wasHospitalized)
         }
     }
@@ -1,5 +1,9 @@
 package net.corda.node.services.persistence
 
+import com.codahale.metrics.Counter
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.RatioGauge
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.crypto.SecureHash
 import net.corda.core.crypto.TransactionSignature
@@ -38,6 +42,7 @@ import net.corda.nodeapi.internal.persistence.currentDBSession
 import net.corda.nodeapi.internal.persistence.wrapWithDatabaseTransaction
 import net.corda.serialization.internal.CordaSerializationEncoding.SNAPPY
 import org.hibernate.annotations.Type
+import org.iq80.snappy.Snappy
 import rx.Observable
 import rx.subjects.PublishSubject
 import java.time.Instant
@@ -53,7 +58,8 @@ import javax.persistence.Table
 
 @Suppress("TooManyFunctions")
 open class DBTransactionStorage(private val database: CordaPersistence, cacheFactory: NamedCacheFactory,
-                                private val clock: CordaClock) : WritableTransactionStorage, SingletonSerializeAsToken() {
+                                private val clock: CordaClock, private val metrics: MetricRegistry = MetricRegistry())
+    : WritableTransactionStorage, SingletonSerializeAsToken() {
 
     @Suppress("MagicNumber") // database column width
     @Entity
@@ -158,13 +164,7 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
                     cacheFactory = cacheFactory,
                     name = "DBTransactionStorage_transactions",
                     toPersistentEntityKey = SecureHash::toString,
-                    fromPersistentEntity = { dbTxn ->
-                        SecureHash.create(dbTxn.txId) to TxCacheValue(
-                                dbTxn.transaction.deserialize(context = contextToUse()),
-                                dbTxn.status,
-                                dbTxn.signatures?.deserialize(context = contextToUse())
-                        )
-                    },
+                    fromPersistentEntity = { dbTxn -> SecureHash.create(dbTxn.txId) to dbTxn.toTxCacheValue() },
                     toPersistentEntity = { key: SecureHash, value: TxCacheValue ->
                         DBTransaction(
                                 txId = key.toString(),
@@ -180,9 +180,24 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
             )
         }
 
+        private fun DBTransaction.toTxCacheValue(): TxCacheValue {
+            return TxCacheValue(
+                    transaction.deserialize(context = contextToUse()),
+                    status,
+                    signatures?.deserialize(context = contextToUse())
+            )
+        }
+
+        /** Reads the transaction straight from the entity, for results which bypass the cache and so need not be compressed. */
+        private fun DBTransaction.toSignedTx(): SignedTransaction {
+            val stx = transaction.deserialize<SignedTransaction>(context = contextToUse())
+            val extraSigs = signatures?.deserialize<List<TransactionSignature>>(context = contextToUse())
+            return if (extraSigs == null) stx else SignedTransaction(stx.txBits, (stx.sigs + extraSigs).distinct())
+        }
+
         private fun weighTx(actTx: TxCacheValue?): Int {
             if (actTx == null) return 0
-            return TXCACHEVALUE_OVERHEAD_BYTES + actTx.sigs.sumOf { it.size + TRANSACTION_SIGNATURE_OVERHEAD_BYTES } + actTx.txBits.size
+            return TXCACHEVALUE_OVERHEAD_BYTES + actTx.sigs.sumOf { it.size + TRANSACTION_SIGNATURE_OVERHEAD_BYTES } + actTx.storedTxBitsSize
         }
 
         private val log = contextLogger()
@@ -190,6 +205,39 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
 
     private val txStorage = ThreadBox(createTransactionsMap(cacheFactory, clock))
 
+    /**
+     * Lookups of verified transactions, which finality and vault queries need, are counted apart from those of unverified ones,
+     * which are mostly backchains being resolved, so that the hit ratio of each can be followed.
+     */
+    private inner class CachePartition(name: String) {
+        val hits: Counter = metrics.counter("Transactions.Cache.$name.Hits")
+        val misses: Counter = metrics.counter("Transactions.Cache.$name.Misses")
+
+        init {
+            metrics.gauge("Transactions.Cache.$name.HitRatio") {
+                object : RatioGauge() {
+                    override fun getRatio(): Ratio = Ratio.of(hits.count.toDouble(), (hits.count + misses.count).toDouble())
+                }
+            }
+        }
+    }
+
+    private val verifiedCachePartition = CachePartition("Verified")
+    private val unverifiedCachePartition = CachePartition("Unverified")
+
+    init {
+        metrics.gauge("Transactions.Cache.Evictions") { Gauge { txStorage.content.cacheStats.evictionCount() } }
+        metrics.gauge("Transactions.Cache.EvictionWeight") { Gauge { txStorage.content.cacheStats.evictionWeight() } }
+    }
+
+    private fun lookUpTransaction(id: SecureHash): TxCacheValue? {
+        val cached = txStorage.content.isCached(id)
+        return txStorage.content[id]?.also {
+            val partition = if (it.status.isVerified()) verifiedCachePartition else unverifiedCachePartition
+            (if (cached) partition.hits else partition.misses).inc()
+        }
+    }
+
     private fun updateTransaction(txId: SecureHash): Boolean {
         val session = currentDBSession()
         val criteriaBuilder = session.criteriaBuilder
@@ -312,13 +360,13 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
 
     override fun getTransaction(id: SecureHash): SignedTransaction? {
         return database.transaction {
-            txStorage.content[id]?.let { if (it.status.isVerified()) it.toSignedTx() else null }
+            lookUpTransaction(id)?.let { if (it.status.isVerified()) it.toSignedTx() else null }
         }
     }
 
     override fun getTransactionWithStatus(id: SecureHash): SignedTransactionWithStatus? =
             database.transaction {
-                txStorage.content[id]?.let { SignedTransactionWithStatus(it.toSignedTx(), it.status.toTransactionStatus()) }
+                lookUpTransaction(id)?.let { SignedTransactionWithStatus(it.toSignedTx(), it.status.toTransactionStatus()) }
             }
 
     override fun addUnverifiedTransaction(transaction: SignedTransaction) {
@@ -387,6 +435,30 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
         }
     }
 
+    override fun verifiedTransactionsAfter(afterId: SecureHash?, maxResults: Int): List<SignedTransaction> {
+        return database.transaction {
+            val criteriaBuilder = session.criteriaBuilder
+            val criteriaQuery = criteriaBuilder.createQuery(DBTransaction::class.java)
+            val root = criteriaQuery.from(DBTransaction::class.java)
+            val txId = root.get<String>(DBTransaction::txId.name)
+            val isVerified = criteriaBuilder.equal(root.get<TransactionStatus>(DBTransaction::status.name), TransactionStatus.VERIFIED)
+            criteriaQuery.where(if (afterId == null) isVerified else criteriaBuilder.and(isVerified, criteriaBuilder.greaterThan(txId, afterId.toString())))
+            criteriaQuery.orderBy(criteriaBuilder.asc(txId))
+            session.createQuery(criteriaQuery).setMaxResults(maxResults).resultList.map { it.toSignedTx() }
+        }
+    }
+
+    override fun latestVerifiedTransactions(maxResults: Int): List<SignedTransaction> {
+        return database.transaction {
+            val criteriaBuilder = session.criteriaBuilder
+            val criteriaQuery = criteriaBuilder.createQuery(DBTransaction::class.java)
+            val root = criteriaQuery.from(DBTransaction::class.java)
+            criteriaQuery.where(criteriaBuilder.equal(root.get<TransactionStatus>(DBTransaction::status.name), TransactionStatus.VERIFIED))
+            criteriaQuery.orderBy(criteriaBuilder.desc(root.get<Instant>(DBTransaction::timestamp.name)))
+            session.createQuery(criteriaQuery).setMaxResults(maxResults).resultList.map { it.toSignedTx() }
+        }
+    }
+
     @VisibleForTesting
     val transactions: List<SignedTransaction>
         get() = database.transaction { snapshot() }
@@ -399,10 +471,30 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
 
     // Cache value type to just store the immutable bits of a signed transaction plus conversion helpers
     internal class TxCacheValue(
-            val txBits: SerializedBytes<CoreTransaction>,
+            txBits: SerializedBytes<CoreTransaction>,
             val sigs: List<TransactionSignature>,
             val status: TransactionStatus
     ) {
+        // The transaction is held Snappy compressed whenever that makes it smaller, so that more transactions fit in the cache.
+        private val uncompressedTxBits: SerializedBytes<CoreTransaction>?
+        private val compressedTxBits: ByteArray?
+
+        init {
+            val compressed = Snappy.compress(txBits.bytes)
+            if (compressed.size < txBits.size) {
+                uncompressedTxBits = null
+                compressedTxBits = compressed
+            } else {
+                uncompressedTxBits = txBits
+                compressedTxBits = null
+            }
+        }
+
+        val txBits: SerializedBytes<CoreTransaction>
+            get() = uncompressedTxBits ?: SerializedBytes(Snappy.uncompress(compressedTxBits!!, 0, compressedTxBits.size))
+
+        val storedTxBitsSize: Int get() = uncompressedTxBits?.size ?: compressedTxBits!!.size
+
         constructor(stx: SignedTransaction, status: TransactionStatus) : this(
                 stx.txBits,
                 Collections.unmodifiableList(stx.sigs),
@@ -414,6 +506,7 @@ open class DBTransactionStorage(private val database: CordaPersistence, cacheFac
                 if (sigs == null) Collections.unmodifiableList(stx.sigs) else Collections.unmodifiableList(stx.sigs + sigs).distinct(),
                 status
         )
+
         fun toSignedTx() = SignedTransaction(txBits, sigs)
     }
 }
@@ -1,5 +1,6 @@
 package net.corda.node.services.persistence
 
+import com.codahale.metrics.MetricRegistry
 import net.corda.core.crypto.SecureHash
 import net.corda.core.flows.DistributionList.ReceiverDistributionList
 import net.corda.core.flows.DistributionList.SenderDistributionList
@@ -33,7 +34,8 @@ class DBTransactionStorageLedgerRecovery(private val database: CordaPersistence,
                                          cacheFactory: NamedCacheFactory,
                                          val clock: CordaClock,
                                          private val encryptionService: EncryptionService,
-                                         private val partyInfoCache: PersistentPartyInfoCache) : DBTransactionStorage(database, cacheFactory, clock) {
+                                         private val partyInfoCache: PersistentPartyInfoCache,
+                                         metrics: MetricRegistry = MetricRegistry()) : DBTransactionStorage(database, cacheFactory, clock, metrics) {
     @Embeddable
     @Immutable
     data class PersistentKey(
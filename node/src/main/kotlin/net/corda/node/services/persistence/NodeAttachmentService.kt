@@ -11,7 +11,6 @@ import net.corda.core.contracts.Attachment
 import net.corda.core.contracts.ContractAttachment
 import net.corda.core.contracts.ContractClassName
 import net.corda.core.crypto.SecureHash
-import net.corda.core.crypto.sha256
 import net.corda.core.internal.AbstractAttachment
 import net.corda.core.internal.DEPLOYED_CORDAPP_UPLOADER
 import net.corda.core.internal.FetchAttachmentsFlow
@@ -26,7 +25,7 @@ import net.corda.core.internal.VisibleForTesting
 import net.corda.core.internal.cordapp.CordappImpl.Companion.CORDAPP_CONTRACT_VERSION
 import net.corda.core.internal.cordapp.CordappImpl.Companion.DEFAULT_CORDAPP_VERSION
 import net.corda.core.internal.isUploaderTrusted
-import net.corda.core.internal.readFully
+import net.corda.core.internal.read
 import net.corda.core.internal.utilities.ZipBombDetector
 import net.corda.core.internal.verification.NodeVerificationSupport
 import net.corda.core.node.services.AttachmentId
@@ -47,13 +46,16 @@ import net.corda.nodeapi.exceptions.DuplicateAttachmentException
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
 import net.corda.nodeapi.internal.persistence.currentDBSession
-import net.corda.nodeapi.internal.withContractsInJar
+import net.corda.nodeapi.internal.withContractsInJarFile
+import org.hibernate.annotations.Immutable
 import org.hibernate.query.Query
-import java.io.ByteArrayInputStream
 import java.io.FilterInputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.Serializable
 import java.nio.file.FileAlreadyExistsException
+import java.nio.file.Files
+import java.nio.file.Path
 import java.nio.file.Paths
 import java.security.PublicKey
 import java.time.Instant
@@ -65,6 +67,8 @@ import javax.annotation.concurrent.ThreadSafe
 import javax.persistence.CollectionTable
 import javax.persistence.Column
 import javax.persistence.ElementCollection
+import javax.persistence.Embeddable
+import javax.persistence.EmbeddedId
 import javax.persistence.Entity
 import javax.persistence.FetchType
 import javax.persistence.ForeignKey
@@ -93,6 +97,8 @@ class NodeAttachmentService @JvmOverloads constructor(
 
         private val PRIVILEGED_UPLOADERS = listOf(DEPLOYED_CORDAPP_UPLOADER, RPC_UPLOADER, P2P_UPLOADER, UNKNOWN_UPLOADER)
 
+        const val DEFAULT_CHUNK_SIZE = 1024 * 1024
+
         // Just iterate over the entries with verification enabled: should be good enough to catch mistakes.
         // Note that JarInputStream won't throw any kind of error at all if the file stream is in fact not
         // a ZIP! It'll just pretend it's an empty archive, which is kind of stupid but that's how it works.
@@ -147,9 +153,9 @@ class NodeAttachmentService @JvmOverloads constructor(
             @Column(name = "att_id", nullable = false)
             var attId: String,
 
-            @Column(name = "content", nullable = false)
+            @Column(name = "content", nullable = true)
             @Lob
-            var content: ByteArray,
+            var content: ByteArray?,
 
             @Column(name = "insertion_date", nullable = false, updatable = false)
             var insertionDate: Instant = Instant.now(),
@@ -174,12 +180,44 @@ class NodeAttachmentService @JvmOverloads constructor(
 
             // Assumption: only Contract Attachments are versioned, version unknown or value for other attachments other than Contract Attachment defaults to 1
             @Column(name = "version", nullable = false)
-            var version: Int = DEFAULT_CORDAPP_VERSION
+            var version: Int = DEFAULT_CORDAPP_VERSION,
+
+            // Set for attachments stored as [DBAttachmentChunk]s, rather than whole in [content] as they were before chunking.
+            @Column(name = "chunk_size", nullable = true)
+            var chunkSize: Int? = null,
+
+            @Column(name = "content_size", nullable = true)
+            var contentSize: Long? = null
+    )
+
+    @Embeddable
+    @Immutable
+    data class ChunkKey(
+            @Column(name = "att_id", nullable = false)
+            var attId: String,
+
+            @Column(name = "chunk_index", nullable = false)
+            var chunkIndex: Int
+    ) : Serializable
+
+    @Entity
+    @Table(name = "${NODE_DATABASE_PREFIX}attachment_chunks")
+    class DBAttachmentChunk(
+            @EmbeddedId
+            var key: ChunkKey,
+
+            @Column(name = "content", nullable = false)
+            @Lob
+            var content: ByteArray
     )
 
     @VisibleForTesting
     var checkAttachmentsOnLoad = true
 
+    /** The size of the chunks newly imported attachments are stored in. */
+    @VisibleForTesting
+    var chunkSize = DEFAULT_CHUNK_SIZE
+
     private val attachmentCount = metrics.counter("Attachments")
 
     fun start() {
@@ -295,18 +333,99 @@ class NodeAttachmentService @JvmOverloads constructor(
             loadFunction = { Optional.ofNullable(loadAttachmentContent(it)) }
     )
 
+    /** Chunks of attachments being streamed out of the node, so that reading a range does not load the whole attachment. */
+    private val attachmentChunkCache = NonInvalidatingWeightBasedCache(
+            cacheFactory = cacheFactory,
+            name = "NodeAttachmentService_attachmentChunks",
+            weigher = Weigher<ChunkKey, ByteArray> { key, value -> key.attId.length + value.size },
+            loadFunction = { key -> database.transaction { currentDBSession().get(DBAttachmentChunk::class.java, key)?.content } }
+    )
+
     private fun loadAttachmentContent(id: AttachmentId): Pair<Attachment, ByteArray>? {
         return database.transaction {
             val attachment = currentDBSession().get(DBAttachment::class.java, id.toString())
                     ?: return@transaction null
-            Pair(createAttachmentFromDatabase(attachment), attachment.content)
+            val content = loadContent(attachment)
+            Pair(createAttachmentFromDatabase(attachment) { content }, content)
+        }
+    }
+
+    /** Reads the whole of [attachment], either held in the attachment itself or assembled from its chunks. */
+    private fun loadContent(attachment: DBAttachment): ByteArray {
+        attachment.content?.let { return it }
+        return database.transaction {
+            val criteriaBuilder = session.criteriaBuilder
+            val criteriaQuery = criteriaBuilder.createQuery(DBAttachmentChunk::class.java)
+            val root = criteriaQuery.from(DBAttachmentChunk::class.java)
+            val key = root.get<ChunkKey>(DBAttachmentChunk::key.name)
+            criteriaQuery.where(criteriaBuilder.equal(key.get<String>(ChunkKey::attId.name), attachment.attId))
+            criteriaQuery.orderBy(criteriaBuilder.asc(key.get<Int>(ChunkKey::chunkIndex.name)))
+            val content = ByteArray(Math.toIntExact(attachment.contentSize!!))
+            var position = 0
+            session.createQuery(criteriaQuery).resultStream.use { chunks ->
+                chunks.forEach { chunk ->
+                    System.arraycopy(chunk.content, 0, content, position, chunk.content.size)
+                    position += chunk.content.size
+                    session.detach(chunk)
+                }
+            }
+            check(position == content.size) { "Attachment ${attachment.attId} is missing chunks" }
+            content
         }
     }
 
-    private fun createAttachmentFromDatabase(attachment: DBAttachment): Attachment {
+    override fun readAttachmentChunk(id: AttachmentId, offset: Long, maxBytes: Int): ByteArray? {
+        require(offset >= 0 && maxBytes >= 0) { "Negative offset or length" }
+        val (chunkSize, contentSize) = chunkedAttachmentSizes(id) ?: return readWholeAttachmentRange(id, offset, maxBytes)
+        val end = minOf(contentSize, offset + maxBytes)
+        if (offset >= end) return ByteArray(0)
+        val result = ByteArray((end - offset).toInt())
+        var position = offset
+        while (position < end) {
+            val chunkIndex = (position / chunkSize).toInt()
+            val chunk = checkNotNull(attachmentChunkCache.get(ChunkKey(id.toString(), chunkIndex))) {
+                "Attachment $id is missing chunk $chunkIndex"
+            }
+            val chunkOffset = (position - chunkIndex.toLong() * chunkSize).toInt()
+            val length = minOf(chunk.size - chunkOffset, (end - position).toInt())
+            System.arraycopy(chunk, chunkOffset, result, (position - offset).toInt(), length)
+            position += length
+        }
+        return result
+    }
+
+    /** Reads a range of an attachment stored before chunking, which has to be loaded whole. */
+    private fun readWholeAttachmentRange(id: AttachmentId, offset: Long, maxBytes: Int): ByteArray? {
+        val content = attachmentContentCache.get(id)!!
+        if (!content.isPresent) {
+            attachmentContentCache.invalidate(id)
+            return null
+        }
+        val bytes = content.get().second
+        val start = minOf(offset, bytes.size.toLong()).toInt()
+        return bytes.copyOfRange(start, minOf(bytes.size.toLong(), start.toLong() + maxBytes).toInt())
+    }
+
+    /**
+     * @return The chunk size and total size of [id] if it is stored in chunks, or null if it does not exist or is held whole.
+     */
+    private fun chunkedAttachmentSizes(id: AttachmentId): Pair<Int, Long>? = database.transaction {
+        val criteriaBuilder = session.criteriaBuilder
+        val criteriaQuery = criteriaBuilder.createTupleQuery()
+        val root = criteriaQuery.from(DBAttachment::class.java)
+        criteriaQuery.multiselect(root.get<Int>(DBAttachment::chunkSize.name), root.get<Long>(DBAttachment::contentSize.name))
+        criteriaQuery.where(
+                criteriaBuilder.equal(root.get<String>(DBAttachment::attId.name), id.toString()),
+                criteriaBuilder.isNull(root.get<ByteArray>(DBAttachment::content.name)),
+                criteriaBuilder.isNotNull(root.get<Int>(DBAttachment::chunkSize.name))
+        )
+        session.createQuery(criteriaQuery).resultList.singleOrNull()?.let { it.get(0) as Int to it.get(1) as Long }
+    }
+
+    private fun createAttachmentFromDatabase(attachment: DBAttachment, dataLoader: () -> ByteArray): Attachment {
         val attachmentImpl = AttachmentImpl(
                 id = SecureHash.create(attachment.attId),
-                dataLoader = { attachment.content },
+                dataLoader = dataLoader,
                 checkOnLoad = checkAttachmentsOnLoad,
                 uploader = attachment.uploader,
                 signerKeys = attachment.signers?.toList() ?: emptyList()
@@ -378,40 +497,38 @@ class NodeAttachmentService @JvmOverloads constructor(
 
     // TODO: PLT-147: The attachment should be randomised to prevent brute force guessing and thus privacy leaks.
     private fun import(jar: InputStream, uploader: String?, filename: String?): AttachmentId {
+        require(jar !is JarInputStream) { "Input stream must not be a JarInputStream" }
         return database.transaction {
-            withContractsInJar(jar) { contractClassNames, inputStream ->
-                require(inputStream !is JarInputStream) { "Input stream must not be a JarInputStream" }
-
-                // Read the file into RAM and then calculate its hash. The attachment must fit into memory.
-                // TODO: Switch to a two-phase insert so we can handle attachments larger than RAM.
-                // To do this we must pipe stream into the database without knowing its hash, which we will learn only once
-                // the insert/upload is complete. We can then query to see if it's a duplicate and if so, erase, and if not
-                // set the hash field of the new attachment record.
-
-                val bytes = inputStream.readFully()
-                require(!ZipBombDetector.scanZip(ByteArrayInputStream(bytes), nodeVerificationSupport.networkParameters.maxTransactionSize.toLong())) {
+            // The attachment is hashed as it is copied to a temporary file, and is then checked and stored from that file a chunk
+            // at a time, so that it never has to fit into memory.
+            val hashingStream = HashingInputStream(Hashing.sha256(), jar)
+            withContractsInJarFile(hashingStream) { contractClassNames, jarFile ->
+                require(!jarFile.read { ZipBombDetector.scanZip(it, nodeVerificationSupport.networkParameters.maxTransactionSize.toLong()) }) {
                     "The attachment is too large and exceeds both max transaction size and the maximum allowed compression ratio"
                 }
-                val id = bytes.sha256()
+                val id = SecureHash.createSHA256(hashingStream.hash().asBytes())
                 if (!hasAttachment(id)) {
-                    checkIsAValidJAR(bytes.inputStream())
-                    val jarSigners = getSigners(bytes)
-                    val contractVersion = increaseDefaultVersionIfWhitelistedAttachment(contractClassNames, getVersion(bytes), id)
+                    jarFile.read { checkIsAValidJAR(it) }
+                    val jarSigners = getSigners(jarFile)
+                    val contractVersion = increaseDefaultVersionIfWhitelistedAttachment(contractClassNames, getVersion(jarFile), id)
                     val session = currentDBSession()
                     val attachment = DBAttachment(
                             attId = id.toString(),
-                            content = bytes,
+                            content = null,
                             uploader = uploader,
                             filename = filename,
                             contractClassNames = contractClassNames,
                             signers = jarSigners,
-                            version = contractVersion
+                            version = contractVersion,
+                            chunkSize = chunkSize,
+                            contentSize = Files.size(jarFile)
                     )
                     session.save(attachment)
+                    saveChunks(id, jarFile)
                     attachmentCount.inc()
                     log.info("Stored new attachment: id=$id uploader=$uploader filename=$filename")
                     contractClassNames.forEach { contractsCache.invalidate(it) }
-                    return@withContractsInJar id
+                    return@withContractsInJarFile id
                 }
                 if (isUploaderTrusted(uploader)) {
                     val session = currentDBSession()
@@ -425,7 +542,7 @@ class NodeAttachmentService @JvmOverloads constructor(
                             // TODO: this is racey. ENT-2870
                             attachmentContentCache.put(id, Optional.of(attachmentAndContent))
                         }
-                        return@withContractsInJar id
+                        return@withContractsInJarFile id
                     }
                     // If the uploader is the same, throw the exception because the attachment cannot be overridden by the same uploader.
                 }
@@ -434,12 +551,30 @@ class NodeAttachmentService @JvmOverloads constructor(
         }
     }
 
-    private fun getSigners(attachmentBytes: ByteArray) =
-            JarInputStream(attachmentBytes.inputStream()).use(JarSignatureCollector::collectSigners)
+    private fun saveChunks(id: AttachmentId, jarFile: Path) {
+        val session = currentDBSession()
+        jarFile.read { input ->
+            var chunkIndex = 0
+            while (true) {
+                val bytes = input.readNBytes(chunkSize)
+                if (bytes.isEmpty()) break
+                val chunk = DBAttachmentChunk(ChunkKey(id.toString(), chunkIndex++), bytes)
+                session.save(chunk)
+                // Write each chunk out as it is read rather than holding them all in the session until commit
+                session.flush()
+                session.evict(chunk)
+            }
+        }
+    }
+
+    private fun getSigners(jarFile: Path) =
+            jarFile.read { JarInputStream(it).use(JarSignatureCollector::collectSigners) }
 
-    private fun getVersion(attachmentBytes: ByteArray) =
-            JarInputStream(attachmentBytes.inputStream()).use {
-                it.manifest?.mainAttributes?.getValue(CORDAPP_CONTRACT_VERSION)?.toIntOrNull() ?: DEFAULT_CORDAPP_VERSION
+    private fun getVersion(jarFile: Path) =
+            jarFile.read {
+                JarInputStream(it).use { jar ->
+                    jar.manifest?.mainAttributes?.getValue(CORDAPP_CONTRACT_VERSION)?.toIntOrNull() ?: DEFAULT_CORDAPP_VERSION
+                }
             }
 
     @Suppress("OVERRIDE_DEPRECATION")
@@ -581,6 +716,6 @@ class NodeAttachmentService @JvmOverloads constructor(
         return createAttachmentsQuery(
             criteria,
             null
-        ).resultStream.map { it.filename to createAttachmentFromDatabase(it) }
+        ).resultStream.map { it.filename to createAttachmentFromDatabase(it) { loadContent(it) } }
     }
 }
@@ -8,8 +8,11 @@ import net.corda.node.services.api.NodePropertiesStore.FlowsDrainingModeOperatio
 import net.corda.node.utilities.PersistentMap
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
+import org.hibernate.annotations.Cache
+import org.hibernate.annotations.CacheConcurrencyStrategy
 import org.slf4j.Logger
 import rx.subjects.PublishSubject
+import javax.persistence.Cacheable
 import javax.persistence.Column
 import javax.persistence.Entity
 import javax.persistence.Id
@@ -31,6 +34,8 @@ class NodePropertiesPersistentStore(readPhysicalNodeId: () -> String, database:
 
     @Entity
     @Table(name = "${NODE_DATABASE_PREFIX}properties")
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "${NODE_DATABASE_PREFIX}properties")
     class DBNodeProperty(
             @Id
             @Column(name = "property_key", nullable = false)
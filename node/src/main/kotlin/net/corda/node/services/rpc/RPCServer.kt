@@ -1,6 +1,8 @@
 package net.corda.node.services.rpc
 
 import co.paralleluniverse.common.util.SameThreadExecutor
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
 import com.github.benmanes.caffeine.cache.Cache
 import com.github.benmanes.caffeine.cache.Caffeine
 import com.github.benmanes.caffeine.cache.RemovalListener
@@ -24,6 +26,7 @@ import net.corda.core.utilities.Try
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.days
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.minutes
 import net.corda.core.utilities.seconds
 import net.corda.core.utilities.trace
 import net.corda.node.internal.security.AuthorizingSubject
@@ -75,13 +78,30 @@ data class RPCServerConfiguration(
         /** The interval of subscription reaping */
         val reapInterval: Duration,
         /** The cache expiry of a deduplication watermark per client. */
-        val deduplicationCacheExpiry: Duration
+        val deduplicationCacheExpiry: Duration,
+        /** The maximum number of items in each chunk of a result streamed to a client through an [RpcCursor]. */
+        val cursorChunkSize: Int,
+        /** How long a streamed result is kept open while its client does not ask for the next chunk. */
+        val cursorIdleTimeout: Duration,
+        /**
+         * The number of threads serialising and sending replies and observations to clients. The messages to a client are always sent
+         * by the same thread, so they stay in order, while a client with many or slow observations only holds up the others sharing
+         * its thread.
+         */
+        val senderThreadCount: Int
 ) {
+    init {
+        require(senderThreadCount > 0) { "senderThreadCount must be positive" }
+    }
+
     companion object {
         val DEFAULT = RPCServerConfiguration(
                 rpcThreadPoolSize = 4,
                 reapInterval = 1.seconds,
-                deduplicationCacheExpiry = 1.days
+                deduplicationCacheExpiry = 1.days,
+                cursorChunkSize = 100,
+                cursorIdleTimeout = 5.minutes,
+                senderThreadCount = 4
         )
     }
 }
@@ -94,6 +114,13 @@ data class RPCServerConfiguration(
  *
  * The way this is done is similar to that in [net.corda.client.rpc.internal.RPCClient], we use AMQP and add a context to stores the subscription map.
  *
+ * Replies and observations are sent by [RPCServerConfiguration.senderThreadCount] sender threads, each with its own session and
+ * deduplication sequence. Clients are assigned to a sender by their address, so the messages to each client are sent in the order
+ * they were produced.
+ *
+ * An RPC returning an [RpcCursorList] has its result streamed to the client in chunks, which the client fetches one at a time, if the
+ * client supports it. Older clients receive the whole list in the reply.
+ *
  * NB: The order of elements in [opsList] matters in case of legacy RPC clients who do not specify class name of the RPC Ops they are after.
  * For Legacy RPC clients who supply method name alone, the calls are being targeted at first element in [opsList].
  */
@@ -105,7 +132,8 @@ class RPCServer(
         private val securityManager: RPCSecurityManager,
         private val nodeLegalName: CordaX500Name,
         private val rpcConfiguration: RPCServerConfiguration,
-        private val cacheFactory: NamedCacheFactory
+        private val cacheFactory: NamedCacheFactory,
+        private val metricRegistry: MetricRegistry? = null
 ) {
     private companion object {
         private val log = contextLogger()
@@ -124,7 +152,9 @@ class RPCServer(
         object None : BufferOrNone()
     }
 
-    private data class MessageAndContext(val message: RPCApi.ServerToClient.RpcReply, val context: ObservableContext)
+    private data class MessageAndContext(val message: RPCApi.ServerToClient, val context: ObservableContext)
+
+    private class OpenCursor(val clientAddress: SimpleString, val validatedUser: String?, val cursor: RpcCursor<*>)
 
     private val lifeCycle = LifeCycle(State.UNSTARTED)
     /**
@@ -136,29 +166,27 @@ class RPCServer(
     private val methodTable: Map<String, InvocationTarget>
     /** The observable subscription mapping. */
     private val observableMap = createObservableSubscriptionMap()
+    /** The results being streamed to clients, by the ID of the request they are the reply to. */
+    private val cursorMap = createCursorMap()
     /** A mapping from client addresses to IDs of associated Observables */
     private val clientAddressToObservables = ConcurrentHashMap<SimpleString, HashSet<InvocationId>>()
     /** The scheduled reaper handle. */
     private var reaperScheduledFuture: ScheduledFuture<*>? = null
 
-    private var senderThread: Thread? = null
+    private var senders: List<RpcSender> = emptyList()
     private var rpcExecutor: ScheduledExecutorService? = null
     private var reaperExecutor: ScheduledExecutorService? = null
 
     private var sessionFactory: ClientSessionFactory? = null
-    private var producerSession: ClientSession? = null
     private var consumerSession: ClientSession? = null
-    private var rpcProducer: ClientProducer? = null
     private var rpcConsumer: ClientConsumer? = null
     private var clientBindingRemovalConsumer: ClientConsumer? = null
     private var clientBindingAdditionConsumer: ClientConsumer? = null
     private var serverControl: ActiveMQServerControl? = null
 
     private val responseMessageBuffer = ConcurrentHashMap<SimpleString, BufferOrNone>()
-    private val sendJobQueue = LinkedBlockingQueue<RpcSendJob>()
 
     private val deduplicationChecker = DeduplicationChecker(rpcConfiguration.deduplicationCacheExpiry, cacheFactory = cacheFactory)
-    private var deduplicationIdentity: String? = null
 
     constructor (
             ops: RPCOps,
@@ -168,8 +196,10 @@ class RPCServer(
             securityManager: RPCSecurityManager,
             nodeLegalName: CordaX500Name,
             rpcConfiguration: RPCServerConfiguration,
-            cacheFactory: NamedCacheFactory
-    ) : this(listOf(ops), rpcServerUsername, rpcServerPassword, serverLocator, securityManager, nodeLegalName, rpcConfiguration, cacheFactory)
+            cacheFactory: NamedCacheFactory,
+            metricRegistry: MetricRegistry? = null
+    ) : this(listOf(ops), rpcServerUsername, rpcServerPassword, serverLocator, securityManager, nodeLegalName, rpcConfiguration, cacheFactory,
+            metricRegistry)
 
     init {
         val mutableMethodTable = mutableMapOf<String, InvocationTarget>()
@@ -214,11 +244,24 @@ class RPCServer(
         return cacheFactory.buildNamed(Caffeine.newBuilder().removalListener(onObservableRemove).executor(SameThreadExecutor.getExecutor()), "RPCServer_observableSubscription")
     }
 
+    private fun createCursorMap(): Cache<InvocationId, OpenCursor> {
+        val onCursorRemove = RemovalListener<InvocationId, OpenCursor> { key, value, cause ->
+            log.debug { "Closing cursor with id $key because of $cause" }
+            value!!.cursor.close()
+        }
+        return cacheFactory.buildNamed(
+                Caffeine.newBuilder()
+                        .expireAfterAccess(rpcConfiguration.cursorIdleTimeout)
+                        .removalListener(onCursorRemove)
+                        .executor(SameThreadExecutor.getExecutor()),
+                "RPCServer_cursors"
+        )
+    }
+
     fun start(activeMqServerControl: ActiveMQServerControl) {
         try {
             lifeCycle.requireState(State.UNSTARTED)
             log.info("Starting RPC server with configuration $rpcConfiguration")
-            senderThread = startSenderThread()
             rpcExecutor = Executors.newScheduledThreadPool(
                     rpcConfiguration.rpcThreadPoolSize,
                     ThreadFactoryBuilder().setNameFormat("rpc-server-handler-pool-%d").build()
@@ -234,17 +277,22 @@ class RPCServer(
             )
 
             sessionFactory = serverLocator.createSessionFactory()
-            producerSession = sessionFactory!!.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
-            createRpcProducer(producerSession!!)
+            val deduplicationIdentity = UUID.randomUUID().toString()
+            senders = (0 until rpcConfiguration.senderThreadCount).map { index ->
+                RpcSender(
+                        index,
+                        "$deduplicationIdentity-$index",
+                        sessionFactory!!.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
+                )
+            }
             consumerSession = sessionFactory!!.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
             createRpcConsumer(consumerSession!!)
             createNotificationConsumers(consumerSession!!)
             serverControl = activeMqServerControl
-            deduplicationIdentity = UUID.randomUUID().toString()
             lifeCycle.transition(State.UNSTARTED, State.STARTED)
             // We delay the consumer session start because Artemis starts delivering messages immediately, so we need to be
             // fully initialised.
-            producerSession!!.start()
+            senders.forEach { it.start() }
             consumerSession!!.start()
         } catch (exception: Throwable) {
             close()
@@ -252,10 +300,6 @@ class RPCServer(
         }
     }
 
-    private fun createRpcProducer(producerSession: ClientSession) {
-        rpcProducer = producerSession.createProducer()
-    }
-
     private fun createRpcConsumer(consumerSession: ClientSession) {
         rpcConsumer = consumerSession.createConsumer(RPCApi.RPC_SERVER_QUEUE_NAME)
         rpcConsumer!!.setMessageHandler(this::clientArtemisMessageHandler)
@@ -268,49 +312,17 @@ class RPCServer(
         clientBindingAdditionConsumer!!.setMessageHandler(this::bindingAdditionArtemisMessageHandler)
     }
 
-    private fun startSenderThread(): Thread {
-        return thread(name = "rpc-server-sender", isDaemon = true) {
-            var deduplicationSequenceNumber = 0L
-            while (true) {
-                val job = sendJobQueue.take()
-                when (job) {
-                    is RpcSendJob.Send -> handleSendJob(deduplicationSequenceNumber++, job)
-                    RpcSendJob.Stop -> return@thread
-                }
-            }
-        }
-    }
-
-    private fun handleSendJob(sequenceNumber: Long, job: RpcSendJob.Send) {
-        try {
-            val artemisMessage = producerSession!!.createMessage(false)
-            if (job.database != null) {
-                contextDatabase = job.database
-            }
-            // We must do the serialisation here as any encountered Observables may already have events, which would
-            // trigger more sends. We must make sure that the root of the Observables (e.g. the RPC reply) is sent
-            // before any child observations.
-            job.message.writeToClientMessage(job.serializationContext, artemisMessage)
-            artemisMessage.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, sequenceNumber)
-            rpcProducer!!.send(job.clientAddress, artemisMessage)
-            log.debug { "<- RPC <- ${job.message}" }
-        } catch (throwable: Throwable) {
-            log.error("Failed to send message, kicking client. Message was ${job.message}", throwable)
-            serverControl!!.closeConsumerConnectionsForAddress(job.clientAddress.toString())
-            invalidateClient(job.clientAddress)
-            if (throwable is VirtualMachineError) throw throwable
-        }
-    }
-
     fun close(queueDrainTimeout: Duration = 5.seconds) {
-        // Putting Stop message onto the queue will eventually make senderThread to stop.
-        sendJobQueue.put(RpcSendJob.Stop)
-        senderThread?.join(queueDrainTimeout.toMillis())
+        // Putting Stop message onto the queues will eventually make the sender threads stop.
+        senders.forEach { it.stop() }
+        val drainDeadline = System.nanoTime() + queueDrainTimeout.toNanos()
+        senders.forEach { it.join(Duration.ofNanos(maxOf(drainDeadline - System.nanoTime(), 0))) }
         reaperScheduledFuture?.cancel(false)
         rpcExecutor?.shutdownNow()
         reaperExecutor?.shutdownNow()
         sessionFactory?.close()
         observableMap.invalidateAll()
+        cursorMap.invalidateAll()
         reapSubscriptions()
         lifeCycle.justTransition(State.FINISHED)
     }
@@ -357,6 +369,7 @@ class RPCServer(
         if (observableIds != null) {
             observableMap.invalidateAll(observableIds)
         }
+        cursorMap.asMap().values.removeIf { it.clientAddress == clientAddress }
         responseMessageBuffer.remove(clientAddress)
     }
 
@@ -368,11 +381,12 @@ class RPCServer(
         fun executeRpc(context : RpcAuthContext, clientToServer : RPCApi.ClientToServer.RpcRequest, arguments : Try.Success<List<Any?>>, isQuickRpc : Boolean) {
             if (isQuickRpc) {
                 val result = invokeRpc(context, clientToServer.methodName, arguments.value)
-                sendReply(clientToServer.replyId, clientToServer.clientAddress, result)
+                sendResult(clientToServer, artemisMessage.getStringProperty(Message.HDR_VALIDATED_USER), result)
             } else {
+                val validatedUser = artemisMessage.getStringProperty(Message.HDR_VALIDATED_USER)
                 rpcExecutor!!.submit {
                     val result = invokeRpc(context, clientToServer.methodName, arguments.value)
-                    sendReply(clientToServer.replyId, clientToServer.clientAddress, result)
+                    sendResult(clientToServer, validatedUser, result)
                 }
             }
         }
@@ -389,6 +403,9 @@ class RPCServer(
                 is RPCApi.ClientToServer.ObservablesClosed -> {
                     log.debug { "-> RPC observable closed -> $clientToServer"}
                 }
+                is RPCApi.ClientToServer.CursorFetch -> {
+                    log.debug { "-> RPC cursor fetch -> $clientToServer" }
+                }
             }
         }
         try {
@@ -456,6 +473,24 @@ class RPCServer(
                 }
                 is RPCApi.ClientToServer.ObservablesClosed -> {
                     observableMap.invalidateAll(clientToServer.ids)
+                    cursorMap.invalidateAll(clientToServer.ids)
+                }
+                is RPCApi.ClientToServer.CursorFetch -> {
+                    val deduplicationSequenceNumber = artemisMessage.getLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME)
+                    val validatedUser = artemisMessage.getStringProperty(Message.HDR_VALIDATED_USER)
+                    val openCursor = cursorMap.getIfPresent(clientToServer.id)
+                    if (openCursor == null) {
+                        log.debug { "Received fetch for unknown or expired cursor ${clientToServer.id}" }
+                        // The client waits for the next chunk until it is told otherwise.
+                        val expired = RPCException("The cursor of RPC ${clientToServer.id} has expired or was never opened")
+                        sendChunk(clientToServer.clientAddress, clientToServer.id, Try.Failure(expired), isLast = true)
+                    } else if (!deduplicationChecker.checkDuplicateMessageId(openCursor.clientAddress, deduplicationSequenceNumber)) {
+                        if (openCursor.validatedUser == validatedUser) {
+                            rpcExecutor!!.submit { sendNextChunk(clientToServer.id, openCursor) }
+                        } else {
+                            log.warn("User $validatedUser attempted to fetch from a cursor opened by ${openCursor.validatedUser}")
+                        }
+                    }
                 }
             }
         } finally {
@@ -482,16 +517,77 @@ class RPCServer(
         }
     }
 
+    private fun sendResult(request: RPCApi.ClientToServer.RpcRequest, validatedUser: String?, result: Try<Any>) {
+        val cursorList = (result as? Try.Success)?.value as? RpcCursorList<*>
+        when {
+            cursorList == null -> sendReply(request.replyId, request.clientAddress, result)
+            request.supportsCursors -> openCursor(request.replyId, request.clientAddress, validatedUser, cursorList)
+            // The client would not know what to do with the chunks, so it is sent the whole list.
+            else -> sendReply(request.replyId, request.clientAddress, Try.on { ArrayList(cursorList) })
+        }
+    }
+
+    private fun openCursor(replyId: InvocationId, clientAddress: SimpleString, validatedUser: String?, cursorList: RpcCursorList<*>) {
+        val cursor = try {
+            cursorList.openCursor()
+        } catch (e: Exception) {
+            log.warn("Failed to open cursor for RPC reply $replyId", e)
+            sendReply(replyId, clientAddress, Try.Failure(e))
+            return
+        }
+        val openCursor = OpenCursor(clientAddress, validatedUser, cursor)
+        cursorMap.put(replyId, openCursor)
+        sendNextChunk(replyId, openCursor)
+    }
+
+    /**
+     * Reads the next chunk of a streamed result and sends it to the client. Nothing more is read from the cursor until the client
+     * has received the chunk and asked for the next one, which bounds the memory used by each result regardless of the speed of
+     * its client.
+     */
+    private fun sendNextChunk(replyId: InvocationId, openCursor: OpenCursor) {
+        val chunkSize = rpcConfiguration.cursorChunkSize
+        // A client should only ever have one fetch outstanding, but the cursor must not be read concurrently if it does not.
+        val items = synchronized(openCursor) {
+            Try.on { openCursor.cursor.next(chunkSize) }
+        }
+        val isLast = items !is Try.Success || items.value.size < chunkSize
+        if (isLast) {
+            cursorMap.invalidate(replyId)
+        }
+        if (items is Try.Failure) {
+            log.warn("Failed to read next chunk of cursor $replyId", items.exception)
+        }
+        sendChunk(openCursor.clientAddress, replyId, items, isLast)
+    }
+
+    private fun sendChunk(clientAddress: SimpleString, replyId: InvocationId, items: Try<List<Any?>>, isLast: Boolean) {
+        val chunk = RPCApi.ServerToClient.CursorChunk(
+                id = replyId,
+                items = items,
+                isLast = isLast,
+                deduplicationIdentity = senderFor(clientAddress).deduplicationIdentity
+        )
+        val observableContext = ObservableContext(
+                observableMap,
+                clientAddressToObservables,
+                senderFor(clientAddress).deduplicationIdentity,
+                clientAddress
+        )
+        val buffered = bufferIfQueueNotBound(clientAddress, chunk, observableContext)
+        if (!buffered) observableContext.sendMessage(chunk)
+    }
+
     private fun sendReply(replyId: InvocationId, clientAddress: SimpleString, result: Try<Any>) {
         val reply = RPCApi.ServerToClient.RpcReply(
                 id = replyId,
                 result = result,
-                deduplicationIdentity = deduplicationIdentity!!
+                deduplicationIdentity = senderFor(clientAddress).deduplicationIdentity
         )
         val observableContext = ObservableContext(
                 observableMap,
                 clientAddressToObservables,
-                deduplicationIdentity!!,
+                senderFor(clientAddress).deduplicationIdentity,
                 clientAddress
         )
 
@@ -506,7 +602,7 @@ class RPCServer(
      * but the client queue is not yet set up. We buffer the messages and flush the buffer only once
      * we receive a notification that the client queue bindings were added.
      */
-    private fun bufferIfQueueNotBound(clientAddress: SimpleString, message: RPCApi.ServerToClient.RpcReply, context: ObservableContext): Boolean {
+    private fun bufferIfQueueNotBound(clientAddress: SimpleString, message: RPCApi.ServerToClient, context: ObservableContext): Boolean {
         val clientBuffer = responseMessageBuffer.compute(clientAddress) { _, value ->
             when (value) {
                 null -> BufferOrNone.Buffer(ArrayList()).apply {
@@ -523,6 +619,7 @@ class RPCServer(
 
     private fun reapSubscriptions() {
         observableMap.cleanUp()
+        cursorMap.cleanUp()
     }
 
     private fun ClientMessage.context(sessionId: Trace.SessionId, arguments: List<Any?>): RpcAuthContext {
@@ -556,11 +653,74 @@ class RPCServer(
                 serializationContext = SerializationDefaults.RPC_SERVER_CONTEXT)
 
         override fun sendMessage(serverToClient: RPCApi.ServerToClient) {
-            sendJobQueue.put(RpcSendJob.Send(contextDatabaseOrNull, clientAddress,
+            senderFor(clientAddress).send(RpcSendJob.Send(contextDatabaseOrNull, clientAddress,
                     serializationContextWithObservableContext, serverToClient))
         }
     }
 
+    private fun senderFor(clientAddress: SimpleString): RpcSender = senders[Math.floorMod(clientAddress.hashCode(), senders.size)]
+
+    /**
+     * Sends the messages to the clients assigned to it, in the order they were queued, from its own thread and session. Each sender
+     * numbers its messages with its own deduplication sequence under its own [deduplicationIdentity], so a client which is
+     * assigned to a different sender after reconnecting does not discard its messages as duplicates.
+     */
+    private inner class RpcSender(private val index: Int, val deduplicationIdentity: String, private val producerSession: ClientSession) {
+        private val rpcProducer: ClientProducer = producerSession.createProducer()
+        private val sendJobQueue = LinkedBlockingQueue<RpcSendJob>()
+        private val queueDepthMetricName = "RPCServer.Sender$index.QueueDepth"
+        private var senderThread: Thread? = null
+
+        fun start() {
+            metricRegistry?.register(queueDepthMetricName, Gauge { sendJobQueue.size })
+            producerSession.start()
+            senderThread = thread(name = "rpc-server-sender-$index", isDaemon = true) {
+                var deduplicationSequenceNumber = 0L
+                while (true) {
+                    val job = sendJobQueue.take()
+                    when (job) {
+                        is RpcSendJob.Send -> handleSendJob(deduplicationSequenceNumber++, job)
+                        RpcSendJob.Stop -> return@thread
+                    }
+                }
+            }
+        }
+
+        fun send(job: RpcSendJob.Send) {
+            sendJobQueue.put(job)
+        }
+
+        fun stop() {
+            sendJobQueue.put(RpcSendJob.Stop)
+        }
+
+        fun join(timeout: Duration) {
+            senderThread?.join(timeout.toMillis())
+            metricRegistry?.remove(queueDepthMetricName)
+        }
+
+        private fun handleSendJob(sequenceNumber: Long, job: RpcSendJob.Send) {
+            try {
+                val artemisMessage = producerSession.createMessage(false)
+                if (job.database != null) {
+                    contextDatabase = job.database
+                }
+                // We must do the serialisation here as any encountered Observables may already have events, which would
+                // trigger more sends. We must make sure that the root of the Observables (e.g. the RPC reply) is sent
+                // before any child observations.
+                job.message.writeToClientMessage(job.serializationContext, artemisMessage)
+                artemisMessage.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, sequenceNumber)
+                rpcProducer.send(job.clientAddress, artemisMessage)
+                log.debug { "<- RPC <- ${job.message}" }
+            } catch (throwable: Throwable) {
+                log.error("Failed to send message, kicking client. Message was ${job.message}", throwable)
+                serverControl!!.closeConsumerConnectionsForAddress(job.clientAddress.toString())
+                invalidateClient(job.clientAddress)
+                if (throwable is VirtualMachineError) throw throwable
+            }
+        }
+    }
+
     private sealed class RpcSendJob {
         data class Send(
                 // TODO HACK this is because during serialisation we subscribe to observables that may use
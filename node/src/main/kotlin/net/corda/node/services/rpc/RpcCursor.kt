@@ -0,0 +1,77 @@
+package net.corda.node.services.rpc
+
+/**
+ * A source of the items of an RPC result which the [RPCServer] sends to the client a chunk at a time, only reading the next chunk
+ * once the client has asked for it. The server therefore holds at most one chunk of a result in memory per call, however large
+ * the result is.
+ *
+ * Each call to [next] may happen on a different thread, so implementations should not hold on to database transactions or other
+ * thread bound resources between calls.
+ */
+interface RpcCursor<out T> : AutoCloseable {
+    /**
+     * @return The next [maxItems] items of the result, or fewer if the result has no more.
+     */
+    fun next(maxItems: Int): List<T>
+
+    override fun close() = Unit
+
+    companion object {
+        /**
+         * A cursor over a result which is already in memory, so that it is still sent in chunks rather than as one message.
+         */
+        fun <S, T> of(items: List<S>, transform: (S) -> T): RpcCursor<T> = object : RpcCursor<T> {
+            private var position = 0
+
+            override fun next(maxItems: Int): List<T> {
+                val end = minOf(position + maxItems, items.size)
+                return items.subList(position, end).map(transform).also { position = end }
+            }
+        }
+
+        /**
+         * A cursor reading a page of items at a time from a store that can return the items following a given key, in key order.
+         */
+        fun <T, K : Any> keyset(key: (T) -> K, page: (afterKey: K?, maxItems: Int) -> List<T>): RpcCursor<T> = object : RpcCursor<T> {
+            private var lastKey: K? = null
+            private var exhausted = false
+
+            override fun next(maxItems: Int): List<T> {
+                if (exhausted) return emptyList()
+                val items = page(lastKey, maxItems)
+                exhausted = items.size < maxItems
+                items.lastOrNull()?.let { lastKey = key(it) }
+                return items
+            }
+        }
+    }
+}
+
+/**
+ * The result of an RPC returning a [List] whose items should be streamed by the [RPCServer] through an [RpcCursor], rather than
+ * serialised into a single reply.
+ *
+ * Callers within the node see an ordinary list, which is only read in full from [openCursor] when it is first accessed.
+ */
+class RpcCursorList<T>(private val cursorFactory: () -> RpcCursor<T>) : AbstractList<T>() {
+    companion object {
+        private const val MATERIALISE_CHUNK_SIZE = 1000
+    }
+
+    private val items: List<T> by lazy {
+        openCursor().use { cursor ->
+            val items = ArrayList<T>()
+            do {
+                val chunk = cursor.next(MATERIALISE_CHUNK_SIZE)
+                items += chunk
+            } while (chunk.size == MATERIALISE_CHUNK_SIZE)
+            items
+        }
+    }
+
+    fun openCursor(): RpcCursor<T> = cursorFactory()
+
+    override val size: Int get() = items.size
+
+    override fun get(index: Int): T = items[index]
+}
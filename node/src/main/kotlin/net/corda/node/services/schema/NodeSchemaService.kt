@@ -46,7 +46,9 @@ class NodeSchemaService(extraSchemas: Set<MappedSchema> = emptySet()) : SchemaSe
                     BasicHSMKeyManagementService.PersistentKey::class.java,
                     NodeSchedulerService.PersistentScheduledState::class.java,
                     NodeAttachmentService.DBAttachment::class.java,
+                    NodeAttachmentService.DBAttachmentChunk::class.java,
                     P2PMessageDeduplicator.ProcessedMessage::class.java,
+                    P2PMessageDeduplicator.SenderHighWaterMark::class.java,
                     PersistentIdentityService.PersistentPublicKeyHashToCertificate::class.java,
                     PersistentIdentityService.PersistentPublicKeyHashToParty::class.java,
                     PersistentIdentityService.PersistentHashToPublicKey::class.java,
@@ -133,6 +133,11 @@ sealed class Action {
      */
     data class MoveFlowToPaused(val currentState: StateMachineState) : Action()
 
+    /**
+     * Evict the flow corresponding to [currentState] from memory, leaving its persisted checkpoint to restore it from.
+     */
+    data class MoveFlowToDehydrated(val currentState: StateMachineState) : Action()
+
     /**
      * Schedule [event] to self.
      */
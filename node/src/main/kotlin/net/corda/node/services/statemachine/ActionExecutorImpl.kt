@@ -68,6 +68,7 @@ internal class ActionExecutorImpl(
             is Action.ScheduleFlowTimeout -> scheduleFlowTimeout(action)
             is Action.CancelFlowTimeout -> cancelFlowTimeout(action)
             is Action.MoveFlowToPaused -> executeMoveFlowToPaused(action)
+            is Action.MoveFlowToDehydrated -> executeMoveFlowToDehydrated(action)
             is Action.UpdateFlowStatus -> executeUpdateFlowStatus(action)
             is Action.RemoveFlowException -> executeRemoveFlowException(action)
             is Action.AddFlowException -> executeAddFlowException(action)
@@ -201,6 +202,11 @@ internal class ActionExecutorImpl(
         stateMachineManager.moveFlowToPaused(action.currentState)
     }
 
+    @Suspendable
+    private fun executeMoveFlowToDehydrated(action: Action.MoveFlowToDehydrated) {
+        stateMachineManager.moveFlowToDehydrated(action.currentState)
+    }
+
     @Suspendable
     @Throws(SQLException::class)
     private fun executeCreateTransaction() {
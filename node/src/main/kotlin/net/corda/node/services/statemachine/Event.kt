@@ -187,6 +187,14 @@ sealed class Event {
         override fun toString() = "Pause"
     }
 
+    /**
+     * Evict the flow from memory if it is idle waiting for a message, so that it is restored from its checkpoint when the message
+     * arrives.
+     */
+    object Dehydrate : Event() {
+        override fun toString() = "Dehydrate"
+    }
+
     /**
      * Indicates that an event was generated by an external event and that external event needs to be replayed if we retry the flow,
      * even if it has not yet been processed and placed on the pending de-duplication handlers list.
@@ -0,0 +1,59 @@
+package net.corda.node.services.statemachine
+
+import net.corda.core.context.InvocationOrigin
+import net.corda.core.flows.StateMachineRunId
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Bounds the number of flows started through RPC which are in flight at once, so that a client starting flows in bulk cannot swamp
+ * the node with more flows than it can progress.
+ *
+ * Start events arriving while [limit] such flows are in flight are queued in arrival order, and handed to [redeliver] one at a time
+ * as admitted flows finish. Flows started by peers, by the scheduler or by services are never held back, as they may be needed for
+ * the admitted flows themselves to finish. A [limit] of zero admits every flow as soon as it arrives.
+ */
+@ThreadSafe
+internal class FlowAdmissionController(
+        val limit: Int,
+        private val redeliver: (ExternalEvent.ExternalStartFlowEvent<*>) -> Unit
+) {
+    private val admitted = HashSet<StateMachineRunId>()
+    private val queued = ArrayDeque<ExternalEvent.ExternalStartFlowEvent<*>>()
+
+    val inFlight: Int
+        @Synchronized get() = admitted.size
+
+    val queueDepth: Int
+        @Synchronized get() = queued.size
+
+    /**
+     * @return true if the flow of [event] can be started now, or false if [event] has been queued until there is room for it.
+     */
+    @Synchronized
+    fun tryAdmit(event: ExternalEvent.ExternalStartFlowEvent<*>): Boolean {
+        if (limit == 0 || event.context.origin !is InvocationOrigin.RPC || event.flowId in admitted) return true
+        if (admitted.size < limit) {
+            admitted += event.flowId
+            return true
+        }
+        queued.addLast(event)
+        return false
+    }
+
+    /**
+     * Called once the flow [flowId] is no longer in flight, admitting the next queued flow in its place.
+     */
+    fun release(flowId: StateMachineRunId) {
+        val next = synchronized(this) {
+            if (!admitted.remove(flowId)) return
+            queued.removeFirstOrNull()?.also { admitted += it.flowId }
+        }
+        next?.let(redeliver)
+    }
+
+    /**
+     * Removes and returns every queued event, for when the node is shutting down and they will never be admitted.
+     */
+    @Synchronized
+    fun drain(): List<ExternalEvent.ExternalStartFlowEvent<*>> = queued.toList().also { queued.clear() }
+}
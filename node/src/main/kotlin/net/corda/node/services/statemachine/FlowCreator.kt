@@ -93,15 +93,16 @@ class FlowCreator(
         resultFuture: OpenFuture<Any?> = openFuture(),
         firstRestore: Boolean = true,
         isKilled: Boolean = false,
-        progressTracker: ProgressTracker? = null
+        progressTracker: ProgressTracker? = null,
+        updateCompatibility: Boolean = true
     ): Flow<*>? {
         val fiber = oldCheckpoint.getFiberFromCheckpoint(runId, firstRestore)
         var checkpoint = oldCheckpoint
         if (fiber == null) {
-            updateCompatibleInDb(runId, false)
+            if (updateCompatibility) updateCompatibleInDb(runId, false)
             return null
         } else if (!oldCheckpoint.compatible) {
-            updateCompatibleInDb(runId, true)
+            if (updateCompatibility) updateCompatibleInDb(runId, true)
             checkpoint = checkpoint.copy(compatible = true)
         }
 
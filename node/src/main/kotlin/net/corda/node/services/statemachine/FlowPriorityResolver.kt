@@ -0,0 +1,46 @@
+package net.corda.node.services.statemachine
+
+import net.corda.core.flows.FlowPriority
+import net.corda.core.flows.FlowPriorityClass
+import net.corda.core.flows.InitiatedBy
+import net.corda.core.utilities.contextLogger
+import net.corda.node.services.config.FlowPriorityConfig
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Works out the [FlowPriorityClass] of flow classes. The node configuration takes precedence over a [FlowPriority] annotation, and
+ * a flow which has neither takes the priority of the flow which initiates it, if any.
+ */
+internal class FlowPriorityResolver(config: FlowPriorityConfig?, private val classloader: ClassLoader) {
+    private companion object {
+        private val logger = contextLogger()
+    }
+
+    private val overrides = config?.overrides?.associate { it.flowClass to it.priority } ?: emptyMap()
+    private val priorities = ConcurrentHashMap<Class<*>, FlowPriorityClass>()
+    private val initiatorPriorities = ConcurrentHashMap<String, FlowPriorityClass>()
+
+    fun priorityOf(flowClass: Class<*>): FlowPriorityClass {
+        return priorities.computeIfAbsent(flowClass) {
+            declaredPriorityOf(it)
+                ?: it.getAnnotation(InitiatedBy::class.java)?.let { initiatedBy -> declaredPriorityOf(initiatedBy.value.java) }
+                ?: FlowPriorityClass.NORMAL
+        }
+    }
+
+    /** The priority of the session initiation messages sent by the flow named [initiatorFlowClassName]. */
+    fun priorityOfInitiator(initiatorFlowClassName: String): FlowPriorityClass {
+        return initiatorPriorities.computeIfAbsent(initiatorFlowClassName) { name ->
+            overrides[name] ?: try {
+                priorityOf(Class.forName(name, false, classloader))
+            } catch (e: ClassNotFoundException) {
+                logger.debug("Unable to load initiating flow class $name to find its priority", e)
+                FlowPriorityClass.NORMAL
+            }
+        }
+    }
+
+    private fun declaredPriorityOf(flowClass: Class<*>): FlowPriorityClass? {
+        return overrides[flowClass.name] ?: flowClass.getAnnotation(FlowPriority::class.java)?.value
+    }
+}
@@ -0,0 +1,124 @@
+package net.corda.node.services.statemachine
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.FlowResourceUsage
+import net.corda.nodeapi.internal.persistence.JdbcStatementAccounting
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Adds up the CPU time, heap allocation and JDBC work used by flows, per running flow and per flow class. The totals of each class
+ * are also published to [metrics] under `Flows.Resources.<flow class>`, and so over JMX.
+ *
+ * Work is measured with [startMeasuring] and [stopMeasuring] on the thread doing it, using the JVM's per-thread counters. A flow's
+ * own code is measured from the moment it is resumed until its next event, which is processed on the same thread without parking.
+ */
+class FlowResourceAccounting(private val metrics: MetricRegistry) {
+    private companion object {
+        private val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        private val cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported && threads.isThreadCpuTimeEnabled
+        private val allocationSupported = threads.isThreadAllocatedMemorySupported && threads.isThreadAllocatedMemoryEnabled
+
+        private fun cpuNanos(): Long = if (cpuTimeSupported) threads.currentThreadCpuTime else 0
+        private fun allocatedBytes(): Long = if (allocationSupported) threads.currentThreadAllocatedBytes else 0
+    }
+
+    /** A measurement started on [thread]. */
+    class Measurement internal constructor(internal val thread: Thread, internal val cpuNanos: Long, internal val allocatedBytes: Long)
+
+    private class Totals(val flowClassName: String) {
+        val transitions = LongAdder()
+        val cpuNanos = LongAdder()
+        val allocatedBytes = LongAdder()
+        val jdbcStatements = LongAdder()
+        val jdbcNanos = LongAdder()
+
+        fun add(transitions: Long, cpuNanos: Long, allocatedBytes: Long, jdbc: JdbcStatementAccounting.Usage) {
+            this.transitions.add(transitions)
+            this.cpuNanos.add(cpuNanos)
+            this.allocatedBytes.add(allocatedBytes)
+            this.jdbcStatements.add(jdbc.statements)
+            this.jdbcNanos.add(jdbc.nanos)
+        }
+
+        fun toUsage() = FlowResourceUsage(
+                flowClassName,
+                transitions.sum(),
+                cpuNanos.sum(),
+                allocatedBytes.sum(),
+                jdbcStatements.sum(),
+                jdbcNanos.sum()
+        )
+    }
+
+    private val byClass = ConcurrentHashMap<String, Totals>()
+    private val byFlow = ConcurrentHashMap<StateMachineRunId, Totals>()
+    private val flowCodeMeasurements = ConcurrentHashMap<StateMachineRunId, Measurement>()
+
+    val usageByClass: List<FlowResourceUsage> get() = byClass.values.map { it.toUsage() }
+
+    val usageByFlow: Map<StateMachineRunId, FlowResourceUsage> get() = byFlow.mapValues { it.value.toUsage() }
+
+    fun startMeasuring(): Measurement {
+        JdbcStatementAccounting.start()
+        return Measurement(Thread.currentThread(), cpuNanos(), allocatedBytes())
+    }
+
+    /**
+     * Adds the work done on this thread since [measurement] was started to the totals of flow [flowId], of class [flowClass]. A
+     * measurement started on another thread is discarded, as the thread's counters cannot be compared.
+     *
+     * @param transitions the number of transitions the measurement covers.
+     * @param finished whether the flow has finished, in which case only the totals of its class are kept.
+     */
+    fun stopMeasuring(
+            measurement: Measurement,
+            flowId: StateMachineRunId,
+            flowClass: Class<*>,
+            transitions: Long,
+            finished: Boolean
+    ) {
+        val jdbc = JdbcStatementAccounting.stop()
+        if (measurement.thread !== Thread.currentThread()) return
+        val cpuNanos = cpuNanos() - measurement.cpuNanos
+        val allocatedBytes = allocatedBytes() - measurement.allocatedBytes
+        classTotals(flowClass.name).add(transitions, cpuNanos, allocatedBytes, jdbc)
+        if (finished) {
+            byFlow.remove(flowId)
+        } else {
+            byFlow.computeIfAbsent(flowId) { Totals(flowClass.name) }.add(transitions, cpuNanos, allocatedBytes, jdbc)
+        }
+    }
+
+    /** Starts measuring the code of flow [flowId], which is about to be resumed on this thread. */
+    fun startMeasuringFlowCode(flowId: StateMachineRunId) {
+        flowCodeMeasurements[flowId] = startMeasuring()
+    }
+
+    /** Stops measuring the code of flow [flowId], if it was being measured, as it has returned to the state machine. */
+    fun stopMeasuringFlowCode(flowId: StateMachineRunId, flowClass: Class<*>) {
+        flowCodeMeasurements.remove(flowId)?.let { stopMeasuring(it, flowId, flowClass, transitions = 0, finished = false) }
+    }
+
+    /** Drops the totals of flow [flowId], which has been removed from the state machine. */
+    fun flowRemoved(flowId: StateMachineRunId) {
+        flowCodeMeasurements.remove(flowId)
+        byFlow.remove(flowId)
+    }
+
+    private fun classTotals(flowClassName: String): Totals {
+        return byClass[flowClassName] ?: byClass.computeIfAbsent(flowClassName) { name ->
+            Totals(name).also { totals ->
+                val prefix = "Flows.Resources.$name"
+                metrics.gauge("$prefix.Transitions") { Gauge { totals.transitions.sum() } }
+                metrics.gauge("$prefix.CpuNanos") { Gauge { totals.cpuNanos.sum() } }
+                metrics.gauge("$prefix.AllocatedBytes") { Gauge { totals.allocatedBytes.sum() } }
+                metrics.gauge("$prefix.JdbcStatements") { Gauge { totals.jdbcStatements.sum() } }
+                metrics.gauge("$prefix.JdbcNanos") { Gauge { totals.jdbcNanos.sum() } }
+            }
+        }
+    }
+}
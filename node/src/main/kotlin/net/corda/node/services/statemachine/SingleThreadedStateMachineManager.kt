@@ -12,6 +12,7 @@ import net.corda.core.context.InvocationContext
 import net.corda.core.flows.FlowException
 import net.corda.core.flows.FlowInfo
 import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.FlowPriorityClass
 import net.corda.core.flows.KilledFlowException
 import net.corda.core.flows.StateMachineRunId
 import net.corda.core.identity.Party
@@ -33,6 +34,7 @@ import net.corda.core.utilities.ProgressTracker
 import net.corda.core.utilities.Try
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.minutes
 import net.corda.node.internal.InitiatedFlowFactory
 import net.corda.node.services.api.CheckpointStorage
@@ -42,6 +44,7 @@ import net.corda.node.services.statemachine.FlowStateMachineImpl.Companion.curre
 import net.corda.node.services.statemachine.interceptors.DumpHistoryOnErrorInterceptor
 import net.corda.node.services.statemachine.interceptors.HospitalisingInterceptor
 import net.corda.node.services.statemachine.interceptors.PrintingInterceptor
+import net.corda.node.services.statemachine.interceptors.ResourceAccountingInterceptor
 import net.corda.node.utilities.AffinityExecutor
 import net.corda.node.utilities.isEnabledTimedFlow
 import net.corda.nodeapi.internal.persistence.CordaPersistence
@@ -54,9 +57,15 @@ import java.security.Principal
 import java.security.SecureRandom
 import java.util.ArrayList
 import java.util.HashSet
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.stream.Stream
 import javax.annotation.concurrent.ThreadSafe
 import kotlin.collections.component1
 import kotlin.collections.component2
@@ -85,6 +94,9 @@ internal class SingleThreadedStateMachineManager(
             Checkpoint.FlowStatus.PAUSED
         )
 
+        private const val MAX_PENDING_CHECKPOINT_RESTORES = 1000
+        private const val DEFAULT_CONNECTION_POOL_SIZE = 10 // HikariCP's default maximumPoolSize
+
         @VisibleForTesting
         var beforeClientIDCheck: (() -> Unit)? = null
         @VisibleForTesting
@@ -105,6 +117,13 @@ internal class SingleThreadedStateMachineManager(
     // Monitoring support.
     private val metrics = serviceHub.monitoringService.metrics
     private val sessionToFlow = ConcurrentHashMap<SessionId, StateMachineRunId>()
+    private val flowPriorityResolver = FlowPriorityResolver(serviceHub.configuration.flowPriorities, classloader)
+    // The priority of each flow is fixed when it starts, and new sessions of the flow take it.
+    private val flowPriorities = ConcurrentHashMap<StateMachineRunId, FlowPriorityClass>()
+    // The priority of each session is pinned by the first of its messages to be queued, or when it is bound to its flow if that is
+    // earlier, so that its messages are always queued in the same class and cannot overtake each other.
+    private val sessionPriorities = ConcurrentHashMap<SessionId, FlowPriorityClass>()
+    private val inboundMessages = WeightedFairExecutor(executor, metrics)
     private val flowMessaging: FlowMessaging = FlowMessagingImpl(serviceHub)
     private val actionFutureExecutor = ActionFutureExecutor(innerState, serviceHub, scheduledFutureExecutor)
     private val flowTimeoutScheduler = FlowTimeoutScheduler(innerState, scheduledFutureExecutor, serviceHub)
@@ -114,14 +133,36 @@ internal class SingleThreadedStateMachineManager(
     private lateinit var flowCreator: FlowCreator
 
     override val flowHospital: StaffedFlowHospital = makeFlowHospital()
+    override val flowResourceAccounting = FlowResourceAccounting(metrics)
     private val transitionExecutor = makeTransitionExecutor()
     private val reloadCheckpointAfterSuspend = serviceHub.configuration.reloadCheckpointAfterSuspend
+    private val flowAdmission = FlowAdmissionController(serviceHub.configuration.flowAdmissionLimit) { event ->
+        scheduledFutureExecutor.execute {
+            try {
+                deliverExternalEvent(event)
+            } catch (e: Exception) {
+                failStartFlowEvent(event, e)
+            }
+        }
+    }
 
     override val allStateMachines: List<FlowLogic<*>>
         get() = innerState.withLock { flows.values.map { it.fiber.logic } }
 
     private val totalStartedFlows = metrics.counter("Flows.Started")
     private val totalFinishedFlows = metrics.counter("Flows.Finished")
+    private val restoredCheckpoints = metrics.counter("Flows.Restore.Restored")
+    private val restoreFailedCheckpoints = metrics.counter("Flows.Restore.Failed")
+    private val flowDehydrationIdleTimeout = serviceHub.configuration.flowDehydrationIdleTimeout
+    private val dehydratedFlowsCount = metrics.counter("Flows.Dehydration.Dehydrated")
+    private val rehydratedFlowsCount = metrics.counter("Flows.Dehydration.Rehydrated")
+    private val rehydrationTimer = metrics.timer("Flows.Dehydration.RehydrationDuration")
+    // Each restoring thread holds a connection of its own while the caller holds one to stream the checkpoints, so at least one more
+    // connection of the pool is left for the rest of the node. With too small a pool, checkpoints are restored by the caller.
+    private val checkpointRestoreThreads = minOf(
+            Runtime.getRuntime().availableProcessors(),
+            (serviceHub.configuration.dataSourceProperties.getProperty("maximumPoolSize")?.toIntOrNull() ?: DEFAULT_CONNECTION_POOL_SIZE) - 2
+    )
 
     private inline fun <R> Flow<R>.withFlowLock(
         validStatuses: Set<Checkpoint.FlowStatus>,
@@ -182,7 +223,15 @@ internal class SingleThreadedStateMachineManager(
         )
 
         val (flows, pausedFlows) = restoreFlowsFromCheckpoints()
-        metrics.register("Flows.InFlight", Gauge { innerState.flows.size })
+        metrics.register("Flows.InFlight", Gauge { innerState.withLock { flows.size + dehydratedFlows.size } })
+        metrics.register("Flows.Admission.Limit", Gauge { flowAdmission.limit })
+        metrics.register("Flows.Admission.InFlight", Gauge { flowAdmission.inFlight })
+        metrics.register("Flows.Admission.QueueDepth", Gauge { flowAdmission.queueDepth })
+        metrics.register("Flows.Dehydration.Current", Gauge { innerState.dehydratedFlows.size })
+        if (!flowDehydrationIdleTimeout.isZero) {
+            val period = flowDehydrationIdleTimeout.toMillis() / 2
+            scheduledFutureExecutor.scheduleAtFixedRate(::dehydrateIdleFlows, period, period, TimeUnit.MILLISECONDS)
+        }
 
         setFlowDefaultUncaughtExceptionHandler()
 
@@ -232,9 +281,7 @@ internal class SingleThreadedStateMachineManager(
             logger.info("Node ready, info: ${serviceHub.myInfo}")
             resumeRestoredFlows(flows)
             flowMessaging.start { _, deduplicationHandler ->
-                executor.execute {
-                    deliverExternalEvent(deduplicationHandler.externalCause)
-                }
+                onSessionMessageReceived(deduplicationHandler.externalCause as ExternalEvent.ExternalMessageEvent)
             }
         }
     }
@@ -252,7 +299,7 @@ internal class SingleThreadedStateMachineManager(
         )
     }
 
-    override fun snapshot(): Set<FlowStateMachineImpl<*>> = innerState.flows.values.map { it.fiber }.toSet()
+    override fun snapshot(): Set<FlowStateMachineImpl<*>> = innerState.withLock { flows.values.map { it.fiber }.toSet() }
 
     override fun <A : FlowLogic<*>> findStateMachines(flowClass: Class<A>): List<Pair<A, CordaFuture<*>>> {
         return innerState.withLock {
@@ -279,6 +326,9 @@ internal class SingleThreadedStateMachineManager(
                 }
             }
         }
+        for (event in flowAdmission.drain()) {
+            failStartFlowEvent(event, IllegalStateException("Will not start flow as SMM is stopping"))
+        }
         // Account for any expected Fibers in a test scenario.
         liveFibers.countDown(allowedUnsuspendedFiberCount)
         awaitShutdownOfFlows()
@@ -389,7 +439,7 @@ internal class SingleThreadedStateMachineManager(
     }
 
     override fun killFlow(id: StateMachineRunId): Boolean {
-        val flow = innerState.withLock { flows[id] }
+        val flow = innerState.withLock { flows[id] } ?: rehydrateFlow(id)
         val killFlowResult = flow?.let {
             if (flow.fiber.transientState.isDead) {
                 // We cannot rely on fiber event processing in dead flows.
@@ -398,7 +448,12 @@ internal class SingleThreadedStateMachineManager(
                 // Healthy flows need an event in case they they are suspended.
                 killInMemoryFlow(it)
             }
-        } ?: killOutOfMemoryFlow(id)
+        } ?: killOutOfMemoryFlow(id).also { killed ->
+            // A dehydrated flow which could not be restored is only known by its checkpoint, which has now gone.
+            if (killed) innerState.withLock {
+                dehydratedFlows[id]?.takeUnless { it.restoring }?.let { dropDehydratedFlow(it, KilledFlowException(id)) }
+            }
+        }
         return killFlowResult || flowHospital.dropSessionInit(id)
     }
 
@@ -531,6 +586,7 @@ internal class SingleThreadedStateMachineManager(
     }
 
     override fun addSessionBinding(flowId: StateMachineRunId, sessionId: SessionId) {
+        flowPriorities[flowId]?.let { sessionPriorities.putIfAbsent(sessionId, it) }
         val previousFlowId = sessionToFlow.put(sessionId, flowId)
         if (previousFlowId != null) {
             if (previousFlowId == flowId) {
@@ -547,6 +603,7 @@ internal class SingleThreadedStateMachineManager(
     override fun removeSessionBindings(sessionIds: Set<SessionId>) {
         val reRemovedSessionIds = HashSet<SessionId>()
         for (sessionId in sessionIds) {
+            sessionPriorities.remove(sessionId)
             val flowId = sessionToFlow.remove(sessionId)
             if (flowId == null) {
                 reRemovedSessionIds.add(sessionId)
@@ -565,6 +622,9 @@ internal class SingleThreadedStateMachineManager(
             if (flow != null) {
                 decrementLiveFibers()
                 totalFinishedFlows.inc()
+                flowPriorities.remove(flowId)
+                flowResourceAccounting.flowRemoved(flowId)
+                flowAdmission.release(flowId)
                 when (removalReason) {
                     is FlowRemovalReason.OrderlyFinish -> removeFlowOrderly(flow, removalReason, lastState)
                     is FlowRemovalReason.ErrorFinish -> removeFlowError(flow, removalReason, lastState)
@@ -599,34 +659,91 @@ internal class SingleThreadedStateMachineManager(
         liveFibers.countUp()
     }
 
-    @Suppress("ComplexMethod")
     private fun restoreFlowsFromCheckpoints(): Pair<MutableMap<StateMachineRunId, Flow<*>>, MutableMap<StateMachineRunId, NonResidentFlow>> {
         val flows = mutableMapOf<StateMachineRunId, Flow<*>>()
         val pausedFlows = mutableMapOf<StateMachineRunId, NonResidentFlow>()
-        checkpointStorage.getCheckpointsToRun().forEach Checkpoints@{(id, serializedCheckpoint) ->
+        val restoreTimer = metrics.timer("Flows.Restore.Duration").time()
+        val restoreExecutor = if (checkpointRestoreThreads > 0) {
+            Executors.newFixedThreadPool(
+                    checkpointRestoreThreads,
+                    ThreadFactoryBuilder().setNameFormat("checkpoint-restore-thread-%d").setDaemon(true).build()
+            )
+        } else {
+            null
+        }
+        try {
             // If a flow is added before start() then don't attempt to restore it
-            innerState.withLock { if (id in flows) return@Checkpoints }
-            val checkpoint = tryDeserializeCheckpoint(serializedCheckpoint, id)?.also {
-                if (it.status == Checkpoint.FlowStatus.HOSPITALIZED) {
+            val checkpointsToRun = checkpointStorage.getCheckpointsToRun().filter { (id, _) -> innerState.withLock { id !in this.flows } }
+            val restored = restoreInParallel(checkpointsToRun, restoreExecutor) { (id, serializedCheckpoint) ->
+                tryDeserializeCheckpoint(serializedCheckpoint, id)?.let { checkpoint ->
+                    Triple(id, checkpoint, flowCreator.createFlowFromCheckpoint(id, checkpoint, updateCompatibility = false))
+                }
+            }
+            for ((id, checkpoint, flow) in restored.filterNotNull()) {
+                // Status updates are made here rather than by the restoring threads so that they stay in the caller's transaction.
+                if (checkpoint.status == Checkpoint.FlowStatus.HOSPITALIZED) {
                     checkpointStorage.removeFlowException(id)
                     checkpointStorage.updateStatus(id, Checkpoint.FlowStatus.RUNNABLE)
                 }
-            } ?: return@Checkpoints
-            val flow = flowCreator.createFlowFromCheckpoint(id, checkpoint)
-            if (flow == null) {
-                // Set the flowState to paused so we don't waste memory storing it anymore.
-                pausedFlows[id] = NonResidentFlow(id, checkpoint.copy(flowState = FlowState.Paused), resumable = false)
-            } else {
-                flows[id] = flow
+                if (flow == null) {
+                    checkpointStorage.updateCompatible(id, false)
+                } else if (!checkpoint.compatible) {
+                    checkpointStorage.updateCompatible(id, true)
+                }
+                if (flow == null) {
+                    // Set the flowState to paused so we don't waste memory storing it anymore.
+                    pausedFlows[id] = NonResidentFlow(id, checkpoint.copy(flowState = FlowState.Paused), resumable = false)
+                } else {
+                    flows[id] = flow
+                }
             }
+            // Paused flows are only deserialized as far as their checkpoint, their fibers are created when they are retried.
+            val paused = restoreInParallel(checkpointStorage.getPausedCheckpoints(), restoreExecutor) { (id, serializedCheckpoint, hospitalised) ->
+                tryDeserializeCheckpoint(serializedCheckpoint, id)?.let { NonResidentFlow(id, it, hospitalized = hospitalised) }
+            }
+            for (nonResidentFlow in paused.filterNotNull()) {
+                pausedFlows[nonResidentFlow.runId] = nonResidentFlow
+            }
+        } finally {
+            restoreExecutor?.shutdownNow()
+            restoreTimer.stop()
         }
-        checkpointStorage.getPausedCheckpoints().forEach Checkpoints@{ (id, serializedCheckpoint, hospitalised) ->
-            val checkpoint = tryDeserializeCheckpoint(serializedCheckpoint, id) ?: return@Checkpoints
-            pausedFlows[id] = NonResidentFlow(id, checkpoint, hospitalized = hospitalised)
-        }
+        logger.info("Restored ${flows.size} flows and ${pausedFlows.size} paused flows from checkpoints")
         return Pair(flows, pausedFlows)
     }
 
+    /**
+     * Applies [restore] to each of [checkpoints] on [restoreExecutor] and returns the results in the order of the stream, counting
+     * the checkpoints restored and those which could not be under `Flows.Restore`. Without an executor they are restored by the caller.
+     *
+     * Checkpoints do not depend on each other and deserializing them is by far the most expensive part of restoring a flow, so they
+     * are restored in parallel. No more than [MAX_PENDING_CHECKPOINT_RESTORES] checkpoints are read from the stream ahead of the
+     * restoring threads so that a node with many checkpoints does not need all of them in memory at once. [restore] must not update
+     * the database, as its transaction is not the caller's.
+     */
+    private fun <T, R : Any> restoreInParallel(checkpoints: Stream<T>, restoreExecutor: ExecutorService?, restore: (T) -> R?): List<R?> {
+        val pending = Semaphore(MAX_PENDING_CHECKPOINT_RESTORES)
+        val futures = ArrayList<Future<R?>>()
+        val countRestored = { result: R? -> if (result == null) restoreFailedCheckpoints.inc() else restoredCheckpoints.inc() }
+        checkpoints.use { stream ->
+            stream.forEach { checkpoint ->
+                if (restoreExecutor == null) {
+                    futures += CompletableFuture.completedFuture(restore(checkpoint).also(countRestored))
+                    return@forEach
+                }
+                pending.acquire()
+                futures += restoreExecutor.submit(Callable {
+                    try {
+                        database.transaction { restore(checkpoint) }.also(countRestored)
+                    } finally {
+                        pending.release()
+                    }
+                })
+            }
+        }
+        return futures.map { it.getOrThrow() }
+    }
+
     private fun resumeRestoredFlows(flows: Map<StateMachineRunId, Flow<*>>) {
         for ((id, flow) in flows.entries) {
             addAndStartFlow(id, flow)
@@ -791,25 +908,69 @@ internal class SingleThreadedStateMachineManager(
     }
 
     private fun <T> onExternalStartFlow(event: ExternalEvent.ExternalStartFlowEvent<T>) {
-        val future = startFlow(
-                event.flowId,
-                event.flowLogic,
-                event.context,
-                ourIdentity = null,
-                deduplicationHandler = event.deduplicationHandler
-        )
-        event.wireUpFuture(future)
+        // Events held back by admission control are delivered again once there is room for their flows
+        if (!flowAdmission.tryAdmit(event)) return
+        try {
+            val future = startFlow(
+                    event.flowId,
+                    event.flowLogic,
+                    event.context,
+                    ourIdentity = null,
+                    deduplicationHandler = event.deduplicationHandler
+            )
+            event.wireUpFuture(future)
+        } finally {
+            // No flow is started when the event fails, or when its client id belongs to an existing flow
+            if (innerState.withLock { event.flowId !in flows }) flowAdmission.release(event.flowId)
+        }
     }
 
-    private fun onSessionMessage(event: ExternalEvent.ExternalMessageEvent) {
-        val peer = event.receivedMessage.peer
-        val sessionMessage = try {
+    private fun <T> failStartFlowEvent(event: ExternalEvent.ExternalStartFlowEvent<T>, error: Throwable) {
+        event.wireUpFuture(openFuture<FlowStateMachineHandle<T>>().apply { setException(error) })
+    }
+
+    /**
+     * Queues a message received from a peer to be delivered in its session's priority class. It is deserialized here, on the messaging
+     * thread, to find the class.
+     *
+     * A session initiation message is queued in the class of its initiating flow, and the session it opens is pinned to that class.
+     * Any other message is queued in the class its session is pinned to, pinning it to the class of the session's flow, or to
+     * [FlowPriorityClass.NORMAL] if the session is not yet bound to a flow.
+     */
+    private fun onSessionMessageReceived(event: ExternalEvent.ExternalMessageEvent) {
+        val sessionMessage = deserializeSessionMessage(event) ?: return
+        val priority = when (sessionMessage) {
+            is ExistingSessionMessage -> sessionPriorities.computeIfAbsent(sessionMessage.recipientSessionId) { sessionId ->
+                sessionToFlow[sessionId]?.let(flowPriorities::get) ?: FlowPriorityClass.NORMAL
+            }
+            is InitialSessionMessage -> flowPriorityResolver.priorityOfInitiator(sessionMessage.initiatorFlowClassName)
+        }
+        inboundMessages.execute(priority) {
+            innerState.withLock {
+                if (!stopping) {
+                    onSessionMessage(event, sessionMessage)
+                }
+            }
+        }
+    }
+
+    private fun deserializeSessionMessage(event: ExternalEvent.ExternalMessageEvent): SessionMessage? {
+        return try {
             event.receivedMessage.data.deserialize<SessionMessage>()
         } catch (ex: Exception) {
-            logger.error("Unable to deserialize SessionMessage data from $peer", ex)
+            logger.error("Unable to deserialize SessionMessage data from ${event.receivedMessage.peer}", ex)
             event.deduplicationHandler.afterDatabaseTransaction()
-            return
+            null
         }
+    }
+
+    private fun onSessionMessage(event: ExternalEvent.ExternalMessageEvent) {
+        val sessionMessage = deserializeSessionMessage(event) ?: return
+        onSessionMessage(event, sessionMessage)
+    }
+
+    private fun onSessionMessage(event: ExternalEvent.ExternalMessageEvent, sessionMessage: SessionMessage) {
+        val peer = event.receivedMessage.peer
         val sender = serviceHub.networkMapCache.getPeerByLegalName(peer)
         if (sender != null) {
             when (sessionMessage) {
@@ -833,6 +994,7 @@ internal class SingleThreadedStateMachineManager(
             val recipientId = sessionMessage.recipientSessionId
             val flowId = sessionToFlow[recipientId]
             if (flowId == null) {
+                sessionPriorities.remove(recipientId)
                 deduplicationHandler.afterDatabaseTransaction()
                 if (sessionMessage.payload === EndSessionMessage) {
                     logger.debug {
@@ -845,11 +1007,13 @@ internal class SingleThreadedStateMachineManager(
                 }
             } else {
                 val event = Event.DeliverSessionMessage(sessionMessage, deduplicationHandler, sender)
-                innerState.withLock {
-                    flows[flowId]?.run { fiber.scheduleEvent(event) }
-                        // If flow is not running add it to the list of external events to be processed if/when the flow resumes.
-                        ?: pausedFlows[flowId]?.run { addExternalEvent(externalEvent) }
-                        ?: logger.info("Cannot find fiber corresponding to flow ID $flowId")
+                if (!scheduleEventOrRehydrate(flowId, event)) {
+                    innerState.withLock {
+                        flows[flowId]?.run { fiber.scheduleEvent(event) }
+                            // If flow is not running add it to the list of external events to be processed if/when the flow resumes.
+                            ?: pausedFlows[flowId]?.run { addExternalEvent(externalEvent) }
+                            ?: logger.info("Cannot find fiber corresponding to flow ID $flowId")
+                    }
                 }
             }
         } catch (exception: Exception) {
@@ -992,6 +1156,7 @@ internal class SingleThreadedStateMachineManager(
             val flow = flows.remove(id)
             if (flow != null) {
                 decrementLiveFibers()
+                flowAdmission.release(id)
                 //Setting flowState = FlowState.Paused means we don't hold the frozen fiber in memory.
                 val checkpoint = currentState.checkpoint.copy(status = Checkpoint.FlowStatus.PAUSED, flowState = FlowState.Paused)
                 val pausedFlow = NonResidentFlow(
@@ -1010,6 +1175,170 @@ internal class SingleThreadedStateMachineManager(
         }
     }
 
+    override fun moveFlowToDehydrated(currentState: StateMachineState) {
+        innerState.withLock {
+            val id = currentState.flowLogic.runId
+            val flow = flows.remove(id)
+            if (flow != null) {
+                decrementLiveFibers()
+                // The flow keeps its place with admission control, as it is still in flight.
+                unfinishedFibers.countDown()
+                // Nothing of the fiber is kept, so that all of the flow's memory is freed. It is read back from the checkpoint when the
+                // flow is restored, and until then the flow is only counted.
+                dehydratedFlows[id] = DehydratedFlow(id, flow.resultFuture, currentState.reloadCheckpointAfterSuspendCount)
+                dehydratedFlowsCount.inc()
+                // Messages which reached the flow after it was told to dehydrate restore it again straight away, and as the lock is held
+                // they are delivered ahead of any which arrive later.
+                val eventQueue = flow.fiber.transientValues.eventQueue
+                do {
+                    val event = eventQueue.tryReceive()
+                    if (event is Event.GeneratedByExternalEvent) {
+                        deliverExternalEvent(event.deduplicationHandler.externalCause)
+                    }
+                } while (event != null)
+            } else {
+                logger.warn("Flow $id already removed before dehydrating")
+            }
+        }
+    }
+
+    /**
+     * Sends [Event.Dehydrate] to the flows which have not processed an event for [flowDehydrationIdleTimeout]. Each flow decides for
+     * itself whether it can be dehydrated. Timed flows are not dehydrated, as their timeouts are scheduled against their fibers.
+     */
+    private fun dehydrateIdleFlows() {
+        try {
+            val idleSince = serviceHub.clock.instant() - flowDehydrationIdleTimeout
+            val toRetry = innerState.withLock {
+                for (flow in flows.values) {
+                    val state = flow.fiber.transientState
+                    if (!state.isFlowResumed && state.checkpoint.timestamp < idleSince && !flow.fiber.logic.isEnabledTimedFlow()) {
+                        flow.fiber.scheduleEvent(Event.Dehydrate)
+                    }
+                }
+                // Flows which events have reached, but which could not be restored, are tried again.
+                dehydratedFlows.values.filter { !it.restoring && it.pendingEvents.isNotEmpty() }.onEach { it.startRestoring() }
+            }
+            toRetry.forEach(::restoreDehydratedFlow)
+        } catch (e: Exception) {
+            logger.error("Unable to dehydrate idle flows", e)
+        }
+    }
+
+    /** Must be called with the lock held, by the thread which is then to call [restoreDehydratedFlow]. */
+    private fun DehydratedFlow.startRestoring() {
+        restoring = true
+        restored = openFuture()
+    }
+
+    /**
+     * Schedules [event] on the flow [id], restoring the flow from its checkpoint first if it has been dehydrated.
+     *
+     * @return false if the flow is neither running nor dehydrated.
+     */
+    private fun scheduleEventOrRehydrate(id: StateMachineRunId, event: Event): Boolean {
+        val dehydratedFlow = innerState.withLock {
+            flows[id]?.run {
+                fiber.scheduleEvent(event)
+                return true
+            }
+            val dehydratedFlow = dehydratedFlows[id] ?: return false
+            dehydratedFlow.pendingEvents += event
+            if (dehydratedFlow.restoring) return true
+            dehydratedFlow.startRestoring()
+            dehydratedFlow
+        }
+        restoreDehydratedFlow(dehydratedFlow)
+        return true
+    }
+
+    /**
+     * Restores the dehydrated flow [id] from its checkpoint and starts it again, or waits for the thread already doing so.
+     *
+     * @return The restored flow, or null if [id] was not dehydrated or could not be restored.
+     */
+    private fun rehydrateFlow(id: StateMachineRunId): Flow<*>? {
+        val (dehydratedFlow, restoreHere) = innerState.withLock {
+            flows[id]?.let { return it }
+            val dehydratedFlow = dehydratedFlows[id] ?: return null
+            val restoreHere = !dehydratedFlow.restoring
+            if (restoreHere) dehydratedFlow.startRestoring()
+            dehydratedFlow to restoreHere
+        }
+        return if (restoreHere) restoreDehydratedFlow(dehydratedFlow) else dehydratedFlow.restored.getOrThrow()
+    }
+
+    /**
+     * Loads and deserializes the checkpoint of [dehydratedFlow] without holding the lock, so that the rest of the state machine is not
+     * held up, and then, under the lock, starts the flow with the events which reached it in the meantime.
+     *
+     * If the checkpoint cannot be read, or the state machine is stopping, the flow is left dehydrated with its events, to be restored
+     * again by [dehydrateIdleFlows] or from its checkpoint when the node next starts. If the checkpoint is missing or cannot be
+     * deserialized, the flow's result future fails.
+     *
+     * @return The restored flow, or null if it could not be restored.
+     */
+    private fun restoreDehydratedFlow(dehydratedFlow: DehydratedFlow): Flow<*>? {
+        val id = dehydratedFlow.runId
+        val context = rehydrationTimer.time()
+        var readFailed = false
+        val flow = try {
+            loadDehydratedFlow(dehydratedFlow)
+        } catch (e: Exception) {
+            logger.warn("Unable to read the checkpoint of dehydrated flow $id, it will be restored later", e)
+            readFailed = true
+            null
+        }
+        val restored = innerState.withLock {
+            dehydratedFlow.restoring = false
+            when {
+                readFailed || stopping -> null
+                flow == null -> {
+                    logger.error("Unable to restore dehydrated flow $id from its checkpoint. Something is very wrong and this flow will be ignored.")
+                    dropDehydratedFlow(dehydratedFlow, IllegalStateException("Unable to restore dehydrated flow $id from its checkpoint"))
+                    null
+                }
+                else -> {
+                    dehydratedFlows.remove(id)
+                    rehydratedFlowsCount.inc()
+                    addAndStartFlow(id, flow)
+                    for (event in dehydratedFlow.pendingEvents) {
+                        flow.fiber.scheduleEvent(event)
+                    }
+                    flow
+                }
+            }
+        }
+        context.stop()
+        dehydratedFlow.restored.set(restored)
+        return restored
+    }
+
+    /** Forgets [dehydratedFlow], failing its result future with [error]. Must be called with the lock held. */
+    private fun StateMachineInnerState.dropDehydratedFlow(dehydratedFlow: DehydratedFlow, error: Throwable) {
+        val id = dehydratedFlow.runId
+        dehydratedFlows.remove(id)
+        flowPriorities.remove(id)
+        flowResourceAccounting.flowRemoved(id)
+        flowAdmission.release(id)
+        dehydratedFlow.resultFuture.setException(error)
+    }
+
+    /** @return The flow restored from the checkpoint of [dehydratedFlow], not yet started, or null if there is no usable checkpoint. */
+    private fun loadDehydratedFlow(dehydratedFlow: DehydratedFlow): Flow<*>? {
+        val id = dehydratedFlow.runId
+        val checkpoint = database.transaction {
+            checkpointStorage.getCheckpoint(id)?.let { tryDeserializeCheckpoint(it, id) }
+        } ?: return null
+        return flowCreator.createFlowFromCheckpoint(
+            id,
+            checkpoint,
+            dehydratedFlow.reloadCheckpointAfterSuspendCount,
+            resultFuture = dehydratedFlow.resultFuture,
+            firstRestore = false
+        )
+    }
+
     private fun tryDeserializeCheckpoint(serializedCheckpoint: Checkpoint.Serialized, flowId: StateMachineRunId): Checkpoint? {
         return try {
             serializedCheckpoint.deserialize(checkpointSerializationContext)
@@ -1029,7 +1358,18 @@ internal class SingleThreadedStateMachineManager(
 
     private fun addAndStartFlow(id: StateMachineRunId, flow: Flow<*>) {
         val checkpoint = flow.fiber.snapshot().checkpoint
+        val priority = flowPriorityResolver.priorityOf(flow.fiber.logic.javaClass)
+        flowPriorities[id] = priority
+        // The session opened by an initiated flow stays in the class its initiation message was queued in.
+        val initiatedFlowStart = (checkpoint.flowState as? FlowState.Unstarted)?.flowStart as? FlowStart.Initiated
+        if (initiatedFlowStart != null) {
+            sessionPriorities.putIfAbsent(
+                    initiatedFlowStart.initiatedSessionId,
+                    flowPriorityResolver.priorityOfInitiator(initiatedFlowStart.initiatingMessage.initiatorFlowClassName)
+            )
+        }
         for (sessionId in getFlowSessionIds(checkpoint)) {
+            sessionPriorities.putIfAbsent(sessionId, priority)
             sessionToFlow[sessionId] = id
         }
         innerState.withLock {
@@ -1094,6 +1434,7 @@ internal class SingleThreadedStateMachineManager(
         if (logger.isDebugEnabled) {
             interceptors.add { PrintingInterceptor(it) }
         }
+        interceptors.add { ResourceAccountingInterceptor(flowResourceAccounting, it) }
         val transitionExecutor: TransitionExecutor = TransitionExecutorImpl(secureRandom, database)
         return interceptors.fold(transitionExecutor) { executor, interceptor -> interceptor(executor) }
     }
@@ -2,6 +2,7 @@ package net.corda.node.services.statemachine
 
 import net.corda.core.flows.StateMachineRunId
 import net.corda.core.internal.concurrent.OpenFuture
+import net.corda.core.internal.concurrent.openFuture
 import net.corda.node.services.statemachine.StateMachineManager.Change
 import rx.subjects.PublishSubject
 import java.util.concurrent.ScheduledFuture
@@ -13,6 +14,8 @@ internal interface StateMachineInnerState {
     val lock: Lock
     val flows: MutableMap<StateMachineRunId, Flow<*>>
     val pausedFlows: MutableMap<StateMachineRunId, NonResidentFlow>
+    /** Flows evicted from memory while waiting for messages, to be restored from their checkpoints when the messages arrive. */
+    val dehydratedFlows: MutableMap<StateMachineRunId, DehydratedFlow>
     val startedFutures: MutableMap<StateMachineRunId, OpenFuture<Unit>>
     val changesPublisher: PublishSubject<Change>
     /** Flows scheduled to be retried if not finished within the specified timeout period. */
@@ -29,6 +32,7 @@ internal class StateMachineInnerStateImpl : StateMachineInnerState {
     override val changesPublisher = PublishSubject.create<Change>()!!
     override val flows = HashMap<StateMachineRunId, Flow<*>>()
     override val pausedFlows = HashMap<StateMachineRunId, NonResidentFlow>()
+    override val dehydratedFlows = HashMap<StateMachineRunId, DehydratedFlow>()
     override val startedFutures = HashMap<StateMachineRunId, OpenFuture<Unit>>()
     override val timedFlows = HashMap<StateMachineRunId, ScheduledTimeout>()
     override val clientIdsToFlowIds = HashMap<String, FlowWithClientIdStatus>()
@@ -43,4 +47,19 @@ internal data class ScheduledTimeout(
     val scheduledFuture: ScheduledFuture<*>,
     /** Specifies the number of times this flow has been retried. */
     val retryCount: Int = 0
-)
\ No newline at end of file
+)
+
+internal class DehydratedFlow(
+    val runId: StateMachineRunId,
+    /** Completed by the flow once it has been restored and has finished, or exceptionally if it cannot be restored. */
+    val resultFuture: OpenFuture<Any?>,
+    /** Carried over to the flow restored from the checkpoint, which is read back from the database by [runId]. */
+    val reloadCheckpointAfterSuspendCount: Int?
+) {
+    /** Set, under the state machine's lock, while a thread is restoring the flow. */
+    var restoring = false
+    /** Events which reached the flow while it was dehydrated, delivered to it once it has been restored. Guarded by the lock. */
+    val pendingEvents = ArrayList<Event>()
+    /** Completed with the restored flow, or null if the attempt failed. Replaced, under the lock, for each attempt. */
+    var restored: OpenFuture<Flow<*>?> = openFuture()
+}
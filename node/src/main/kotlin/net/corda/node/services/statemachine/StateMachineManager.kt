@@ -96,6 +96,11 @@ interface StateMachineManager {
 
     val flowHospital: StaffedFlowHospital
 
+    /**
+     * The resources used by running flows, and by each class of flow since the node started.
+     */
+    val flowResourceAccounting: FlowResourceAccounting
+
     /**
      * Returns a snapshot of all [FlowStateMachineImpl]s currently managed.
      */
@@ -139,6 +144,7 @@ internal interface StateMachineManagerInternal {
     fun removeSessionBindings(sessionIds: Set<SessionId>)
     fun removeFlow(flowId: StateMachineRunId, removalReason: FlowRemovalReason, lastState: StateMachineState)
     fun moveFlowToPaused(currentState: StateMachineState)
+    fun moveFlowToDehydrated(currentState: StateMachineState)
     fun retryFlowFromSafePoint(currentState: StateMachineState)
     fun scheduleFlowTimeout(flowId: StateMachineRunId)
     fun cancelFlowTimeout(flowId: StateMachineRunId)
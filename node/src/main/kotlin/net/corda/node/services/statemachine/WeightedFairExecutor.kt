@@ -0,0 +1,67 @@
+package net.corda.node.services.statemachine
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.flows.FlowPriorityClass
+import java.util.ArrayDeque
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs tasks on [executor] one at a time, in weighted fair order across [FlowPriorityClass]es. While tasks of several classes are
+ * waiting, each class is given turns in proportion to its weight, so lower classes are slowed down by higher ones but never starved.
+ * Tasks of the same class run in the order in which they were submitted.
+ *
+ * Each class has a virtual clock, which advances by the inverse of its weight every time one of its tasks is run, and the waiting
+ * class with the earliest clock goes next. A class which has had nothing to run is brought forward to the current time when it has
+ * a task again, so it cannot save up turns while idle.
+ *
+ * The time tasks wait, and the number waiting, are reported per class under `Flows.Priority`.
+ */
+internal class WeightedFairExecutor(private val executor: Executor, metrics: MetricRegistry) {
+    companion object {
+        private val WEIGHTS = mapOf(FlowPriorityClass.LOW to 1, FlowPriorityClass.NORMAL to 4, FlowPriorityClass.HIGH to 16)
+        private const val STRIDE = 1_000_000L
+    }
+
+    private class Task(val task: () -> Unit, val submittedNanos: Long)
+
+    private inner class Lane(priority: FlowPriorityClass, metrics: MetricRegistry) {
+        val tasks = ArrayDeque<Task>()
+        val stride = STRIDE / WEIGHTS.getValue(priority)
+        var pass = 0L
+        val waitTimer = metrics.timer("Flows.Priority.$priority.QueueWait")
+
+        init {
+            metrics.gauge("Flows.Priority.$priority.QueueDepth") { Gauge { synchronized(lanes) { tasks.size } } }
+        }
+    }
+
+    // Highest priority first, so that it wins ties.
+    private val lanes = FlowPriorityClass.values().reversed().associateWith { Lane(it, metrics) }
+    private var virtualTime = 0L
+
+    fun execute(priority: FlowPriorityClass, task: () -> Unit) {
+        synchronized(lanes) {
+            val lane = lanes.getValue(priority)
+            if (lane.tasks.isEmpty()) {
+                lane.pass = maxOf(lane.pass, virtualTime)
+            }
+            lane.tasks.addLast(Task(task, System.nanoTime()))
+        }
+        executor.execute(::runNext)
+    }
+
+    private fun runNext() {
+        val lane: Lane
+        val task: Task
+        synchronized(lanes) {
+            lane = lanes.values.filter { it.tasks.isNotEmpty() }.minByOrNull { it.pass } ?: return
+            task = lane.tasks.removeFirst()
+            virtualTime = lane.pass
+            lane.pass += lane.stride
+        }
+        lane.waitTimer.update(System.nanoTime() - task.submittedNanos, TimeUnit.NANOSECONDS)
+        task.task()
+    }
+}
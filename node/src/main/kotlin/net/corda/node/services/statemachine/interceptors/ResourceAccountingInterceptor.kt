@@ -0,0 +1,36 @@
+package net.corda.node.services.statemachine.interceptors
+
+import co.paralleluniverse.fibers.Suspendable
+import net.corda.node.services.statemachine.ActionExecutor
+import net.corda.node.services.statemachine.Event
+import net.corda.node.services.statemachine.FlowFiber
+import net.corda.node.services.statemachine.FlowResourceAccounting
+import net.corda.node.services.statemachine.StateMachineState
+import net.corda.node.services.statemachine.TransitionExecutor
+import net.corda.node.services.statemachine.transitions.FlowContinuation
+import net.corda.node.services.statemachine.transitions.TransitionResult
+
+/**
+ * This interceptor records the resources used by each transition, and by the flow's own code between transitions, in [accounting].
+ */
+class ResourceAccountingInterceptor(val accounting: FlowResourceAccounting, val delegate: TransitionExecutor) : TransitionExecutor {
+    @Suspendable
+    override fun executeTransition(
+            fiber: FlowFiber,
+            previousState: StateMachineState,
+            event: Event,
+            transition: TransitionResult,
+            actionExecutor: ActionExecutor
+    ): Pair<FlowContinuation, StateMachineState> {
+        val flowId = fiber.id
+        val flowClass = previousState.flowLogic.javaClass
+        accounting.stopMeasuringFlowCode(flowId, flowClass)
+        val measurement = accounting.startMeasuring()
+        val (continuation, nextState) = delegate.executeTransition(fiber, previousState, event, transition, actionExecutor)
+        accounting.stopMeasuring(measurement, flowId, flowClass, transitions = 1, finished = nextState.isRemoved)
+        if (!nextState.isRemoved && (continuation is FlowContinuation.Resume || continuation is FlowContinuation.Throw)) {
+            accounting.startMeasuringFlowCode(flowId)
+        }
+        return Pair(continuation, nextState)
+    }
+}
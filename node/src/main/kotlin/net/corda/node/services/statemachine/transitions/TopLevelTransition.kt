@@ -68,6 +68,7 @@ class TopLevelTransition(
                 is Event.OvernightObservation -> overnightObservationTransition()
                 is Event.WakeUpFromSleep -> wakeUpFromSleepTransition()
                 is Event.Pause -> pausedFlowTransition()
+                is Event.Dehydrate -> dehydrateTransition()
             }
         } catch (t: Throwable) {
             // All errors coming from the transition should be sent back to the flow
@@ -401,4 +402,37 @@ class TopLevelTransition(
             FlowContinuation.Abort
         }
     }
+
+    private fun dehydrateTransition(): TransitionResult {
+        return builder {
+            if (startingState.isDehydratable()) {
+                actions += Action.MoveFlowToDehydrated(currentState)
+                FlowContinuation.Abort
+            } else {
+                FlowContinuation.ProcessEvents
+            }
+        }
+    }
+
+    /**
+     * A flow can only be restored from its checkpoint without losing anything if it is suspended waiting for messages, and has not
+     * processed any events since the checkpoint was committed.
+     */
+    private fun StateMachineState.isDehydratable(): Boolean {
+        val flowState = checkpoint.flowState as? FlowState.Started ?: return false
+        val isReceiving = when (flowState.flowIORequest) {
+            is FlowIORequest.Receive, is FlowIORequest.SendAndReceive, is FlowIORequest.WaitForSessionConfirmations -> true
+            else -> false
+        }
+        return isReceiving
+                && !isFlowResumed
+                && !isWaitingForFuture
+                && !isRemoved
+                && !isDead
+                && isAnyCheckpointPersisted
+                && pendingDeduplicationHandlers.isEmpty()
+                && checkpoint.status == Checkpoint.FlowStatus.RUNNABLE
+                && checkpoint.errorState == ErrorState.Clean
+                && checkpoint.checkpointState.invocationContext.clientId == null
+    }
 }
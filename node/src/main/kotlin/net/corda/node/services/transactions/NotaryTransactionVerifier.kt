@@ -0,0 +1,80 @@
+package net.corda.node.services.transactions
+
+import com.codahale.metrics.Gauge
+import net.corda.core.flows.FlowExternalAsyncOperation
+import net.corda.core.internal.notary.SinglePartyNotaryService
+import net.corda.core.serialization.CordaSerializable
+import net.corda.core.transactions.SignedTransaction
+import net.corda.node.services.api.ServiceHubInternal
+import net.corda.nodeapi.internal.namedThreadPoolExecutor
+import java.security.PublicKey
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Verifies the transactions of a validating notary's requests on a pool of [threads] threads of its own, rather than on the
+ * state machine's. Contract verification is then done concurrently for as many requests as there are threads, and does not hold
+ * up the flows committing input states.
+ */
+class NotaryTransactionVerifier(
+        private val services: ServiceHubInternal,
+        private val notaryIdentityKey: PublicKey,
+        threads: Int
+) {
+    private val executor = namedThreadPoolExecutor(
+            maxPoolSize = threads,
+            corePoolSize = threads,
+            poolName = "notary-verification",
+            daemonThreads = true
+    )
+
+    private val verificationTime = services.monitoringService.metrics.timer("Notary.Verification.Duration")
+
+    init {
+        require(threads > 0) { "The number of verification threads must be positive" }
+        services.monitoringService.metrics.register("Notary.Verification.QueueDepth", Gauge<Int> { executor.queue.size })
+    }
+
+    /**
+     * Verifies the contracts of [stx], whose dependencies have already been resolved, and that it has all the required signatures
+     * apart from the notary's. The returned future fails with the reason [stx] is invalid, if it is.
+     */
+    fun verify(stx: SignedTransaction): CompletableFuture<Unit> {
+        return CompletableFuture.supplyAsync({
+            verificationTime.time().use {
+                services.database.transaction {
+                    stx.verify(services, false)
+                    stx.resolveTransactionWithSignatures(services).verifySignaturesExcept(notaryIdentityKey)
+                }
+            }
+        }, executor)
+    }
+
+    fun stop() {
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+    }
+}
+
+/** A [SinglePartyNotaryService] which can verify the transactions of validating requests on a [NotaryTransactionVerifier]. */
+interface VerifyingNotaryService {
+    /** The verifier of transactions, or null if they are verified by the service flow itself. */
+    val transactionVerifier: NotaryTransactionVerifier?
+}
+
+/**
+ * Required for the flow to be able to suspend until the transaction is verified. This object will be included in the flow
+ * checkpoint, which is why it refers to the [service] rather than to its verifier.
+ */
+@CordaSerializable
+class VerifyTransactionOperation(
+        val service: SinglePartyNotaryService,
+        val stx: SignedTransaction
+) : FlowExternalAsyncOperation<Unit> {
+    override fun execute(deduplicationId: String): CompletableFuture<Unit> {
+        val verifier = checkNotNull((service as? VerifyingNotaryService)?.transactionVerifier) {
+            "${service.javaClass.name} does not verify transactions"
+        }
+        return verifier.verify(stx)
+    }
+}
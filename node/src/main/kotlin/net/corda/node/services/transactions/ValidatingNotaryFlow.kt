@@ -29,22 +29,26 @@ open class ValidatingNotaryFlow(otherSideSession: FlowSession, service: SinglePa
 
     /**
      * Fully resolves the received transaction and its dependencies, runs contract verification logic and checks that
-     * the transaction in question has all required signatures apart from the notary's.
+     * the transaction in question has all required signatures apart from the notary's. If the service has a
+     * [NotaryTransactionVerifier] the transaction is verified on its threads while the flow waits.
      */
     @Suspendable
     override fun verifyTransaction(requestPayload: NotarisationPayload) {
         try {
             val stx = requestPayload.signedTransaction
-            resolveAndContractVerify(stx)
-            verifySignatures(stx)
+            subFlow(ResolveTransactionsFlow(stx, otherSideSession))
+            if ((service as? VerifyingNotaryService)?.transactionVerifier != null) {
+                await(VerifyTransactionOperation(service, stx))
+            } else {
+                contractVerify(stx)
+                verifySignatures(stx)
+            }
         } catch (e: Exception) {
             throw NotaryInternalException(NotaryError.TransactionInvalid(e))
         }
     }
 
-    @Suspendable
-    private fun resolveAndContractVerify(stx: SignedTransaction) {
-        subFlow(ResolveTransactionsFlow(stx, otherSideSession))
+    private fun contractVerify(stx: SignedTransaction) {
         stx.verify(serviceHub, false)
     }
 
@@ -35,10 +35,39 @@ import java.util.*
 import javax.persistence.Tuple
 import javax.persistence.criteria.*
 
+/**
+ * The values [columnPredicate] compares columns with, as they are written or bound into queries. Strings compared ignoring case are
+ * upper cased, as the columns are.
+ */
+internal fun boundLiteralsOf(columnPredicate: ColumnPredicate<*>): List<Any?> {
+    return when (columnPredicate) {
+        is EqualityComparison -> {
+            val literal = columnPredicate.rightLiteral
+            val ignoreCase = columnPredicate.operator == EQUAL_IGNORE_CASE || columnPredicate.operator == NOT_EQUAL_IGNORE_CASE
+            listOf(if (literal is String && ignoreCase) literal.uppercase(Locale.getDefault()) else literal)
+        }
+        is BinaryComparison -> listOf(columnPredicate.rightLiteral)
+        is Likeness -> {
+            val ignoreCase = columnPredicate.operator == LIKE_IGNORE_CASE || columnPredicate.operator == NOT_LIKE_IGNORE_CASE
+            listOf(if (ignoreCase) columnPredicate.rightLiteral.uppercase(Locale.getDefault()) else columnPredicate.rightLiteral)
+        }
+        is CollectionExpression -> {
+            val literal = columnPredicate.rightLiteral
+            val ignoreCase = columnPredicate.operator == IN_IGNORE_CASE || columnPredicate.operator == NOT_IN_IGNORE_CASE
+            if (literal.any { it is String } && ignoreCase) literal.map { (it as String).uppercase(Locale.getDefault()) } else literal.toList()
+        }
+        is Between -> listOf(columnPredicate.rightFromLiteral, columnPredicate.rightToLiteral)
+        else -> emptyList()
+    }
+}
+
 abstract class AbstractQueryCriteriaParser<Q : GenericQueryCriteria<Q,P>, in P: BaseQueryCriteriaParser<Q, P, S>, in S: BaseSort> : BaseQueryCriteriaParser<Q, P, S> {
 
     abstract val criteriaBuilder: CriteriaBuilder
 
+    /** Set to bind the literals of column predicates to the query as parameters, rather than write them into it. */
+    protected open val parameters: VaultQueryParameters? get() = null
+
     override fun parseOr(left: Q, right: Q): Collection<Predicate> {
         val predicateSet = mutableSetOf<Predicate>()
         val leftPredicates = parse(left)
@@ -76,15 +105,15 @@ abstract class AbstractQueryCriteriaParser<Q : GenericQueryCriteria<Q,P>, in P:
     }
 
     private fun equalityComparisonToPredicate(column: Path<out Any?>, columnPredicate: EqualityComparison<*>): Predicate {
-        val literal = columnPredicate.rightLiteral
-        return if (literal is String) {
+        val literal = literalsOf<Any?>(columnPredicate).single()
+        return if (columnPredicate.rightLiteral is String) {
             @Suppress("UNCHECKED_CAST")
             column as Path<String?>
             when (columnPredicate.operator) {
                 EQUAL -> criteriaBuilder.equal(column, literal)
-                EQUAL_IGNORE_CASE -> criteriaBuilder.equal(criteriaBuilder.upper(column), literal.uppercase(Locale.getDefault()))
+                EQUAL_IGNORE_CASE -> criteriaBuilder.equal(criteriaBuilder.upper(column), literal)
                 NOT_EQUAL -> criteriaBuilder.notEqual(column, literal)
-                NOT_EQUAL_IGNORE_CASE -> criteriaBuilder.notEqual(criteriaBuilder.upper(column), literal.uppercase(Locale.getDefault()))
+                NOT_EQUAL_IGNORE_CASE -> criteriaBuilder.notEqual(criteriaBuilder.upper(column), literal)
             }
         } else {
             when (columnPredicate.operator) {
@@ -95,7 +124,7 @@ abstract class AbstractQueryCriteriaParser<Q : GenericQueryCriteria<Q,P>, in P:
     }
 
     private fun binaryComparisonToPredicate(column: Path<out Any?>, columnPredicate: BinaryComparison<*>): Predicate {
-        val literal: Comparable<Any?>? = uncheckedCast(columnPredicate.rightLiteral)
+        val literal = literalsOf<Comparable<Any?>?>(columnPredicate).single()
         @Suppress("UNCHECKED_CAST")
         column as Path<Comparable<Any?>?>
         return when (columnPredicate.operator) {
@@ -107,33 +136,33 @@ abstract class AbstractQueryCriteriaParser<Q : GenericQueryCriteria<Q,P>, in P:
     }
 
     private fun likeComparisonToPredicate(column: Path<out Any?>, columnPredicate: Likeness): Predicate {
+        val literal = literalsOf<String>(columnPredicate).single()
         @Suppress("UNCHECKED_CAST")
         column as Path<String?>
         return when (columnPredicate.operator) {
-            LIKE -> criteriaBuilder.like(column, columnPredicate.rightLiteral)
-            LIKE_IGNORE_CASE -> criteriaBuilder.like(criteriaBuilder.upper(column), columnPredicate.rightLiteral.uppercase(Locale.getDefault()))
-            NOT_LIKE -> criteriaBuilder.notLike(column, columnPredicate.rightLiteral)
-            NOT_LIKE_IGNORE_CASE -> criteriaBuilder.notLike(criteriaBuilder.upper(column), columnPredicate.rightLiteral.uppercase(Locale.getDefault()))
+            LIKE -> criteriaBuilder.like(column, literal)
+            LIKE_IGNORE_CASE -> criteriaBuilder.like(criteriaBuilder.upper(column), literal)
+            NOT_LIKE -> criteriaBuilder.notLike(column, literal)
+            NOT_LIKE_IGNORE_CASE -> criteriaBuilder.notLike(criteriaBuilder.upper(column), literal)
         }
     }
 
+    @Suppress("SpreadOperator")
     private fun collectionComparisonToPredicate(column: Path<out Any?>, columnPredicate: CollectionExpression<*>): Predicate {
-        val literal = columnPredicate.rightLiteral
-        return if (literal.any { it is String }) {
+        val literals = literalsOf<Any?>(columnPredicate).toTypedArray()
+        return if (columnPredicate.rightLiteral.any { it is String }) {
             @Suppress("UNCHECKED_CAST")
             column as Path<String?>
-            @Suppress("UNCHECKED_CAST")
-            literal as Collection<String>
             when (columnPredicate.operator) {
-                IN -> column.`in`(literal)
-                IN_IGNORE_CASE -> criteriaBuilder.upper(column).`in`(literal.map { it.uppercase(Locale.getDefault()) })
-                NOT_IN -> criteriaBuilder.not(column.`in`(literal))
-                NOT_IN_IGNORE_CASE -> criteriaBuilder.not(criteriaBuilder.upper(column).`in`(literal.map { it.uppercase(Locale.getDefault()) }))
+                IN -> column.`in`(*literals)
+                IN_IGNORE_CASE -> criteriaBuilder.upper(column).`in`(*literals)
+                NOT_IN -> criteriaBuilder.not(column.`in`(*literals))
+                NOT_IN_IGNORE_CASE -> criteriaBuilder.not(criteriaBuilder.upper(column).`in`(*literals))
             }
         } else {
             when (columnPredicate.operator) {
-                IN, IN_IGNORE_CASE -> column.`in`(literal)
-                NOT_IN, NOT_IN_IGNORE_CASE -> criteriaBuilder.not(column.`in`(literal))
+                IN, IN_IGNORE_CASE -> column.`in`(*literals)
+                NOT_IN, NOT_IN_IGNORE_CASE -> criteriaBuilder.not(column.`in`(*literals))
             }
         }
     }
@@ -141,11 +170,22 @@ abstract class AbstractQueryCriteriaParser<Q : GenericQueryCriteria<Q,P>, in P:
     private fun betweenComparisonToPredicate(column: Path<out Any?>, columnPredicate: Between<*>): Predicate {
         @Suppress("UNCHECKED_CAST")
         column as Path<Comparable<Any?>?>
-        val fromLiteral: Comparable<Any?>? = uncheckedCast(columnPredicate.rightFromLiteral)
-        val toLiteral: Comparable<Any?>? = uncheckedCast(columnPredicate.rightToLiteral)
+        val (fromLiteral, toLiteral) = literalsOf<Comparable<Any?>?>(columnPredicate)
         return criteriaBuilder.between(column, fromLiteral, toLiteral)
     }
 
+    /** The literals of [columnPredicate], as parameters if they are to be bound to the query. */
+    private fun <T> literalsOf(columnPredicate: ColumnPredicate<*>): List<Expression<T>> {
+        return boundLiteralsOf(columnPredicate).mapIndexed { position, value ->
+            val expression: Expression<*> = if (value == null) {
+                criteriaBuilder.nullLiteral(Any::class.java)
+            } else {
+                parameters?.parameterFor(criteriaBuilder, columnPredicate, position, value) ?: criteriaBuilder.literal(value)
+            }
+            uncheckedCast(expression)
+        }
+    }
+
     private fun nullComparisonToPredicate(column: Path<out Any?>, columnPredicate: NullExpression<*>): Predicate {
         return when (columnPredicate.operator) {
             IS_NULL -> criteriaBuilder.isNull(column)
@@ -273,7 +313,8 @@ class HibernateQueryCriteriaParser(val contractStateType: Class<out ContractStat
                                    val contractStateTypeMappings: Map<String, Set<String>>,
                                    override val criteriaBuilder: CriteriaBuilder,
                                    val criteriaQuery: CriteriaQuery<*>,
-                                   val vaultStates: Root<VaultSchemaV1.VaultStates>) : AbstractQueryCriteriaParser<QueryCriteria, IQueryCriteriaParser, Sort>(), IQueryCriteriaParser {
+                                   val vaultStates: Root<VaultSchemaV1.VaultStates>,
+                                   override val parameters: VaultQueryParameters? = null) : AbstractQueryCriteriaParser<QueryCriteria, IQueryCriteriaParser, Sort>(), IQueryCriteriaParser {
     private companion object {
         private val log = contextLogger()
         private val disableCorda3879 = System.getProperty("net.corda.vault.query.disable.corda3879")?.toBoolean() ?: false
@@ -2,6 +2,7 @@ package net.corda.node.services.vault
 
 import co.paralleluniverse.fibers.Suspendable
 import co.paralleluniverse.strands.Strand
+import com.codahale.metrics.MetricRegistry
 import net.corda.core.CordaRuntimeException
 import net.corda.core.contracts.Amount
 import net.corda.core.contracts.ContractState
@@ -15,6 +16,7 @@ import net.corda.core.contracts.TransactionState
 import net.corda.core.crypto.SecureHash
 import net.corda.core.crypto.containsAny
 import net.corda.core.flows.HospitalizeFlowException
+import net.corda.core.internal.NamedCacheFactory
 import net.corda.core.internal.ThreadBox
 import net.corda.core.internal.TransactionDeserialisationException
 import net.corda.core.internal.VisibleForTesting
@@ -100,7 +102,9 @@ class NodeVaultService(
         private val serviceHub: VerifyingServiceHub,
         private val database: CordaPersistence,
         schemaService: SchemaService,
-        private val appClassloader: ClassLoader
+        private val appClassloader: ClassLoader,
+        cacheFactory: NamedCacheFactory,
+        metricRegistry: MetricRegistry = MetricRegistry()
 ) : SingletonSerializeAsToken(), VaultServiceInternal {
     companion object {
         private val log = contextLogger()
@@ -136,6 +140,11 @@ class NodeVaultService(
     private val mutex = ThreadBox(InnerState())
     private val criteriaBuilder: CriteriaBuilder by lazy { database.hibernateConfig.sessionFactoryForRegisteredSchemas.criteriaBuilder }
     private val persistentStateService = PersistentStateService(schemaService)
+    /** Times the parsing of vault query criteria and the rendering of them by Hibernate. */
+    private val queryParseTimer = metricRegistry.timer("VaultQuery.Parse")
+    /** Times the running of vault queries and the reading of their results. */
+    private val queryExecuteTimer = metricRegistry.timer("VaultQuery.Execute")
+    private val queryPlans = VaultQueryPlanCache(cacheFactory, metricRegistry)
 
     /**
      * Maintain a list of contract state interfaces to concrete types stored in the vault
@@ -157,6 +166,8 @@ class NodeVaultService(
                         val contractStateType = contractStateTypeMappings.getOrPut(it.name) { CopyOnWriteArraySet() }
                         contractStateType.add(concreteType.name)
                     }
+                    // Queries for any of the contract types now have to select this concrete type as well.
+                    queryPlans.invalidate()
                 }
             }
         }
@@ -729,30 +740,36 @@ class NodeVaultService(
                                             paging: PageSpecification,
                                             sorting: Sort,
                                             contractStateType: Class<out T>): Vault.Page<T> {
-        val (criteriaQuery, criteriaParser) = buildCriteriaQuery<Tuple>(criteria, contractStateType, sorting)
-        val query = getSession().createQuery(criteriaQuery)
+        val (query, stateTypes) = queryParseTimer.time().use {
+            queryPlans.createQuery(getSession(), Tuple::class.java, criteria, sorting, contractStateType) { parameters ->
+                val (criteriaQuery, criteriaParser) = buildCriteriaQuery<Tuple>(criteria, contractStateType, sorting, parameters)
+                Pair(criteriaQuery, criteriaParser.stateTypes)
+            }
+        }
         query.setResultWindow(paging)
 
         var previousPageAnchor: StateRef? = null
         val statesMetadata: MutableList<Vault.StateMetadata> = mutableListOf()
         val otherResults: MutableList<Any> = mutableListOf()
 
-        query.resultStream(paging).use { results ->
-            val resultsIterator = results.iterator()
+        queryExecuteTimer.time().use {
+            query.resultStream(paging).use { results ->
+                val resultsIterator = results.iterator()
 
-            // From page 2 and onwards, the first result is the previous page anchor
-            if (paging.pageNumber > DEFAULT_PAGE_NUM && resultsIterator.hasNext()) {
-                val previousVaultState = resultsIterator.next()[0] as VaultSchemaV1.VaultStates
-                previousPageAnchor = previousVaultState.stateRef!!.toStateRef()
-            }
+                // From page 2 and onwards, the first result is the previous page anchor
+                if (paging.pageNumber > DEFAULT_PAGE_NUM && resultsIterator.hasNext()) {
+                    val previousVaultState = resultsIterator.next()[0] as VaultSchemaV1.VaultStates
+                    previousPageAnchor = previousVaultState.stateRef!!.toStateRef()
+                }
 
-            for (result in resultsIterator) {
-                val result0 = result[0]
-                if (result0 is VaultSchemaV1.VaultStates) {
-                    statesMetadata.add(result0.toStateMetadata())
-                } else {
-                    log.debug { "OtherResults: ${result.toArray().contentToString()}" }
-                    otherResults.addAll(result.toArray().asList())
+                for (result in resultsIterator) {
+                    val result0 = result[0]
+                    if (result0 is VaultSchemaV1.VaultStates) {
+                        statesMetadata.add(result0.toStateMetadata())
+                    } else {
+                        log.debug { "OtherResults: ${result.toArray().contentToString()}" }
+                        otherResults.addAll(result.toArray().asList())
+                    }
                 }
             }
         }
@@ -766,7 +783,7 @@ class NodeVaultService(
             else -> queryTotalStateCount(criteria, contractStateType)
         }
 
-        return Vault.Page(states, statesMetadata, totalStatesAvailable, criteriaParser.stateTypes, otherResults, previousPageAnchor)
+        return Vault.Page(states, statesMetadata, totalStatesAvailable, stateTypes, otherResults, previousPageAnchor)
     }
 
     private fun <R> Query<R>.resultStream(paging: PageSpecification): Stream<R> {
@@ -800,22 +817,28 @@ class NodeVaultService(
     }
 
     private fun <T : ContractState> queryTotalStateCount(criteria: QueryCriteria, contractStateType: Class<out T>): Long {
-        val (criteriaQuery, criteriaParser) = buildCriteriaQuery<Long>(criteria, contractStateType, null)
-        criteriaQuery.select(criteriaBuilder.count(criteriaParser.vaultStates))
-        val query = getSession().createQuery(criteriaQuery)
-        return query.singleResult
+        val (query) = queryParseTimer.time().use {
+            queryPlans.createQuery(getSession(), Long::class.javaObjectType, criteria, null, contractStateType) { parameters ->
+                val (criteriaQuery, criteriaParser) = buildCriteriaQuery<Long>(criteria, contractStateType, null, parameters)
+                criteriaQuery.select(criteriaBuilder.count(criteriaParser.vaultStates))
+                Pair(criteriaQuery, criteriaParser.stateTypes)
+            }
+        }
+        return queryExecuteTimer.time().use { query.singleResult }
     }
 
     private inline fun <reified T> buildCriteriaQuery(criteria: QueryCriteria,
                                                       contractStateType: Class<out ContractState>,
-                                                      sorting: Sort?): Pair<CriteriaQuery<T>, HibernateQueryCriteriaParser> {
+                                                      sorting: Sort?,
+                                                      parameters: VaultQueryParameters): Pair<CriteriaQuery<T>, HibernateQueryCriteriaParser> {
         val criteriaQuery = criteriaBuilder.createQuery(T::class.java)
         val criteriaParser = HibernateQueryCriteriaParser(
                 contractStateType,
                 contractStateTypeMappings,
                 criteriaBuilder,
                 criteriaQuery,
-                criteriaQuery.from(VaultSchemaV1.VaultStates::class.java)
+                criteriaQuery.from(VaultSchemaV1.VaultStates::class.java),
+                parameters
         )
         criteriaParser.parse(criteria, sorting)
         return Pair(criteriaQuery, criteriaParser)
@@ -847,9 +870,10 @@ class NodeVaultService(
             val snapshotResults = _queryBy(criteria, paging, sorting, contractStateType)
             val snapshotStatesRefs = snapshotResults.statesMetadata.mapToSet { it.ref }
             val snapshotConsumedStatesRefs = snapshotResults.statesMetadata.filter { it.consumedTime != null }.mapToSet { it.ref }
+            val updateFilter = VaultUpdateFilter(criteria)
             val filteredUpdates = updates.filter { it.containsType(contractStateType, snapshotResults.stateTypes) }
-                    .map { filterContractStates(it, contractStateType) }
-                    .filter { !hasBeenSeen(it, snapshotStatesRefs, snapshotConsumedStatesRefs) }
+                    .map { updateFilter.filter(filterContractStates(it, contractStateType)) }
+                    .filter { !it.isEmpty() && !hasBeenSeen(it, snapshotStatesRefs, snapshotConsumedStatesRefs) }
 
             DataFeed(snapshotResults, filteredUpdates)
         }
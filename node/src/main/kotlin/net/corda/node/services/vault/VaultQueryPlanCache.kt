@@ -0,0 +1,178 @@
+package net.corda.node.services.vault
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.RatioGauge
+import net.corda.core.contracts.ContractState
+import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.ColumnPredicate
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Sort
+import org.hibernate.Session
+import org.hibernate.query.Query
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.util.IdentityHashMap
+import javax.persistence.criteria.CriteriaBuilder
+import javax.persistence.criteria.CriteriaQuery
+import javax.persistence.criteria.ParameterExpression
+
+/**
+ * Caches the HQL which [HibernateQueryCriteriaParser] and Hibernate build for vault queries, so that a query which is repeated, such
+ * as a flow or RPC client polling the vault, skips parsing its criteria and rendering them. Hibernate caches the SQL for the HQL in
+ * turn, in its own query plan cache.
+ *
+ * Queries are keyed on the shape of their criteria, along with their sorting, contract state type and result type. The shape of the
+ * criteria is everything in them but the values compared with by their [ColumnPredicate]s, which are bound to the query as parameters
+ * instead, so queries which only differ in those values share a plan. Any other values in the criteria, such as the state refs of a
+ * [QueryCriteria.VaultQueryCriteria], are part of the shape.
+ *
+ * The plans depend on the contract state types known to the vault, and have to be [invalidate]d when those change.
+ */
+internal class VaultQueryPlanCache(cacheFactory: NamedCacheFactory, metricRegistry: MetricRegistry) {
+    private class Plan(
+            val hql: String,
+            /** The names of the parameters in [hql] which are bound to the values of column predicates. */
+            val predicateParameters: Set<String>,
+            /** The parameters Hibernate rendered for the other values in the criteria, which are the same for every query of the plan. */
+            val fixedParameters: Map<String, Any?>,
+            val stateTypes: Vault.StateStatus
+    )
+
+    private val plans = cacheFactory.buildNamed<Any, Plan>("NodeVaultService_queryPlans")
+    private val hits = metricRegistry.meter("VaultQuery.Plans.Hits")
+    private val misses = metricRegistry.meter("VaultQuery.Plans.Misses")
+
+    init {
+        metricRegistry.gauge("VaultQuery.Plans.HitRatio") {
+            object : RatioGauge() {
+                override fun getRatio(): Ratio = Ratio.of(hits.count.toDouble(), (hits.count + misses.count).toDouble())
+            }
+        }
+    }
+
+    /**
+     * Creates a [Query] in [session] for the given criteria, from the cached plan for their shape if there is one, and otherwise by
+     * calling [parse] to build the criteria query. [parse] has to pass the given [VaultQueryParameters] to its parser.
+     *
+     * @return The query, with the values of the criteria bound to it, and the [Vault.StateStatus] of the states it selects.
+     */
+    fun <R> createQuery(session: Session,
+                        resultType: Class<R>,
+                        criteria: QueryCriteria,
+                        sorting: Sort?,
+                        contractStateType: Class<out ContractState>,
+                        parse: (VaultQueryParameters) -> Pair<CriteriaQuery<R>, Vault.StateStatus>): Pair<Query<R>, Vault.StateStatus> {
+        val parameters = VaultQueryParameters(criteria)
+        val key = listOf(parameters.shape, sorting, contractStateType, resultType)
+        val plan = plans.getIfPresent(key)
+        if (plan != null) {
+            hits.mark()
+            val query = session.createQuery(plan.hql, resultType)
+            plan.fixedParameters.forEach { (name, value) -> query.setParameter(name, value) }
+            parameters.bind(query, plan.predicateParameters)
+            return Pair(query, plan.stateTypes)
+        }
+        misses.mark()
+        val (criteriaQuery, stateTypes) = parse(parameters)
+        val query = session.createQuery(criteriaQuery)
+        val predicateParameters = query.parameters.mapNotNullTo(HashSet()) { it.name }
+        parameters.bind(query, predicateParameters)
+        // The other literals of the criteria are bound by Hibernate to the HQL query the criteria query wraps.
+        val hqlQuery = query.unwrap(Query::class.java)
+        val fixedParameters = (hqlQuery.parameterMetadata.namedParameterNames - predicateParameters).associateWith {
+            hqlQuery.getParameterValue(it)
+        }
+        plans.put(key, Plan(hqlQuery.queryString, predicateParameters, fixedParameters, stateTypes))
+        return Pair(query, stateTypes)
+    }
+
+    fun invalidate() {
+        plans.invalidateAll()
+    }
+}
+
+/**
+ * The values compared with by the [ColumnPredicate]s of some vault query criteria, which [HibernateQueryCriteriaParser] binds to its
+ * query as parameters rather than writing them into it, and the [shape] of the criteria without them.
+ */
+class VaultQueryParameters internal constructor(criteria: QueryCriteria) {
+    private companion object {
+        private const val CRITERIA_PACKAGE = "net.corda.core.node.services.vault."
+
+        private val fieldsOf = object : ClassValue<List<Field>>() {
+            override fun computeValue(type: Class<*>): List<Field> {
+                return generateSequence(type) { it.superclass }
+                        .flatMap { it.declaredFields.asSequence() }
+                        .filterNot { Modifier.isStatic(it.modifiers) }
+                        .onEach { it.isAccessible = true }
+                        .toList()
+            }
+        }
+
+        fun nameOf(index: Int, position: Int): String = "cp${index}_$position"
+    }
+
+    /** Marks a column predicate which appears in the criteria more than once, and so binds the same parameters each time. */
+    private data class SharedPredicate(val index: Int)
+
+    private val indices = IdentityHashMap<ColumnPredicate<*>, Int>()
+    private val predicates = ArrayList<ColumnPredicate<*>>()
+    private val parameterExpressions = HashMap<String, ParameterExpression<*>>()
+
+    /** The criteria, with the column predicates which have values replaced by their types and the types of their values. */
+    internal val shape: Any? = shapeOf(criteria)
+
+    /**
+     * The parameter for the value at [position] in the [boundLiteralsOf] of [columnPredicate], or null if it isn't part of the
+     * criteria.
+     */
+    internal fun parameterFor(criteriaBuilder: CriteriaBuilder,
+                              columnPredicate: ColumnPredicate<*>,
+                              position: Int,
+                              value: Any): ParameterExpression<*>? {
+        val index = indices[columnPredicate] ?: return null
+        return parameterExpressions.getOrPut(nameOf(index, position)) {
+            criteriaBuilder.parameter((value as? Enum<*>)?.declaringClass ?: value.javaClass, nameOf(index, position))
+        }
+    }
+
+    /** Binds the values of the criteria to those of the [names] parameters which [query] has. */
+    internal fun bind(query: Query<*>, names: Set<String>) {
+        predicates.forEachIndexed { index, predicate ->
+            boundLiteralsOf(predicate).forEachIndexed { position, value ->
+                val name = nameOf(index, position)
+                if (name in names) {
+                    query.setParameter(name, value)
+                }
+            }
+        }
+    }
+
+    private fun shapeOf(value: Any?): Any? {
+        return when {
+            value is ColumnPredicate<*> -> predicateShapeOf(value)
+            value is List<*> -> value.map { shapeOf(it) }
+            value == null || value is Enum<*> || !value.javaClass.name.startsWith(CRITERIA_PACKAGE) -> value
+            else -> listOf(value.javaClass) + fieldsOf.get(value.javaClass).map { shapeOf(it.get(value)) }
+        }
+    }
+
+    private fun predicateShapeOf(predicate: ColumnPredicate<*>): Any {
+        val literals = boundLiteralsOf(predicate)
+        // Predicates without values, such as null checks and aggregate functions, are only their shape.
+        if (literals.isEmpty()) return predicate
+        indices[predicate]?.let { return SharedPredicate(it) }
+        indices[predicate] = predicates.size
+        predicates += predicate
+        val operator = when (predicate) {
+            is ColumnPredicate.EqualityComparison -> predicate.operator
+            is ColumnPredicate.BinaryComparison -> predicate.operator
+            is ColumnPredicate.Likeness -> predicate.operator
+            is ColumnPredicate.CollectionExpression -> predicate.operator
+            else -> null
+        }
+        // Null values are written into the query rather than bound, and the types of the values decide how they are compared.
+        return listOf(predicate.javaClass, operator, literals.map { it?.javaClass })
+    }
+}
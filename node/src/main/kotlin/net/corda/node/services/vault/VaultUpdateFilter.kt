@@ -0,0 +1,266 @@
+package net.corda.node.services.vault
+
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.FungibleAsset
+import net.corda.core.contracts.FungibleState
+import net.corda.core.contracts.LinearState
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.identity.AbstractParty
+import net.corda.core.identity.Party
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.BinaryComparisonOperator
+import net.corda.core.node.services.vault.BinaryLogicalOperator
+import net.corda.core.node.services.vault.CollectionOperator
+import net.corda.core.node.services.vault.ColumnPredicate
+import net.corda.core.node.services.vault.CriteriaExpression
+import net.corda.core.node.services.vault.EqualityComparisonOperator
+import net.corda.core.node.services.vault.LikenessOperator
+import net.corda.core.node.services.vault.NullOperator
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.schemas.QueryableState
+import net.corda.core.utilities.contextLogger
+import java.lang.reflect.Field
+import java.math.BigDecimal
+import java.time.Instant
+import java.time.LocalDate
+import java.util.UUID
+import javax.persistence.Convert
+
+/**
+ * Evaluates a [QueryCriteria] against the states of a [Vault.Update] in memory, so that the updates of a
+ * [net.corda.core.node.services.VaultService.trackBy] feed only carry the states its query could have returned.
+ *
+ * Not everything a query can select on is known in memory, nor always compared the same way as by the database, for example
+ * anonymous parties which the database resolves to well-known names, or strings under a case-insensitive collation. Conditions
+ * like these are treated as unknown, and a state is only filtered out if the criteria are certain not to match it. Updates may
+ * therefore still contain states the query would not return, but never lose states it would.
+ */
+internal class VaultUpdateFilter(private val criteria: QueryCriteria) {
+    companion object {
+        private val log = contextLogger()
+
+        private val comparableTypes = setOf(String::class.java, Long::class.javaObjectType, Int::class.javaObjectType,
+                Short::class.javaObjectType, Double::class.javaObjectType, Float::class.javaObjectType, Boolean::class.javaObjectType,
+                BigDecimal::class.java, Instant::class.java, LocalDate::class.java, UUID::class.java)
+    }
+
+    /**
+     * @return [update] with the states the criteria cannot match removed.
+     */
+    fun <T : ContractState> filter(update: Vault.Update<T>): Vault.Update<T> {
+        val consumed = update.consumed.filterTo(LinkedHashSet()) { mayMatch(it, isConsumed = true) }
+        val produced = update.produced.filterTo(LinkedHashSet()) { mayMatch(it, isConsumed = false) }
+        if (consumed.size == update.consumed.size && produced.size == update.produced.size) return update
+        return update.copy(consumed = consumed, produced = produced)
+    }
+
+    private fun mayMatch(stateAndRef: StateAndRef<ContractState>, isConsumed: Boolean): Boolean {
+        return try {
+            criteria.evaluate(stateAndRef, isConsumed) != false
+        } catch (e: Exception) {
+            log.debug("Unable to evaluate $criteria against ${stateAndRef.ref} in memory", e)
+            true
+        }
+    }
+
+    // Criteria are evaluated to true, false, or null if they cannot be evaluated in memory.
+    private fun QueryCriteria.evaluate(stateAndRef: StateAndRef<ContractState>, isConsumed: Boolean): Boolean? {
+        val state = stateAndRef.state.data
+        return when (this) {
+            is QueryCriteria.AndComposition -> and(a.evaluate(stateAndRef, isConsumed), b.evaluate(stateAndRef, isConsumed))
+            is QueryCriteria.OrComposition -> or(a.evaluate(stateAndRef, isConsumed), b.evaluate(stateAndRef, isConsumed))
+            is QueryCriteria.VaultQueryCriteria -> and(
+                    evaluateCommon(stateAndRef, isConsumed),
+                    stateRefs?.let { stateAndRef.ref in it },
+                    notary?.let { partiesIntersect(listOf(stateAndRef.state.notary), it) }
+            )
+            is QueryCriteria.LinearStateQueryCriteria -> if (state !is LinearState) false else and(
+                    evaluateCommon(stateAndRef, isConsumed),
+                    uuid?.let { state.linearId.id in it },
+                    externalId?.let { ids -> or(*ids.map { stringEquals(state.linearId.externalId, it) }.toTypedArray()) }
+            )
+            is QueryCriteria.FungibleAssetQueryCriteria -> if (state !is FungibleAsset<*>) false else and(
+                    evaluateCommon(stateAndRef, isConsumed),
+                    owner?.let { partiesIntersect(listOf(state.owner), it) },
+                    quantity?.let { evaluate(state.amount.quantity, it) },
+                    issuer?.let { partiesIntersect(listOf(state.amount.token.issuer.party), it) },
+                    issuerRef?.let { state.amount.token.issuer.reference in it }
+            )
+            is QueryCriteria.FungibleStateQueryCriteria -> if (state !is FungibleState<*>) false else and(
+                    evaluateCommon(stateAndRef, isConsumed),
+                    quantity?.let { evaluate(state.amount.quantity, it) }
+            )
+            is QueryCriteria.VaultCustomQueryCriteria<*> -> and(
+                    evaluateCommon(stateAndRef, isConsumed),
+                    evaluate(expression, MappedObjects(state))
+            )
+            else -> null
+        }
+    }
+
+    private fun QueryCriteria.CommonQueryCriteria.evaluateCommon(stateAndRef: StateAndRef<ContractState>, isConsumed: Boolean): Boolean? {
+        val state = stateAndRef.state.data
+        // The states consumed by an update are kept when tracking unconsumed states, as they tell the observer to drop them.
+        val statusMatches = !(status == Vault.StateStatus.CONSUMED && !isConsumed)
+        return and(
+                statusMatches,
+                contractStateTypes?.let { types -> types.any { it.isAssignableFrom(state.javaClass) } },
+                if (constraintTypes.isEmpty()) null else Vault.ConstraintInfo(stateAndRef.state.constraint).type() in constraintTypes,
+                participants?.let { partiesIntersect(state.participants, it) },
+                exactParticipants?.let { sameParties(state.participants, it) }
+        )
+    }
+
+    /**
+     * The database compares parties by their well-known name, so only well-known parties can be compared in memory.
+     */
+    private fun partiesIntersect(parties: List<AbstractParty?>, criteriaParties: List<AbstractParty>): Boolean? {
+        if (parties.any { it !is Party } || criteriaParties.any { it !is Party }) return null
+        val criteriaNames = criteriaParties.mapTo(HashSet()) { (it as Party).name }
+        return parties.any { (it as Party).name in criteriaNames }
+    }
+
+    private fun sameParties(parties: List<AbstractParty>, criteriaParties: List<AbstractParty>): Boolean? {
+        if (parties.any { it !is Party } || criteriaParties.any { it !is Party }) return null
+        return parties.mapTo(HashSet()) { (it as Party).name } == criteriaParties.mapTo(HashSet()) { (it as Party).name }
+    }
+
+    /**
+     * The entities a [QueryableState] maps to, generated when a custom expression first needs them.
+     */
+    private class MappedObjects(private val state: ContractState) {
+        private val objects by lazy {
+            (state as? QueryableState)?.let { queryable -> queryable.supportedSchemas().map { queryable.generateMappedObject(it) } }
+        }
+
+        /** @return the single mapped entity of type [entityClass], or null if there is not exactly one. */
+        fun find(entityClass: Class<*>): Any? = objects?.singleOrNull { entityClass.isInstance(it) }
+    }
+
+    private fun evaluate(expression: CriteriaExpression<*, Boolean>, mappedObjects: MappedObjects): Boolean? {
+        return when (expression) {
+            is CriteriaExpression.BinaryLogical -> {
+                val left = evaluate(expression.left, mappedObjects)
+                val right = evaluate(expression.right, mappedObjects)
+                when (expression.operator) {
+                    BinaryLogicalOperator.AND -> and(left, right)
+                    BinaryLogicalOperator.OR -> or(left, right)
+                }
+            }
+            is CriteriaExpression.Not -> evaluate(expression.expression, mappedObjects)?.not()
+            is CriteriaExpression.ColumnPredicateExpression<*, *> -> {
+                val entity = mappedObjects.find(expression.column.declaringClass) ?: return null
+                val field = findField(entity.javaClass, expression.column.name) ?: return null
+                // Converted columns are compared by the database in their converted form.
+                if (field.isAnnotationPresent(Convert::class.java)) return null
+                field.isAccessible = true
+                @Suppress("UNCHECKED_CAST")
+                evaluate(field.get(entity), expression.predicate as ColumnPredicate<Any?>)
+            }
+            else -> null
+        }
+    }
+
+    private fun findField(type: Class<*>, name: String): Field? {
+        return generateSequence(type) { it.superclass }.mapNotNull { clazz -> clazz.declaredFields.find { it.name == name } }.firstOrNull()
+    }
+
+    @Suppress("ComplexMethod")
+    private fun evaluate(value: Any?, predicate: ColumnPredicate<*>): Boolean? {
+        return when (predicate) {
+            is ColumnPredicate.NullExpression -> when (predicate.operator) {
+                NullOperator.IS_NULL -> value == null
+                NullOperator.NOT_NULL -> value != null
+            }
+            // Comparisons with null are never true in SQL.
+            else -> if (value == null) false else when (predicate) {
+                is ColumnPredicate.EqualityComparison -> when (predicate.operator) {
+                    EqualityComparisonOperator.EQUAL -> literalEquals(value, predicate.rightLiteral)
+                    EqualityComparisonOperator.NOT_EQUAL -> literalEquals(value, predicate.rightLiteral)?.not()
+                    EqualityComparisonOperator.EQUAL_IGNORE_CASE -> ignoreCaseEquals(value, predicate.rightLiteral)
+                    EqualityComparisonOperator.NOT_EQUAL_IGNORE_CASE -> ignoreCaseEquals(value, predicate.rightLiteral)?.not()
+                }
+                is ColumnPredicate.BinaryComparison -> compare(value, predicate.rightLiteral)?.let {
+                    when (predicate.operator) {
+                        BinaryComparisonOperator.LESS_THAN -> it < 0
+                        BinaryComparisonOperator.LESS_THAN_OR_EQUAL -> it <= 0
+                        BinaryComparisonOperator.GREATER_THAN -> it > 0
+                        BinaryComparisonOperator.GREATER_THAN_OR_EQUAL -> it >= 0
+                    }
+                }
+                is ColumnPredicate.Between -> {
+                    val from = compare(value, predicate.rightFromLiteral)
+                    val to = compare(value, predicate.rightToLiteral)
+                    if (from == null || to == null) null else from >= 0 && to <= 0
+                }
+                is ColumnPredicate.CollectionExpression -> {
+                    val contained = when (predicate.operator) {
+                        CollectionOperator.IN, CollectionOperator.NOT_IN -> or(*predicate.rightLiteral.map { literalEquals(value, it) }.toTypedArray())
+                        else -> or(*predicate.rightLiteral.map { ignoreCaseEquals(value, it) }.toTypedArray())
+                    }
+                    when (predicate.operator) {
+                        CollectionOperator.IN, CollectionOperator.IN_IGNORE_CASE -> contained
+                        CollectionOperator.NOT_IN, CollectionOperator.NOT_IN_IGNORE_CASE -> contained?.not()
+                    }
+                }
+                is ColumnPredicate.Likeness -> if (value !is String) null else {
+                    val matches = likeMatches(value, predicate.rightLiteral, ignoreCase = predicate.operator == LikenessOperator.LIKE_IGNORE_CASE
+                            || predicate.operator == LikenessOperator.NOT_LIKE_IGNORE_CASE)
+                    when (predicate.operator) {
+                        LikenessOperator.LIKE, LikenessOperator.LIKE_IGNORE_CASE -> matches
+                        LikenessOperator.NOT_LIKE, LikenessOperator.NOT_LIKE_IGNORE_CASE -> matches?.not()
+                    }
+                }
+                else -> null
+            }
+        }
+    }
+
+    /** Values are only compared if they are of the same simple type, as the database may convert between others. */
+    private fun literalEquals(value: Any, literal: Any?): Boolean? {
+        if (literal == null || value.javaClass != literal.javaClass || value.javaClass !in comparableTypes) return null
+        return if (value is String) stringEquals(value, literal as String) else value == literal
+    }
+
+    private fun ignoreCaseEquals(value: Any, literal: Any?): Boolean? {
+        return if (value is String && literal is String) value.equals(literal, ignoreCase = true) else null
+    }
+
+    /** Whether strings which differ only in case are equal depends on the collation of the database. */
+    private fun stringEquals(value: String?, literal: String): Boolean? {
+        return when {
+            value == null -> false
+            value == literal -> true
+            value.equals(literal, ignoreCase = true) -> null
+            else -> false
+        }
+    }
+
+    private fun compare(value: Any, literal: Any?): Int? {
+        // The ordering of strings depends on the collation of the database.
+        if (literal == null || value.javaClass != literal.javaClass || value.javaClass !in comparableTypes || value is String) return null
+        @Suppress("UNCHECKED_CAST")
+        return (value as Comparable<Any>).compareTo(literal)
+    }
+
+    private fun likeMatches(value: String, pattern: String, ignoreCase: Boolean): Boolean? {
+        val regex = pattern.split('%').joinToString(".*") { part -> part.split('_').joinToString(".") { Regex.escape(it) } }
+        return when {
+            Regex(regex, RegexOption.DOT_MATCHES_ALL).matches(value) -> true
+            Regex(regex, setOf(RegexOption.DOT_MATCHES_ALL, RegexOption.IGNORE_CASE)).matches(value) -> if (ignoreCase) true else null
+            else -> false
+        }
+    }
+
+    private fun and(vararg values: Boolean?): Boolean? = when {
+        values.any { it == false } -> false
+        values.all { it == true } -> true
+        else -> null
+    }
+
+    private fun or(vararg values: Boolean?): Boolean? = when {
+        values.any { it == true } -> true
+        values.all { it == false } -> false
+        else -> null
+    }
+}
@@ -1,6 +1,7 @@
 package net.corda.node.utilities
 
 import com.github.benmanes.caffeine.cache.LoadingCache
+import com.github.benmanes.caffeine.cache.stats.CacheStats
 import net.corda.core.internal.NamedCacheFactory
 import net.corda.core.utilities.contextLogger
 import net.corda.nodeapi.internal.persistence.DatabaseTransaction
@@ -41,6 +42,16 @@ abstract class AppendOnlyPersistentMapBase<K : Any, V, E, out EK>(
      */
     operator fun get(key: K): V? = cache.get(key)?.orElse(null)
 
+    /**
+     * Returns whether the cache holds an entry for the key, without loading it or counting it as a use of the entry.
+     */
+    fun isCached(key: K): Boolean = cache.policy().getIfPresentQuietly(key) != null
+
+    /**
+     * Returns the statistics of the cache, which are only recorded by caches built with [com.github.benmanes.caffeine.cache.Caffeine.recordStats].
+     */
+    val cacheStats: CacheStats get() = cache.stats()
+
     val size: Long get() = allPersisted.use { it.count() }
 
     /**
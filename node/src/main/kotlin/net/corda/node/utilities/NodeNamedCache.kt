@@ -39,11 +39,15 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
             when {
                 name.startsWith("RPCSecurityManagerShiroCache_") -> with(security?.authService?.options?.cache!!) { caffeine.maximumSize(maxEntries).expireAfterWrite(expireAfterSecs, TimeUnit.SECONDS) }
                 name == "RPCServer_observableSubscription" -> caffeine
+                name == "RPCServer_cursors" -> caffeine
                 name == "RpcClientProxyHandler_rpcObservable" -> caffeine
                 name == "SerializationScheme_attachmentClassloader" -> caffeine
                 name == "HibernateConfiguration_sessionFactories" -> caffeine.maximumSize(database.mappedSchemaCacheSize)
+                name.startsWith("HibernateSecondLevelCache_") -> caffeine.maximumSize(database.secondLevelCacheSize)
                 name == "DBTransactionStorage_transactions" -> caffeine.maximumWeight(transactionCacheSizeBytes)
                 name == "NodeAttachmentService_attachmentContent" -> caffeine.maximumWeight(attachmentContentCacheSizeBytes)
+                name == "NodeAttachmentService_attachmentChunks" -> caffeine.maximumWeight(attachmentContentCacheSizeBytes)
+                name == "AttachmentUploads_uploads" -> caffeine.maximumSize(defaultAttachmentUploadsCacheSize)
                 name == "NodeAttachmentService_contractAttachmentVersions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentIdentityService_keyToPartyAndCert" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentIdentityService_nameToParty" -> caffeine.maximumSize(defaultCacheSize)
@@ -56,6 +60,7 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
                 name == "ContractUpgradeService_upgrades" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentUniquenessProvider_transactions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "P2PMessageDeduplicator_processedMessages" -> caffeine.maximumSize(defaultCacheSize)
+                name == "P2PMessageDeduplicator_senders" -> caffeine.maximumSize(defaultCacheSize)
                 name == "DeduplicationChecker_watermark" -> caffeine
                 name == "BFTNonValidatingNotaryService_transactions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "RaftUniquenessProvider_transactions" -> caffeine.maximumSize(defaultCacheSize)
@@ -68,6 +73,8 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
                 name == "RecoveryPartyInfoCache_byPartyId" -> caffeine.maximumSize(defaultCacheSize)
                 name == "DBTransactionRecovery_senderDistributionRecords" -> caffeine.maximumSize(defaultCacheSize)
                 name == "DBTransactionRecovery_receiverDistributionRecords" -> caffeine.maximumSize(defaultCacheSize)
+                name == "VerifiedTransactionCache_transactions" -> caffeine.maximumSize(verifiedTransactionCacheSize)
+                name == "NodeVaultService_queryPlans" -> caffeine.maximumSize(defaultCacheSize)
                 else -> throw IllegalArgumentException("Unexpected cache name $name. Did you add a new cache?")
             }
         }
@@ -91,5 +98,9 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
 
     protected open val defaultCacheSize = 1024L
     private val defaultAttachmentsClassLoaderCacheSize = defaultCacheSize / CACHE_SIZE_DENOMINATOR
+    private val defaultAttachmentUploadsCacheSize = defaultCacheSize / CACHE_SIZE_DENOMINATOR
+    // Entries are only a few hashes, so many more transactions than the default can be remembered.
+    private val verifiedTransactionCacheSize = defaultCacheSize * VERIFIED_TRANSACTION_CACHE_SIZE_MULTIPLIER
 }
 private const val CACHE_SIZE_DENOMINATOR = 4L
+private const val VERIFIED_TRANSACTION_CACHE_SIZE_MULTIPLIER = 16L
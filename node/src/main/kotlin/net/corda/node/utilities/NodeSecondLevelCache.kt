@@ -0,0 +1,123 @@
+package net.corda.node.utilities
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.utilities.contextLogger
+import net.corda.nodeapi.internal.persistence.factory.SecondLevelCacheProvider
+import org.hibernate.boot.spi.SessionFactoryOptions
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig
+import org.hibernate.cache.spi.RegionFactory
+import org.hibernate.cache.spi.support.DomainDataStorageAccess
+import org.hibernate.cache.spi.support.RegionFactoryTemplate
+import org.hibernate.cache.spi.support.StorageAccess
+import org.hibernate.engine.spi.SessionFactoryImplementor
+import org.hibernate.engine.spi.SharedSessionContractImplementor
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Hibernate second-level cache backed by caches built with the node's [NamedCacheFactory].
+ *
+ * Only entities annotated with [javax.persistence.Cacheable] are considered by Hibernate, and of those only the regions named
+ * in [cachedRegions] hold any data, so caching is switched on entity by entity from the node configuration. A region is named
+ * after its entity class unless the entity gives it a different name with [org.hibernate.annotations.Cache.region]. Adding
+ * [RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME] to [cachedRegions] additionally enables the query cache.
+ *
+ * The storage of each region is shared by all the session factories of the node, and its hit and miss counts are exported to
+ * [metricRegistry] under `Database.SecondLevelCache.<region>`.
+ */
+class NodeSecondLevelCache(
+        private val cacheFactory: NamedCacheFactory,
+        cachedRegions: Set<String>,
+        private val metricRegistry: MetricRegistry?
+) : SecondLevelCacheProvider {
+    companion object {
+        private val log = contextLogger()
+        private val invalidCacheNameChars = Regex("[^0-9A-Za-z_.]")
+    }
+
+    private val cachedRegions = cachedRegions.toSet()
+
+    override val queryCacheEnabled: Boolean = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME in this.cachedRegions
+
+    private val storage = ConcurrentHashMap<String, CacheStorageAccess>()
+
+    override fun createRegionFactory(): RegionFactory = NodeRegionFactory()
+
+    private fun domainStorageFor(regionName: String): DomainDataStorageAccess {
+        return if (regionName in cachedRegions) storageFor(regionName) else NoCacheStorageAccess
+    }
+
+    private fun storageFor(regionName: String): DomainDataStorageAccess = storage.computeIfAbsent(regionName) {
+        log.info("Enabling second-level cache region $regionName")
+        val cache = cacheFactory.buildNamed<Any, Any>(
+                Caffeine.newBuilder().recordStats(),
+                "HibernateSecondLevelCache_${regionName.replace(invalidCacheNameChars, "_")}"
+        )
+        metricRegistry?.let { metrics ->
+            metrics.register(MetricRegistry.name("Database", "SecondLevelCache", regionName, "Hits"), Gauge { cache.stats().hitCount() })
+            metrics.register(MetricRegistry.name("Database", "SecondLevelCache", regionName, "Misses"), Gauge { cache.stats().missCount() })
+            metrics.register(MetricRegistry.name("Database", "SecondLevelCache", regionName, "Size"), Gauge { cache.estimatedSize() })
+        }
+        CacheStorageAccess(cache)
+    }
+
+    /**
+     * Hibernate starts and stops a region factory along with its session factory, so each session factory gets its own. They
+     * all hand out the storage owned by the enclosing [NodeSecondLevelCache], which outlives them.
+     */
+    private inner class NodeRegionFactory : RegionFactoryTemplate() {
+        override fun prepareForUse(settings: SessionFactoryOptions, configValues: Map<*, *>) = Unit
+
+        override fun releaseFromUse() = Unit
+
+        override fun createDomainDataStorageAccess(regionConfig: DomainDataRegionConfig,
+                                                   buildingContext: DomainDataRegionBuildingContext): DomainDataStorageAccess {
+            return domainStorageFor(regionConfig.regionName)
+        }
+
+        override fun createQueryResultsRegionStorageAccess(regionName: String, sessionFactory: SessionFactoryImplementor): StorageAccess {
+            return domainStorageFor(regionName)
+        }
+
+        // The timestamps region is what invalidates cached query results, so it must always hold data when the query cache is on.
+        override fun createTimestampsRegionStorageAccess(regionName: String, sessionFactory: SessionFactoryImplementor): StorageAccess {
+            return storageFor(regionName)
+        }
+    }
+
+    private class CacheStorageAccess(private val cache: Cache<Any, Any>) : DomainDataStorageAccess {
+        override fun getFromCache(key: Any, session: SharedSessionContractImplementor?): Any? = cache.getIfPresent(key)
+
+        override fun putIntoCache(key: Any, value: Any?, session: SharedSessionContractImplementor?) {
+            if (value == null) cache.invalidate(key) else cache.put(key, value)
+        }
+
+        override fun contains(key: Any): Boolean = cache.asMap().containsKey(key)
+
+        override fun evictData() = cache.invalidateAll()
+
+        override fun evictData(key: Any) = cache.invalidate(key)
+
+        // The storage is shared between session factories, so closing one of them must not empty it.
+        override fun release() = Unit
+    }
+
+    /** Storage for the regions of cacheable entities that have not been enabled in the node configuration. */
+    private object NoCacheStorageAccess : DomainDataStorageAccess {
+        override fun getFromCache(key: Any, session: SharedSessionContractImplementor?): Any? = null
+
+        override fun putIntoCache(key: Any, value: Any?, session: SharedSessionContractImplementor?) = Unit
+
+        override fun contains(key: Any): Boolean = false
+
+        override fun evictData() = Unit
+
+        override fun evictData(key: Any) = Unit
+
+        override fun release() = Unit
+    }
+}
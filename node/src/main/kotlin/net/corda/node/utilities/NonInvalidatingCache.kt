@@ -34,7 +34,7 @@ class NonInvalidatingWeightBasedCache<K : Any, V : Any> private constructor(val
                                                   name: String,
                                                   weigher: Weigher<K, V>,
                                                   loadFunction: (K) -> V?): LoadingCache<K, V> {
-            val builder = Caffeine.newBuilder().weigher(weigher)
+            val builder = Caffeine.newBuilder().weigher(weigher).recordStats()
             return cacheFactory.buildNamed(builder, name, NonInvalidatingCache.NonInvalidatingCacheLoader(loadFunction))
         }
     }
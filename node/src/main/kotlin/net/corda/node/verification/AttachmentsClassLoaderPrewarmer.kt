@@ -0,0 +1,60 @@
+package net.corda.node.verification
+
+import net.corda.core.transactions.WireTransaction
+import net.corda.core.utilities.contextLogger
+import net.corda.node.services.api.ServiceHubInternal
+import kotlin.concurrent.thread
+
+/**
+ * Creates, in the background, the attachments classloaders for the [attachmentSets] sets of attachments used most by the node's
+ * [transactions] latest transactions, so that the first transactions verified after the node starts do not each have to wait for
+ * their attachments to be scanned and loaded.
+ */
+class AttachmentsClassLoaderPrewarmer(
+        private val services: ServiceHubInternal,
+        private val transactions: Int = DEFAULT_TRANSACTIONS,
+        private val attachmentSets: Int = DEFAULT_ATTACHMENT_SETS
+) {
+    companion object {
+        private val log = contextLogger()
+        const val DEFAULT_TRANSACTIONS = 500
+        const val DEFAULT_ATTACHMENT_SETS = 8
+    }
+
+    @Volatile
+    private var stopped = false
+
+    fun start() {
+        thread(name = "attachments-classloader-prewarmer", isDaemon = true) {
+            try {
+                prewarm()
+            } catch (e: Exception) {
+                log.warn("Unable to prewarm attachments classloaders", e)
+            }
+        }
+    }
+
+    fun stop() {
+        stopped = true
+    }
+
+    private fun prewarm() {
+        val mostUsed = services.validatedTransactions.latestVerifiedTransactions(transactions)
+                .mapNotNull { it.coreTransaction as? WireTransaction }
+                .groupBy { it.attachments.toSet() }
+                .values
+                .sortedByDescending { it.size }
+                .take(attachmentSets)
+        for (sameAttachments in mostUsed) {
+            if (stopped) return
+            val wtx = sameAttachments.first()
+            try {
+                services.database.transaction { services.prewarmAttachmentsClassLoader(wtx) }
+            } catch (e: Exception) {
+                // The transaction will report the problem when it is verified, if it ever is again.
+                log.debug("Unable to prewarm the attachments classloader for ${wtx.attachments}", e)
+            }
+        }
+        log.info("Prewarmed attachments classloaders for ${mostUsed.size} sets of attachments")
+    }
+}
@@ -0,0 +1,34 @@
+package net.corda.node.verification
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.RatioGauge
+import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.internal.verification.VerifiedTransactionCache
+
+/**
+ * Remembers the most recently verified transactions of the node, up to the size configured for the
+ * `VerifiedTransactionCache_transactions` cache. Lookups are published as `Transactions.Verification.Cache.Hits` and `Misses`.
+ */
+class NodeVerifiedTransactionCache(cacheFactory: NamedCacheFactory, metricRegistry: MetricRegistry) : VerifiedTransactionCache {
+    private val transactions = cacheFactory.buildNamed<VerifiedTransactionCache.Key, Unit>("VerifiedTransactionCache_transactions")
+    private val hits = metricRegistry.meter("Transactions.Verification.Cache.Hits")
+    private val misses = metricRegistry.meter("Transactions.Verification.Cache.Misses")
+
+    init {
+        metricRegistry.gauge("Transactions.Verification.Cache.HitRatio") {
+            object : RatioGauge() {
+                override fun getRatio(): Ratio = Ratio.of(hits.count.toDouble(), (hits.count + misses.count).toDouble())
+            }
+        }
+    }
+
+    override fun isVerified(key: VerifiedTransactionCache.Key): Boolean {
+        val verified = transactions.getIfPresent(key) != null
+        if (verified) hits.mark() else misses.mark()
+        return verified
+    }
+
+    override fun markVerified(key: VerifiedTransactionCache.Key) {
+        transactions.put(key, Unit)
+    }
+}
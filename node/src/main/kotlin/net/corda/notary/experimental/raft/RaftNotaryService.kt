@@ -6,14 +6,16 @@ import net.corda.core.internal.notary.SinglePartyNotaryService
 import net.corda.core.utilities.seconds
 import net.corda.node.services.api.ServiceHubInternal
 import net.corda.node.services.transactions.NonValidatingNotaryFlow
+import net.corda.node.services.transactions.NotaryTransactionVerifier
 import net.corda.node.services.transactions.ValidatingNotaryFlow
+import net.corda.node.services.transactions.VerifyingNotaryService
 import java.security.PublicKey
 
 /** A highly available notary service using the Raft algorithm to achieve consensus. */
 class RaftNotaryService(
         override val services: ServiceHubInternal,
         override val notaryIdentityKey: PublicKey
-) : SinglePartyNotaryService() {
+) : SinglePartyNotaryService(), VerifyingNotaryService {
     private val notaryConfig = services.configuration.notary
             ?: throw IllegalArgumentException("Failed to register ${RaftNotaryService::class.java}: notary configuration not present")
 
@@ -33,6 +35,12 @@ class RaftNotaryService(
         )
     }
 
+    override val transactionVerifier = if (notaryConfig.validating && notaryConfig.verificationThreads > 0) {
+        NotaryTransactionVerifier(services, notaryIdentityKey, notaryConfig.verificationThreads)
+    } else {
+        null
+    }
+
     override fun createServiceFlow(otherPartySession: FlowSession): NotaryServiceFlow {
         return if (notaryConfig.validating) {
             ValidatingNotaryFlow(otherPartySession, this, notaryConfig.etaMessageThresholdSeconds.seconds)
@@ -45,5 +53,6 @@ class RaftNotaryService(
 
     override fun stop() {
         uniquenessProvider.stop()
+        transactionVerifier?.stop()
     }
 }
@@ -0,0 +1,110 @@
+package net.corda.notary.jpa
+
+import com.codahale.metrics.SlidingWindowReservoir
+import com.codahale.metrics.Timer
+import net.corda.core.internal.notary.NotaryServiceFlow
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.concurrent.ThreadSafe
+import kotlin.math.roundToLong
+
+/**
+ * Sizes the batches [JPAUniquenessProvider] commits requests in, and how long it waits for a batch to fill, from the recent latency of
+ * requests and the depth of the request queue, aiming to keep the 99th percentile latency within [JPANotaryConfiguration.targetLatencyMs].
+ *
+ * While requests queue up faster than they are committed the batch size is doubled, up to [JPANotaryConfiguration.maxBatchSize], as
+ * larger batches spread the cost of each database transaction over more requests. A batch taking more than half the target latency to
+ * commit cuts the batch size by a quarter.
+ *
+ * The batch timeout is the time a batch is expected to take to fill at the recent arrival rate, if that leaves time to commit it within
+ * the target latency. Otherwise it is zero, so that under light load requests are committed as soon as they arrive rather than waiting
+ * for a batch which will not fill, and once the target is being missed no request waits for others.
+ *
+ * [batchCommitted] must only be called by the single thread committing batches.
+ */
+@ThreadSafe
+internal class AdaptiveBatchController(
+        private val config: JPANotaryConfiguration,
+        private val nanoTime: () -> Long = System::nanoTime
+) {
+    private companion object {
+        /** The weight of the latest measurement in the moving averages of commit time and arrival rate. */
+        const val SMOOTHING = 0.2
+        const val LATENCY_WINDOW = 1024
+    }
+
+    /** The latency of requests, from being queued to being answered. */
+    val requestLatency = Timer(SlidingWindowReservoir(LATENCY_WINDOW))
+
+    @Volatile
+    var batchSize: Int = config.batchSize
+        private set
+
+    @Volatile
+    var batchTimeoutMs: Long = config.batchTimeoutMs
+        private set
+
+    private val arrivals = AtomicLong()
+    private var lastBatchNanos = nanoTime()
+    /** Moving average of requests arriving per nanosecond. */
+    private var arrivalRate = 0.0
+    /** Moving average of the nanoseconds it takes to commit each request of a batch. */
+    @Volatile
+    private var commitNanosPerRequest = 0.0
+
+    fun requestQueued() {
+        arrivals.incrementAndGet()
+    }
+
+    fun requestAnswered(latencyNanos: Long) {
+        requestLatency.update(latencyNanos, TimeUnit.NANOSECONDS)
+    }
+
+    /**
+     * Records that a batch of [size] requests took [commitNanos] to commit, leaving [queueDepth] requests queued, and adjusts the
+     * size and timeout of the next batch.
+     */
+    fun batchCommitted(size: Int, commitNanos: Long, queueDepth: Int) {
+        val now = nanoTime()
+        val elapsed = now - lastBatchNanos
+        lastBatchNanos = now
+        if (elapsed > 0) {
+            arrivalRate = average(arrivalRate, arrivals.getAndSet(0).toDouble() / elapsed)
+        }
+        commitNanosPerRequest = average(commitNanosPerRequest, commitNanos.toDouble() / size)
+        if (!config.adaptiveBatching) return
+
+        val targetNanos = TimeUnit.MILLISECONDS.toNanos(config.targetLatencyMs)
+        batchSize = when {
+            commitNanos > targetNanos / 2 && batchSize > 1 -> batchSize - maxOf(1, batchSize / 4)
+            queueDepth >= batchSize -> minOf(config.maxBatchSize, batchSize * 2)
+            else -> batchSize
+        }
+
+        val waitBudgetNanos = if (requestLatency.snapshot.get99thPercentile() > targetNanos) {
+            0.0
+        } else {
+            targetNanos / 2 - commitNanosPerRequest * batchSize
+        }
+        val fillNanos = if (arrivalRate > 0) (batchSize - 1) / arrivalRate else Double.MAX_VALUE
+        batchTimeoutMs = if (fillNanos <= waitBudgetNanos) {
+            minOf(config.batchTimeoutMs, (fillNanos / TimeUnit.MILLISECONDS.toNanos(1)).roundToLong())
+        } else {
+            0
+        }
+    }
+
+    /**
+     * Estimates how long a request will take to be answered behind [queuedRequests] others, at the recent commit rate. This is doubled
+     * to give a probable upper bound, in the same way as [net.corda.node.services.transactions.PersistentUniquenessProvider.getEta].
+     */
+    fun estimatedWait(queuedRequests: Int): Duration {
+        val perRequest = commitNanosPerRequest
+        if (perRequest == 0.0 || queuedRequests == 0) return NotaryServiceFlow.defaultEstimatedWaitTime
+        val nanos = 2 * (perRequest * (queuedRequests + 1) + TimeUnit.MILLISECONDS.toNanos(batchTimeoutMs))
+        return Duration.ofNanos(nanos.toLong())
+    }
+
+    private fun average(current: Double, latest: Double): Double = if (current == 0.0) latest else current + SMOOTHING * (latest - current)
+}
@@ -1,9 +1,35 @@
 package net.corda.notary.jpa
 
 data class JPANotaryConfiguration(
+    /** The size of the first batch of requests, adjusted from then on if [adaptiveBatching] is enabled. */
     val batchSize: Int = 32,
+    /** The longest time to wait for a batch of requests to fill up. */
     val batchTimeoutMs: Long = 200L,
     val maxInputStates: Int = 2000,
     val maxDBTransactionRetryCount: Int = 10,
-    val backOffBaseMs: Long = 20L
-)
+    val backOffBaseMs: Long = 20L,
+    /** Whether to size batches and their timeout from the recent load on the notary, or always use [batchSize] and [batchTimeoutMs]. */
+    val adaptiveBatching: Boolean = true,
+    /** The 99th percentile latency of requests which adaptive batching aims for. */
+    val targetLatencyMs: Long = 1000L,
+    val maxBatchSize: Int = 1024,
+    /**
+     * Whether to log requests in their own transaction after answering them, rather than as part of committing them. This takes the
+     * writing of request signatures off the path of each request, at the risk of losing the log of requests answered just before
+     * the notary stops.
+     */
+    val asyncRequestLog: Boolean = false,
+    /** How many days requests are kept in the request log before being archived to files. Zero keeps them in the database. */
+    val requestLogRetentionDays: Int = 0,
+    /** Where to archive the request log to, by default the notary-request-log directory in the node's base directory. */
+    val requestLogArchiveDirectory: String? = null,
+    val requestLogArchiveIntervalMinutes: Long = 60
+) {
+    init {
+        require(batchSize in 1..maxBatchSize) { "batchSize must be between 1 and maxBatchSize" }
+        require(batchTimeoutMs >= 0) { "batchTimeoutMs cannot be negative" }
+        require(targetLatencyMs > 0) { "targetLatencyMs must be positive" }
+        require(requestLogRetentionDays >= 0) { "requestLogRetentionDays cannot be negative" }
+        require(requestLogArchiveIntervalMinutes > 0) { "requestLogArchiveIntervalMinutes must be positive" }
+    }
+}
@@ -7,48 +7,76 @@ import net.corda.core.internal.notary.SinglePartyNotaryService
 import net.corda.core.utilities.seconds
 import net.corda.node.services.api.ServiceHubInternal
 import net.corda.node.services.transactions.NonValidatingNotaryFlow
+import net.corda.node.services.transactions.NotaryTransactionVerifier
 import net.corda.node.services.transactions.ValidatingNotaryFlow
+import net.corda.node.services.transactions.VerifyingNotaryService
 import net.corda.nodeapi.internal.config.parseAs
 import net.corda.notary.common.signBatch
+import java.nio.file.Paths
 import java.security.PublicKey
+import java.time.Duration
+import kotlin.io.path.div
 
 /** Notary service backed by a relational database. */
 class JPANotaryService(
         override val services: ServiceHubInternal,
-        override val notaryIdentityKey: PublicKey) : SinglePartyNotaryService() {
+        override val notaryIdentityKey: PublicKey) : SinglePartyNotaryService(), VerifyingNotaryService {
 
     private val notaryConfig = services.configuration.notary
             ?: throw IllegalArgumentException("Failed to register ${this::class.java}: notary configuration not present")
 
 
+    private val jpaNotaryConfig = try {
+        notaryConfig.extraConfig?.parseAs() ?: JPANotaryConfiguration()
+    } catch (e: Exception) {
+        throw IllegalArgumentException("Failed to register ${JPANotaryService::class.java}: extra notary configuration parameters invalid")
+    }
+
     override val uniquenessProvider = with(services) {
-        val jpaNotaryConfig = try {
-            notaryConfig.extraConfig?.parseAs() ?: JPANotaryConfiguration()
-        } catch (e: Exception) {
-            throw IllegalArgumentException("Failed to register ${JPANotaryService::class.java}: extra notary configuration parameters invalid")
-        }
         JPAUniquenessProvider(
                 clock,
                 database,
                 jpaNotaryConfig,
                 configuration.myLegalName,
-                ::signTransactionBatch
+                ::signTransactionBatch,
+                monitoringService.metrics
         )
     }
 
     private fun signTransactionBatch(txIds: Iterable<SecureHash>)
             = signBatch(txIds, notaryIdentityKey, services)
 
+    override val transactionVerifier = if (notaryConfig.validating && notaryConfig.verificationThreads > 0) {
+        NotaryTransactionVerifier(services, notaryIdentityKey, notaryConfig.verificationThreads)
+    } else {
+        null
+    }
+
     override fun createServiceFlow(otherPartySession: FlowSession): NotaryServiceFlow {
         return if (notaryConfig.validating) {
             ValidatingNotaryFlow(otherPartySession, this, notaryConfig.etaMessageThresholdSeconds.seconds)
         } else NonValidatingNotaryFlow(otherPartySession, this, notaryConfig.etaMessageThresholdSeconds.seconds)
     }
 
+    private val requestLogArchiver = if (jpaNotaryConfig.requestLogRetentionDays > 0) {
+        NotaryRequestLogArchiver(
+                services.database,
+                services.clock,
+                jpaNotaryConfig.requestLogArchiveDirectory?.let { Paths.get(it) } ?: services.configuration.baseDirectory / "notary-request-log",
+                Duration.ofDays(jpaNotaryConfig.requestLogRetentionDays.toLong()),
+                Duration.ofMinutes(jpaNotaryConfig.requestLogArchiveIntervalMinutes)
+        )
+    } else {
+        null
+    }
+
     override fun start() {
+        requestLogArchiver?.start()
     }
 
     override fun stop() {
+        requestLogArchiver?.stop()
         uniquenessProvider.stop()
+        transactionVerifier?.stop()
     }
 }
@@ -1,5 +1,7 @@
 package net.corda.notary.jpa
 
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
 import com.google.common.collect.Queues
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.contracts.StateRef
@@ -25,6 +27,7 @@ import net.corda.core.serialization.serialize
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
 import net.corda.node.services.vault.toStateRef
+import net.corda.node.utilities.NamedThreadFactory
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
 import net.corda.notary.common.BatchSigningFunction
@@ -33,9 +36,12 @@ import net.corda.serialization.internal.CordaSerializationEncoding
 import org.hibernate.Session
 import java.sql.SQLException
 import java.time.Clock
+import java.time.Duration
 import java.time.Instant
 import java.util.LinkedList
 import java.util.UUID
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit
 import javax.annotation.concurrent.ThreadSafe
@@ -43,6 +49,7 @@ import javax.persistence.Column
 import javax.persistence.EmbeddedId
 import javax.persistence.Entity
 import javax.persistence.Id
+import javax.persistence.Index
 import javax.persistence.Lob
 import javax.persistence.NamedQuery
 import kotlin.concurrent.thread
@@ -55,7 +62,8 @@ class JPAUniquenessProvider(
         val database: CordaPersistence,
         val config: JPANotaryConfiguration = JPANotaryConfiguration(),
         val notaryWorkerName: CordaX500Name,
-        val signBatch: BatchSigningFunction
+        val signBatch: BatchSigningFunction,
+        metrics: MetricRegistry = MetricRegistry()
 ) : UniquenessProvider, SingletonSerializeAsToken() {
 
     // This is the prefix of the ID in the request log table, to allow running multiple instances that access the
@@ -63,7 +71,8 @@ class JPAUniquenessProvider(
     private val instanceId = UUID.randomUUID()
 
     @Entity
-    @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}notary_request_log")
+    @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}notary_request_log",
+            indexes = [Index(name = "node_notary_request_log_timestamp_idx", columnList = "request_timestamp")])
     @CordaSerializable
     class Request(
             @Id
@@ -96,7 +105,8 @@ class JPAUniquenessProvider(
             val references: List<StateRef>,
             val future: OpenFuture<UniquenessProvider.Result>,
             val requestEntity: Request,
-            val committedStatesEntities: List<CommittedState>)
+            val committedStatesEntities: List<CommittedState>,
+            val queuedNanos: Long = System.nanoTime())
 
     @Entity
     @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}notary_committed_states")
@@ -117,14 +127,33 @@ class JPAUniquenessProvider(
 
     private val requestQueue = LinkedBlockingQueue<CommitRequest>(requestQueueSize)
 
+    private val batchController = AdaptiveBatchController(config)
+
+    /** Logs requests after they have been answered, if [JPANotaryConfiguration.asyncRequestLog] is enabled. */
+    private val requestLogExecutor = if (config.asyncRequestLog) {
+        Executors.newSingleThreadExecutor(NamedThreadFactory("Notary request log"))
+    } else {
+        null
+    }
+
+    init {
+        metrics.register("Notary.JPA.BatchSize", Gauge<Int> { batchController.batchSize })
+        metrics.register("Notary.JPA.BatchTimeoutMs", Gauge<Long> { batchController.batchTimeoutMs })
+        metrics.register("Notary.JPA.QueueDepth", Gauge<Int> { requestQueue.size })
+        metrics.register("Notary.JPA.RequestLatency", batchController.requestLatency)
+    }
+
     /** A requestEntity processor thread. */
     private val processorThread = thread(name = "Notary request queue processor", isDaemon = true) {
         try {
             val buffer = LinkedList<CommitRequest>()
             while (!Thread.interrupted()) {
-                val drainedSize = Queues.drain(requestQueue, buffer, config.batchSize, config.batchTimeoutMs, TimeUnit.MILLISECONDS)
-                if (drainedSize == 0) continue
+                // Wait for the first request of a batch, then give the rest of the batch as long as the controller allows to arrive.
+                buffer.add(requestQueue.take())
+                Queues.drain(requestQueue, buffer, batchController.batchSize - 1, batchController.batchTimeoutMs, TimeUnit.MILLISECONDS)
+                val start = System.nanoTime()
                 processRequests(buffer)
+                batchController.batchCommitted(buffer.size, System.nanoTime() - start, requestQueue.size)
                 buffer.clear()
             }
         } catch (_: InterruptedException) {
@@ -135,11 +164,18 @@ class JPAUniquenessProvider(
 
     fun stop() {
         processorThread.interrupt()
+        requestLogExecutor?.run {
+            shutdown()
+            if (!awaitTermination(REQUEST_LOG_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Stopped before logging all answered requests")
+            }
+        }
     }
 
     companion object {
         private const val requestQueueSize = 100_000
         private const val jdbcBatchSize = 100_000
+        private const val REQUEST_LOG_SHUTDOWN_TIMEOUT_SECONDS = 10L
         private val log = contextLogger()
 
         fun encodeStateRef(s: StateRef): PersistentStateRef {
@@ -176,18 +212,35 @@ class JPAUniquenessProvider(
         val request = CommitRequest(states, txId, callerIdentity, requestSignature, timeWindow, references, future, requestEntities, stateEntities)
 
         requestQueue.put(request)
+        batchController.requestQueued()
 
         return future
     }
 
+    /**
+     * Estimated time of request processing, from the recent time taken to commit each request and the number of requests queued
+     * ahead of this one.
+     */
+    override fun getEta(numStates: Int): Duration = batchController.estimatedWait(requestQueue.size)
+
     // Safe up to 100k requests per second.
     private var nextRequestId = System.currentTimeMillis() * 100
 
-    private fun logRequests(requests: List<CommitRequest>) {
+    private fun logRequests(requestEntities: List<Request>) {
         database.transaction {
-            for (request in requests) {
-                request.requestEntity.id = "$instanceId:${(nextRequestId++).toString(16)}"
-                session.persist(request.requestEntity)
+            for (requestEntity in requestEntities) {
+                requestEntity.id = "$instanceId:${(nextRequestId++).toString(16)}"
+                session.persist(requestEntity)
+            }
+        }
+    }
+
+    private fun logRequestsAsync(executor: ExecutorService, requestEntities: List<Request>) {
+        executor.execute {
+            try {
+                withRetry { logRequests(requestEntities) }
+            } catch (e: Exception) {
+                log.error("Unable to log ${requestEntities.size} answered notary requests", e)
             }
         }
     }
@@ -355,13 +408,14 @@ class JPAUniquenessProvider(
                         processRequest(session, request, consumedStates, processedTxIds, toCommit)
                     }
 
-                    logRequests(requests)
+                    if (requestLogExecutor == null) logRequests(requests.map { it.requestEntity })
                     commitRequests(session, toCommit)
 
                     results
                 }
             }
             completeResponses(requests, res)
+            requestLogExecutor?.let { logRequestsAsync(it, requests.map { request -> request.requestEntity }) }
         } catch (e: Exception) {
             log.warn("Error processing commit requests", e)
             for (request in requests) {
@@ -389,12 +443,14 @@ class JPAUniquenessProvider(
             }
 
             request.future.set(resultToSet)
+            batchController.requestAnswered(System.nanoTime() - request.queuedNanos)
             inputStateCount += request.states.size
         }
         return inputStateCount
     }
 
     private fun respondWithError(request: CommitRequest, exception: Exception) {
+        batchController.requestAnswered(System.nanoTime() - request.queuedNanos)
         if (exception is NotaryInternalException) {
             request.future.set(UniquenessProvider.Result.Failure(exception.error))
         } else {
@@ -0,0 +1,120 @@
+package net.corda.notary.jpa
+
+import net.corda.core.internal.VisibleForTesting
+import net.corda.core.utilities.contextLogger
+import net.corda.node.utilities.NamedThreadFactory
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import java.io.BufferedWriter
+import java.io.OutputStreamWriter
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.APPEND
+import java.nio.file.StandardOpenOption.CREATE
+import java.time.Clock
+import java.time.Duration
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
+import java.util.Base64
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Moves notary request log entries older than [retention] out of the database into gzipped files in [archiveDirectory], one per UTC
+ * day, so that the request log table only holds recent requests however long the notary has been running.
+ *
+ * Only whole days are archived. Each line of an archive is a request, with its id, transaction id, requesting party, time, worker
+ * and base64 encoded signature separated by tabs. Entries are deleted from the database once they have been written out, so an
+ * archiver stopped between the two may write some entries twice, but never loses any.
+ */
+class NotaryRequestLogArchiver(
+        private val database: CordaPersistence,
+        private val clock: Clock,
+        private val archiveDirectory: Path,
+        private val retention: Duration,
+        private val interval: Duration
+) {
+    companion object {
+        private val log = contextLogger()
+        private const val ARCHIVE_BATCH_SIZE = 10_000
+        private const val SEPARATOR = "\t"
+        /** Keeps the parameter lists of `in` clauses within what every supported database accepts. */
+        private const val IN_CLAUSE_LIMIT = 1000
+    }
+
+    private var executor: ScheduledExecutorService? = null
+
+    fun start() {
+        executor = Executors.newSingleThreadScheduledExecutor(NamedThreadFactory("NotaryRequestLogArchiver")).apply {
+            scheduleWithFixedDelay(::archiveSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS)
+        }
+    }
+
+    fun stop() {
+        executor?.shutdown()
+        executor = null
+    }
+
+    private fun archiveSafely() {
+        try {
+            val archived = archive()
+            if (archived > 0) log.info("Archived $archived notary requests to $archiveDirectory")
+        } catch (e: Exception) {
+            log.warn("Unable to archive notary request log", e)
+        }
+    }
+
+    /**
+     * Archives the entries of every day ending more than [retention] ago.
+     *
+     * @return The number of entries archived.
+     */
+    @VisibleForTesting
+    fun archive(): Int {
+        val cutOff = clock.instant().minus(retention).truncatedTo(ChronoUnit.DAYS)
+        Files.createDirectories(archiveDirectory)
+        var archived = 0
+        while (true) {
+            val requests = database.transaction {
+                session.createQuery(
+                        "from ${JPAUniquenessProvider.Request::class.java.name} where requestDate < :cutOff order by requestDate",
+                        JPAUniquenessProvider.Request::class.java
+                ).setParameter("cutOff", cutOff).setMaxResults(ARCHIVE_BATCH_SIZE).resultList
+            }
+            if (requests.isEmpty()) return archived
+            requests.groupBy { LocalDate.ofInstant(it.requestDate, ZoneOffset.UTC) }.forEach { (day, dayRequests) ->
+                append(archiveFile(day), dayRequests)
+            }
+            database.transaction {
+                requests.map { it.id }.chunked(IN_CLAUSE_LIMIT).forEach { ids ->
+                    session.createQuery("delete from ${JPAUniquenessProvider.Request::class.java.name} where id in (:ids)")
+                            .setParameter("ids", ids)
+                            .executeUpdate()
+                }
+            }
+            archived += requests.size
+        }
+    }
+
+    @VisibleForTesting
+    fun archiveFile(day: LocalDate): Path = archiveDirectory.resolve("notary-request-log-$day.tsv.gz")
+
+    /** Appends [requests] to [file] as a further gzip member, which readers of gzip files treat as a continuation of the file. */
+    private fun append(file: Path, requests: List<JPAUniquenessProvider.Request>) {
+        BufferedWriter(OutputStreamWriter(GZIPOutputStream(Files.newOutputStream(file, CREATE, APPEND)), Charsets.UTF_8)).use { writer ->
+            for (request in requests) {
+                writer.write(listOf(
+                        request.id,
+                        request.consumingTxHash,
+                        request.partyName,
+                        request.requestDate.toString(),
+                        request.workerNodeX500Name,
+                        Base64.getEncoder().encodeToString(request.requestSignature)
+                ).joinToString(SEPARATOR))
+                writer.newLine()
+            }
+        }
+    }
+}
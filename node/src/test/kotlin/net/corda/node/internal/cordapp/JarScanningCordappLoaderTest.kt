@@ -8,6 +8,7 @@ import net.corda.core.flows.InitiatedBy
 import net.corda.core.flows.InitiatingFlow
 import net.corda.core.flows.SchedulableFlow
 import net.corda.core.flows.StartableByRPC
+import net.corda.core.internal.hash
 import net.corda.core.internal.packageName_
 import net.corda.core.internal.toPath
 import net.corda.coretesting.internal.delete
@@ -41,6 +42,8 @@ import java.nio.file.Paths
 import java.util.jar.Manifest
 import kotlin.io.path.absolutePathString
 import kotlin.io.path.copyTo
+import kotlin.io.path.div
+import kotlin.io.path.listDirectoryEntries
 import kotlin.io.path.name
 import kotlin.test.assertFailsWith
 
@@ -137,6 +140,38 @@ class JarScanningCordappLoaderTest {
         assertThat(actualCordapp.schedulableFlows).first().hasSameClassAs(DummySchedulableFlow::class.java)
     }
 
+    @Test(timeout=300_000)
+    fun `cached scan results give the same CorDapps as scanning`() {
+        val jars = setOf(currentFinanceContractsJar, currentFinanceWorkflowsJar)
+        val cacheDir = tempFolder.root.toPath() / "scan-cache"
+        val scanned = JarScanningCordappLoader(jars, scanCacheDirectory = cacheDir).cordapps
+        assertThat(cacheDir.listDirectoryEntries("*.properties")).hasSize(2)
+
+        val cached = JarScanningCordappLoader(jars, scanCacheDirectory = cacheDir).cordapps
+        assertThat(cached).hasSameSizeAs(scanned)
+        for ((actual, expected) in cached.zip(scanned)) {
+            assertThat(actual.jarFile).isEqualTo(expected.jarFile)
+            assertThat(actual.contractClassNames).isEqualTo(expected.contractClassNames)
+            assertThat(actual.allFlows).isEqualTo(expected.allFlows)
+            assertThat(actual.services).isEqualTo(expected.services)
+            assertThat(actual.customSchemas).isEqualTo(expected.customSchemas)
+            assertThat(actual.cordappClasses).isEqualTo(expected.cordappClasses)
+            assertThat(actual.languageVersion).isEqualTo(expected.languageVersion)
+        }
+    }
+
+    @Test(timeout=300_000)
+    fun `scan cache entries written by a different node version are ignored`() {
+        val jarHash = currentFinanceContractsJar.hash
+        val cacheDir = tempFolder.root.toPath()
+        val scan = CordappJarScan(listOf("a.Contract"), emptyList(), emptyList(), emptyList(), emptyList(), emptyList(), emptyList(),
+                emptyList(), emptyList(), emptyList(), emptyList(), emptyList(), listOf("a.Contract"), 52, emptyList())
+        CordappScanCache(cacheDir, VersionInfo.UNKNOWN).store(jarHash, scan)
+
+        assertThat(CordappScanCache(cacheDir, VersionInfo.UNKNOWN).load(jarHash)).isEqualTo(scan)
+        assertThat(CordappScanCache(cacheDir, VersionInfo.UNKNOWN.copy(releaseVersion = "other")).load(jarHash)).isNull()
+    }
+
     // This test exists because the appClassLoader is used by serialisation and we need to ensure it is the classloader
     // being used internally. Later iterations will use a classloader per cordapp and this test can be retired.
     @Test(timeout=300_000)
@@ -0,0 +1,66 @@
+package net.corda.node.services.attachments
+
+import net.corda.core.internal.readFully
+import net.corda.testing.internal.TestingNamedCacheFactory
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.After
+import org.junit.Test
+import java.time.Duration
+import kotlin.test.assertEquals
+
+class AttachmentUploadsTest {
+    private val uploads = AttachmentUploads(TestingNamedCacheFactory(), Duration.ofMinutes(1)) { 8L }
+
+    @After
+    fun tearDown() {
+        uploads.close()
+    }
+
+    @Test(timeout = 300_000)
+    fun `chunks are appended and resent chunks skipped`() {
+        assertEquals(0L, uploads.append("alice", "upload", 0, ByteArray(0)))
+        assertEquals(3L, uploads.append("alice", "upload", 0, byteArrayOf(1, 2, 3)))
+        // The acknowledgement of the last chunk was lost, so it is sent again along with the next
+        assertEquals(5L, uploads.append("alice", "upload", 1, byteArrayOf(2, 3, 4, 5)))
+        assertEquals(5L, uploads.append("alice", "upload", 0, ByteArray(0)))
+
+        val content = uploads.complete("alice", "upload") { it.readFully() }
+        assertThat(content).isEqualTo(byteArrayOf(1, 2, 3, 4, 5))
+    }
+
+    @Test(timeout = 300_000)
+    fun `chunks cannot leave a gap`() {
+        uploads.append("alice", "upload", 0, byteArrayOf(1, 2, 3))
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.append("alice", "upload", 4, byteArrayOf(5))
+        }
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.append("alice", "other", 1, byteArrayOf(2))
+        }
+    }
+
+    @Test(timeout = 300_000)
+    fun `uploads are private to their user and discarded once completed`() {
+        uploads.append("alice", "upload", 0, byteArrayOf(1, 2, 3))
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.complete("bob", "upload") { it.readFully() }
+        }
+        assertThat(uploads.complete("alice", "upload") { it.readFully() }).isEqualTo(byteArrayOf(1, 2, 3))
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.complete("alice", "upload") { it.readFully() }
+        }
+    }
+
+    @Test(timeout = 300_000)
+    fun `uploads cannot grow past the maximum size`() {
+        uploads.append("alice", "upload", 0, ByteArray(6))
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.append("alice", "upload", 6, ByteArray(3))
+        }
+        assertThatIllegalArgumentException().isThrownBy {
+            uploads.append("alice", "other", 0, ByteArray(9))
+        }
+        assertEquals(8L, uploads.append("alice", "upload", 6, ByteArray(2)))
+    }
+}
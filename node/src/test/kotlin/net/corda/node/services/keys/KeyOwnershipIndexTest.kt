@@ -0,0 +1,39 @@
+package net.corda.node.services.keys
+
+import net.corda.core.crypto.SecureHash
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class KeyOwnershipIndexTest {
+    private val index = KeyOwnershipIndex()
+
+    @Test(timeout = 300_000)
+    fun `hashes added are found both before and after being merged`() {
+        val loaded = (1..10).map { SecureHash.randomSHA256() }
+        index.addAll(loaded.asSequence())
+        val added = (1..10_000).map { SecureHash.randomSHA256() }
+        added.forEach(index::add)
+
+        assertEquals(10_010, index.size)
+        (loaded + added).forEach { assertTrue(index.mightContain(it)) }
+    }
+
+    @Test(timeout = 300_000)
+    fun `loading hashes already in the index does not duplicate them`() {
+        val hashes = (1..10_000).map { SecureHash.randomSHA256() }
+        index.addAll(hashes.take(6_000).asSequence())
+        index.addAll(hashes.drop(4_000).asSequence())
+
+        assertEquals(10_000, index.size)
+        hashes.forEach { assertTrue(index.mightContain(it)) }
+    }
+
+    @Test(timeout = 300_000)
+    fun `hashes not added are not found`() {
+        index.addAll((1..10_000).map { SecureHash.randomSHA256() }.asSequence())
+
+        (1..10_000).forEach { assertFalse(index.mightContain(SecureHash.randomSHA256())) }
+    }
+}
@@ -0,0 +1,163 @@
+package net.corda.node.services.messaging
+
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.utilities.ByteSequence
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.core.utilities.seconds
+import net.corda.node.services.messaging.P2PMessageDeduplicator.Outcome
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.node.services.statemachine.DeduplicationId
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.junit.After
+import org.junit.Test
+import java.time.Duration
+import java.time.Instant
+import kotlin.test.assertEquals
+
+class P2PMessageDeduplicatorTest {
+    private companion object {
+        const val INBOX = "p2p.inbound.test"
+        const val SENDER_UUID = "sender"
+    }
+
+    private val database: CordaPersistence = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null },
+            NodeSchemaService())
+    private var highWaterMarkFlushInterval = Duration.ZERO
+    private var deduplicator = P2PMessageDeduplicator(TestingNamedCacheFactory(), database, highWaterMarkFlushInterval)
+
+    @After
+    fun closeDatabase() {
+        database.close()
+    }
+
+    private fun message(seqNo: Long?): ReceivedMessage = TestReceivedMessage(DeduplicationId("message-$seqNo"), seqNo?.let { SENDER_UUID }, seqNo)
+
+    private fun receive(msg: ReceivedMessage): Outcome {
+        val outcome = deduplicator.checkDuplicate(msg, INBOX)
+        if (outcome == Outcome.NEW) {
+            deduplicator.signalMessageProcessStart(msg, INBOX)
+        }
+        return outcome
+    }
+
+    private fun process(msg: ReceivedMessage) {
+        database.transaction { deduplicator.persistDeduplicationId(msg.uniqueMessageId) }
+        deduplicator.signalMessageProcessFinish(msg.uniqueMessageId)
+    }
+
+    private fun restart() {
+        deduplicator = P2PMessageDeduplicator(TestingNamedCacheFactory(), database, highWaterMarkFlushInterval)
+    }
+
+    private fun useHighWaterMarks() {
+        highWaterMarkFlushInterval = 10.seconds
+        restart()
+    }
+
+    private fun processedMessageRows(): Long = rows(P2PMessageDeduplicator.ProcessedMessage::class.java)
+
+    private fun highWaterMarkRows(): Long = rows(P2PMessageDeduplicator.SenderHighWaterMark::class.java)
+
+    private fun rows(entityClass: Class<*>): Long = database.transaction {
+        session.createQuery("select count(*) from ${entityClass.name}", Long::class.javaObjectType).singleResult
+    }
+
+    @Test(timeout = 300_000)
+    fun `processed messages are duplicates`() {
+        val messages = listOf(message(1), message(3), message(null))
+        messages.forEach { assertEquals(Outcome.NEW, receive(it)) }
+        messages.forEach { assertEquals(Outcome.IN_FLIGHT, receive(it)) }
+        messages.forEach { process(it) }
+        messages.forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+        assertEquals(3L, processedMessageRows())
+        restart()
+        messages.forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+    }
+
+    @Test(timeout = 300_000)
+    fun `messages processed in order are deduplicated by high water marks flushed in one go`() {
+        useHighWaterMarks()
+        val messages = (1L..10L).map(::message)
+        messages.forEach { receive(it); process(it) }
+        messages.forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+        assertEquals(0L, processedMessageRows())
+        assertEquals(0L, highWaterMarkRows())
+        deduplicator.flush()
+        assertEquals(1L, highWaterMarkRows())
+        restart()
+        messages.forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+        assertEquals(Outcome.NEW, receive(message(11)))
+    }
+
+    @Test(timeout = 300_000)
+    fun `stopping flushes the high water marks`() {
+        useHighWaterMarks()
+        deduplicator.start()
+        val messages = (1L..3L).map(::message)
+        messages.forEach { receive(it); process(it) }
+        deduplicator.stop()
+        assertEquals(1L, highWaterMarkRows())
+        restart()
+        messages.forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+    }
+
+    @Test(timeout = 300_000)
+    fun `messages without sequence numbers are deduplicated by their IDs`() {
+        useHighWaterMarks()
+        val msg = message(null)
+        receive(msg)
+        process(msg)
+        assertEquals(1L, processedMessageRows())
+        restart()
+        assertEquals(Outcome.DUPLICATE, receive(msg))
+    }
+
+    @Test(timeout = 300_000)
+    fun `high water mark does not pass messages still being processed`() {
+        useHighWaterMarks()
+        val (first, second, third) = listOf(message(1), message(2), message(3))
+        listOf(first, second, third).forEach { receive(it) }
+        process(first)
+        process(third)
+        deduplicator.flush()
+        restart()
+        // The second message was not processed before the restart, so it is redelivered and must not be treated as a duplicate.
+        assertEquals(Outcome.DUPLICATE, receive(first))
+        assertEquals(Outcome.NEW, receive(second))
+    }
+
+    @Test(timeout = 300_000)
+    fun `a message arriving below the high water mark is processed and its sender keeps to message IDs`() {
+        useHighWaterMarks()
+        val (first, late, third) = listOf(message(1), message(2), message(3))
+        listOf(first, third).forEach { receive(it); process(it) }
+        deduplicator.flush()
+        assertEquals(Outcome.NEW, receive(late))
+        process(late)
+        val fourth = message(4)
+        receive(fourth)
+        process(fourth)
+        assertEquals(2L, processedMessageRows())
+        listOf(first, late, third, fourth).forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+        restart()
+        listOf(first, late, third, fourth).forEach { assertEquals(Outcome.DUPLICATE, receive(it)) }
+        assertEquals(Outcome.NEW, receive(message(5)))
+    }
+
+    private class TestReceivedMessage(override val uniqueMessageId: DeduplicationId,
+                                      override val senderUUID: String?,
+                                      override val senderSeqNo: Long?) : ReceivedMessage {
+        override val topic: String get() = "test"
+        override val data: ByteSequence get() = OpaqueBytes.of(0)
+        override val debugTimestamp: Instant get() = Instant.now()
+        override val additionalHeaders: Map<String, String> get() = emptyMap()
+        override val peer: CordaX500Name get() = ALICE_NAME
+        override val platformVersion: Int get() = 1
+        override val isSessionInit: Boolean get() = false
+    }
+}
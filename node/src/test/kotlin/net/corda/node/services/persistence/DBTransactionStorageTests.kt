@@ -1,5 +1,6 @@
 package net.corda.node.services.persistence
 
+import com.codahale.metrics.MetricRegistry
 import junit.framework.TestCase.assertNotNull
 import junit.framework.TestCase.assertTrue
 import net.corda.core.concurrent.CordaFuture
@@ -368,6 +369,27 @@ class DBTransactionStorageTests {
         assertThat(transactionStorage.transactions).containsExactly(transaction)
     }
 
+    @Test(timeout = 300_000)
+    fun `cache hits and misses are counted separately for verified and unverified transactions`() {
+        val verified = newTransaction()
+        val unverified = newTransaction()
+        transactionStorage.addTransaction(verified)
+        transactionStorage.addUnverifiedTransaction(unverified)
+        val metrics = MetricRegistry()
+        newTransactionStorage(metrics = metrics)
+
+        repeat(2) {
+            assertTransactionIsRetrievable(verified)
+            assertEquals(UNVERIFIED.toTransactionStatus(), transactionStorage.getTransactionWithStatus(unverified.id)?.status)
+        }
+
+        for (partition in listOf("Verified", "Unverified")) {
+            assertEquals(1L, metrics.counter("Transactions.Cache.$partition.Hits").count)
+            assertEquals(1L, metrics.counter("Transactions.Cache.$partition.Misses").count)
+            assertEquals(0.5, metrics.gauges.getValue("Transactions.Cache.$partition.HitRatio").value)
+        }
+    }
+
     @Test(timeout = 300_000)
     fun `two transactions across restart`() {
         val firstTransaction = newTransaction()
@@ -564,9 +586,10 @@ class DBTransactionStorageTests {
         assertThat(warning).isEqualTo(DBTransactionStorage.TRANSACTION_ALREADY_IN_PROGRESS_WARNING)
     }
 
-    private fun newTransactionStorage(cacheSizeBytesOverride: Long? = null, clock: CordaClock = SimpleClock(Clock.systemUTC())) {
+    private fun newTransactionStorage(cacheSizeBytesOverride: Long? = null, clock: CordaClock = SimpleClock(Clock.systemUTC()),
+                                      metrics: MetricRegistry = MetricRegistry()) {
         transactionStorage = DBTransactionStorage(database, TestingNamedCacheFactory(cacheSizeBytesOverride
-                ?: 1024), clock)
+                ?: 1024), clock, metrics)
     }
 
     private fun assertTransactionIsRetrievable(transaction: SignedTransaction) {
@@ -48,6 +48,7 @@ import net.corda.testing.core.DUMMY_NOTARY_NAME
 import net.corda.testing.core.SerializationEnvironmentRule
 import net.corda.testing.core.TestIdentity
 import net.corda.testing.core.singleIdentity
+import net.corda.testing.internal.TestingNamedCacheFactory
 import net.corda.testing.internal.configureDatabase
 import net.corda.testing.internal.vault.DummyDealStateSchemaV1
 import net.corda.testing.internal.vault.DummyLinearStateSchemaV1
@@ -145,7 +146,8 @@ class HibernateConfigurationTest {
                         toVerifyingServiceHub(),
                         database,
                         schemaService,
-                        cordappClassloader
+                        cordappClassloader,
+                        TestingNamedCacheFactory()
                 ).apply { start() }
                 override fun recordTransactions(statesToRecord: StatesToRecord, txs: Iterable<SignedTransaction>) {
                     for (stx in txs) {
@@ -594,6 +594,46 @@ class NodeAttachmentServiceTest {
         }
     }
 
+    @Test(timeout=300_000)
+	fun `attachment is stored in chunks and read back whole`() {
+        storage.chunkSize = 64
+        val (testJar, expectedHash) = makeTestJar()
+        val id = testJar.read { storage.importAttachment(it, "test", null) }
+        assertEquals(expectedHash, id)
+
+        val chunkCount = database.transaction {
+            session.createQuery("select count(*) from ${NodeAttachmentService.DBAttachmentChunk::class.java.name}").singleResult as Long
+        }
+        assertEquals((testJar.readBytes().size + 63) / 64L, chunkCount)
+        assertThat(storage.openAttachment(id)!!.open().readFully()).isEqualTo(testJar.readBytes())
+    }
+
+    @Test(timeout=300_000)
+	fun `chunked attachment can be read in ranges`() {
+        storage.chunkSize = 64
+        val (testJar) = makeTestJar()
+        val bytes = testJar.readBytes()
+        val id = testJar.read { storage.importAttachment(it, "test", null) }
+
+        assertThat(storage.readAttachmentChunk(id, 0, 10)).isEqualTo(bytes.copyOfRange(0, 10))
+        assertThat(storage.readAttachmentChunk(id, 60, 100)).isEqualTo(bytes.copyOfRange(60, 160))
+        assertThat(storage.readAttachmentChunk(id, bytes.size - 5L, 100)).isEqualTo(bytes.copyOfRange(bytes.size - 5, bytes.size))
+        assertThat(storage.readAttachmentChunk(id, bytes.size.toLong(), 100)).isEmpty()
+        assertNull(storage.readAttachmentChunk(SecureHash.randomSHA256(), 0, 100))
+    }
+
+    @Test(timeout=300_000)
+	fun `attachment stored whole before chunking can still be read`() {
+        val (testJar, id) = makeTestJar()
+        val bytes = testJar.readBytes()
+        database.transaction {
+            session.save(NodeAttachmentService.DBAttachment(attId = id.toString(), content = bytes, version = DEFAULT_CORDAPP_VERSION))
+        }
+        assertThat(storage.openAttachment(id)!!.open().readFully()).isEqualTo(bytes)
+        assertThat(storage.readAttachmentChunk(id, 10, 20)).isEqualTo(bytes.copyOfRange(10, 30))
+        assertThat(storage.readAttachmentChunk(id, bytes.size + 1L, 20)).isEmpty()
+    }
+
     @Test(timeout=300_000)
 	fun `non jar rejected`() {
         val path = fs.getPath("notajar")
@@ -0,0 +1,44 @@
+package net.corda.node.services.rpc
+
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class RpcCursorTest {
+    private val store = (1..25).toList()
+
+    private fun keysetCursor(pageRequests: MutableList<Int?>): RpcCursor<Int> = RpcCursor.keyset({ it: Int -> it }) { afterKey, maxItems ->
+        pageRequests += afterKey
+        store.filter { afterKey == null || it > afterKey }.take(maxItems)
+    }
+
+    @Test(timeout = 300_000)
+    fun `keyset cursor pages from the last key read`() {
+        val pageRequests = ArrayList<Int?>()
+        val cursor = keysetCursor(pageRequests)
+        assertEquals((1..10).toList(), cursor.next(10))
+        assertEquals((11..20).toList(), cursor.next(10))
+        assertEquals((21..25).toList(), cursor.next(10))
+        assertEquals(emptyList(), cursor.next(10))
+        assertEquals(listOf(null, 10, 20), pageRequests)
+    }
+
+    @Test(timeout = 300_000)
+    fun `in memory cursor transforms items in chunks`() {
+        val cursor = RpcCursor.of(store) { it.toString() }
+        assertEquals(listOf("1", "2", "3"), cursor.next(3))
+        assertEquals((4..25).map(Int::toString), cursor.next(100))
+        assertEquals(emptyList(), cursor.next(100))
+    }
+
+    @Test(timeout = 300_000)
+    fun `cursor list is only read when accessed`() {
+        var opened = 0
+        val list = RpcCursorList { opened++; RpcCursor.of(store) { it * 2 } }
+        assertEquals(0, opened)
+        assertEquals(25, list.size)
+        assertEquals(50, list.last())
+        assertEquals(1, opened)
+        list.openCursor().use { assertEquals(listOf(2, 4), it.next(2)) }
+        assertEquals(2, opened)
+    }
+}
@@ -0,0 +1,70 @@
+package net.corda.node.services.statemachine
+
+import net.corda.core.context.InvocationContext
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.identity.CordaX500Name
+import net.corda.testing.node.testActor
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class FlowAdmissionControllerTest {
+    private val redelivered = ArrayList<ExternalEvent.ExternalStartFlowEvent<*>>()
+
+    private fun startEvent(invocationContext: InvocationContext = InvocationContext.rpc(testActor())): ExternalEvent.ExternalStartFlowEvent<Unit> {
+        val id = StateMachineRunId.createRandom()
+        return mock {
+            on { flowId } doReturn id
+            on { context } doReturn invocationContext
+        }
+    }
+
+    @Test(timeout = 300_000)
+    fun `flows beyond the limit are queued and admitted in order as others finish`() {
+        val admission = FlowAdmissionController(2) { redelivered += it }
+        val events = List(4) { startEvent() }
+        assertEquals(listOf(true, true, false, false), events.map(admission::tryAdmit))
+        assertEquals(2, admission.inFlight)
+        assertEquals(2, admission.queueDepth)
+
+        admission.release(events[1].flowId)
+        assertEquals(listOf<Any>(events[2]), redelivered)
+        assertTrue(admission.tryAdmit(events[2]))
+        assertEquals(2, admission.inFlight)
+        assertEquals(1, admission.queueDepth)
+
+        admission.release(events[1].flowId)
+        assertEquals(1, redelivered.size)
+        admission.release(events[0].flowId)
+        assertEquals(listOf<Any>(events[2], events[3]), redelivered)
+    }
+
+    @Test(timeout = 300_000)
+    fun `only flows started through RPC are limited`() {
+        val admission = FlowAdmissionController(1) { redelivered += it }
+        assertTrue(admission.tryAdmit(startEvent()))
+        assertTrue(admission.tryAdmit(startEvent(InvocationContext.service("service", CordaX500Name("Bank", "London", "GB")))))
+        assertFalse(admission.tryAdmit(startEvent()))
+        assertEquals(1, admission.inFlight)
+    }
+
+    @Test(timeout = 300_000)
+    fun `a limit of zero admits every flow`() {
+        val admission = FlowAdmissionController(0) { redelivered += it }
+        assertTrue(List(10) { startEvent() }.all(admission::tryAdmit))
+        assertEquals(0, admission.queueDepth)
+    }
+
+    @Test(timeout = 300_000)
+    fun `queued flows are drained`() {
+        val admission = FlowAdmissionController(1) { redelivered += it }
+        val events = List(3) { startEvent() }
+        events.forEach { admission.tryAdmit(it) }
+        assertEquals(events.drop(1), admission.drain())
+        admission.release(events[0].flowId)
+        assertEquals(emptyList(), redelivered)
+    }
+}
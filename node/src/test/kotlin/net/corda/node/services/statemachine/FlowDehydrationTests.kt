@@ -0,0 +1,124 @@
+package net.corda.node.services.statemachine
+
+import co.paralleluniverse.fibers.Suspendable
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.FlowSession
+import net.corda.core.flows.InitiatedBy
+import net.corda.core.flows.InitiatingFlow
+import net.corda.core.identity.Party
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.seconds
+import net.corda.core.utilities.unwrap
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.core.BOB_NAME
+import net.corda.testing.core.singleIdentity
+import net.corda.testing.node.internal.InternalMockNetwork
+import net.corda.testing.node.internal.InternalMockNodeParameters
+import net.corda.testing.node.internal.TestStartedNode
+import net.corda.testing.node.internal.enclosedCordapp
+import net.corda.testing.node.internal.startFlow
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.whenever
+import java.time.Duration
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class FlowDehydrationTests {
+    private lateinit var mockNet: InternalMockNetwork
+    private lateinit var aliceNode: TestStartedNode
+    private lateinit var bobNode: TestStartedNode
+
+    @Before
+    fun start() {
+        mockNet = InternalMockNetwork(threadPerNode = true, cordappsForAllNodes = listOf(enclosedCordapp()))
+        aliceNode = mockNet.createNode(InternalMockNodeParameters(legalName = ALICE_NAME))
+        bobNode = mockNet.createNode(InternalMockNodeParameters(
+                legalName = BOB_NAME,
+                configOverrides = { doReturn(Duration.ofMillis(200)).whenever(it).flowDehydrationIdleTimeout }
+        ))
+        mockNet.startNodes()
+    }
+
+    @After
+    fun cleanUp() {
+        mockNet.stopNodes()
+    }
+
+    @Test(timeout = 300_000)
+    fun `flow waiting for a message is dehydrated and restored when the message arrives`() {
+        val result = aliceNode.services.startFlow(SlowSumFlow(bobNode.info.singleIdentity(), 1, 2)).resultFuture.getOrThrow()
+
+        assertEquals(3, result)
+        val metrics = bobNode.services.monitoringService.metrics
+        assertTrue(metrics.counter("Flows.Dehydration.Dehydrated").count > 0)
+        assertEquals(metrics.counter("Flows.Dehydration.Dehydrated").count, metrics.counter("Flows.Dehydration.Rehydrated").count)
+    }
+
+    @Test(timeout = 300_000)
+    fun `dehydrated flow is still counted as in flight`() {
+        val result = aliceNode.services.startFlow(SlowSumFlow(bobNode.info.singleIdentity(), 1, 2)).resultFuture
+        val metrics = bobNode.services.monitoringService.metrics
+        awaitDehydration()
+
+        assertTrue(bobNode.smm.allStateMachines.isEmpty())
+        assertEquals(1, metrics.gauges["Flows.InFlight"]!!.value)
+        assertEquals(1, metrics.gauges["Flows.Dehydration.Current"]!!.value)
+        assertEquals(3, result.getOrThrow())
+    }
+
+    @Test(timeout = 300_000)
+    fun `dehydrated flow whose checkpoint cannot be restored fails`() {
+        aliceNode.services.startFlow(SlowSumFlow(bobNode.info.singleIdentity(), 1, 2))
+        val responder = bobNode.smm.waitForResponder()
+        awaitDehydration()
+        bobNode.database.transaction {
+            session.createNativeQuery("update node_checkpoint_blobs set checkpoint_value = :checkpoint where flow_id = :flowId")
+                    .setParameter("checkpoint", byteArrayOf(1, 2, 3))
+                    .setParameter("flowId", responder.logic.runId.uuid.toString())
+                    .executeUpdate()
+        }
+
+        // The second number restores the responder, which fails rather than being left waiting forever.
+        assertFailsWith<IllegalStateException> { responder.resultFuture.getOrThrow() }
+        assertEquals(0, bobNode.services.monitoringService.metrics.gauges["Flows.Dehydration.Current"]!!.value)
+    }
+
+    private fun awaitDehydration() {
+        while (bobNode.services.monitoringService.metrics.counter("Flows.Dehydration.Dehydrated").count == 0L) {
+            Thread.sleep(50)
+        }
+    }
+
+    private fun StateMachineManager.waitForResponder(): FlowStateMachineImpl<*> {
+        while (true) {
+            snapshot().singleOrNull()?.let { return it }
+            Thread.sleep(50)
+        }
+    }
+
+    @InitiatingFlow
+    private class SlowSumFlow(private val party: Party, private val a: Int, private val b: Int) : FlowLogic<Int>() {
+        @Suspendable
+        override fun call(): Int {
+            val session = initiateFlow(party)
+            session.send(a)
+            // Long enough for the responder to be dehydrated while it waits for the second number.
+            sleep(2.seconds)
+            return session.sendAndReceive<Int>(b).unwrap { it }
+        }
+    }
+
+    @InitiatedBy(SlowSumFlow::class)
+    private class SumResponder(private val session: FlowSession) : FlowLogic<Unit>() {
+        @Suspendable
+        override fun call() {
+            val a = session.receive<Int>().unwrap { it }
+            val b = session.receive<Int>().unwrap { it }
+            session.send(a + b)
+        }
+    }
+}
@@ -22,7 +22,10 @@ import org.junit.After
 import org.junit.Before
 import org.junit.Ignore
 import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.whenever
 import rx.Observable
+import java.util.Properties
 import kotlin.test.assertEquals
 import kotlin.test.assertTrue
 
@@ -93,6 +96,29 @@ class FlowFrameworkPersistenceTests {
         assertThat(restoredFlow.receivedPayloads[0]).isEqualTo("Hello")
     }
 
+    @Test(timeout=300_000)
+    fun `more checkpoints than restoring threads are restored, apart from one which cannot be deserialized`() {
+        val ids = (1..6).map { aliceNode.services.startFlow(NoOpFlow(nonTerminating = true)).id }
+        aliceNode.database.transaction {
+            session.createNativeQuery("update node_checkpoint_blobs set checkpoint_value = :checkpoint where flow_id = :flowId")
+                    .setParameter("checkpoint", byteArrayOf(1, 2, 3))
+                    .setParameter("flowId", ids[0].uuid.toString())
+                    .executeUpdate()
+        }
+        aliceNode.internals.acceptableLiveFiberCountOnStop = ids.size
+        // A pool of four connections leaves two of them for restoring checkpoints.
+        val newNode = mockNet.restartNode(aliceNode, InternalMockNodeParameters(configOverrides = { config ->
+            val dataSourceProperties = Properties().apply {
+                putAll(config.dataSourceProperties)
+                setProperty("maximumPoolSize", "4")
+            }
+            doReturn(dataSourceProperties).whenever(config).dataSourceProperties
+        }))
+        newNode.internals.acceptableLiveFiberCountOnStop = ids.size - 1
+        mockNet.runNetwork()
+        assertEquals(ids.drop(1).toSet(), newNode.smm.allStateMachines.map { it.runId }.toSet())
+    }
+
     @Ignore("Some changes in startup order make this test's assumptions fail.")
     @Test(timeout=300_000)
 	fun `flow with send will resend on interrupted restart`() {
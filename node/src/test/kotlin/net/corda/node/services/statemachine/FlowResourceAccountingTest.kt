@@ -0,0 +1,56 @@
+package net.corda.node.services.statemachine
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.flows.StateMachineRunId
+import org.junit.Test
+import kotlin.concurrent.thread
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class FlowResourceAccountingTest {
+    private val metrics = MetricRegistry()
+    private val accounting = FlowResourceAccounting(metrics)
+    private val flowId = StateMachineRunId.createRandom()
+
+    @Test(timeout = 300_000)
+    fun `usage is added to the flow and its class until the flow finishes`() {
+        repeat(2) {
+            val measurement = accounting.startMeasuring()
+            accounting.stopMeasuring(measurement, flowId, javaClass, transitions = 1, finished = false)
+        }
+
+        val running = accounting.usageByFlow.getValue(flowId)
+        assertEquals(javaClass.name, running.flowClassName)
+        assertEquals(2L, running.transitions)
+        assertEquals(listOf(running), accounting.usageByClass)
+
+        accounting.stopMeasuring(accounting.startMeasuring(), flowId, javaClass, transitions = 1, finished = true)
+
+        assertTrue(accounting.usageByFlow.isEmpty())
+        assertEquals(3L, accounting.usageByClass.single().transitions)
+        assertEquals(3L, metrics.gauges.getValue("Flows.Resources.${javaClass.name}.Transitions").value)
+    }
+
+    @Test(timeout = 300_000)
+    fun `flow code measurement is added to the flow without counting a transition`() {
+        accounting.startMeasuringFlowCode(flowId)
+        accounting.stopMeasuringFlowCode(flowId, javaClass)
+        // Nothing is being measured any more.
+        accounting.stopMeasuringFlowCode(flowId, javaClass)
+
+        assertEquals(0L, accounting.usageByFlow.getValue(flowId).transitions)
+        accounting.flowRemoved(flowId)
+        assertTrue(accounting.usageByFlow.isEmpty())
+    }
+
+    @Test(timeout = 300_000)
+    fun `measurement started on another thread is discarded`() {
+        var measurement: FlowResourceAccounting.Measurement? = null
+        thread { measurement = accounting.startMeasuring() }.join()
+
+        accounting.stopMeasuring(measurement!!, flowId, javaClass, transitions = 1, finished = false)
+
+        assertTrue(accounting.usageByFlow.isEmpty())
+        assertTrue(accounting.usageByClass.isEmpty())
+    }
+}
@@ -0,0 +1,56 @@
+package net.corda.node.services.statemachine
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.flows.FlowPriorityClass
+import net.corda.core.flows.FlowPriorityClass.HIGH
+import net.corda.core.flows.FlowPriorityClass.LOW
+import net.corda.core.flows.FlowPriorityClass.NORMAL
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class WeightedFairExecutorTest {
+    private val pending = ArrayList<Runnable>()
+    private val metrics = MetricRegistry()
+    private val executor = WeightedFairExecutor({ pending += it }, metrics)
+    private val ran = ArrayList<Pair<FlowPriorityClass, Int>>()
+
+    private fun submit(priority: FlowPriorityClass, count: Int) {
+        repeat(count) { index -> executor.execute(priority) { ran += Pair(priority, index) } }
+    }
+
+    private fun run(count: Int): List<Pair<FlowPriorityClass, Int>> {
+        ran.clear()
+        repeat(count) { pending.removeAt(0).run() }
+        return ran.toList()
+    }
+
+    @Test(timeout = 300_000)
+    fun `waiting classes are run in proportion to their weights, each in order`() {
+        submit(LOW, 40)
+        submit(NORMAL, 40)
+        submit(HIGH, 40)
+
+        val first = run(42)
+        assertEquals(32, first.count { it.first == HIGH })
+        assertEquals(8, first.count { it.first == NORMAL })
+        assertEquals(2, first.count { it.first == LOW })
+        assertEquals(HIGH, first[0].first)
+        for (priority in FlowPriorityClass.values()) {
+            val indices = first.filter { it.first == priority }.map { it.second }
+            assertEquals(indices.indices.toList(), indices)
+        }
+        assertEquals(78, metrics.gauges.values.sumOf { it.value as Int })
+    }
+
+    @Test(timeout = 300_000)
+    fun `a class which was idle does not catch up on the turns it missed`() {
+        submit(LOW, 10)
+        run(10)
+        submit(HIGH, 40)
+        submit(LOW, 40)
+
+        val next = run(18)
+        assertEquals(17, next.indexOfFirst { it.first == LOW })
+        assertEquals(11L, metrics.timer("Flows.Priority.LOW.QueueWait").count)
+    }
+}
@@ -32,11 +32,15 @@ import org.assertj.core.api.Assertions.assertThat
 import org.junit.After
 import org.junit.Before
 import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.whenever
 import java.time.Duration
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.RejectedExecutionException
 import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
 import kotlin.test.assertTrue
 
 class ValidatingNotaryServiceTests {
@@ -48,9 +52,17 @@ class ValidatingNotaryServiceTests {
 
     @Before
     fun setup() {
+        startNetwork(verificationThreads = 0)
+    }
+
+    private fun startNetwork(verificationThreads: Int) {
         mockNet = InternalMockNetwork(
                 cordappsForAllNodes = listOf(DUMMY_CONTRACTS_CORDAPP),
-                initialNetworkParameters = testNetworkParameters(minimumPlatformVersion = 4)
+                initialNetworkParameters = testNetworkParameters(minimumPlatformVersion = 4),
+                defaultFactory = { args ->
+                    args.config.notary?.let { doReturn(it.copy(verificationThreads = verificationThreads)).whenever(args.config).notary }
+                    InternalMockNetwork.MockNode(args)
+                }
         )
         aliceNode = mockNet.createNode(InternalMockNodeParameters(legalName = ALICE_NAME))
         notaryNode = mockNet.defaultNotaryNode
@@ -58,6 +70,13 @@ class ValidatingNotaryServiceTests {
         alice = aliceNode.info.singleIdentity()
     }
 
+    /** Restarts the network with the notary verifying transactions on a pool of threads, rather than in its service flows. */
+    private fun startNetworkWithVerificationThreads(): NotaryTransactionVerifier {
+        mockNet.stopNodes()
+        startNetwork(verificationThreads = 2)
+        return checkNotNull((notaryNode.notaryService as VerifyingNotaryService).transactionVerifier)
+    }
+
     @After
     fun cleanUp() {
         mockNet.stopNodes()
@@ -312,6 +331,63 @@ class ValidatingNotaryServiceTests {
         }
     }
 
+    @Test(timeout=300_000)
+	fun `transactions are verified in the service flow by default`() {
+        assertNull((notaryNode.notaryService as VerifyingNotaryService).transactionVerifier)
+    }
+
+    @Test(timeout=300_000)
+	fun `should sign a valid transaction verified on the verification threads`() {
+        startNetworkWithVerificationThreads()
+        val stx = run {
+            val inputState = issueState(aliceNode.services, alice)
+            val tx = TransactionBuilder(notary)
+                    .addInputState(inputState)
+                    .addCommand(dummyCommand(alice.owningKey))
+            aliceNode.services.signInitialTransaction(tx)
+        }
+
+        val signatures = runNotaryClient(stx).getOrThrow()
+        signatures.forEach { it.verify(stx.id) }
+        assertEquals(1, notaryNode.services.monitoringService.metrics.timer("Notary.Verification.Duration").count)
+    }
+
+    @Test(timeout=300_000)
+	fun `should report error for missing signatures found on the verification threads`() {
+        startNetworkWithVerificationThreads()
+        val expectedMissingKey = generateKeyPair().public
+        val stx = run {
+            val inputState = issueState(aliceNode.services, alice)
+            val command = Command(DummyContract.Commands.Move(), expectedMissingKey)
+            val tx = TransactionBuilder(notary).withItems(inputState, command)
+            aliceNode.services.signInitialTransaction(tx)
+        }
+
+        val ex = assertFailsWith<NotaryException> { runNotaryClient(stx).getOrThrow() }
+        val exception = (ex.error as NotaryError.TransactionInvalid).cause as SignedTransaction.SignaturesMissingException
+        assertEquals(setOf(expectedMissingKey), exception.missing)
+        assertEquals(1, notaryNode.services.monitoringService.metrics.timer("Notary.Verification.Duration").count)
+    }
+
+    @Test(timeout=300_000)
+	fun `stopping the notary finishes the verifications under way and then stops the verification threads`() {
+        val verifier = startNetworkWithVerificationThreads()
+        val stx = run {
+            val tx = DummyContract.generateInitial(Random().nextInt(), notary, alice.ref(0))
+            aliceNode.services.signInitialTransaction(tx)
+        }
+
+        val verification = verifier.verify(stx)
+        notaryNode.dispose()
+
+        assertTrue(verification.isDone)
+        verification.getOrThrow()
+        assertFailsWith<RejectedExecutionException> { verifier.verify(stx) }
+        val verificationThreads = Thread.getAllStackTraces().keys.filter { it.name.startsWith("notary-verification") }
+        verificationThreads.forEach { it.join(10_000) }
+        assertThat(verificationThreads).noneMatch { it.isAlive }
+    }
+
     @Test(timeout=300_000)
 	fun `should reject a transaction with too many inputs`() {
         NotaryServiceTests.notariseWithTooManyInputs(aliceNode, alice, notary, mockNet)
@@ -0,0 +1,132 @@
+package net.corda.node.services.vault
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.contracts.LinearState
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.node.NotaryInfo
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.Builder.`in`
+import net.corda.core.node.services.vault.Builder.equal
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.QueryCriteria.VaultCustomQueryCriteria
+import net.corda.core.node.services.vault.QueryCriteria.VaultQueryCriteria
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.testing.common.internal.testNetworkParameters
+import net.corda.testing.core.DUMMY_NOTARY_NAME
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.vault.VaultFiller
+import net.corda.testing.node.MockServices
+import net.corda.testing.node.makeTestIdentityService
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class VaultQueryPlanCacheTest {
+    private companion object {
+        val cordappPackages = listOf("net.corda.testing.contracts", "net.corda.testing.internal.vault")
+        val dummyNotary = TestIdentity(DUMMY_NOTARY_NAME, 20)
+        val megaCorp = TestIdentity(CordaX500Name("MegaCorp", "London", "GB"))
+    }
+
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+    private lateinit var database: CordaPersistence
+    private lateinit var services: MockServices
+    private val metricRegistry = MetricRegistry()
+    private val queryPlans = VaultQueryPlanCache(TestingNamedCacheFactory(), metricRegistry)
+    private var parses = 0
+
+    @Before
+    fun setUp() {
+        val databaseAndServices = MockServices.makeTestDatabaseAndMockServices(
+                cordappPackages,
+                makeTestIdentityService(megaCorp.identity, dummyNotary.identity),
+                megaCorp,
+                testNetworkParameters(notaries = listOf(NotaryInfo(dummyNotary.party, true)))
+        )
+        database = databaseAndServices.first
+        services = databaseAndServices.second
+        val vaultFiller = VaultFiller(services, dummyNotary)
+        vaultFiller.fillWithSomeTestLinearStates(3, externalId = "a")
+        vaultFiller.fillWithSomeTestLinearStates(2, externalId = "b")
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    private fun count(criteria: QueryCriteria): Long {
+        val vaultService = services.vaultService as NodeVaultService
+        val criteriaBuilder = database.hibernateConfig.sessionFactoryForRegisteredSchemas.criteriaBuilder
+        return database.transaction {
+            val (query) = queryPlans.createQuery(session, Long::class.javaObjectType, criteria, null, LinearState::class.java) { parameters ->
+                parses++
+                val criteriaQuery = criteriaBuilder.createQuery(Long::class.javaObjectType)
+                val criteriaParser = HibernateQueryCriteriaParser(
+                        LinearState::class.java,
+                        vaultService.contractStateTypeMappings,
+                        criteriaBuilder,
+                        criteriaQuery,
+                        criteriaQuery.from(VaultSchemaV1.VaultStates::class.java),
+                        parameters
+                )
+                criteriaParser.parse(criteria, null)
+                criteriaQuery.select(criteriaBuilder.count(criteriaParser.vaultStates))
+                Pair(criteriaQuery, criteriaParser.stateTypes)
+            }
+            query.singleResult
+        }
+    }
+
+    private fun externalId(value: String, exactMatch: Boolean = true): QueryCriteria {
+        return VaultCustomQueryCriteria(VaultSchemaV1.VaultLinearStates::externalId.equal(value, exactMatch))
+    }
+
+    @Test(timeout = 300_000)
+    fun `criteria differing only in column predicate values share a plan`() {
+        assertEquals(3L, count(externalId("a")))
+        assertEquals(2L, count(externalId("b")))
+        assertEquals(0L, count(externalId("c")))
+        assertEquals(2L, count(externalId("B", exactMatch = false)))
+
+        assertEquals(2, parses)
+        assertEquals(2, metricRegistry.meter("VaultQuery.Plans.Hits").count)
+        assertEquals(2, metricRegistry.meter("VaultQuery.Plans.Misses").count)
+        assertEquals(0.5, metricRegistry.gauges["VaultQuery.Plans.HitRatio"]!!.value)
+    }
+
+    @Test(timeout = 300_000)
+    fun `criteria differing in other values or in the number of values are parsed separately`() {
+        assertEquals(5L, count(VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)))
+        assertEquals(0L, count(VaultQueryCriteria(Vault.StateStatus.CONSUMED)))
+        assertEquals(3L, count(VaultCustomQueryCriteria(VaultSchemaV1.VaultLinearStates::externalId.`in`(listOf("a")))))
+        assertEquals(5L, count(VaultCustomQueryCriteria(VaultSchemaV1.VaultLinearStates::externalId.`in`(listOf("a", "b")))))
+
+        assertEquals(4, parses)
+    }
+
+    @Test(timeout = 300_000)
+    fun `column predicates used more than once bind the same values`() {
+        assertEquals(5L, count(externalId("a").or(externalId("b"))))
+        val shared = externalId("a")
+        assertEquals(3L, count(shared.or(shared)))
+        assertEquals(2L, count(externalId("b").or(externalId("b"))))
+
+        assertEquals(2, parses)
+    }
+
+    @Test(timeout = 300_000)
+    fun `invalidated plans are parsed again`() {
+        assertEquals(3L, count(externalId("a")))
+        queryPlans.invalidate()
+        assertEquals(2L, count(externalId("b")))
+
+        assertEquals(2, parses)
+    }
+}
@@ -0,0 +1,72 @@
+package net.corda.node.services.vault
+
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TransactionState
+import net.corda.core.contracts.UniqueIdentifier
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.builder
+import net.corda.testing.core.DUMMY_NOTARY_NAME
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.vault.DUMMY_LINEAR_CONTRACT_PROGRAM_ID
+import net.corda.testing.internal.vault.DummyLinearContract
+import net.corda.testing.internal.vault.DummyLinearStateSchemaV1
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class VaultUpdateFilterTest {
+    private companion object {
+        val dummyNotary = TestIdentity(DUMMY_NOTARY_NAME, 20)
+        val alice = TestIdentity(CordaX500Name("Alice", "London", "GB"))
+        val bob = TestIdentity(CordaX500Name("Bob", "London", "GB"))
+    }
+
+    private fun stateAndRef(state: ContractState): StateAndRef<ContractState> {
+        return StateAndRef(TransactionState(state, DUMMY_LINEAR_CONTRACT_PROGRAM_ID, dummyNotary.party), StateRef(SecureHash.randomSHA256(), 0))
+    }
+
+    private val aliceState = stateAndRef(DummyLinearContract.State(UniqueIdentifier("alice"), listOf(alice.party), linearNumber = 10))
+    private val bobState = stateAndRef(DummyLinearContract.State(UniqueIdentifier("bob"), listOf(bob.party), linearNumber = 20))
+    private val anonymousState = stateAndRef(DummyLinearContract.State(participants = listOf(alice.party.anonymise())))
+
+    private fun QueryCriteria.filterProduced(vararg states: StateAndRef<ContractState>): Set<StateAndRef<ContractState>> {
+        return VaultUpdateFilter(this).filter(Vault.Update(emptySet(), states.toSet())).produced
+    }
+
+    @Test(timeout = 300_000)
+    fun `states not matching the criteria are removed`() {
+        val criteria = QueryCriteria.VaultQueryCriteria(participants = listOf(alice.party))
+        assertEquals(setOf(aliceState), criteria.filterProduced(aliceState, bobState))
+    }
+
+    @Test(timeout = 300_000)
+    fun `states the criteria cannot be evaluated against in memory are kept`() {
+        val criteria = QueryCriteria.VaultQueryCriteria(participants = listOf(bob.party))
+        assertEquals(setOf(bobState, anonymousState), criteria.filterProduced(aliceState, bobState, anonymousState))
+    }
+
+    @Test(timeout = 300_000)
+    fun `composite and custom criteria are evaluated`() {
+        val custom = builder { QueryCriteria.VaultCustomQueryCriteria(DummyLinearStateSchemaV1.PersistentDummyLinearState::linearNumber.greaterThan(15L)) }
+        assertEquals(setOf(bobState), custom.filterProduced(aliceState, bobState))
+        val linear = QueryCriteria.LinearStateQueryCriteria(externalId = listOf("alice"))
+        assertEquals(setOf(aliceState, bobState), custom.or(linear).filterProduced(aliceState, bobState))
+        assertEquals(emptySet(), custom.and(linear).filterProduced(aliceState, bobState))
+    }
+
+    @Test(timeout = 300_000)
+    fun `consumed states are kept when tracking unconsumed states`() {
+        val criteria = QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+        val update = VaultUpdateFilter(criteria).filter(Vault.Update(setOf(aliceState), setOf(bobState)))
+        assertEquals(setOf(aliceState), update.consumed)
+        assertEquals(setOf(bobState), update.produced)
+        val consumedOnly = VaultUpdateFilter(QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED))
+                .filter(Vault.Update(setOf(aliceState), setOf(bobState)))
+        assertEquals(setOf(aliceState), consumedOnly.consumed)
+        assertEquals(emptySet(), consumedOnly.produced)
+    }
+}
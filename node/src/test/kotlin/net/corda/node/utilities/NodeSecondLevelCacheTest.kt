@@ -0,0 +1,71 @@
+package net.corda.node.utilities
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.node.internal.checkOrUpdate
+import net.corda.node.internal.createCordaPersistence
+import net.corda.node.internal.startHikariPool
+import net.corda.node.services.persistence.NodePropertiesPersistentStore.DBNodeProperty
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.node.services.upgrade.ContractUpgradeServiceImpl.DBContractUpgrade
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.nodeapi.internal.persistence.SchemaMigration
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.junit.After
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class NodeSecondLevelCacheTest {
+    private val metricRegistry = MetricRegistry()
+    private val database = createDatabase(DatabaseConfig(secondLevelCacheRegions = setOf("node_properties")))
+
+    @After
+    fun closeDatabase() {
+        database.close()
+    }
+
+    private fun createDatabase(databaseConfig: DatabaseConfig): CordaPersistence {
+        val hikariProperties = makeTestDataSourceProperties()
+        val schemaService = NodeSchemaService()
+        return createCordaPersistence(databaseConfig, { null }, { null }, schemaService, hikariProperties, TestingNamedCacheFactory(),
+                null, metricRegistry = metricRegistry).apply {
+            startHikariPool(hikariProperties) { dataSource, haveCheckpoints ->
+                SchemaMigration(dataSource, null, null, ALICE_NAME)
+                        .checkOrUpdate(schemaService.internalSchemas, true, haveCheckpoints, false)
+            }
+        }
+    }
+
+    private fun gauge(region: String, name: String): Long {
+        return metricRegistry.gauges[MetricRegistry.name("Database", "SecondLevelCache", region, name)]!!.value as Long
+    }
+
+    @Test(timeout = 300_000)
+    fun `enabled region serves repeated lookups from the cache`() {
+        database.transaction { session.persist(DBNodeProperty("key", "value")) }
+        repeat(3) {
+            val value = database.transaction { session.find(DBNodeProperty::class.java, "key").value }
+            assertEquals("value", value)
+        }
+        assertTrue(gauge("node_properties", "Hits") > 0)
+    }
+
+    @Test(timeout = 300_000)
+    fun `updates are visible through the cache`() {
+        database.transaction { session.persist(DBNodeProperty("key", "value")) }
+        database.transaction { session.find(DBNodeProperty::class.java, "key").value = "updated" }
+        val value = database.transaction { session.find(DBNodeProperty::class.java, "key").value }
+        assertEquals("updated", value)
+    }
+
+    @Test(timeout = 300_000)
+    fun `regions not enabled in the configuration are not cached`() {
+        database.transaction { session.persist(DBContractUpgrade("ref", "contract")) }
+        database.transaction { session.find(DBContractUpgrade::class.java, "ref") }
+        assertFalse(metricRegistry.gauges.keys.any { "node_contract_upgrades" in it })
+    }
+}
@@ -0,0 +1,29 @@
+package net.corda.node.verification
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.crypto.SecureHash
+import net.corda.core.internal.verification.VerifiedTransactionCache
+import net.corda.testing.internal.TestingNamedCacheFactory
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class NodeVerifiedTransactionCacheTest {
+    private val metrics = MetricRegistry()
+    private val cache = NodeVerifiedTransactionCache(TestingNamedCacheFactory(), metrics)
+
+    @Test(timeout = 300_000)
+    fun `a transaction is only verified against the parameters and attachments it was verified with`() {
+        val key = VerifiedTransactionCache.Key(SecureHash.randomSHA256(), SecureHash.randomSHA256(), setOf(SecureHash.randomSHA256()))
+        assertFalse(cache.isVerified(key))
+
+        cache.markVerified(key)
+
+        assertTrue(cache.isVerified(key))
+        assertFalse(cache.isVerified(key.copy(networkParametersHash = SecureHash.randomSHA256())))
+        assertFalse(cache.isVerified(key.copy(attachments = key.attachments + SecureHash.randomSHA256())))
+        assertEquals(1L, metrics.meter("Transactions.Verification.Cache.Hits").count)
+        assertEquals(3L, metrics.meter("Transactions.Verification.Cache.Misses").count)
+    }
+}
@@ -0,0 +1,82 @@
+package net.corda.notary.jpa
+
+import net.corda.core.internal.notary.NotaryServiceFlow
+import org.junit.Test
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class AdaptiveBatchControllerTest {
+    private var now = 0L
+    private val millis = TimeUnit.MILLISECONDS.toNanos(1)
+
+    private fun controller(config: JPANotaryConfiguration = JPANotaryConfiguration(batchSize = 8, batchTimeoutMs = 50, maxBatchSize = 64)) =
+            AdaptiveBatchController(config) { now }
+
+    /** Advances time by [elapsedMs] with [arrivals] requests arriving, then commits a batch. */
+    private fun AdaptiveBatchController.batch(arrivals: Int, elapsedMs: Long, size: Int, commitMs: Long, queueDepth: Int) {
+        repeat(arrivals) { requestQueued() }
+        now += elapsedMs * millis
+        batchCommitted(size, commitMs * millis, queueDepth)
+    }
+
+    @Test(timeout = 300_000)
+    fun `batch size grows while requests back up, up to the maximum`() {
+        val controller = controller()
+        repeat(3) { controller.batch(arrivals = 100, elapsedMs = 10, size = controller.batchSize, commitMs = 5, queueDepth = 500) }
+        assertEquals(64, controller.batchSize)
+        controller.batch(arrivals = 100, elapsedMs = 10, size = controller.batchSize, commitMs = 5, queueDepth = 500)
+        assertEquals(64, controller.batchSize)
+    }
+
+    @Test(timeout = 300_000)
+    fun `batch size shrinks when batches take too long to commit`() {
+        val controller = controller()
+        controller.batch(arrivals = 8, elapsedMs = 600, size = 8, commitMs = 600, queueDepth = 500)
+        assertEquals(6, controller.batchSize)
+    }
+
+    @Test(timeout = 300_000)
+    fun `requests are not held back waiting for a batch which will not fill`() {
+        val controller = controller()
+        // One request a second will not fill a batch of 8 within the target latency
+        controller.batch(arrivals = 1, elapsedMs = 1000, size = 1, commitMs = 2, queueDepth = 0)
+        assertEquals(0, controller.batchTimeoutMs)
+    }
+
+    @Test(timeout = 300_000)
+    fun `timeout is the time a batch takes to fill when that is within the target`() {
+        val controller = controller()
+        // A request every millisecond fills the remaining 7 places of a batch in 7ms
+        controller.batch(arrivals = 100, elapsedMs = 100, size = 8, commitMs = 2, queueDepth = 0)
+        assertEquals(7, controller.batchTimeoutMs)
+    }
+
+    @Test(timeout = 300_000)
+    fun `no request waits for others once the latency target is missed`() {
+        val controller = controller()
+        repeat(100) { controller.requestAnswered(TimeUnit.SECONDS.toNanos(2)) }
+        controller.batch(arrivals = 100, elapsedMs = 100, size = 8, commitMs = 2, queueDepth = 0)
+        assertEquals(0, controller.batchTimeoutMs)
+    }
+
+    @Test(timeout = 300_000)
+    fun `batching is fixed when adaptive batching is disabled`() {
+        val controller = controller(JPANotaryConfiguration(batchSize = 8, batchTimeoutMs = 50, adaptiveBatching = false))
+        controller.batch(arrivals = 100, elapsedMs = 10, size = 8, commitMs = 5, queueDepth = 500)
+        controller.batch(arrivals = 1, elapsedMs = 1000, size = 1, commitMs = 600, queueDepth = 0)
+        assertEquals(8, controller.batchSize)
+        assertEquals(50, controller.batchTimeoutMs)
+    }
+
+    @Test(timeout = 300_000)
+    fun `wait is estimated from the commit time of each request`() {
+        val controller = controller()
+        assertEquals(NotaryServiceFlow.defaultEstimatedWaitTime, controller.estimatedWait(10))
+        controller.batch(arrivals = 1, elapsedMs = 1000, size = 10, commitMs = 100, queueDepth = 0)
+        val estimate = controller.estimatedWait(99)
+        // 100 requests at 10ms each, doubled
+        assertTrue(estimate >= Duration.ofSeconds(2) && estimate < Duration.ofMillis(2100), "$estimate")
+    }
+}
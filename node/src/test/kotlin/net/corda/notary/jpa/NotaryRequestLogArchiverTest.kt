@@ -0,0 +1,77 @@
+package net.corda.notary.jpa
+
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.util.zip.GZIPInputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+
+class NotaryRequestLogArchiverTest {
+    @Rule
+    @JvmField
+    val tempFolder = TemporaryFolder()
+
+    private val database: CordaPersistence = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null },
+            NodeSchemaService(extraSchemas = setOf(JPANotarySchemaV1)))
+    private val now = Instant.parse("2024-03-10T12:00:00Z")
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    private fun logRequest(id: String, time: Instant) = database.transaction {
+        session.persist(JPAUniquenessProvider.Request(id, "tx-$id", "O=Party, L=London, C=GB", byteArrayOf(1, 2, 3), time, null))
+    }
+
+    private fun remainingRequests(): List<String> = database.transaction {
+        session.createQuery("select id from ${JPAUniquenessProvider.Request::class.java.name} order by id", String::class.java).resultList
+    }
+
+    private fun NotaryRequestLogArchiver.archivedIds(day: LocalDate): List<String> {
+        return GZIPInputStream(Files.newInputStream(archiveFile(day))).bufferedReader().readLines().map { it.split("\t")[0] }
+    }
+
+    @Test(timeout = 300_000)
+    fun `only whole days older than the retention period are archived`() {
+        logRequest("a", Instant.parse("2024-03-01T10:00:00Z"))
+        logRequest("b", Instant.parse("2024-03-01T23:00:00Z"))
+        logRequest("c", Instant.parse("2024-03-02T09:00:00Z"))
+        // Within the day on which the retention period ends
+        logRequest("d", Instant.parse("2024-03-03T18:00:00Z"))
+        logRequest("e", Instant.parse("2024-03-09T18:00:00Z"))
+
+        val archiver = NotaryRequestLogArchiver(database, Clock.fixed(now, ZoneOffset.UTC), tempFolder.root.toPath(), Duration.ofDays(7), Duration.ofHours(1))
+        assertEquals(3, archiver.archive())
+
+        assertEquals(listOf("d", "e"), remainingRequests())
+        assertEquals(listOf("a", "b"), archiver.archivedIds(LocalDate.parse("2024-03-01")))
+        assertEquals(listOf("c"), archiver.archivedIds(LocalDate.parse("2024-03-02")))
+        assertFalse(Files.exists(archiver.archiveFile(LocalDate.parse("2024-03-03"))))
+    }
+
+    @Test(timeout = 300_000)
+    fun `requests archived later are appended to the archive of their day`() {
+        val archiver = NotaryRequestLogArchiver(database, Clock.fixed(now, ZoneOffset.UTC), tempFolder.root.toPath(), Duration.ofDays(7), Duration.ofHours(1))
+        logRequest("a", Instant.parse("2024-03-01T10:00:00Z"))
+        assertEquals(1, archiver.archive())
+        logRequest("b", Instant.parse("2024-03-01T11:00:00Z"))
+        assertEquals(1, archiver.archive())
+
+        assertEquals(listOf("a", "b"), archiver.archivedIds(LocalDate.parse("2024-03-01")))
+        assertEquals(emptyList(), remainingRequests())
+    }
+}
@@ -508,7 +508,8 @@ open class MockServices private constructor(
                 verifyingView,
                 database,
                 schemaService,
-                cordappLoader.appClassLoader
+                cordappLoader.appClassLoader,
+                TestingNamedCacheFactory()
         ).apply { start() }
     }
 
@@ -79,6 +79,7 @@ import java.net.URLClassLoader
 import java.nio.file.Path
 import java.nio.file.Paths
 import java.time.Clock
+import java.time.Duration
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicReference
@@ -670,6 +671,10 @@ private fun mockNodeConfiguration(certificatesDirectory: Path): NodeConfiguratio
         doReturn(rigorousMock<ConfigurationWithOptions>()).whenever(it).configurationWithOptions
         doReturn(2).whenever(it).flowExternalOperationThreadPoolSize
         doReturn(false).whenever(it).reloadCheckpointAfterSuspend
+        doReturn(0).whenever(it).flowAdmissionLimit
+        doReturn(Duration.ZERO).whenever(it).flowDehydrationIdleTimeout
+        doReturn(Duration.ZERO).whenever(it).messageHighWaterMarkFlushInterval
+        doReturn(null).whenever(it).flowPriorities
     }
 }
 
@@ -26,6 +26,7 @@ class TestingNamedCacheFactory private constructor(private val sizeOverride: Lon
         val configuredCaffeine = when (name) {
             "DBTransactionStorage_transactions" -> caffeine.maximumWeight(1.MB)
             "NodeAttachmentService_attachmentContent" -> caffeine.maximumWeight(1.MB)
+            "NodeAttachmentService_attachmentChunks" -> caffeine.maximumWeight(1.MB)
             "AttachmentsClassLoader_cache" -> caffeine.maximumSize(sizeOverride)
             else -> caffeine.maximumSize(sizeOverride)
         }
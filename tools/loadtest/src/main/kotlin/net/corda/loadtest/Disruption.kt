@@ -74,10 +74,12 @@ fun strainCpu(parallelism: Int, durationSeconds: Int) = Disruption("Put strain o
 // DOCS END 2
 
 fun <A> Nodes.withDisruptions(disruptions: List<DisruptionSpec>, mainRandom: SplittableRandom, action: () -> A): A {
+    val remoteNodes = allNodes.filterIsInstance<NodeConnection>()
+    require(disruptions.isEmpty() || remoteNodes.size == allNodes.size) { "Disruptions can only be run against remote nodes" }
     val executor = Executors.newCachedThreadPool()
     disruptions.map { disruption ->
         val random = mainRandom.split()
-        val relevantNodes = allNodes.filter(disruption.nodeFilter)
+        val relevantNodes = remoteNodes.filter(disruption.nodeFilter)
         executor.submit {
             while (true) {
                 val noDisruptionIntervalMs = Generator.longRange(disruption.noDisruptionWindowMs).generateOrFail(random)
@@ -67,12 +67,17 @@ data class LoadTest<T, S>(
     )
     // DOCS END 2
 
-    fun run(nodes: Nodes, parameters: RunParameters, random: SplittableRandom) {
+    /**
+     * @param metrics If given, records the latency of each command executed.
+     */
+    fun run(nodes: Nodes, parameters: RunParameters, random: SplittableRandom, metrics: LoadTestMetrics? = null) {
         log.info("Running '$testName' with parameters $parameters")
         if (parameters.clearDatabaseBeforeRun) {
             log.info("Clearing databases as clearDatabaseBeforeRun=true")
             // We need to clear the network map first so that other nodes register fine
-            (nodes.simpleNodes + listOf(nodes.notary)).parallelStream().forEach {
+            (nodes.simpleNodes + listOf(nodes.notary)).map {
+                it as? NodeConnection ?: throw IllegalArgumentException("Only the databases of remote nodes can be cleared")
+            }.parallelStream().forEach {
                 it.clearDb()
             }
         }
@@ -104,9 +109,12 @@ data class LoadTest<T, S>(
                                 Callable<Unit> {
                                     rateLimiter?.acquire()
                                     log.info("Executing $it")
+                                    val start = System.nanoTime()
                                     try {
                                         nodes.execute(it)
+                                        metrics?.commandExecuted(System.nanoTime() - start)
                                     } catch (throwable: Throwable) {
+                                        metrics?.commandFailed()
                                         val diagnostic = executeDiagnostic(state, newState, it, throwable)
                                         log.error(diagnostic)
                                         throw if (throwable is Exception) Exception(diagnostic) else throwable
@@ -150,8 +158,8 @@ data class LoadTest<T, S>(
 }
 
 data class Nodes(
-        val notary: NodeConnection,
-        val simpleNodes: List<NodeConnection>
+        val notary: LoadTestNode,
+        val simpleNodes: List<LoadTestNode>
 ) {
     val allNodes by lazy { (listOf(notary) + simpleNodes).associateBy { it.info }.values }
 }
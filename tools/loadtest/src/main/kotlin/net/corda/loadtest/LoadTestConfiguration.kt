@@ -2,6 +2,7 @@ package net.corda.loadtest
 
 import net.corda.nodeapi.internal.config.User
 import java.nio.file.Path
+import java.nio.file.Paths
 import java.util.concurrent.ForkJoinPool
 
 /**
@@ -22,11 +23,12 @@ import java.util.concurrent.ForkJoinPool
  *     exceed this, it is used just for cutoff.
  * @param parallelism Number of concurrent threads to use to run commands. Note that the actual parallelism may be
  *     further limited by the batches that [generate] returns.
+ * @param local The nodes to start and workloads to run against them when [mode] is [TestMode.LOCAL_LOAD_TEST].
  */
 data class LoadTestConfiguration(
         val sshUser: String = System.getProperty("user.name"),
         val localTunnelStartingPort: Int,
-        val nodeHosts: List<String>,
+        val nodeHosts: List<String> = emptyList(),
         val rpcUser: User,
         val remoteNodeDirectory: Path,
         val rpcPort: Int,
@@ -35,11 +37,45 @@ data class LoadTestConfiguration(
         val mode: TestMode = TestMode.LOAD_TEST,
         val executionFrequency: Int = 2,
         val generateCount: Int = 10000,
-        val parallelism: Int = ForkJoinPool.getCommonPoolParallelism())
+        val parallelism: Int = ForkJoinPool.getCommonPoolParallelism(),
+        val local: LocalLoadTestConfiguration = LocalLoadTestConfiguration())
+
+/**
+ * @param nodeCount The number of nodes to start, in addition to the notary.
+ * @param inProcess Whether to start the nodes in this process, or each in its own. Database statement counts and GC
+ *     statistics are only reported for nodes started in this process.
+ * @param workloads The workloads to run, one after the other.
+ * @param reportFile Where to write the report of the run, in JSON.
+ */
+data class LocalLoadTestConfiguration(
+        val nodeCount: Int = 2,
+        val inProcess: Boolean = true,
+        val workloads: List<Workload> = listOf(Workload("selfIssue"), Workload("crossCash")),
+        val reportFile: Path = Paths.get("build", "load-test", "report.json")
+) {
+    init {
+        require(nodeCount > 0) { "nodeCount must be positive" }
+    }
+}
+
+/**
+ * @param name The load test to run, one of [LOCAL_WORKLOADS].
+ * @param generateCount Number of total commands to generate.
+ * @param parallelism Number of concurrent threads to use to run commands.
+ * @param executionFrequency How many commands to execute per second, or unlimited if null.
+ * @param gatherFrequency After how many commands to check the nodes' states against the expected state.
+ */
+data class Workload(
+        val name: String,
+        val generateCount: Int = 1000,
+        val parallelism: Int = 8,
+        val executionFrequency: Int? = null,
+        val gatherFrequency: Int = 100)
 
 data class RemoteNode(val hostname: String, val systemdServiceName: String, val sshUserName: String, val rpcUser: User, val rpcPort: Int, val nodeDirectory: Path)
 
 enum class TestMode {
     LOAD_TEST,
-    STABILITY_TEST
+    STABILITY_TEST,
+    LOCAL_LOAD_TEST
 }
@@ -0,0 +1,40 @@
+package net.corda.loadtest
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Records the outcome and latency of each command a [LoadTest] executes, to report throughput and latency percentiles.
+ */
+class LoadTestMetrics {
+    private val latenciesNanos = ConcurrentLinkedQueue<Long>()
+    private val failures = AtomicInteger()
+
+    val executed: Int get() = latenciesNanos.size
+    val failed: Int get() = failures.get()
+
+    fun commandExecuted(latencyNanos: Long) {
+        latenciesNanos += latencyNanos
+    }
+
+    fun commandFailed() {
+        failures.incrementAndGet()
+    }
+
+    /** The latencies of the commands executed, in milliseconds, at the median, 90th, 99th and 99.9th percentiles and at most. */
+    fun latencyPercentilesMs(): Map<String, Double> {
+        val sorted = latenciesNanos.sorted()
+        if (sorted.isEmpty()) return emptyMap()
+        fun percentile(p: Double) = toMillis(sorted[minOf(sorted.size - 1, (p * sorted.size).toInt())])
+        return linkedMapOf(
+                "p50" to percentile(0.5),
+                "p90" to percentile(0.9),
+                "p99" to percentile(0.99),
+                "p999" to percentile(0.999),
+                "max" to toMillis(sorted.last())
+        )
+    }
+
+    private fun toMillis(nanos: Long): Double = nanos.toDouble() / TimeUnit.MILLISECONDS.toNanos(1)
+}
@@ -0,0 +1,15 @@
+package net.corda.loadtest
+
+import net.corda.core.identity.Party
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.node.NodeInfo
+
+/**
+ * A node the load tests generate and execute commands against, whether remote and reached through a [NodeConnection] or
+ * started locally by [runLocalLoadTests].
+ */
+interface LoadTestNode {
+    val proxy: CordaRPCOps
+    val info: NodeInfo
+    val mainIdentity: Party
+}
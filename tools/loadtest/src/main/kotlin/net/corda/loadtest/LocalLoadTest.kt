@@ -0,0 +1,124 @@
+package net.corda.loadtest
+
+import com.typesafe.config.ConfigRenderOptions
+import com.typesafe.config.ConfigValueFactory
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.identity.Party
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.node.NodeInfo
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.loggerFor
+import net.corda.loadtest.tests.crossCashTest
+import net.corda.loadtest.tests.selfIssueTest
+import net.corda.testing.driver.DriverParameters
+import net.corda.testing.driver.NodeHandle
+import net.corda.testing.driver.driver
+import net.corda.testing.driver.internal.InProcessImpl
+import net.corda.testing.node.internal.FINANCE_CORDAPPS
+import java.lang.management.ManagementFactory
+import java.util.*
+import java.util.concurrent.TimeUnit
+import kotlin.io.path.createDirectories
+import kotlin.io.path.writeText
+
+private val log = loggerFor<LocalLoadTestConfiguration>()
+
+/** The load tests which [Workload.name] may refer to. */
+val LOCAL_WORKLOADS: Map<String, LoadTest<*, *>> = mapOf(
+        "selfIssue" to selfIssueTest,
+        "crossCash" to crossCashTest
+)
+
+private class DriverNode(private val handle: NodeHandle) : LoadTestNode {
+    override val proxy: CordaRPCOps get() = handle.rpc
+    override val info: NodeInfo get() = handle.nodeInfo
+    override val mainIdentity: Party get() = handle.nodeInfo.legalIdentities.first()
+}
+
+/**
+ * Starts a notary and [LocalLoadTestConfiguration.nodeCount] nodes with the finance CorDapps using the driver, runs each of
+ * the configured workloads against them in turn and writes the throughput, latency percentiles, database statements per
+ * transaction and garbage collections of each run to [LocalLoadTestConfiguration.reportFile].
+ *
+ * Database statements are counted by the Hibernate statistics of the nodes, notary included, so are only reported for nodes
+ * started in process, as are garbage collections, which are those of this JVM.
+ */
+fun runLocalLoadTests(configuration: LoadTestConfiguration) {
+    val local = configuration.local
+    val workloads = local.workloads.map { workload ->
+        val test = requireNotNull(LOCAL_WORKLOADS[workload.name]) {
+            "Unknown workload ${workload.name}, expected one of ${LOCAL_WORKLOADS.keys}"
+        }
+        workload to test
+    }
+    val seed = configuration.seed ?: Random().nextLong()
+    log.info("Using seed $seed")
+    val random = SplittableRandom(seed)
+
+    driver(DriverParameters(startNodesInProcess = local.inProcess, cordappsForAllNodes = FINANCE_CORDAPPS)) {
+        val nodeHandles = (1..local.nodeCount).map {
+            startNode(providedName = CordaX500Name("LoadTestNode$it", "London", "GB"))
+        }.map { it.getOrThrow() }
+        val notaryHandle = defaultNotaryHandle.nodeHandles.getOrThrow().single()
+        val nodes = Nodes(notary = DriverNode(notaryHandle), simpleNodes = nodeHandles.map(::DriverNode))
+        nodes.allNodes.forEach { it.proxy.waitUntilNetworkReady().getOrThrow() }
+        log.info("Started ${local.nodeCount} nodes and the notary")
+
+        val statistics = (nodeHandles + notaryHandle).mapNotNull { (it as? InProcessImpl)?.database?.entityManagerFactory?.statistics }
+        statistics.forEach { it.isStatisticsEnabled = true }
+
+        val results = workloads.map { (workload, test) ->
+            val metrics = LoadTestMetrics()
+            val statementsBefore = statistics.sumOf { it.prepareStatementCount }
+            val gcBefore = garbageCollections()
+            val start = System.nanoTime()
+            test.run(nodes, LoadTest.RunParameters(
+                    parallelism = workload.parallelism,
+                    generateCount = workload.generateCount,
+                    clearDatabaseBeforeRun = false,
+                    executionFrequency = workload.executionFrequency,
+                    gatherFrequency = workload.gatherFrequency,
+                    disruptionPatterns = listOf(listOf())
+            ), random, metrics)
+            val elapsedSeconds = (System.nanoTime() - start).toDouble() / TimeUnit.SECONDS.toNanos(1)
+
+            val result = linkedMapOf<String, Any>(
+                    "name" to workload.name,
+                    "executed" to metrics.executed,
+                    "failed" to metrics.failed,
+                    "durationSeconds" to elapsedSeconds,
+                    "throughputPerSecond" to metrics.executed / elapsedSeconds,
+                    "latencyMs" to metrics.latencyPercentilesMs()
+            )
+            if (statistics.isNotEmpty() && metrics.executed > 0) {
+                val statements = statistics.sumOf { it.prepareStatementCount } - statementsBefore
+                result["dbStatementsPerTransaction"] = statements.toDouble() / metrics.executed
+            }
+            if (local.inProcess) {
+                val gcAfter = garbageCollections()
+                result["gc"] = gcAfter.mapValues { (collector, after) ->
+                    val before = gcBefore[collector] ?: GarbageCollections(0, 0)
+                    mapOf("collections" to after.count - before.count, "timeMs" to after.timeMs - before.timeMs)
+                }
+            }
+            log.info("Workload ${workload.name} done: $result")
+            result
+        }
+
+        val report = mapOf(
+                "seed" to seed,
+                "nodeCount" to local.nodeCount,
+                "inProcess" to local.inProcess,
+                "workloads" to results
+        )
+        local.reportFile.toAbsolutePath().parent.createDirectories()
+        local.reportFile.writeText(ConfigValueFactory.fromMap(report).render(ConfigRenderOptions.concise().setFormatted(true)))
+        log.info("Wrote load test report to ${local.reportFile}")
+    }
+}
+
+private data class GarbageCollections(val count: Long, val timeMs: Long)
+
+private fun garbageCollections(): Map<String, GarbageCollections> {
+    return ManagementFactory.getGarbageCollectorMXBeans().associate { it.name to GarbageCollections(it.collectionCount, it.collectionTime) }
+}
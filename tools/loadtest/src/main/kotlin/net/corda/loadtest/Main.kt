@@ -35,6 +35,12 @@ import java.io.File
  *   disruption is basically an infinite loop of wait->mess something up->repeat. Invariants should hold under these
  *   conditions as well.
  *
+ * Running locally:
+ *   With mode = LOCAL_LOAD_TEST no remote nodes are needed. A notary and a number of nodes are started through the driver,
+ *   in this process or as local processes, and the workloads listed in the local section of the configuration are run
+ *   against them without disruptions. The throughput, latency percentiles, database statements per transaction and GC
+ *   statistics of each workload are written to a JSON report, see [runLocalLoadTests] and [LocalLoadTestConfiguration].
+ *
  * Configuration:
  *   The load test will look for configuration in location provided by the program argument, or the configuration can be
  *   provided via system properties using vm arguments, e.g. -Dloadtest.nodeHosts.0="host" see [LoadTestConfiguration] for
@@ -60,13 +66,14 @@ fun main(args: Array<String>) {
     val resolvedConfig = customConfig.withFallback(defaultConfig).resolve()
     val loadTestConfiguration = resolvedConfig.parseAs<LoadTestConfiguration>()
 
-    if (loadTestConfiguration.nodeHosts.isEmpty()) {
+    if (loadTestConfiguration.mode != TestMode.LOCAL_LOAD_TEST && loadTestConfiguration.nodeHosts.isEmpty()) {
         throw IllegalArgumentException("Please specify at least one node host")
     }
 
     when (loadTestConfiguration.mode) {
         TestMode.LOAD_TEST -> runLoadTest(loadTestConfiguration)
         TestMode.STABILITY_TEST -> runStabilityTest(loadTestConfiguration)
+        TestMode.LOCAL_LOAD_TEST -> runLocalLoadTests(loadTestConfiguration)
     }
 }
 
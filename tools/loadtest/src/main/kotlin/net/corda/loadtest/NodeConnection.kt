@@ -25,7 +25,7 @@ import java.util.concurrent.ForkJoinPool
  * [doWhileClientStopped], otherwise the RPC link will be broken.
  * TODO: Auto reconnect has been enable for RPC connection, investigate if we still need [doWhileClientStopped].
  */
-class NodeConnection(val remoteNode: RemoteNode, private val jSchSession: Session, private val localTunnelAddress: NetworkHostAndPort) : Closeable {
+class NodeConnection(val remoteNode: RemoteNode, private val jSchSession: Session, private val localTunnelAddress: NetworkHostAndPort) : LoadTestNode, Closeable {
     companion object {
         private val log = contextLogger()
     }
@@ -38,10 +38,10 @@ class NodeConnection(val remoteNode: RemoteNode, private val jSchSession: Sessio
 
     private val client = CordaRPCClient(localTunnelAddress)
     private var rpcConnection: CordaRPCConnection? = null
-    val proxy: CordaRPCOps get() = rpcConnection?.proxy ?: throw IllegalStateException("proxy requested, but the client is not running")
-    val info: NodeInfo by lazy { proxy.nodeInfo() } // TODO used only when queried for advertised services
+    override val proxy: CordaRPCOps get() = rpcConnection?.proxy ?: throw IllegalStateException("proxy requested, but the client is not running")
+    override val info: NodeInfo by lazy { proxy.nodeInfo() } // TODO used only when queried for advertised services
     @VisibleForTesting
-    val mainIdentity: Party by lazy { info.legalIdentitiesAndCerts.first().party }
+    override val mainIdentity: Party by lazy { info.legalIdentitiesAndCerts.first().party }
 
     fun <A> doWhileClientStopped(action: () -> A): A {
         val connection = rpcConnection
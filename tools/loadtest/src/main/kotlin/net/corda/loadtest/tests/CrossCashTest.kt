@@ -18,7 +18,7 @@ import net.corda.finance.flows.CashIssueAndPaymentFlow.IssueAndPaymentRequest
 import net.corda.finance.flows.CashPaymentFlow
 import net.corda.finance.flows.CashPaymentFlow.PaymentRequest
 import net.corda.loadtest.LoadTest
-import net.corda.loadtest.NodeConnection
+import net.corda.loadtest.LoadTestNode
 import org.slf4j.LoggerFactory
 import java.util.*
 
@@ -32,7 +32,7 @@ private val log = LoggerFactory.getLogger("CrossCash")
 
 data class CrossCashCommand(
         val request: AbstractRequest,
-        val node: NodeConnection
+        val node: LoadTestNode
 ) {
     override fun toString(): String {
         return when (request) {
@@ -12,7 +12,7 @@ import net.corda.finance.USD
 import net.corda.finance.flows.CashIssueAndPaymentFlow
 import net.corda.finance.flows.CashIssueAndPaymentFlow.IssueAndPaymentRequest
 import net.corda.loadtest.LoadTest
-import net.corda.loadtest.NodeConnection
+import net.corda.loadtest.LoadTestNode
 import org.slf4j.LoggerFactory
 import java.util.*
 
@@ -21,7 +21,7 @@ private val log = LoggerFactory.getLogger("SelfIssue")
 // DOCS START 1
 data class SelfIssueCommand(
         val request: IssueAndPaymentRequest,
-        val node: NodeConnection
+        val node: LoadTestNode
 )
 
 data class SelfIssueState(